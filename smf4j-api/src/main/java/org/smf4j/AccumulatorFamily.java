@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code AccumulatorFamily} is an optional extension of {@link Accumulator}
+ * for implementations that keep one value per distinct combination of
+ * <em>label values</em> - one per status code, say, or per tenant - inside
+ * a single registry member.
+ * <p>
+ * Registering one {@code Accumulator} per label value means one
+ * {@link RegistryNode} (or at least one registry member) per label value,
+ * which is expensive when there are many of them.  An
+ * {@code AccumulatorFamily} instead keeps every labeled value in one compact
+ * table.  The number of distinct label combinations it will track is
+ * capped; once the cap is reached, new combinations are all folded into a
+ * single <em>overflow</em> entry, so a runaway label can't exhaust memory.
+ * </p>
+ * <p>
+ * {@link #get()} reports the total across every entry in the family.
+ * Exporters that understand {@code AccumulatorFamily} can also report each
+ * entry on its own, by walking the entries from {@code 0} to
+ * {@link #size()}.  An entry's index never changes once it is assigned.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface AccumulatorFamily extends Accumulator {
+
+    /**
+     * Gets the names of the labels that identify this family's entries.
+     * @return A copy of the label names, in the order their values are
+     *         given to {@link #getMutator(java.lang.String[])}.
+     */
+    String[] getLabelNames();
+
+    /**
+     * Gets a {@link Mutator} that modifies the entry identified by
+     * {@code labelValues}, creating the entry if necessary.
+     * <p>
+     * If this family is {@code off}, {@link org.smf4j.nop.NopMutator#INSTANCE}
+     * is returned.  If the entry doesn't exist and the family is already at
+     * its cap, the overflow entry's {@code Mutator} is returned.  Callers
+     * that write to the same entry repeatedly should hold on to the returned
+     * {@code Mutator}, rather than looking it up each time.
+     * </p>
+     * @param labelValues One value for each of {@link #getLabelNames()}.
+     * @return A {@code Mutator} for the entry identified by
+     *         {@code labelValues}.
+     * @throws IllegalArgumentException if the number of label values doesn't
+     *         match the number of label names.
+     */
+    Mutator getMutator(String... labelValues);
+
+    /**
+     * Gets the number of entries this family holds, including the overflow
+     * entry if it has been used.
+     * @return The number of entries this family holds.
+     */
+    int size();
+
+    /**
+     * Gets the label values of the entry at {@code index}.
+     * @param index The index of the entry, from {@code 0} to
+     *              {@code size() - 1}.
+     * @return A copy of the label values of the entry at {@code index}.
+     */
+    String[] getLabelValues(int index);
+
+    /**
+     * Gets the value of the entry at {@code index}.
+     * @param index The index of the entry, from {@code 0} to
+     *              {@code size() - 1}.
+     * @return The value of the entry at {@code index}.
+     */
+    long get(int index);
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import org.smf4j.nop.NopBulkSnapshot;
+
+/**
+ * A {@code BulkSnapshot} holds the values of every {@link Accumulator} and
+ * {@link Calculator} matched by a <a href="Registrar.html#GlobPattern">glob
+ * pattern</a>, laid out in columns, as returned by
+ * {@link Registrar#snapshot(java.lang.String)}.
+ * <p>
+ * A {@code BulkSnapshot} is meant to be kept and {@link #refresh() refreshed}
+ * over and over.  Refreshing reads every value into the same arrays it read
+ * them into last time, so that exporters can snapshot large registries
+ * without producing garbage.  The <em>schema</em> of the snapshot, which maps
+ * each column index to a <a href="Registrar.html#MemberPath">member path</a>,
+ * only changes when nodes or members are added to or removed from the
+ * registry; {@link #getSchemaVersion()} changes whenever it does, and only
+ * then are new arrays handed out.
+ * </p>
+ * <p>
+ * Every refresh also notes which columns changed value since the refresh
+ * before it, in {@link #getChangedIndexes()} and
+ * {@link #getChangedCalculatorIndexes()}.  Each {@code BulkSnapshot} is its
+ * own cursor into the registry's history, so callers that refresh on their
+ * own schedules should each keep their own snapshot.  When every matched
+ * {@link Calculator} of a node is a {@link DependentCalculator}, the node's
+ * calculators are only evaluated again when the value of one of that node's
+ * {@link Accumulator}s has changed.  Any other calculator is evaluated on
+ * every refresh.
+ * </p>
+ * <p>
+ * The arrays returned by a {@code BulkSnapshot} are owned by it, and must not
+ * be modified by callers.  A {@code BulkSnapshot} may be refreshed and read
+ * by only one thread at a time.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface BulkSnapshot {
+
+    /**
+     * Takes a new snapshot, reading every matched {@link Accumulator} and
+     * {@link Calculator} again.
+     */
+    void refresh();
+
+    /**
+     * Gets the version of this snapshot's schema.  The version changes
+     * whenever the mapping of column indexes to member paths changes.
+     * @return The version of this snapshot's schema.
+     */
+    long getSchemaVersion();
+
+    /**
+     * Gets the <a href="Registrar.html#MemberPath">member paths</a> of the
+     * {@link Accumulator}s in this snapshot, in column order.
+     * @return The member paths of the {@link Accumulator}s in this snapshot.
+     */
+    String[] getAccumulatorPaths();
+
+    /**
+     * Gets the value of each {@link Accumulator} in this snapshot, in the same
+     * order as {@link #getAccumulatorPaths()}.
+     * @return The value of each {@link Accumulator} in this snapshot.
+     */
+    long[] getValues();
+
+    /**
+     * Gets the <a href="Registrar.html#MemberPath">member paths</a> of the
+     * {@link Calculator}s in this snapshot, in column order.
+     * @return The member paths of the {@link Calculator}s in this snapshot.
+     */
+    String[] getCalculatorPaths();
+
+    /**
+     * Gets the value of each {@link Calculator} in this snapshot, in the same
+     * order as {@link #getCalculatorPaths()}.  A {@link Calculator} that
+     * failed, or that did not return a {@link Number}, has the value
+     * {@link Double#NaN}.
+     * @return The value of each {@link Calculator} in this snapshot.
+     */
+    double[] getCalculatedValues();
+
+    /**
+     * Gets the number of {@link Accumulator} columns whose value was changed
+     * by the last {@link #refresh() refresh}.  The first refresh, and the
+     * first refresh after the schema has changed, changes every column.
+     * @return The number of {@link Accumulator} columns whose value was
+     *         changed by the last refresh.
+     */
+    int getChangedCount();
+
+    /**
+     * Gets the indexes of the {@link Accumulator} columns whose value was
+     * changed by the last {@link #refresh() refresh}, in ascending order.
+     * Only the first {@link #getChangedCount()} entries are meaningful.
+     * @return The indexes of the changed {@link Accumulator} columns.
+     */
+    int[] getChangedIndexes();
+
+    /**
+     * Gets the number of {@link Calculator} columns whose value was changed
+     * by the last {@link #refresh() refresh}.  The first refresh, and the
+     * first refresh after the schema has changed, changes every column.
+     * @return The number of {@link Calculator} columns whose value was
+     *         changed by the last refresh.
+     */
+    int getChangedCalculatorCount();
+
+    /**
+     * Gets the indexes of the {@link Calculator} columns whose value was
+     * changed by the last {@link #refresh() refresh}, in ascending order.
+     * Only the first {@link #getChangedCalculatorCount()} entries are
+     * meaningful.
+     * @return The indexes of the changed {@link Calculator} columns.
+     */
+    int[] getChangedCalculatorIndexes();
+}
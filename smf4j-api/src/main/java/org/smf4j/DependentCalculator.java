@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import java.util.Map;
+
+/**
+ * A {@code DependentCalculator} is a {@link Calculator} that declares exactly
+ * which members of its {@link RegistryNode} it reads, and that may take the
+ * results of other calculators in the same node as inputs.
+ * <p>
+ * Declaring inputs lets a {@link RegistryNode} evaluate its calculators in
+ * dependency order, so that a chain such as
+ * rate &rarr; normalized rate &rarr; formatted string can be built from
+ * separately registered calculators, each of which sees the result of the one
+ * before it.  It also lets the node skip a {@code DependentCalculator} whose
+ * inputs have not changed since the last snapshot, and reuse the result it
+ * returned then.  A {@code DependentCalculator} must therefore be a pure
+ * function of its declared inputs.
+ * </p>
+ * <p>
+ * Callers that know nothing about dependencies will still invoke
+ * {@link #calculate(java.util.Map, java.util.Map)}.  Implementations should
+ * treat that the same as a call to
+ * {@link #calculate(java.util.Map, java.util.Map, java.util.Map)} in which
+ * none of the calculator inputs are available.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see Calculator
+ */
+public interface DependentCalculator extends Calculator {
+
+    /**
+     * Gets the names of the {@link Accumulator}s whose values this calculator
+     * reads.
+     * @return The names of the {@code Accumulator}s whose values this
+     *         calculator reads.  Never {@code null}.
+     */
+    String[] getAccumulatorInputs();
+
+    /**
+     * Gets the names of the {@link Calculator}s, registered in the same node,
+     * whose results this calculator reads.
+     * @return The names of the {@code Calculator}s whose results this
+     *         calculator reads.  Never {@code null}.
+     */
+    String[] getCalculatorInputs();
+
+    /**
+     * Performs this calculation, given the values of the node's
+     * {@code Accumulator}s and the results of the calculators named by
+     * {@link #getCalculatorInputs()}.
+     * @param values A {@code Map}, keyed on the names of {@code Accumulator}s
+     *               and holding very recent results of calling these
+     *               {@code Accumulator}s {@link Accumulator#get() get()}
+     *               methods.
+     * @param accumulators A {@code Map}, keyed on the names of
+     *                     {@code Accumulator}s, whose values are the actual
+     *                     {@code Accumulator} instances.
+     * @param calculated A {@code Map}, keyed on the names of
+     *                   {@code Calculator}s, holding the results of those
+     *                   calculators named by {@link #getCalculatorInputs()}
+     *                   that could be evaluated.
+     * @return Returns an integral type (like {@code long}, {@code Long},
+     *         {@code String}, etc...), or an object that can be fully
+     *         comprehended by {@code org.smf4j.util.helpers.CalculatorHelper}.
+     */
+    Object calculate(Map<String, Long> values,
+            Map<String, Accumulator> accumulators,
+            Map<String, Object> calculated);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code IdleAwareAccumulator} is an optional extension of
+ * {@link Accumulator} for implementations that can tell whether they have
+ * been updated.
+ * <p>
+ * Only an {@code IdleAwareAccumulator} is ever unregistered by
+ * {@link RegistryNode#register(String, Accumulator, long, TimeUnit)} for
+ * being idle.  An unchanged value is not enough to go on in general: the
+ * value of an {@code Accumulator} that tracks a maximum stays the same while
+ * it is being updated with smaller values, and a windowed one changes on its
+ * own as time passes.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface IdleAwareAccumulator extends Accumulator {
+
+    /**
+     * Gets a stamp that changes whenever this {@code IdleAwareAccumulator}
+     * is updated.  If two calls return the same stamp, it was not updated in
+     * between them.
+     * <p>
+     * An {@code IdleAwareAccumulator} that cannot tell, in its current
+     * configuration, should return a different stamp from every call, so
+     * that it is never considered idle.
+     * </p>
+     * @return A stamp that changes whenever this
+     *         {@code IdleAwareAccumulator} is updated.
+     */
+    long getUpdateStamp();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code OnStateAware} is an optional interface that an {@link Accumulator}
+ * may implement in order to follow the on/off state of the
+ * {@link RegistryNode} it is registered with lazily, instead of having its
+ * {@link Accumulator#setOn(boolean) setOn} called every time that state
+ * changes.
+ * <p>
+ * When an {@code OnStateAware} accumulator agrees to be bound, turning a
+ * node on or off no longer needs to visit it: the accumulator checks the
+ * state's generation the next time it needs its state, and only re-reads the
+ * state if the generation has changed.  Calling {@code setOn} on a bound
+ * accumulator still works, and lasts until the next change of state.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see RegistryNode#register(String, Accumulator)
+ */
+public interface OnStateAware {
+
+    /**
+     * Binds this instance to {@code source}, so that its on/off state
+     * follows {@code source} from now on.
+     * @param source The {@link OnStateSource} to follow.
+     * @return {@code true} if this instance will follow {@code source}
+     *         lazily, or {@code false} if the caller must still keep it up
+     *         to date via {@link Accumulator#setOn(boolean)}.
+     */
+    boolean bind(OnStateSource source);
+
+    /**
+     * Unbinds this instance from {@code source}, if it is currently bound to
+     * it.  The instance keeps its current state.
+     * @param source The {@link OnStateSource} to stop following.
+     */
+    void unbind(OnStateSource source);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code OnStateSource} is an on/off state that can be checked lazily and
+ * cheaply, such as the state of a {@link RegistryNode}.
+ * <p>
+ * The state's <em>generation</em> changes whenever the state may have
+ * changed.  A holder that caches the state along with the generation it was
+ * read at only needs to read the state again when the generation moves on.
+ * </p>
+ *
+ * @see OnStateAware
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface OnStateSource {
+
+    /**
+     * Gets the current generation of this state.  Whenever the value of
+     * {@link #isOn()} may have changed, the generation is different from
+     * any generation previously returned.
+     * @return The current generation of this state.
+     */
+    long getGeneration();
+
+    /**
+     * Gets whether or not this state is currently {@code on}.
+     * @return {@code true} if this state is currently {@code on}.
+     */
+    boolean isOn();
+}
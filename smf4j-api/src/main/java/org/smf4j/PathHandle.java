@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopPathHandle;
+import org.smf4j.nop.NopRegistryNode;
+
+/**
+ * {@code PathHandle} is a pre-resolved <a href="Registrar.html#NodeNameAndPath">
+ * node path</a> or <a href="Registrar.html#MemberPath">member path</a>, as
+ * returned by {@link Registrar#resolve(java.lang.String)}.
+ * <p>
+ * A {@code PathHandle} holds direct references to the {@link RegistryNode}
+ * and member it identifies, so code that looks up the same path over and
+ * over can resolve it once, keep the handle, and skip parsing and walking
+ * the registry hierarchy on every lookup.  Handles are stable: a member that
+ * is registered or unregistered after the handle was resolved is reflected
+ * by the handle.
+ * </p>
+ * <p>
+ * Every valid handle has an {@link #getId() id} that is unique within its
+ * {@link Registrar}.  Ids are handed out densely starting at {@code 0}, so
+ * they can be used to index arrays.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface PathHandle {
+
+    /**
+     * Gets the path that this handle was resolved from.
+     * @return The path that this handle was resolved from.
+     */
+    String getPath();
+
+    /**
+     * Gets the dense id of this handle, or {@code -1} if this handle is
+     * {@link NopPathHandle#INSTANCE}.
+     * @return The dense id of this handle.
+     */
+    int getId();
+
+    /**
+     * Gets the {@link RegistryNode} identified by this handle.  For a
+     * member path, this is the node that contains the member.
+     * @return The {@link RegistryNode} identified by this handle, or
+     *         {@link NopRegistryNode#INSTANCE} if the path was invalid.
+     */
+    RegistryNode getNode();
+
+    /**
+     * Gets the name of the member identified by this handle.
+     * @return The name of the member identified by this handle, or
+     *         {@code null} if this handle identifies a node.
+     */
+    String getMemberName();
+
+    /**
+     * Gets the {@link Accumulator} currently registered under this handle's
+     * member path.
+     * @return The {@link Accumulator} currently registered under this
+     *         handle's member path, or {@link NopAccumulator#INSTANCE} if
+     *         there is none.
+     */
+    Accumulator getAccumulator();
+
+    /**
+     * Gets the {@link Calculator} currently registered under this handle's
+     * member path.
+     * @return The {@link Calculator} currently registered under this
+     *         handle's member path, or {@link NopCalculator#INSTANCE} if
+     *         there is none.
+     */
+    Calculator getCalculator();
+}
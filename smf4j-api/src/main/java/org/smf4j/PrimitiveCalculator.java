@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * A {@code PrimitiveCalculator} is a {@link Calculator} that can read its
+ * inputs from a {@link SnapshotView}, without the boxing and {@code Map}
+ * lookups implied by {@link #calculate(java.util.Map, java.util.Map)}.
+ * <p>
+ * The names returned by {@link #getAccumulatorInputs()} are resolved to
+ * slots once, when the calculator is bound to the members of a node, and
+ * every subsequent evaluation reads them by slot.  Callers that only know
+ * the {@code Map} form of {@code calculate} still work; implementations are
+ * expected to adapt it onto {@link #calculate(SnapshotView)}, for example
+ * with {@code org.smf4j.util.helpers.MapSnapshotView}.
+ * </p>
+ * <p>
+ * Calculator results are not part of a {@code SnapshotView}.  A
+ * {@code PrimitiveCalculator} that also implements
+ * {@link DependentCalculator} and declares calculator inputs is evaluated
+ * through {@link DependentCalculator#calculate(java.util.Map, java.util.Map,
+ * java.util.Map)} instead.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see SnapshotView
+ */
+public interface PrimitiveCalculator extends Calculator {
+
+    /**
+     * Gets the names of the {@link Accumulator}s whose values this calculator
+     * reads, in slot order.
+     * @return The names of the {@code Accumulator}s whose values this
+     *         calculator reads, in slot order.  Never {@code null}.
+     */
+    String[] getAccumulatorInputs();
+
+    /**
+     * Performs this calculation on the inputs in {@code inputs}.
+     * @param inputs The values of the inputs named by
+     *               {@link #getAccumulatorInputs()}, by slot.
+     * @return Returns an integral type (like {@code long}, {@code Long},
+     *         {@code String}, etc...), or an object that can be fully
+     *         comprehended by {@code org.smf4j.util.helpers.CalculatorHelper}.
+     */
+    Object calculate(SnapshotView inputs);
+}
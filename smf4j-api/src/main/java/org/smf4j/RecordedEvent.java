@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code RecordedEvent} is a single raw value passed to
+ * {@link Mutator#put(long)}, as captured by a {@link RecordingAccumulator}.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see RecordingAccumulator
+ */
+public final class RecordedEvent {
+    private final String threadName;
+    private final long nanos;
+    private final long value;
+
+    /**
+     * Creates a new {@code RecordedEvent}.
+     * @param threadName The name of the thread that recorded the value.
+     * @param nanos The time the value was recorded, in nanoseconds, as
+     *              reported by the recording {@link Accumulator}'s clock.
+     * @param value The value passed to {@link Mutator#put(long)}.
+     */
+    public RecordedEvent(String threadName, long nanos, long value) {
+        this.threadName = threadName;
+        this.nanos = nanos;
+        this.value = value;
+    }
+
+    /**
+     * Gets the name of the thread that recorded the value.
+     * @return The name of the thread that recorded the value.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Gets the time the value was recorded, in nanoseconds.
+     * @return The time the value was recorded, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Gets the value passed to {@link Mutator#put(long)}.
+     * @return The value passed to {@link Mutator#put(long)}.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %d [%s]", nanos, value, threadName);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import java.util.List;
+
+/**
+ * {@code RecordingAccumulator} is an optional extension of
+ * {@link Accumulator} for implementations that can act as a
+ * <em>flight recorder</em>, retaining the most recent raw values passed to
+ * their {@link Mutator}s.
+ * <p>
+ * An {@code Accumulator} usually only retains an aggregate of the values it
+ * has been shown.  When that aggregate does something unexpected - a spike in
+ * a maximum, for example - the raw values behind it are gone.  While
+ * recording, a {@code RecordingAccumulator} keeps the last few values (and
+ * the times they were recorded) for each writing thread, overwriting the
+ * oldest as it goes.
+ * </p>
+ * <p>
+ * Recording is {@code off} by default.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see Registrar#getRecordedEvents(String)
+ */
+public interface RecordingAccumulator extends Accumulator {
+
+    /**
+     * Starts recording, keeping the last {@code eventsPerThread} values
+     * recorded by each thread.  Any events already recorded are discarded.
+     * @param eventsPerThread The number of events to keep for each thread.
+     */
+    void startRecording(int eventsPerThread);
+
+    /**
+     * Stops recording and discards any recorded events.
+     */
+    void stopRecording();
+
+    /**
+     * Gets whether or not this {@code RecordingAccumulator} is recording.
+     * @return {@code true} if this {@code RecordingAccumulator} is recording.
+     */
+    boolean isRecording();
+
+    /**
+     * Gets a copy of the events currently recorded, ordered from oldest to
+     * newest.
+     * @return A potentially-empty list of the events currently recorded.
+     */
+    List<RecordedEvent> getRecordedEvents();
+}
@@ -15,8 +15,13 @@
  */
 package org.smf4j;
 
+import java.util.List;
+import java.util.Map;
 import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopBulkSnapshot;
 import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopPathHandle;
+import org.smf4j.nop.NopRegistrationBatch;
 import org.smf4j.nop.NopRegistryNode;
 
 /**
@@ -156,6 +161,17 @@ public interface Registrar {
      */
     RegistryNode getNode(String nodePath);
 
+    /**
+     * Gets the {@link RegistryNode} that exists at the given
+     * {@code nodePath}, without creating it if it does not exist.
+     * @param nodePath The <a href="#NodeNameAndPath">path</a> of the node.
+     * @return <strong>Always</strong> returns an instance of
+     *         {@link RegistryNode}.  This instance is either for the node
+     *         at {@code nodePath}, or {@link NopRegistryNode#INSTANCE} if
+     *         there is no such node or {@code nodePath} is malformed.
+     */
+    RegistryNode lookupNode(String nodePath);
+
     /**
      * Gets an {@link Accumulator} previously registered for a
      * {@link RegistryNode}, as specified by {@code memberPath}.
@@ -186,6 +202,23 @@ public interface Registrar {
      */
     Calculator getCalculator(String memberPath);
 
+    /**
+     * Resolves a <a href="#NodeNameAndPath">node path</a> or a
+     * <a href="#MemberPath">member path</a> to a {@link PathHandle}.
+     * <p>
+     * Resolving a node path gets (or creates and registers) the
+     * {@link RegistryNode} at that path, just like
+     * {@link #getNode(java.lang.String) getNode}.  Resolving the same path
+     * again returns the same {@code PathHandle}.
+     * </p>
+     * @param path The node path or member path to resolve.
+     * @return <strong>Always</strong> returns an instance of
+     *         {@link PathHandle}.  This instance is either for
+     *         {@code path}, or {@link NopPathHandle#INSTANCE} if {@code path}
+     *         is not a valid node path or member path.
+     */
+    PathHandle resolve(String path);
+
     /**
      * Matches both {@link RegistryNode}s and their member {@link Accumulator}s
      * and {@link Calculator}s, and returns an {@code Iterable} containing
@@ -198,6 +231,48 @@ public interface Registrar {
      */
     Iterable<? extends RegistryNode> match(String globPattern);
 
+    /**
+     * Creates a {@link BulkSnapshot} of every {@link Accumulator} and
+     * {@link Calculator} matched by {@code globPattern}.  The returned
+     * snapshot has already been taken once, and can be
+     * {@link BulkSnapshot#refresh() refreshed} as often as needed.
+     * @param globPattern The <a href="#GlobPattern">pattern</a> to match.
+     * @return <strong>Always</strong> returns an instance of
+     *         {@link BulkSnapshot}.  This instance is either a snapshot of
+     *         the matched members, or {@link NopBulkSnapshot#INSTANCE} if
+     *         there is an error creating the snapshot.
+     */
+    BulkSnapshot snapshot(String globPattern);
+
+    /**
+     * Starts a {@link RegistrationBatch}, which registers a whole set of
+     * nodes, {@link Accumulator}s and {@link Calculator}s with this
+     * {@code Registrar} in one go when it is
+     * {@link RegistrationBatch#commit() committed}.  Prefer a batch to
+     * registering members one at a time when there are many of them to
+     * register at once, such as during application initialization.
+     * @return <strong>Always</strong> returns a new, empty
+     *         {@link RegistrationBatch}, or
+     *         {@link NopRegistrationBatch#INSTANCE} if this {@code Registrar}
+     *         does nothing.
+     */
+    RegistrationBatch batch();
+
+    /**
+     * Adds a {@link RegistryListener} that is told about every change to the
+     * layout or state of this {@code Registrar}.  Adding a listener that has
+     * already been added has no effect.
+     * @param listener The listener to add.
+     */
+    void addListener(RegistryListener listener);
+
+    /**
+     * Removes a {@link RegistryListener} previously added with
+     * {@link #addListener(RegistryListener) addListener}.
+     * @param listener The listener to remove.
+     */
+    void removeListener(RegistryListener listener);
+
     /**
      * Turns on or off the {@link RegistryNode} identified by
      * <a href="#NodeNameAndPath">{@code nodePath}</a>.
@@ -216,4 +291,18 @@ public interface Registrar {
      *                 turn on or off.
      */
     void clearOn(String nodePath);
+
+    /**
+     * Gets the events currently recorded by every {@link RecordingAccumulator}
+     * matched by {@code globPattern}.
+     * <p>
+     * {@code Accumulator}s that are not {@link RecordingAccumulator}s, or that
+     * are not recording, are left out of the result.
+     * </p>
+     * @param globPattern The <a href="#GlobPattern">pattern</a> to match.
+     * @return A map of <a href="#MemberPath">member paths</a> to the events
+     *         recorded by the matching {@link RecordingAccumulator}s, ordered
+     *         from oldest to newest.
+     */
+    Map<String, List<RecordedEvent>> getRecordedEvents(String globPattern);
 }
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopPathHandle;
 import org.smf4j.nop.NopRegistrar;
 import org.smf4j.nop.NopRegistryNode;
 import org.smf4j.impl.StaticRegistrarBinder;
@@ -164,6 +165,23 @@ public final class RegistrarFactory {
         return getRegistrar().getNode(nodePath);
     }
 
+    /**
+     * Gets the {@link RegistryNode} that already exists at the given
+     * <a href="{@docRoot}/org/smf4j/Registrar.html#NodeNameAndPath">nodePath</a>
+     * in the application's {@link Registrar}, without creating it.
+     * @param nodePath The path of the {@link RegistryNode} in the application's
+     *                 {@link Registrar}
+     * @return The {@link RegistryNode} at the given {@code nodePath} in the
+     *         application's {@link Registrar}, or
+     *         {@link NopRegistryNode#INSTANCE} if there is no such node or an
+     *         error is encountered.
+     *
+     * @see Registrar#lookupNode(java.lang.String)
+     */
+    public static RegistryNode lookupNode(String nodePath) {
+        return getRegistrar().lookupNode(nodePath);
+    }
+
     /**
      * Gets the {@link Accumulator} at the given
      * <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">memberPath</a>
@@ -198,6 +216,22 @@ public final class RegistrarFactory {
         return getRegistrar().getCalculator(memberPath);
     }
 
+    /**
+     * Resolves the given
+     * <a href="{@docRoot}/org/smf4j/Registrar.html#NodeNameAndPath">nodePath</a>
+     * or <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">memberPath</a>
+     * to a {@link PathHandle} in the application's {@link Registrar}.
+     * @param path The node path or member path to resolve.
+     * @return The {@link PathHandle} for {@code path} in the application's
+     *         {@link Registrar}, or {@link NopPathHandle#INSTANCE} if an
+     *         error is encountered.
+     *
+     * @see Registrar#resolve(java.lang.String)
+     */
+    public static PathHandle resolve(String path) {
+        return getRegistrar().resolve(path);
+    }
+
     /**
      * Initializes our internal state, if necessary.
      */
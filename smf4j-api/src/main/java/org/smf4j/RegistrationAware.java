@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code RegistrationAware} is an optional interface that an
+ * {@link Accumulator} or {@link Calculator} may implement in order to be
+ * told when it is registered with, or unregistered from, a
+ * {@link RegistryNode}.
+ * <p>
+ * This gives implementations a chance to bind themselves to
+ * registration-time resources - for example, a storage slot in a shared
+ * structure - instead of looking them up on every read or write.
+ * </p>
+ * <p>
+ * {@link #registered(RegistryNode, String)} is only called when the
+ * registration actually succeeds; registering under a name that is already in
+ * use does not call it.  Likewise,
+ * {@link #unregistered(RegistryNode, String)} is only called when the
+ * instance is actually removed.  An instance registered under several names
+ * is told about each of them.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see RegistryNode#register(String, Accumulator)
+ * @see RegistryNode#register(String, Calculator)
+ */
+public interface RegistrationAware {
+
+    /**
+     * Called after this instance has been registered with {@code node}
+     * under {@code name}.
+     * @param node The {@link RegistryNode} this instance was registered with.
+     * @param name The name this instance was registered under.
+     */
+    void registered(RegistryNode node, String name);
+
+    /**
+     * Called after this instance has been unregistered from {@code node}.
+     * @param node The {@link RegistryNode} this instance was removed from.
+     * @param name The name this instance was registered under.
+     */
+    void unregistered(RegistryNode node, String name);
+}
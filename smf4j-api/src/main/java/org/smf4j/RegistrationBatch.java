@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code RegistrationBatch} collects a set of node, {@link Accumulator} and
+ * {@link Calculator} registrations, so that a {@link Registrar} can apply
+ * them all at once, as returned by {@link Registrar#batch()}.
+ * <p>
+ * Nothing is registered until {@link #commit()} is called.  The
+ * {@code Registrar} then resolves each distinct node path once, adds every
+ * member of a node in one go, works out the on/off state of each node once
+ * for all of its new accumulators, and publishes the whole set as a single
+ * change of its topology.  This makes a batch far cheaper than registering
+ * the same members one at a time, which matters when an application
+ * registers many thousands of them during initialization.
+ * </p>
+ * <p>
+ * Registrations follow the same rules as
+ * {@link RegistryNode#register(java.lang.String, org.smf4j.Accumulator)}:
+ * a member name that is already registered keeps its existing member, as
+ * does a member name that appears more than once in the same batch.  Node
+ * paths that are not valid are skipped.
+ * </p>
+ * <p>
+ * A {@code RegistrationBatch} is meant to be filled and committed by a
+ * single thread, and can only be committed once.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface RegistrationBatch {
+
+    /**
+     * Adds the node at {@code nodePath} to this batch, so that it is created
+     * if it doesn't exist yet, even if nothing is registered with it.
+     * @param nodePath The <a href="Registrar.html#NodeNameAndPath">path</a>
+     *        of the node.
+     * @return This batch.
+     * @throws IllegalStateException If this batch has been committed.
+     */
+    RegistrationBatch node(String nodePath);
+
+    /**
+     * Adds the registration of {@code acc} under {@code name}, with the node
+     * at {@code nodePath}, to this batch.
+     * @param nodePath The <a href="Registrar.html#NodeNameAndPath">path</a>
+     *        of the node to register {@code acc} with.
+     * @param name The name to register {@code acc} under.
+     * @param acc The {@link Accumulator} to register.
+     * @return This batch.
+     * @throws IllegalStateException If this batch has been committed.
+     */
+    RegistrationBatch register(String nodePath, String name, Accumulator acc);
+
+    /**
+     * Adds the registration of {@code calc} under {@code name}, with the node
+     * at {@code nodePath}, to this batch.
+     * @param nodePath The <a href="Registrar.html#NodeNameAndPath">path</a>
+     *        of the node to register {@code calc} with.
+     * @param name The name to register {@code calc} under.
+     * @param calc The {@link Calculator} to register.
+     * @return This batch.
+     * @throws IllegalStateException If this batch has been committed.
+     */
+    RegistrationBatch register(String nodePath, String name, Calculator calc);
+
+    /**
+     * Applies every registration in this batch to its {@link Registrar}.
+     * @throws IllegalStateException If this batch has already been
+     *         committed.
+     */
+    void commit();
+}
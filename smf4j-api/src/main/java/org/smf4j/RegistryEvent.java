@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * A {@code RegistryEvent} describes a single change to the layout or state of
+ * a {@link Registrar}, as delivered to {@link RegistryListener}s.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class RegistryEvent {
+
+    /**
+     * The kinds of change a {@code RegistryEvent} can describe.
+     */
+    public enum Type {
+        /**
+         * A {@link RegistryNode} was created.
+         */
+        NODE_ADDED,
+
+        /**
+         * A {@link RegistryNode} was removed.
+         */
+        NODE_REMOVED,
+
+        /**
+         * An {@link Accumulator} was registered with a {@link RegistryNode}.
+         */
+        ACCUMULATOR_ADDED,
+
+        /**
+         * An {@link Accumulator} was unregistered from a {@link RegistryNode}.
+         */
+        ACCUMULATOR_REMOVED,
+
+        /**
+         * A {@link Calculator} was registered with a {@link RegistryNode}.
+         */
+        CALCULATOR_ADDED,
+
+        /**
+         * A {@link Calculator} was unregistered from a {@link RegistryNode}.
+         */
+        CALCULATOR_REMOVED,
+
+        /**
+         * A {@link RegistryNode} was turned on or off, or told to follow its
+         * parent's state.  The state of every node that follows this node's
+         * state may have changed along with it.
+         */
+        STATE_CHANGED
+    }
+
+    private final Type type;
+    private final RegistryNode node;
+    private final String memberName;
+    private final Object member;
+
+    /**
+     * Creates a new {@code RegistryEvent}.
+     * @param type The kind of change.
+     * @param node The {@link RegistryNode} that changed.
+     * @param memberName The name of the {@link Accumulator} or
+     *                   {@link Calculator} that was added or removed, or
+     *                   {@code null}.
+     * @param member The {@link Accumulator} or {@link Calculator} that was
+     *               added or removed, or {@code null}.
+     */
+    public RegistryEvent(Type type, RegistryNode node, String memberName,
+            Object member) {
+        if(type == null || node == null) {
+            throw new NullPointerException();
+        }
+        this.type = type;
+        this.node = node;
+        this.memberName = memberName;
+        this.member = member;
+    }
+
+    /**
+     * Gets the kind of change.
+     * @return The kind of change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the {@link RegistryNode} that changed.  For
+     * {@link Type#NODE_ADDED} and {@link Type#NODE_REMOVED}, this is the node
+     * that was added or removed.
+     * @return The {@link RegistryNode} that changed.
+     */
+    public RegistryNode getNode() {
+        return node;
+    }
+
+    /**
+     * Gets the name of the {@link Accumulator} or {@link Calculator} that was
+     * added or removed.
+     * @return The name of the member that was added or removed, or
+     *         {@code null} if this event is not about a member.
+     */
+    public String getMemberName() {
+        return memberName;
+    }
+
+    /**
+     * Gets the {@link Accumulator} or {@link Calculator} that was added or
+     * removed.
+     * @return The member that was added or removed, or {@code null} if this
+     *         event is not about a member.
+     */
+    public Object getMember() {
+        return member;
+    }
+
+    @Override
+    public String toString() {
+        if(memberName == null) {
+            return type + " " + node.getName();
+        }
+        return type + " " + node.getName() + ":" + memberName;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+import java.util.List;
+
+/**
+ * {@code RegistryListener} is implemented by clients that want to know when
+ * the layout or state of a {@link Registrar} changes, such as exporters that
+ * keep their own view of the registry up to date.
+ * <p>
+ * Listeners are added with {@link Registrar#addListener(RegistryListener)}
+ * or {@link RegistryNode#addListener(RegistryListener)}.  Events are delivered
+ * asynchronously and in batches, on a thread belonging to the
+ * {@code Registrar}.  Changes that cancel each other out within a batch, such
+ * as a member being registered and then unregistered again, may be coalesced
+ * away, so listeners should treat events as hints about what to look at
+ * rather than as a complete history.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface RegistryListener {
+
+    /**
+     * Called with a batch of changes, in the order they happened.
+     * @param events The changes.  Never empty.
+     */
+    void registryChanged(List<RegistryEvent> events);
+}
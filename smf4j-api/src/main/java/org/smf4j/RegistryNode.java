@@ -16,6 +16,7 @@
 package org.smf4j;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
 import org.smf4j.nop.NopRegistryNode;
@@ -101,6 +102,46 @@ public interface RegistryNode {
      */
     Accumulator register(String name, Accumulator accumulator);
 
+    /**
+     * Registers {@code accumulator} exactly like
+     * {@link #register(java.lang.String, org.smf4j.Accumulator)}, but only for
+     * as long as it stays in use.
+     * <p>
+     * Once {@code accumulator} has not been updated for {@code idleTimeout},
+     * it is unregistered.  If that leaves this {@code RegistryNode} with no
+     * members, no children and no {@link #setOn(boolean) state} of its own,
+     * the node is removed from its parent as well, and so on up towards the
+     * root.  This is intended for nodes created on the fly, such as one per
+     * tenant or per endpoint, that would otherwise live forever.
+     * </p>
+     * <p>
+     * Only an {@link IdleAwareAccumulator} can tell when it was last
+     * updated.  Any other {@code Accumulator} is registered exactly as by
+     * {@link #register(java.lang.String, org.smf4j.Accumulator)}, and is
+     * never unregistered for being idle.
+     * </p>
+     * <p>
+     * A {@code RegistryNode} that has been removed this way is recreated the
+     * next time its path is asked for.  Anything registered through a
+     * reference to the removed node is registered with its replacement.
+     * </p>
+     *
+     * @param name The <a href="Registrar.html#AccumulatorAndCalculatorName">name</a>
+     *             to register the {@code Accumulator}.
+     * @param accumulator The {@code Accumulator} to register.
+     * @param idleTimeout How long {@code accumulator} may go without being
+     *                    updated before it is unregistered.
+     * @param unit The unit of {@code idleTimeout}.
+     * @return Returns the {@link Accumulator} ultimately registered with this
+     *         {@code name}, or {@link NopAccumulator#INSTANCE} if a
+     *         {@link Calculator} is already registered with {@code name}, or
+     *         if {@code name} is malformed.  Only {@code accumulator} itself
+     *         is subject to {@code idleTimeout}; an {@code Accumulator} that
+     *         was already registered is left as it was.
+     */
+    Accumulator register(String name, Accumulator accumulator,
+            long idleTimeout, TimeUnit unit);
+
     /**
      * Attempts to register {@code calculator} under the
      * <a href="Registrar.html#AccumulatorAndCalculatorName">name</a>
@@ -142,6 +183,27 @@ public interface RegistryNode {
      */
     boolean unregister(String name, Accumulator accumulator);
 
+    /**
+     * Replaces the {@link Accumulator} {@code accumulator}, registered under
+     * the name {@code name}, with {@code replacement}, in a single step.
+     * Anyone looking up {@code name} sees either {@code accumulator} or
+     * {@code replacement}, and never finds it missing.
+     * <p>
+     * If the {@code RegistryNode} does not have the {@link Accumulator}
+     * {@code accumulator} registered under the name {@code name}, then the
+     * replacement fails.  Otherwise, {@code accumulator} is told it has been
+     * unregistered, and {@code replacement} that it has been registered,
+     * just as if one had been unregistered and the other registered.
+     * </p>
+     * @param name The name of the {@code Accumulator} to replace.
+     * @param accumulator The {@code Accumulator} to replace.
+     * @param replacement The {@code Accumulator} to register in its place.
+     * @return Returns a {@code boolean} value indicating whether or not the
+     *         replacement succeeded.
+     */
+    boolean replace(String name, Accumulator accumulator,
+            Accumulator replacement);
+
     /**
      * Unregisters the {@link Calculator} {@code calculator} under the name
      * {@code name}.
@@ -237,4 +299,19 @@ public interface RegistryNode {
      *         {@code RegistryNode} names.
      */
     RegistryNode getChildNode(String name);
+
+    /**
+     * Adds a {@link RegistryListener} that is told about every change to the
+     * layout or state of this node and of the nodes below it.  Adding a
+     * listener that has already been added to this node has no effect.
+     * @param listener The listener to add.
+     */
+    void addListener(RegistryListener listener);
+
+    /**
+     * Removes a {@link RegistryListener} previously added with
+     * {@link #addListener(RegistryListener) addListener}.
+     * @param listener The listener to remove.
+     */
+    void removeListener(RegistryListener listener);
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * A {@code SnapshotView} presents the accumulator inputs of a
+ * {@link PrimitiveCalculator} as primitive values, addressed by slot rather
+ * than by name.
+ * <p>
+ * Slot {@code i} holds the input named by the {@code i}th entry of
+ * {@link PrimitiveCalculator#getAccumulatorInputs()}.  The caller resolves
+ * those names to slots once, ahead of time, so reading an input is an array
+ * access instead of a {@code Map} lookup of a boxed value.
+ * </p>
+ * <p>
+ * A {@code SnapshotView} is only valid for the duration of the call it is
+ * passed to, and must not be retained.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see PrimitiveCalculator
+ */
+public interface SnapshotView {
+
+    /**
+     * Gets the number of slots in this view.
+     * @return The number of slots in this view.
+     */
+    int size();
+
+    /**
+     * Gets whether the input in {@code slot} was present in the snapshot.
+     * @param slot The slot to inspect.
+     * @return {@code true} if the input in {@code slot} was present in the
+     *         snapshot, {@code false} otherwise.
+     */
+    boolean contains(int slot);
+
+    /**
+     * Gets the snapshotted value of the input in {@code slot}.
+     * @param slot The slot to read.
+     * @return The snapshotted value of the input in {@code slot}, or
+     *         {@code 0} if it was not present.
+     */
+    long get(int slot);
+
+    /**
+     * Gets the {@link Accumulator} that supplied the input in {@code slot}.
+     * @param slot The slot to inspect.
+     * @return The {@link Accumulator} that supplied the input in
+     *         {@code slot}, or {@code null} if it was not present.
+     */
+    Accumulator getAccumulator(int slot);
+}
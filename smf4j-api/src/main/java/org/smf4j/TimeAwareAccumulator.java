@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j;
+
+/**
+ * {@code TimeAwareAccumulator} is an optional extension of
+ * {@link Accumulator} for implementations whose value depends on the
+ * current time, such as those that report values recorded within a sliding
+ * time window.
+ * <p>
+ * By default, each call to {@link #get()} on such an {@code Accumulator}
+ * reads the clock independently.  When many {@code Accumulator}s are read
+ * together (for example, by {@link RegistryNode#snapshot()}), the edges of
+ * their windows drift slightly from one to the next, and related values may
+ * disagree with one another.  {@code TimeAwareAccumulator} lets the caller
+ * read the clock exactly once via {@link #nanos()}, and then evaluate every
+ * {@code Accumulator} as of that single instant via {@link #get(long)}.
+ * </p>
+ * <p>
+ * {@code TimeAwareAccumulator}s that are evaluated together are expected to
+ * share the same clock.  The default clock used throughout smf4j is
+ * {@code System.nanoTime()}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ * @see RegistryNode#snapshot()
+ */
+public interface TimeAwareAccumulator extends Accumulator {
+
+    /**
+     * Gets the current time, in nanoseconds, as reported by the clock this
+     * {@code TimeAwareAccumulator} uses to evaluate its value.
+     * @return The current time, in nanoseconds.
+     */
+    long nanos();
+
+    /**
+     * Gets the value of this {@code TimeAwareAccumulator} as it stood at the
+     * instant {@code nanos}.
+     * <p>
+     * Calling {@code get(nanos())} is equivalent to calling {@link #get()}.
+     * {@code nanos} should be a recent value returned by {@link #nanos()};
+     * {@code Accumulator}s that do not depend on time are free to ignore it.
+     * </p>
+     * @param nanos The instant, in nanoseconds, at which to evaluate this
+     *              {@code TimeAwareAccumulator}.
+     * @return The value held by this {@code TimeAwareAccumulator} as of
+     *         {@code nanos}, or {@code 0} if it is {@code off}.
+     */
+    long get(long nanos);
+}
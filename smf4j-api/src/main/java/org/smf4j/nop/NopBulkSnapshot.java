@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.nop;
+
+import org.smf4j.BulkSnapshot;
+
+/**
+ * {@code NopBulkSnapshot} is a no-operation (nop) implementation of
+ * {@link BulkSnapshot} that never contains any values.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class NopBulkSnapshot implements BulkSnapshot {
+
+    /**
+     * The static singleton instance of {@code NopBulkSnapshot}.
+     */
+    public static final BulkSnapshot INSTANCE = new NopBulkSnapshot();
+
+    private static final String[] NO_PATHS = new String[0];
+    private static final long[] NO_VALUES = new long[0];
+    private static final double[] NO_CALCULATED_VALUES = new double[0];
+    private static final int[] NO_INDEXES = new int[0];
+
+    /**
+     * {@code NopBulkSnapshot} is a static singleton.
+     */
+    private NopBulkSnapshot() {
+    }
+
+    /**
+     * Takes no action.
+     */
+    public void refresh() {
+    }
+
+    /**
+     * Always returns {@code 0}.
+     * @return {@code 0}.
+     */
+    public long getSchemaVersion() {
+        return 0L;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public String[] getAccumulatorPaths() {
+        return NO_PATHS;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public long[] getValues() {
+        return NO_VALUES;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public String[] getCalculatorPaths() {
+        return NO_PATHS;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public double[] getCalculatedValues() {
+        return NO_CALCULATED_VALUES;
+    }
+
+    /**
+     * Always returns {@code 0}.
+     * @return {@code 0}.
+     */
+    public int getChangedCount() {
+        return 0;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public int[] getChangedIndexes() {
+        return NO_INDEXES;
+    }
+
+    /**
+     * Always returns {@code 0}.
+     * @return {@code 0}.
+     */
+    public int getChangedCalculatorCount() {
+        return 0;
+    }
+
+    /**
+     * Always returns an empty array.
+     * @return An empty array.
+     */
+    public int[] getChangedCalculatorIndexes() {
+        return NO_INDEXES;
+    }
+}
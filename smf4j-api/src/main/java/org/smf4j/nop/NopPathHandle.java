@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.nop;
+
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RegistryNode;
+
+/**
+ * {@code NopPathHandle} is a no-operation (nop) implementation of
+ * {@link PathHandle} that is returned when a path cannot be resolved.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class NopPathHandle implements PathHandle {
+
+    /**
+     * The static singleton instance of {@code NopPathHandle}.
+     */
+    public static final PathHandle INSTANCE = new NopPathHandle();
+
+    /**
+     * {@code NopPathHandle} is a static singleton.
+     */
+    private NopPathHandle() {
+    }
+
+    /**
+     * Always returns the empty string.
+     * @return The empty string.
+     */
+    public String getPath() {
+        return "";
+    }
+
+    /**
+     * Always returns {@code -1}.
+     * @return {@code -1}.
+     */
+    public int getId() {
+        return -1;
+    }
+
+    /**
+     * Always returns {@link NopRegistryNode#INSTANCE}.
+     * @return {@link NopRegistryNode#INSTANCE}.
+     */
+    public RegistryNode getNode() {
+        return NopRegistryNode.INSTANCE;
+    }
+
+    /**
+     * Always returns {@code null}.
+     * @return {@code null}.
+     */
+    public String getMemberName() {
+        return null;
+    }
+
+    /**
+     * Always returns {@link NopAccumulator#INSTANCE}.
+     * @return {@link NopAccumulator#INSTANCE}.
+     */
+    public Accumulator getAccumulator() {
+        return NopAccumulator.INSTANCE;
+    }
+
+    /**
+     * Always returns {@link NopCalculator#INSTANCE}.
+     * @return {@link NopCalculator#INSTANCE}.
+     */
+    public Calculator getCalculator() {
+        return NopCalculator.INSTANCE;
+    }
+}
@@ -17,10 +17,16 @@ package org.smf4j.nop;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
 import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RecordedEvent;
 import org.smf4j.Registrar;
+import org.smf4j.RegistrationBatch;
 import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistryListener;
 import org.smf4j.RegistryNode;
 
 /**
@@ -60,6 +66,15 @@ public class NopRegistrar implements Registrar {
         return NopRegistryNode.INSTANCE;
     }
 
+    /**
+     * Always returns {@link NopRegistryNode#INSTANCE}.
+     * @param nodePath Ignored.
+     * @return {@link NopRegistryNode#INSTANCE}.
+     */
+    public RegistryNode lookupNode(String nodePath) {
+        return NopRegistryNode.INSTANCE;
+    }
+
     /**
      * Always returns {@link NopRegistryNode#INSTANCE}.
      * @return {@link NopRegistryNode#INSTANCE}.
@@ -77,6 +92,23 @@ public class NopRegistrar implements Registrar {
         return empty;
     }
 
+    /**
+     * Always returns {@link NopBulkSnapshot#INSTANCE}.
+     * @param globPattern Ignored.
+     * @return {@link NopBulkSnapshot#INSTANCE}.
+     */
+    public BulkSnapshot snapshot(String globPattern) {
+        return NopBulkSnapshot.INSTANCE;
+    }
+
+    /**
+     * Always returns {@link NopRegistrationBatch#INSTANCE}.
+     * @return {@link NopRegistrationBatch#INSTANCE}.
+     */
+    public RegistrationBatch batch() {
+        return NopRegistrationBatch.INSTANCE;
+    }
+
     /**
      * Takes to action.
      * @param fullNodeName Ignored.
@@ -110,4 +142,36 @@ public class NopRegistrar implements Registrar {
         return NopCalculator.INSTANCE;
     }
 
+    /**
+     * Always returns {@link NopPathHandle#INSTANCE}.
+     * @param path Ignored.
+     * @return {@link NopPathHandle#INSTANCE}.
+     */
+    public PathHandle resolve(String path) {
+        return NopPathHandle.INSTANCE;
+    }
+
+    /**
+     * Always returns {@link Collections#emptyMap()}.
+     * @param globPattern Ignored.
+     * @return {@link Collections#emptyMap()}.
+     */
+    public Map<String, List<RecordedEvent>> getRecordedEvents(
+            String globPattern) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Takes no action.
+     * @param listener Ignored.
+     */
+    public void addListener(RegistryListener listener) {
+    }
+
+    /**
+     * Takes no action.
+     * @param listener Ignored.
+     */
+    public void removeListener(RegistryListener listener) {
+    }
 }
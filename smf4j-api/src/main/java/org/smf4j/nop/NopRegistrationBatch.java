@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.nop;
+
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.RegistrationBatch;
+
+/**
+ * {@code NopRegistrationBatch} is a no-operation (nop) implementation of
+ * {@link RegistrationBatch} that is returned by {@link NopRegistrar}.  It
+ * ignores every registration, and can be committed any number of times.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class NopRegistrationBatch implements RegistrationBatch {
+
+    /**
+     * The static singleton instance of {@code NopRegistrationBatch}.
+     */
+    public static final RegistrationBatch INSTANCE = new NopRegistrationBatch();
+
+    /**
+     * {@code NopRegistrationBatch} is a static singleton.
+     */
+    private NopRegistrationBatch() {
+    }
+
+    /**
+     * Does nothing.
+     * @return This batch.
+     */
+    public RegistrationBatch node(String nodePath) {
+        return this;
+    }
+
+    /**
+     * Does nothing.
+     * @return This batch.
+     */
+    public RegistrationBatch register(String nodePath, String name,
+            Accumulator acc) {
+        return this;
+    }
+
+    /**
+     * Does nothing.
+     * @return This batch.
+     */
+    public RegistrationBatch register(String nodePath, String name,
+            Calculator calc) {
+        return this;
+    }
+
+    /**
+     * Does nothing.
+     */
+    public void commit() {
+    }
+}
@@ -17,8 +17,10 @@ package org.smf4j.nop;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.smf4j.Accumulator;
 import org.smf4j.Calculator;
+import org.smf4j.RegistryListener;
 import org.smf4j.RegistryNode;
 
 /**
@@ -67,6 +69,19 @@ public class NopRegistryNode implements RegistryNode {
         return NopAccumulator.INSTANCE;
     }
 
+    /**
+     * Takes no action and returns {@link NopAccumulator#INSTANCE}.
+     * @param name Ignored.
+     * @param accumulator Ignored.
+     * @param idleTimeout Ignored.
+     * @param unit Ignored.
+     * @return {@link NopAccumulator#INSTANCE}.
+     */
+    public Accumulator register(String name, Accumulator accumulator,
+            long idleTimeout, TimeUnit unit) {
+        return NopAccumulator.INSTANCE;
+    }
+
     /**
      * Takes no action and returns {@link NopCalculator#INSTANCE}.
      * @param name Ignored.
@@ -87,6 +102,18 @@ public class NopRegistryNode implements RegistryNode {
         return true;
     }
 
+    /**
+     * Takes no action and returns {@code false}.
+     * @param name Ignored.
+     * @param accumulator Ignored.
+     * @param replacement Ignored.
+     * @return {@code false}.
+     */
+    public boolean replace(String name, Accumulator accumulator,
+            Accumulator replacement) {
+        return false;
+    }
+
     /**
      * Takes no action and returns {@code false}.
      * @param name Ignored.
@@ -176,4 +203,18 @@ public class NopRegistryNode implements RegistryNode {
      */
     public void clearOn() {
     }
+
+    /**
+     * Takes no action.
+     * @param listener Ignored.
+     */
+    public void addListener(RegistryListener listener) {
+    }
+
+    /**
+     * Takes no action.
+     * @param listener Ignored.
+     */
+    public void removeListener(RegistryListener listener) {
+    }
 }
@@ -15,31 +15,121 @@
  */
 package org.smf4j.core.accumulator;
 
+import java.util.concurrent.atomic.AtomicLong;
 import org.smf4j.Accumulator;
+import org.smf4j.OnStateAware;
+import org.smf4j.OnStateSource;
 
 /**
  * {@code AbstractAccumulator} serves as a base for the {@link Accumulator}
  * implementations in {@code smf4j-core}.
+ * <p>
+ * {@code AbstractAccumulator} is {@link OnStateAware}: once bound to an
+ * {@link OnStateSource}, it caches that source's state along with its
+ * generation, and only re-reads the state from {@link #isOn()} when the
+ * generation has changed.  A generation may be shared by many sources, so a
+ * new generation only replaces the cached state, or an override made with
+ * {@link #setOn(boolean)}, if the source's own state is actually different.
+ * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public abstract class AbstractAccumulator implements Accumulator {
+public abstract class AbstractAccumulator
+        implements Accumulator, OnStateAware {
+
+    /**
+     * A stamp that never matches a real generation.
+     */
+    private static final long NO_STAMP = -1L;
+
     /**
-     * A {@code boolean} that tracks our on/off state.
+     * The stamps handed out by {@link #untrackedStamp()}.
+     */
+    private static final AtomicLong untrackedStamps = new AtomicLong();
+
+    /**
+     * A {@code boolean} that tracks our on/off state while we are not bound
+     * to an {@link OnStateSource}.
      */
     private volatile boolean on;
 
+    /**
+     * The {@link OnStateSource} we follow, or {@code null}.
+     */
+    private volatile OnStateSource source;
+
+    /**
+     * The generation of {@link #source} that our cached state was read at,
+     * shifted left by two, with the source's state at that generation in the
+     * second-lowest bit and our own state in the lowest bit.  Keeping them
+     * all in one {@code long} means they can never be seen out of step.
+     */
+    private volatile long stamp = NO_STAMP;
+
     /**
      * A potentially-{@code null} string describing our units.
      */
     private String units;
 
     public final boolean isOn() {
-        return on;
+        OnStateSource src = source;
+        if(src == null) {
+            return on;
+        }
+
+        // The generation must be read before the state, so that a state
+        // change that races with us leaves a stale generation in the stamp.
+        long generation = src.getGeneration();
+        long s = stamp;
+        if((s >>> 2) == generation) {
+            return (s & 1L) != 0L;
+        }
+
+        boolean sourceOn = src.isOn();
+        boolean state = sourceOn;
+        if(s != NO_STAMP && ((s & 2L) != 0L) == sourceOn) {
+            // Something else changed the generation; our source's state is
+            // the same as it was, so keep whatever state we had.
+            state = (s & 1L) != 0L;
+        }
+        stamp = stamp(generation, sourceOn, state);
+        return state;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If this instance is bound to an {@link OnStateSource}, {@code on}
+     * overrides the source's state until the source's state next changes.
+     * </p>
+     * @param on {@code true} to turn this instance on.
+     */
     public final void setOn(boolean on) {
         this.on = on;
+        OnStateSource src = source;
+        if(src != null) {
+            long generation = src.getGeneration();
+            stamp = stamp(generation, src.isOn(), on);
+        }
+    }
+
+    public final boolean bind(OnStateSource source) {
+        this.stamp = NO_STAMP;
+        this.source = source;
+        return true;
+    }
+
+    public final void unbind(OnStateSource source) {
+        if(this.source == source) {
+            this.on = isOn();
+            this.source = null;
+            this.stamp = NO_STAMP;
+        }
+    }
+
+    private static long stamp(long generation, boolean sourceOn,
+            boolean on) {
+        return (generation << 2) | (sourceOn ? 2L : 0L) | (on ? 1L : 0L);
     }
 
     public final String getUnits() {
@@ -54,4 +144,35 @@ public abstract class AbstractAccumulator implements Accumulator {
     public final void setUnits(String units) {
         this.units = units;
     }
+
+    /**
+     * Gets the {@link TimeReporter} that the {@code Mutator}s created by
+     * {@code mutatorFactory} use to tell time.
+     * <p>
+     * If {@code mutatorFactory} is a {@link WindowedMutatorFactory}, its
+     * {@code TimeReporter} is returned.  Otherwise, the mutators do not
+     * depend on time, and {@link SystemNanosTimeReporter#INSTANCE} is
+     * returned.
+     * </p>
+     * @param mutatorFactory The {@link MutatorFactory} to inspect.
+     * @return The {@code TimeReporter} used by {@code mutatorFactory}'s
+     *         {@code Mutator}s.
+     */
+    protected static TimeReporter timeReporterFor(
+            MutatorFactory mutatorFactory) {
+        if(mutatorFactory instanceof WindowedMutatorFactory) {
+            return ((WindowedMutatorFactory)mutatorFactory).getTimeReporter();
+        }
+        return SystemNanosTimeReporter.INSTANCE;
+    }
+
+    /**
+     * Gets an update stamp for an {@link org.smf4j.IdleAwareAccumulator}
+     * that cannot tell when it was last updated.  Every call returns a
+     * different stamp, so that it is never considered idle.
+     * @return A stamp that has never been returned before.
+     */
+    protected static long untrackedStamp() {
+        return untrackedStamps.incrementAndGet();
+    }
 }
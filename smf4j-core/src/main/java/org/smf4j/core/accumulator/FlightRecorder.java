@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.smf4j.Mutator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.RecordingAccumulator;
+
+/**
+ * {@code FlightRecorder} keeps the most recent raw values passed to the
+ * {@link Mutator}s of a {@link RecordingAccumulator}.
+ * <p>
+ * Each writing thread is given its own fixed-size ring of timestamps and
+ * values, allocated once and then overwritten in place.  Like the
+ * high-contention {@code Mutator}s, each ring is written to by exactly one
+ * thread, and can be safely read by any number of threads.  Rings belonging
+ * to dead threads are handed to the next thread that needs one.
+ * </p>
+ * <p>
+ * A {@code RecordingAccumulator} typically holds a {@code volatile}
+ * reference to a {@code FlightRecorder} which is {@code null} while not
+ * recording, so that the cost of recording being off is a single
+ * {@code null} check in {@code getMutator()}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class FlightRecorder {
+
+    private static final Comparator<RecordedEvent> BY_TIME =
+            new Comparator<RecordedEvent>() {
+        public int compare(RecordedEvent o1, RecordedEvent o2) {
+            long diff = o1.getNanos() - o2.getNanos();
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    };
+
+    private final int size;
+    private final TimeReporter timeReporter;
+    private final List<Ring> rings = new CopyOnWriteArrayList<Ring>();
+    private final ThreadLocal<Ring> localRing = new ThreadLocal<Ring>();
+
+    /**
+     * Creates a new {@code FlightRecorder}.
+     * @param size The number of events to keep for each thread.
+     * @param timeReporter The {@link TimeReporter} used to timestamp events.
+     */
+    public FlightRecorder(int size, TimeReporter timeReporter) {
+        if(size < 1) {
+            throw new IllegalArgumentException("size must be positive.");
+        }
+        this.size = size;
+        this.timeReporter = timeReporter;
+    }
+
+    /**
+     * Returns a {@link Mutator} that records every value passed to its
+     * {@code put} before passing it on to {@code mutator}.
+     * <p>
+     * {@code mutator} must be bound to the calling thread.  The returned
+     * {@code Mutator} is reused for every call made by the calling thread,
+     * so no allocation takes place once the thread has a ring.
+     * </p>
+     * @param mutator The calling thread's {@link Mutator}.
+     * @return A recording {@link Mutator} that wraps {@code mutator}.
+     */
+    public Mutator wrap(Mutator mutator) {
+        Ring ring = localRing.get();
+        if(ring == null) {
+            ring = bindRing(Thread.currentThread());
+            localRing.set(ring);
+        }
+        ring.mutator.inner = mutator;
+        return ring.mutator;
+    }
+
+    /**
+     * Gets a copy of the events currently recorded by all threads, ordered
+     * from oldest to newest.
+     * @return A potentially-empty list of recorded events.
+     */
+    public List<RecordedEvent> getRecordedEvents() {
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for(Ring ring : rings) {
+            ring.copyTo(events);
+        }
+        Collections.sort(events, BY_TIME);
+        return events;
+    }
+
+    private Ring bindRing(Thread thread) {
+        for(Ring ring : rings) {
+            if(ring.acquire(thread)) {
+                return ring;
+            }
+        }
+
+        Ring ring = new Ring(thread);
+        rings.add(ring);
+        return ring;
+    }
+
+    private final class Ring {
+        private volatile WeakReference<Thread> threadRef;
+        private volatile String threadName;
+        private final AtomicBoolean available;
+        private final AtomicLongArray timestamps;
+        private final AtomicLongArray values;
+        private final AtomicLong count;
+        private final RecordingMutator mutator;
+        private int index;
+
+        Ring(Thread thread) {
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.threadName = thread.getName();
+            this.available = new AtomicBoolean(false);
+            this.timestamps = new AtomicLongArray(size);
+            this.values = new AtomicLongArray(size);
+            this.count = new AtomicLong();
+            this.mutator = new RecordingMutator(this);
+        }
+
+        void record(long delta) {
+            int i = index;
+            timestamps.lazySet(i, timeReporter.nanos());
+            values.lazySet(i, delta);
+            index = (i + 1 == size) ? 0 : i + 1;
+            count.lazySet(count.get() + 1);
+        }
+
+        void copyTo(List<RecordedEvent> events) {
+            String name = threadName;
+            long c = count.get();
+            int n = (int)Math.min(c, size);
+            int start = (int)((c - n) % size);
+            for(int k=0; k<n; k++) {
+                int i = (start + k) % size;
+                events.add(new RecordedEvent(name, timestamps.get(i),
+                        values.get(i)));
+            }
+        }
+
+        boolean acquire(Thread thread) {
+            Thread cur = threadRef.get();
+            if(cur == thread) {
+                return true;
+            }
+
+            if(cur != null && cur.isAlive()) {
+                return false;
+            }
+
+            if(!available.compareAndSet(false, true)) {
+                return false;
+            }
+
+            // Start over, so that the dead thread's events aren't reported
+            // under the new thread's name.
+            this.count.set(0L);
+            this.index = 0;
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.threadName = thread.getName();
+            this.available.set(false);
+            return true;
+        }
+    }
+
+    private static final class RecordingMutator implements Mutator {
+        private final Ring ring;
+        private Mutator inner;
+
+        RecordingMutator(Ring ring) {
+            this.ring = ring;
+        }
+
+        public void put(long delta) {
+            ring.record(delta);
+            inner.put(delta);
+        }
+
+        public long combine(long other) {
+            return inner.combine(other);
+        }
+
+        public long get() {
+            return inner.get();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.DaemonScheduler;
+
+/**
+ * {@code IdleSweeper} periodically frees the storage of idle windowed state
+ * held by every {@link Releasable} {@link Accumulator} in a
+ * {@link Registrar}.
+ * <p>
+ * Every thread that writes to a windowed
+ * {@link org.smf4j.core.accumulator.hc.HighContentionAccumulator} gets its
+ * own set of bucket arrays.  Bursty workloads can leave large numbers of
+ * these behind, long after every bucket in them has aged out of the time
+ * window.  {@code IdleSweeper} frees such buckets once they have been idle
+ * for a configurable number of time windows, and they are reallocated the
+ * next time they are written to.
+ * </p>
+ * <p>
+ * Periodic sweeps run on the {@link DaemonScheduler#shared() shared}
+ * housekeeping thread.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class IdleSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            IdleSweeper.class);
+
+    private final Registrar registrar;
+    private final int idleWindows;
+    private ScheduledFuture<?> sweeps;
+
+    /**
+     * Creates a new {@code IdleSweeper}.
+     * @param registrar The {@link Registrar} whose accumulators to sweep.
+     * @param idleWindows The number of time windows that windowed state must
+     *                    have gone unwritten before it is freed.
+     */
+    public IdleSweeper(Registrar registrar, int idleWindows) {
+        if(idleWindows < 1) {
+            throw new IllegalArgumentException("idleWindows must be >= 1");
+        }
+        this.registrar = registrar;
+        this.idleWindows = idleWindows;
+    }
+
+    /**
+     * Starts sweeping every {@code period} {@code unit}s, on the shared
+     * housekeeping thread.
+     * @param period The time between sweeps.
+     * @param unit The units of {@code period}.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if(sweeps != null) {
+            return;
+        }
+
+        sweeps = DaemonScheduler.shared().scheduleWithFixedDelay(
+                new Runnable() {
+            public void run() {
+                try {
+                    int released = sweep();
+                    if(released > 0) {
+                        log.debug("Released {} idle mutators.", released);
+                    }
+                } catch(RuntimeException e) {
+                    log.error("Error releasing idle mutators.", e);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops sweeping.
+     */
+    public synchronized void stop() {
+        if(sweeps != null) {
+            sweeps.cancel(false);
+            sweeps = null;
+        }
+    }
+
+    /**
+     * Sweeps all accumulators now.
+     * @return The number of {@link org.smf4j.Mutator}s whose storage was
+     *         freed.
+     */
+    public int sweep() {
+        return sweep(registrar.getRootNode());
+    }
+
+    private int sweep(RegistryNode node) {
+        int released = 0;
+        for(Accumulator accumulator : node.getAccumulators().values()) {
+            if(accumulator instanceof Releasable) {
+                released += ((Releasable)accumulator).releaseIdle(
+                        idleWindows);
+            }
+        }
+
+        for(RegistryNode child : node.getChildNodes().values()) {
+            released += sweep(child);
+        }
+        return released;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import java.util.Collections;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code ReadOnlyAccumulator} is a base for {@link Accumulator}s that
+ * publish a value kept elsewhere, such as a component's internal counters,
+ * and so cannot be written to.
+ * <p>
+ * Subclasses only implement {@link #get()}.  {@link #getMutator()} always
+ * returns {@link NopMutator#INSTANCE}, and there is no metadata.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class ReadOnlyAccumulator extends AbstractAccumulator {
+
+    public final Mutator getMutator() {
+        return NopMutator.INSTANCE;
+    }
+
+    public final Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import org.smf4j.Accumulator;
+
+/**
+ * {@code Releasable} is implemented by {@link Accumulator}s that can free the
+ * storage of windowed state that has gone idle.
+ * <p>
+ * Freed storage is reallocated by the next write, so releasing it never
+ * changes the value an {@code Accumulator} reports: state is only released
+ * once every interval in it has aged out of the time window.
+ * </p>
+ *
+ * @see IdleSweeper
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface Releasable {
+
+    /**
+     * Frees the storage of any windowed state that has not been written to
+     * for at least {@code idleWindows} time windows.
+     * @param idleWindows The number of time windows that must have passed
+     *                    since state was last written to.
+     * @return The number of {@link org.smf4j.Mutator}s whose storage was
+     *         freed by this call.
+     */
+    int releaseIdle(int idleWindows);
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.arena;
+
+import java.util.Collections;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code ArenaAccumulator} is an additive {@link Accumulator} whose
+ * per-thread values live in the {@link ArenaGroup.Slab}s of an
+ * {@link ArenaGroup}, rather than in {@code Mutator} objects of its own.
+ * <p>
+ * An {@code ArenaAccumulator} is given its slot in the {@link ArenaGroup}
+ * when it is first registered with a {@link RegistryNode}.  Until then,
+ * {@link #getMutator()} returns {@link NopMutator#INSTANCE} and {@link #get()}
+ * returns {@code 0}.  Once assigned, the slot is kept for the lifetime of the
+ * instance, even if it is later unregistered.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class ArenaAccumulator extends AbstractAccumulator
+        implements RegistrationAware {
+
+    private static final int UNASSIGNED = -1;
+
+    private final ArenaGroup group;
+    private final Mutator mutator;
+    private volatile int slot = UNASSIGNED;
+
+    /**
+     * Creates a new {@code ArenaAccumulator} in {@link ArenaGroup#DEFAULT}.
+     */
+    public ArenaAccumulator() {
+        this(ArenaGroup.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code ArenaAccumulator} in {@code group}.
+     * @param group The {@link ArenaGroup} that will hold this instance's
+     *              values.
+     */
+    public ArenaAccumulator(ArenaGroup group) {
+        this.group = group;
+        this.mutator = new ArenaMutator();
+    }
+
+    public void registered(RegistryNode node, String name) {
+        if(slot == UNASSIGNED) {
+            synchronized(this) {
+                if(slot == UNASSIGNED) {
+                    slot = group.allocateSlot();
+                }
+            }
+        }
+    }
+
+    public void unregistered(RegistryNode node, String name) {
+        // Keep our slot - other code may still hold on to this instance.
+    }
+
+    /**
+     * Gets the {@link ArenaGroup} this instance stores its values in.
+     * @return The {@link ArenaGroup} this instance stores its values in.
+     */
+    public ArenaGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Gets the slot this instance was assigned in its {@link ArenaGroup}, or
+     * {@code -1} if it has not yet been registered.
+     * @return This instance's slot, or {@code -1}.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public Mutator getMutator() {
+        if(!isOn() || slot == UNASSIGNED) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public long get() {
+        int s = slot;
+        if(s == UNASSIGNED) {
+            return 0L;
+        }
+        return group.get(s);
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    private final class ArenaMutator implements Mutator {
+        public void put(long delta) {
+            group.slab().add(slot, delta);
+        }
+
+        public long combine(long other) {
+            return get() + other;
+        }
+
+        public long get() {
+            return ArenaAccumulator.this.get();
+        }
+    }
+}
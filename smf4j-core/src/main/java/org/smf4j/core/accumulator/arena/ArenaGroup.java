@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.arena;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code ArenaGroup} is the shared backing store for a group of
+ * {@link ArenaAccumulator}s.
+ * <p>
+ * Each {@link ArenaAccumulator} in the group owns a single <em>slot</em>,
+ * which is handed out when the accumulator is registered.  Each thread that
+ * writes to any accumulator in the group is given its own contiguous
+ * {@link Slab} of {@code long}s, with one entry per slot.  A write is
+ * therefore a single store into the calling thread's slab, and a snapshot of
+ * every accumulator in the group is a linear sweep over each thread's slab,
+ * rather than a walk over one object graph per accumulator.
+ * </p>
+ * <p>
+ * Like the high-contention {@code Mutator}s, each {@link Slab} is written to
+ * by exactly one thread at a time, and can be safely read by any number of
+ * threads.  When a thread dies, its slab (and the values recorded in it)
+ * is handed to the next thread that needs one.
+ * </p>
+ * <p>
+ * Slots are never reused, so an {@code ArenaGroup} should be sized
+ * to a fixed - or slowly growing - set of accumulators.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class ArenaGroup {
+
+    /**
+     * A shared {@code ArenaGroup} used by {@link ArenaAccumulator}s that are
+     * not given one explicitly.
+     */
+    public static final ArenaGroup DEFAULT = new ArenaGroup();
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final List<Slab> slabs = new CopyOnWriteArrayList<Slab>();
+    private final ThreadLocal<Slab> localSlab = new ThreadLocal<Slab>();
+
+    /**
+     * Allocates a new slot in this {@code ArenaGroup}.
+     * @return The index of the newly-allocated slot.
+     */
+    public int allocateSlot() {
+        return nextSlot.getAndIncrement();
+    }
+
+    /**
+     * Gets the number of slots allocated so far in this {@code ArenaGroup}.
+     * @return The number of slots allocated so far.
+     */
+    public int slotCount() {
+        return nextSlot.get();
+    }
+
+    /**
+     * Gets the {@link Slab} bound to the calling thread, binding one if
+     * necessary.
+     * <p>
+     * Callers that write to many accumulators in the same group from one
+     * thread can hold on to the returned {@code Slab} and call
+     * {@link Slab#add(int, long)} directly for the lifetime of the thread.
+     * </p>
+     * @return The {@link Slab} bound to the calling thread.
+     */
+    public Slab slab() {
+        Slab slab = localSlab.get();
+        if(slab == null) {
+            slab = bindSlab(Thread.currentThread());
+            localSlab.set(slab);
+        }
+        return slab;
+    }
+
+    /**
+     * Gets the combined value of {@code slot} across every thread's
+     * {@link Slab}.
+     * @param slot The slot to read.
+     * @return The sum of {@code slot} across all threads.
+     */
+    public long get(int slot) {
+        long total = 0L;
+        for(Slab slab : slabs) {
+            AtomicLongArray values = slab.values;
+            if(slot < values.length()) {
+                total += values.get(slot);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sums every slot across every thread's {@link Slab} into
+     * {@code totals}.
+     * <p>
+     * {@code totals} is cleared before the sweep.  Slots at or beyond
+     * {@code totals.length} are ignored.
+     * </p>
+     * @param totals The array to receive the per-slot totals, indexed by
+     *               slot.
+     */
+    public void sum(long[] totals) {
+        for(int i=0; i<totals.length; i++) {
+            totals[i] = 0L;
+        }
+
+        for(Slab slab : slabs) {
+            AtomicLongArray values = slab.values;
+            int len = Math.min(values.length(), totals.length);
+            for(int i=0; i<len; i++) {
+                totals[i] += values.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the per-slot totals of every thread's {@link Slab}.
+     * @return A new array, indexed by slot, holding the total for each slot
+     *         allocated so far.
+     */
+    public long[] snapshot() {
+        long[] totals = new long[slotCount()];
+        sum(totals);
+        return totals;
+    }
+
+    private Slab bindSlab(Thread thread) {
+        // Try to take over a slab whose owning thread has died
+        for(Slab slab : slabs) {
+            if(slab.acquire(thread)) {
+                return slab;
+            }
+        }
+
+        Slab slab = new Slab(thread, Math.max(MIN_CAPACITY, slotCount()));
+        slabs.add(slab);
+        return slab;
+    }
+
+    /**
+     * {@code Slab} is the contiguous block of per-slot values written to by
+     * a single thread.
+     */
+    public static final class Slab {
+        private volatile WeakReference<Thread> threadRef;
+        private final AtomicBoolean available;
+        private volatile AtomicLongArray values;
+
+        private Slab(Thread thread, int capacity) {
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.available = new AtomicBoolean(false);
+            this.values = new AtomicLongArray(capacity);
+        }
+
+        /**
+         * Adds {@code delta} to the value held in {@code slot}.
+         * <p>
+         * This must only be called by the thread this {@code Slab} is bound
+         * to.
+         * </p>
+         * @param slot The slot to modify.
+         * @param delta The amount to add to the value in {@code slot}.
+         */
+        public void add(int slot, long delta) {
+            AtomicLongArray v = values;
+            if(slot >= v.length()) {
+                v = grow(v, slot);
+            }
+            v.lazySet(slot, v.get(slot) + delta);
+        }
+
+        private AtomicLongArray grow(AtomicLongArray old, int slot) {
+            int capacity = Math.max(slot + 1, old.length() * 2);
+            AtomicLongArray grown = new AtomicLongArray(capacity);
+            for(int i=0; i<old.length(); i++) {
+                grown.lazySet(i, old.get(i));
+            }
+
+            // Only the owning thread writes, so nothing can be lost between
+            // the copy and the publish below.
+            values = grown;
+            return grown;
+        }
+
+        private boolean acquire(Thread thread) {
+            Thread cur = threadRef.get();
+            if(cur == thread) {
+                return true;
+            }
+
+            if(cur != null && cur.isAlive()) {
+                return false;
+            }
+
+            if(!available.compareAndSet(false, true)) {
+                return false;
+            }
+
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.available.set(false);
+            return true;
+        }
+    }
+}
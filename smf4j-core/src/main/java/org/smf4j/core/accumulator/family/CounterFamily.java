@@ -0,0 +1,248 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.family;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.smf4j.AccumulatorFamily;
+import org.smf4j.Mutator;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code CounterFamily} is an additive {@link AccumulatorFamily}: each entry
+ * is a counter, and {@link #get()} reports the sum of every entry.
+ * <p>
+ * Entries live in a {@link LabelTable} that grows as entries are added, and
+ * their values in chunks of a few entries that are allocated as they are
+ * first written, so a family only pays for the entries it has.  An
+ * entry costs its slot in the table, its hash, its label tuple, its cached
+ * {@code Mutator} and its value, which is padded out to its own cache line
+ * so that writers to different entries don't contend - around a hundred
+ * bytes, rather than the kilobytes a {@code RegistryNode} per label value
+ * would cost.
+ * </p>
+ * <p>
+ * Once the cap is reached, writes for new label tuples all go to the
+ * overflow entry, whose label values are all {@link #OVERFLOW_LABEL}.
+ * Writes made through {@link #getMutator()}, without any label values, go to
+ * the unlabeled entry, whose label values are all {@link #UNLABELED_LABEL}.
+ * Neither counts towards the cap.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class CounterFamily extends AbstractAccumulator
+        implements AccumulatorFamily {
+
+    /**
+     * The label value given to every label of the overflow entry.
+     */
+    public static final String OVERFLOW_LABEL = "overflow";
+
+    /**
+     * The label value given to every label of the unlabeled entry.
+     */
+    public static final String UNLABELED_LABEL = "unlabeled";
+
+    /**
+     * The default cap on the number of distinct label tuples.
+     */
+    public static final int DEFAULT_CAP = 1024;
+
+    /**
+     * The number of {@code long}s each entry's value occupies in
+     * {@link #values}, so that no two values share a cache line.
+     */
+    private static final int PAD = 8;
+
+    /**
+     * The number of entries whose values are allocated together.
+     */
+    static final int CHUNK = 16;
+
+    private final String[] labelNames;
+    private final String[] overflowTuple;
+    private final String[] unlabeledTuple;
+    private final LabelTable table;
+
+    /**
+     * The values of the entries, {@link #CHUNK} entries at a time, each of
+     * which is {@code null} until one of its entries is first written.
+     */
+    private final AtomicReferenceArray<Chunk> chunks;
+
+    /**
+     * Creates a new {@code CounterFamily} capped at {@link #DEFAULT_CAP}
+     * label tuples.
+     * @param labelNames The names of the labels that identify entries.
+     */
+    public CounterFamily(String... labelNames) {
+        this(DEFAULT_CAP, labelNames);
+    }
+
+    /**
+     * Creates a new {@code CounterFamily} capped at {@code cap} label tuples.
+     * @param cap The maximum number of distinct label tuples, not counting
+     *            the overflow and unlabeled entries.
+     * @param labelNames The names of the labels that identify entries.
+     */
+    public CounterFamily(int cap, String... labelNames) {
+        if(labelNames == null || labelNames.length == 0) {
+            throw new IllegalArgumentException(
+                    "At least one label name is required.");
+        }
+
+        this.labelNames = labelNames.clone();
+        this.overflowTuple = new String[labelNames.length];
+        Arrays.fill(overflowTuple, OVERFLOW_LABEL);
+        this.unlabeledTuple = new String[labelNames.length];
+        Arrays.fill(unlabeledTuple, UNLABELED_LABEL);
+        this.table = new LabelTable(cap);
+        this.chunks = new AtomicReferenceArray<Chunk>(
+                (cap + 2 + CHUNK - 1) / CHUNK);
+    }
+
+    /**
+     * Gets the maximum number of distinct label tuples, not counting the
+     * overflow and unlabeled entries.
+     * @return The maximum number of distinct label tuples.
+     */
+    public int getCap() {
+        return table.getCap();
+    }
+
+    public String[] getLabelNames() {
+        return labelNames.clone();
+    }
+
+    /**
+     * Gets a {@link Mutator} for the unlabeled entry, for writes that have
+     * no label values.
+     * @return A {@code Mutator} for the unlabeled entry, or
+     *         {@link NopMutator#INSTANCE} if this family is {@code off}.
+     */
+    public Mutator getMutator() {
+        if(!isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator(table.unlabeledIndex(unlabeledTuple));
+    }
+
+    public Mutator getMutator(String... labelValues) {
+        if(labelValues == null || labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d label values.", labelNames.length));
+        }
+        if(!isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator(table.indexOf(labelValues, overflowTuple));
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public String[] getLabelValues(int index) {
+        return table.getLabels(index).clone();
+    }
+
+    public long get(int index) {
+        if(index < 0 || index >= table.size()) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return value(index);
+    }
+
+    public long get() {
+        long total = 0L;
+        int size = table.size();
+        for(int i=0; i<size; i++) {
+            total += value(i);
+        }
+        return total;
+    }
+
+    private long value(int index) {
+        Chunk chunk = chunks.get(index / CHUNK);
+        if(chunk == null) {
+            // Never written
+            return 0L;
+        }
+        return chunk.values.get((index % CHUNK) * PAD);
+    }
+
+    /**
+     * Gets the cached {@code Mutator} of the entry at {@code index},
+     * allocating its chunk if this is the first write to it.
+     */
+    private Mutator mutator(int index) {
+        int c = index / CHUNK;
+        Chunk chunk = chunks.get(c);
+        if(chunk == null) {
+            chunks.compareAndSet(c, null, new Chunk());
+            chunk = chunks.get(c);
+        }
+
+        // Racing threads may each create a mutator, but they are identical
+        // and immutable, so it doesn't matter which one is kept.
+        int i = index % CHUNK;
+        EntryMutator mutator = chunk.mutators[i];
+        if(mutator == null) {
+            mutator = new EntryMutator(chunk.values, i * PAD);
+            chunk.mutators[i] = mutator;
+        }
+        return mutator;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * The values, and cached mutators, of {@link #CHUNK} entries.
+     */
+    private static final class Chunk {
+        final AtomicLongArray values = new AtomicLongArray(CHUNK * PAD);
+        final EntryMutator[] mutators = new EntryMutator[CHUNK];
+    }
+
+    private static final class EntryMutator implements Mutator {
+        private final AtomicLongArray values;
+        private final int cell;
+
+        EntryMutator(AtomicLongArray values, int cell) {
+            this.values = values;
+            this.cell = cell;
+        }
+
+        public void put(long delta) {
+            values.addAndGet(cell, delta);
+        }
+
+        public long combine(long other) {
+            return get() + other;
+        }
+
+        public long get() {
+            return values.get(cell);
+        }
+    }
+}
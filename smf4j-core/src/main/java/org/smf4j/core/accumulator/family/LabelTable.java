@@ -0,0 +1,248 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.family;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * {@code LabelTable} maps label tuples to dense, stable entry indexes, using
+ * an open-addressing table.
+ * <p>
+ * The table starts out small and doubles as entries are added, up to
+ * {@code cap} entries (plus the overflow and unlabeled entries), so a family
+ * only pays for the entries it actually has.  Growing copies the table into
+ * new arrays, which are then published all at once, so lookups never lock;
+ * a lookup that races with a grow and misses simply falls back to the locked
+ * path, which sees the new arrays.  The table is kept at most half full, and
+ * each entry's hash is stored alongside its tuple so that probes compare an
+ * {@code int} before comparing strings.  Inserts are serialized on the
+ * table's monitor.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class LabelTable {
+
+    static final int NOT_FOUND = -1;
+
+    /**
+     * The number of entries a table has room for before it first grows.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int cap;
+    private volatile Storage storage;
+    private volatile int size;
+
+    /**
+     * The number of hashed entries, which is {@link #size} without the
+     * overflow and unlabeled entries.  Guarded by our monitor.
+     */
+    private int hashed;
+    private volatile int overflow = NOT_FOUND;
+    private volatile int unlabeled = NOT_FOUND;
+
+    LabelTable(int cap) {
+        if(cap < 1) {
+            throw new IllegalArgumentException("cap must be at least 1.");
+        }
+
+        this.cap = cap;
+        this.storage = new Storage(Math.min(cap + 2, INITIAL_CAPACITY));
+    }
+
+    int getCap() {
+        return cap;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String[] getLabels(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return storage.labels[index];
+    }
+
+    /**
+     * Finds the index of {@code tuple}, without creating it.
+     * @param tuple The label values to find.
+     * @return The index of {@code tuple}, or {@link #NOT_FOUND}.
+     */
+    int find(String[] tuple) {
+        return storage.find(tuple, hash(tuple));
+    }
+
+    /**
+     * Gets the index of {@code tuple}, creating it if necessary.  Once the
+     * table holds {@code cap} tuples, new tuples all share the overflow
+     * entry.
+     * @param tuple The label values to find or create.
+     * @param overflowTuple The label values to give the overflow entry.
+     * @return The index of {@code tuple}, or of the overflow entry.
+     */
+    int indexOf(String[] tuple, String[] overflowTuple) {
+        int hash = hash(tuple);
+        int index = storage.find(tuple, hash);
+        if(index != NOT_FOUND) {
+            return index;
+        }
+
+        int o = overflow;
+        if(o != NOT_FOUND) {
+            // Full - don't bother taking the lock
+            return o;
+        }
+
+        synchronized(this) {
+            index = storage.find(tuple, hash);
+            if(index != NOT_FOUND) {
+                return index;
+            }
+
+            if(hashed < cap) {
+                Storage st = room();
+                index = size;
+                st.hashes[index] = hash;
+                st.labels[index] = tuple.clone();
+                st.insert(hash, index);
+                hashed++;
+                size = index + 1;
+                return index;
+            }
+
+            if(overflow == NOT_FOUND) {
+                overflow = reserve(overflowTuple);
+            }
+            return overflow;
+        }
+    }
+
+    /**
+     * Gets the index of the unlabeled entry, creating it if necessary.  Like
+     * the overflow entry, it is never hashed, so it can only be reached
+     * through here, however its labels read, and it doesn't count towards
+     * {@code cap}.
+     * @param unlabeledTuple The label values to give the unlabeled entry.
+     * @return The index of the unlabeled entry.
+     */
+    int unlabeledIndex(String[] unlabeledTuple) {
+        int u = unlabeled;
+        if(u != NOT_FOUND) {
+            return u;
+        }
+
+        synchronized(this) {
+            if(unlabeled == NOT_FOUND) {
+                unlabeled = reserve(unlabeledTuple);
+            }
+            return unlabeled;
+        }
+    }
+
+    /**
+     * Adds an entry that is never hashed.  Must hold our monitor.
+     */
+    private int reserve(String[] tuple) {
+        Storage st = room();
+        int index = size;
+        st.labels[index] = tuple.clone();
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Gets storage with room for one more entry, growing it if need be.
+     * Must hold our monitor.
+     */
+    private Storage room() {
+        Storage st = storage;
+        if(size < st.labels.length) {
+            return st;
+        }
+
+        Storage grown = new Storage(
+                Math.min(cap + 2, st.labels.length * 2));
+        for(int i=0; i<size; i++) {
+            grown.hashes[i] = st.hashes[i];
+            grown.labels[i] = st.labels[i];
+            if(i != overflow && i != unlabeled) {
+                grown.insert(st.hashes[i], i);
+            }
+        }
+        storage = grown;
+        return grown;
+    }
+
+    private static int hash(String[] tuple) {
+        int h = Arrays.hashCode(tuple);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The arrays of a table of a given capacity.  Only ever written to
+     * under the table's monitor, and only before the index of what was
+     * written is published through {@link #slots} or the table's size.
+     */
+    private static final class Storage {
+        private final int mask;
+
+        /**
+         * Holds {@code index + 1} of the entry hashed there, or {@code 0} if
+         * empty.  Storing the index here publishes everything written for
+         * that entry before it.
+         */
+        private final AtomicIntegerArray slots;
+        private final int[] hashes;
+        private final String[][] labels;
+
+        Storage(int capacity) {
+            int length = Integer.highestOneBit(capacity) << 2;
+            this.mask = length - 1;
+            this.slots = new AtomicIntegerArray(length);
+            this.hashes = new int[capacity];
+            this.labels = new String[capacity][];
+        }
+
+        void insert(int hash, int index) {
+            int i = hash & mask;
+            while(slots.get(i) != 0) {
+                i = (i + 1) & mask;
+            }
+            slots.set(i, index + 1);
+        }
+
+        int find(String[] tuple, int hash) {
+            int i = hash & mask;
+            while(true) {
+                int s = slots.get(i);
+                if(s == 0) {
+                    return NOT_FOUND;
+                }
+
+                int index = s - 1;
+                if(hashes[index] == hash
+                        && Arrays.equals(labels[index], tuple)) {
+                    return index;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+}
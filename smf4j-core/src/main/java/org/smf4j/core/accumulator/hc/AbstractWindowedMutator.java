@@ -15,7 +15,9 @@
  */
 package org.smf4j.core.accumulator.hc;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.smf4j.Mutator;
 import org.smf4j.core.accumulator.IntervalStrategy;
 import org.smf4j.core.accumulator.TimeReporter;
@@ -45,7 +47,9 @@ import org.smf4j.core.accumulator.TimeReporter;
  * proportional to the number of intervals indicated by the associated
  * {@link IntervalStrategy}.  All storage is allocated during construction -
  * once constructed, {@code AbstractWindowedMutator} never allocates any more
- * storage space as a result of reads or writes.
+ * storage space as a result of reads or writes, unless its storage has been
+ * freed by {@link #release(long, int)}.  Released storage is reallocated by
+ * the next write.
  * </p>
  * <p>
  * Subclasses are required to implement both {@link #combine(long)} and
@@ -60,13 +64,15 @@ public abstract class AbstractWindowedMutator implements Mutator {
     private final int buckets;
     private final int intervals;
     private final int bufferIntervals;
-    private final AtomicLongArray values;
-    private final long[] localTimestamps;
-    private final AtomicLongArray timestamps;
     private final long intervalResolutionInNanos;
     private final IntervalStrategy strategy;
     private final long staleWindowTimestampOffset;
     private final long initialValue;
+    private volatile Storage storage;
+
+    private static final AtomicReferenceFieldUpdater<AbstractWindowedMutator,
+            Storage> STORAGE = AtomicReferenceFieldUpdater.newUpdater(
+            AbstractWindowedMutator.class, Storage.class, "storage");
 
     /**
      * Creates a new instance of {@code AbstractWindowedMutator}.
@@ -91,9 +97,7 @@ public abstract class AbstractWindowedMutator implements Mutator {
         this.bufferIntervals = strategy.bufferIntervals();
         this.intervalResolutionInNanos = strategy.intervalResolutionInNanos();
         this.buckets = intervals + bufferIntervals;
-        this.values = new AtomicLongArray(buckets);
-        this.timestamps = new AtomicLongArray(buckets);
-        this.localTimestamps = new long[buckets];
+        this.storage = new Storage(buckets);
         this.staleWindowTimestampOffset = intervalResolutionInNanos * buckets;
     }
 
@@ -101,15 +105,28 @@ public abstract class AbstractWindowedMutator implements Mutator {
         long nanos = timeReporter.nanos();
         int index = strategy.intervalIndex(nanos);
         long stale = nanos - intervalResolutionInNanos;
-        if(localTimestamps[index] < stale) {
-            // This bucket is stale
-            timestamps.lazySet(index, nanos);
-            localTimestamps[index] = nanos;
-            values.lazySet(index, delta);
-        } else {
-            // Bucket's still fresh...
-            values.lazySet(index, combine(values.get(index), delta));
-        }
+        Storage s;
+        do {
+            s = storage;
+            if(s == null) {
+                s = inflate();
+            }
+
+            if(s.localTimestamps[index] < stale) {
+                // This bucket is stale.  The timestamp is published with a
+                // full volatile write so that a concurrent release() either
+                // sees it, or we see that our storage was released.
+                s.timestamps.set(index, nanos);
+                s.localTimestamps[index] = nanos;
+                s.values.lazySet(index, delta);
+            } else {
+                // Bucket's still fresh...
+                s.values.lazySet(index, combine(s.values.get(index), delta));
+            }
+
+            // If release() freed our storage underneath us, write again into
+            // freshly-inflated storage.
+        } while(storage != s);
     }
 
     /**
@@ -128,17 +145,37 @@ public abstract class AbstractWindowedMutator implements Mutator {
     public abstract long combine(long other);
 
     public final long get() {
-        long nanos = timeReporter.nanos();
+        return get(timeReporter.nanos());
+    }
+
+    /**
+     * Gets the combined value of this {@code AbstractWindowedMutator} as it
+     * stood at the instant {@code nanos}.
+     * <p>
+     * This allows a caller that evaluates many {@code Mutator}s at once to
+     * read the clock a single time, and evaluate every {@code Mutator}
+     * against the same window edges.
+     * </p>
+     * @param nanos The instant, in nanoseconds, at which to evaluate this
+     *              {@code AbstractWindowedMutator}.
+     * @return The combined value of all buckets that are not stale as of
+     *         {@code nanos}.
+     */
+    public final long get(long nanos) {
         long result = initialValue;
+        Storage s = storage;
+        if(s == null) {
+            return result;
+        }
         int index = strategy.intervalIndex(nanos);
         long stale = nanos - staleWindowTimestampOffset;
         for(int count=0,i=parw(index-bufferIntervals);
             count<intervals;
             i = parw(i-1),count++) {
 
-            long bucketTimestamp = timestamps.get(i);
+            long bucketTimestamp = s.timestamps.get(i);
             if(bucketTimestamp >= stale) {
-                result = combine(result, values.get(i));
+                result = combine(result, s.values.get(i));
             }
         }
 
@@ -159,14 +196,19 @@ public abstract class AbstractWindowedMutator implements Mutator {
     public final long[] buckets(long nanos) {
         int index = strategy.intervalIndex(nanos);
         long[] ret = new long[intervals];
+        Storage s = storage;
+        if(s == null) {
+            Arrays.fill(ret, initialValue);
+            return ret;
+        }
         long stale = nanos - staleWindowTimestampOffset;
         for(int count=0,i=parw(index-bufferIntervals);
             count<intervals;
             i = parw(i-1),count++) {
 
-            long bucketTimestamp = timestamps.get(i);
+            long bucketTimestamp = s.timestamps.get(i);
             if(bucketTimestamp >= stale) {
-                ret[count] = values.get(i);
+                ret[count] = s.values.get(i);
             } else {
                 ret[count] = initialValue;
             }
@@ -175,6 +217,104 @@ public abstract class AbstractWindowedMutator implements Mutator {
         return ret;
     }
 
+    /**
+     * Merges previously-saved bucket values into this
+     * {@code AbstractWindowedMutator}.
+     * <p>
+     * {@code saved} is in the form returned by {@link #buckets(long)}, and
+     * {@code nanosAgo} is how long ago it was captured.  Each saved bucket is
+     * placed into the bucket covering the same point in time, relative to
+     * now, and buckets that have since fallen out of the time window are
+     * ignored.
+     * </p>
+     * <p>
+     * Like {@link #put(long)}, this must only be called by the thread that
+     * writes to this {@code AbstractWindowedMutator}.
+     * </p>
+     * @param saved The saved bucket values, most recent first.
+     * @param nanosAgo How long ago, in nanoseconds, {@code saved} was
+     *                 captured.
+     */
+    public final void restore(long[] saved, long nanosAgo) {
+        Storage s = storage;
+        if(s == null) {
+            s = inflate();
+        }
+        long nanos = timeReporter.nanos();
+        long stale = nanos - staleWindowTimestampOffset;
+        int n = Math.min(saved.length, intervals);
+        for(int count=0; count<n; count++) {
+            if(saved[count] == initialValue) {
+                continue;
+            }
+
+            long t = nanos - nanosAgo
+                    - ((bufferIntervals + count) * intervalResolutionInNanos);
+            if(t < stale) {
+                // This bucket, and all older ones, have aged out
+                break;
+            }
+
+            int index = strategy.intervalIndex(t);
+            if(s.localTimestamps[index] < t - intervalResolutionInNanos) {
+                s.timestamps.lazySet(index, t);
+                s.localTimestamps[index] = t;
+                s.values.lazySet(index, saved[count]);
+            } else {
+                s.values.lazySet(index,
+                        combine(s.values.get(index), saved[count]));
+            }
+        }
+    }
+
+    /**
+     * Frees the bucket storage of this {@code AbstractWindowedMutator} if
+     * none of its buckets have been written to for at least
+     * {@code idleWindows} time windows as of {@code nanos}.
+     * <p>
+     * Released storage is reallocated by the next call to {@link #put(long)};
+     * until then, this {@code AbstractWindowedMutator} reports its
+     * {@code initialValue}.  Unlike {@code put}, this may be called from any
+     * thread.
+     * </p>
+     * @param nanos The current time.
+     * @param idleWindows The number of time windows that must have passed
+     *                    since the last write.
+     * @return {@code true} if this call released the storage.
+     */
+    public final boolean release(long nanos, int idleWindows) {
+        Storage s = storage;
+        if(s == null) {
+            return false;
+        }
+
+        long idle = nanos
+                - (staleWindowTimestampOffset * Math.max(1, idleWindows));
+        for(int i=0; i<buckets; i++) {
+            if(s.timestamps.get(i) >= idle) {
+                return false;
+            }
+        }
+        return STORAGE.compareAndSet(this, s, null);
+    }
+
+    /**
+     * Gets whether or not the bucket storage of this
+     * {@code AbstractWindowedMutator} is currently released.
+     * @return {@code true} if the bucket storage is released.
+     */
+    public final boolean isReleased() {
+        return storage == null;
+    }
+
+    private Storage inflate() {
+        Storage s = new Storage(buckets);
+        if(STORAGE.compareAndSet(this, null, s)) {
+            return s;
+        }
+        return storage;
+    }
+
     /**
      * Decrements {@code index}, wrapping around to the end of the list if
      * {@code index == 0}.
@@ -188,4 +328,20 @@ public abstract class AbstractWindowedMutator implements Mutator {
         }
         return index;
     }
+
+    /**
+     * The bucket storage of an {@code AbstractWindowedMutator}, which is
+     * released and reallocated as a unit.
+     */
+    private static final class Storage {
+        private final AtomicLongArray values;
+        private final AtomicLongArray timestamps;
+        private final long[] localTimestamps;
+
+        private Storage(int buckets) {
+            this.values = new AtomicLongArray(buckets);
+            this.timestamps = new AtomicLongArray(buckets);
+            this.localTimestamps = new long[buckets];
+        }
+    }
 }
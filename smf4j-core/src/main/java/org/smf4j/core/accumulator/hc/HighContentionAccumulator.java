@@ -15,11 +15,25 @@
  */
 package org.smf4j.core.accumulator.hc;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import org.smf4j.Accumulator;
+import org.smf4j.IdleAwareAccumulator;
 import org.smf4j.Mutator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.RecordingAccumulator;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
 import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.core.accumulator.FlightRecorder;
 import org.smf4j.core.accumulator.MutatorFactory;
+import org.smf4j.core.accumulator.Releasable;
+import org.smf4j.core.accumulator.TimeReporter;
+import org.smf4j.core.accumulator.WindowedMutatorFactory;
+import org.smf4j.core.checkpoint.CheckpointRestorer;
+import org.smf4j.core.checkpoint.Checkpointable;
 import org.smf4j.nop.NopMutator;
 
 /**
@@ -57,7 +71,9 @@ import org.smf4j.nop.NopMutator;
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public final class HighContentionAccumulator extends AbstractAccumulator {
+public final class HighContentionAccumulator extends AbstractAccumulator
+        implements TimeAwareAccumulator, RecordingAccumulator, Checkpointable,
+        RegistrationAware, Releasable, IdleAwareAccumulator {
 
     /**
      * The {@link MutatorRegistry} used to schedule {@code Mutator} instances.
@@ -69,6 +85,31 @@ public final class HighContentionAccumulator extends AbstractAccumulator {
      */
     private final Map<Object, Object> metadata;
 
+    /**
+     * The {@link TimeReporter} used by the {@code Mutator} instances that
+     * {@link #mutatorRegistry} schedules.
+     */
+    private final TimeReporter timeReporter;
+
+    /**
+     * Whether or not {@link #mutatorRegistry} schedules windowed
+     * {@code Mutator}s.
+     */
+    private final boolean windowed;
+
+    /**
+     * Whether or not {@link #mutatorRegistry} schedules
+     * {@link UnboundedAddMutator}s, whose combined value changes with every
+     * update.
+     */
+    private final boolean additive;
+
+    /**
+     * The {@link FlightRecorder} capturing raw values, or {@code null} if
+     * this instance is not recording.
+     */
+    private volatile FlightRecorder recorder;
+
     /**
      * Creates a new {@code HighContentionAccumulator} that gets new
      * {@code Mutator} instances from {@code mutatorFactory}.
@@ -78,6 +119,9 @@ public final class HighContentionAccumulator extends AbstractAccumulator {
     public HighContentionAccumulator(MutatorFactory mutatorFactory) {
         this.mutatorRegistry = new MutatorRegistry(mutatorFactory);
         this.metadata = mutatorFactory.getMetadata();
+        this.timeReporter = timeReporterFor(mutatorFactory);
+        this.windowed = mutatorFactory instanceof WindowedMutatorFactory;
+        this.additive = mutatorFactory instanceof UnboundedAddMutator.Factory;
     }
 
     /**
@@ -120,7 +164,13 @@ public final class HighContentionAccumulator extends AbstractAccumulator {
         if(!isOn()) {
             return NopMutator.INSTANCE;
         }
-        return mutatorRegistry.get();
+
+        Mutator mutator = mutatorRegistry.get();
+        FlightRecorder r = recorder;
+        if(r == null) {
+            return mutator;
+        }
+        return r.wrap(mutator);
     }
 
     /**
@@ -152,6 +202,171 @@ public final class HighContentionAccumulator extends AbstractAccumulator {
         return value;
     }
 
+    /**
+     * Gets the value of this {@code HighContentionAccumulator} if it sums
+     * its updates with {@link UnboundedAddMutator}s, since that changes with
+     * every non-zero update.  Any other kind of {@code Mutator} can be
+     * updated without its value changing, so this then returns a different
+     * stamp from every call.
+     * @return A stamp that changes whenever this
+     *         {@code HighContentionAccumulator} is updated.
+     */
+    public long getUpdateStamp() {
+        return additive ? get() : untrackedStamp();
+    }
+
+    public final long nanos() {
+        return timeReporter.nanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Windowed {@code Mutator}s are all evaluated as of {@code nanos},
+     * rather than each reading the clock independently.
+     * </p>
+     * @param nanos The instant, in nanoseconds, at which to evaluate this
+     *              {@code HighContentionAccumulator}.
+     * @return The combination of the values in all of this instance's
+     *         {@code Mutator}s, as of {@code nanos}.
+     */
+    public final long get(long nanos) {
+        long value = 0L;
+
+        boolean seenOneMutator = false;
+        for (Mutator mutator : mutatorRegistry) {
+            if(mutator instanceof AbstractWindowedMutator) {
+                AbstractWindowedMutator windowed =
+                        (AbstractWindowedMutator)mutator;
+                long windowedValue = windowed.get(nanos);
+                if(seenOneMutator) {
+                    value = windowed.combine(windowedValue, value);
+                } else {
+                    value = windowedValue;
+                    seenOneMutator = true;
+                }
+            } else if(seenOneMutator) {
+                value = mutator.combine(value);
+            } else {
+                value = mutator.get();
+                seenOneMutator = true;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only values written via {@code Mutator}s obtained from
+     * {@link #getMutator()} after this call are recorded.
+     * </p>
+     * @param eventsPerThread The number of events to keep for each thread.
+     */
+    public final void startRecording(int eventsPerThread) {
+        recorder = new FlightRecorder(eventsPerThread, timeReporter);
+    }
+
+    public final void stopRecording() {
+        recorder = null;
+    }
+
+    public final boolean isRecording() {
+        return recorder != null;
+    }
+
+    public final List<RecordedEvent> getRecordedEvents() {
+        FlightRecorder r = recorder;
+        if(r == null) {
+            return Collections.emptyList();
+        }
+        return r.getRecordedEvents();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@code Mutator}s that are released and were bound to threads that have
+     * since died are forgotten entirely.
+     * </p>
+     * @param idleWindows The number of time windows that must have passed
+     *                    since state was last written to.
+     * @return The number of {@code Mutator}s whose storage was freed by this
+     *         call.
+     */
+    public final int releaseIdle(int idleWindows) {
+        if(!windowed) {
+            return 0;
+        }
+        return mutatorRegistry.releaseIdle(timeReporter.nanos(), idleWindows);
+    }
+
+    public final boolean isWindowed() {
+        return windowed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Windowed state is the per-interval combination of the intervals of all
+     * of this instance's {@code Mutator}s.
+     * </p>
+     * @return The current state.
+     */
+    public final long[] checkpoint() {
+        if(!windowed) {
+            return new long[] { get() };
+        }
+
+        long nanos = timeReporter.nanos();
+        long[] state = null;
+        for (Mutator mutator : mutatorRegistry) {
+            AbstractWindowedMutator w = (AbstractWindowedMutator)mutator;
+            long[] buckets = w.buckets(nanos);
+            if(state == null) {
+                state = buckets;
+            } else {
+                for(int i=0; i<state.length; i++) {
+                    state[i] = w.combine(state[i], buckets[i]);
+                }
+            }
+        }
+        return state == null ? new long[0] : state;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@code state} is merged into the {@code Mutator} bound to the calling
+     * thread.
+     * </p>
+     * @param state State previously returned by {@link #checkpoint()}.
+     * @param nanosAgo How long ago, in nanoseconds, {@code state} was
+     *                 captured.
+     */
+    public final void restore(long[] state, long nanosAgo) {
+        if(state.length == 0) {
+            return;
+        }
+
+        mutatorRegistry.restore(state, nanosAgo);
+    }
+
+    /**
+     * Restores any checkpointed state waiting in
+     * {@link CheckpointRestorer#INSTANCE} for this
+     * {@code HighContentionAccumulator}.
+     * @param node The {@link RegistryNode} this instance was registered with.
+     * @param name The name this instance was registered under.
+     */
+    public final void registered(RegistryNode node, String name) {
+        CheckpointRestorer.INSTANCE.restore(node, name, this);
+    }
+
+    public final void unregistered(RegistryNode node, String name) {
+    }
+
     public Map<Object, Object> getMetadata() {
         return metadata;
     }
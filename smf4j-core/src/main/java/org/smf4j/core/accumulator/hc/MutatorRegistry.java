@@ -80,6 +80,59 @@ public final class MutatorRegistry implements Iterable<Mutator>{
         return r.mutator;
     }
 
+    /**
+     * Merges checkpointed state into the {@code Mutator} the calling thread
+     * writes to.
+     * @param state State previously captured by a checkpoint.
+     * @param nanosAgo How long ago, in nanoseconds, {@code state} was
+     *                 captured.
+     */
+    public void restore(long[] state, long nanosAgo) {
+        restore(get(), state, nanosAgo);
+    }
+
+    private static void restore(Mutator mutator, long[] state,
+            long nanosAgo) {
+        if(mutator instanceof AbstractWindowedMutator) {
+            ((AbstractWindowedMutator)mutator).restore(state, nanosAgo);
+        } else {
+            mutator.put(state[0]);
+        }
+    }
+
+    /**
+     * Frees the storage of every windowed {@code Mutator} that has not been
+     * written to for at least {@code idleWindows} time windows, and forgets
+     * released {@code Mutator}s whose threads have died.
+     * @param nanos The current time.
+     * @param idleWindows The number of time windows that must have passed
+     *                    since a {@code Mutator} was last written to.
+     * @return The number of {@code Mutator}s released by this call.
+     */
+    public int releaseIdle(long nanos, int idleWindows) {
+        int released = 0;
+        for(Map.Entry<WeakThreadRef, Registration> entry :
+                registrations.entrySet()) {
+            Registration r = entry.getValue();
+            if(!(r.mutator instanceof AbstractWindowedMutator)) {
+                continue;
+            }
+
+            AbstractWindowedMutator windowed =
+                    (AbstractWindowedMutator)r.mutator;
+            if(windowed.release(nanos, idleWindows)) {
+                released++;
+            }
+
+            // A released mutator holds no state, so there's no need to keep
+            // it around for a dead thread.
+            if(windowed.isReleased() && r.retire()) {
+                registrations.remove(entry.getKey(), r);
+            }
+        }
+        return released;
+    }
+
     public Iterator<Mutator> iterator() {
         return new Iter(registrations.values());
     }
@@ -164,6 +217,28 @@ public final class MutatorRegistry implements Iterable<Mutator>{
             this.available.set(false);
             return true;
         }
+
+        private boolean retire() {
+            Thread cur = threadRef.get();
+            if(cur != null && cur.isAlive()) {
+                return false;
+            }
+
+            // Leave 'available' set once we've won it, so that no other
+            // thread can acquire this again.
+            if(!available.compareAndSet(false, true)) {
+                return false;
+            }
+
+            // Make sure a live thread didn't acquire this between our
+            // liveness check and winning 'available'.
+            cur = threadRef.get();
+            if(cur != null && cur.isAlive()) {
+                available.set(false);
+                return false;
+            }
+            return true;
+        }
     }
 
     private static final class Iter implements Iterator<Mutator> {
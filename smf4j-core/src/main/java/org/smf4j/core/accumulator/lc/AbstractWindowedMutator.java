@@ -15,7 +15,9 @@
  */
 package org.smf4j.core.accumulator.lc;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.smf4j.Mutator;
 import org.smf4j.core.accumulator.IntervalStrategy;
 import org.smf4j.core.accumulator.TimeReporter;
@@ -30,13 +32,15 @@ public abstract class AbstractWindowedMutator implements Mutator {
     private final int buckets;
     private final int intervals;
     private final int bufferIntervals;
-    private final AtomicLongArray values;
-    private final long[] localTimestamps;
-    private final AtomicLongArray timestamps;
     private final long intervalResolutionInNanos;
     private final IntervalStrategy strategy;
     private final long staleWindowTimestampOffset;
     private final long initialValue;
+    private volatile Storage storage;
+
+    private static final AtomicReferenceFieldUpdater<AbstractWindowedMutator,
+            Storage> STORAGE = AtomicReferenceFieldUpdater.newUpdater(
+            AbstractWindowedMutator.class, Storage.class, "storage");
 
     protected AbstractWindowedMutator(long initialValue,
             IntervalStrategy strategy, TimeReporter timeReporter) {
@@ -47,9 +51,7 @@ public abstract class AbstractWindowedMutator implements Mutator {
         this.bufferIntervals = strategy.bufferIntervals();
         this.intervalResolutionInNanos = strategy.intervalResolutionInNanos();
         this.buckets = intervals + bufferIntervals;
-        this.values = new AtomicLongArray(buckets);
-        this.timestamps = new AtomicLongArray(buckets);
-        this.localTimestamps = new long[buckets];
+        this.storage = new Storage(buckets);
         this.staleWindowTimestampOffset = intervalResolutionInNanos * buckets;
     }
 
@@ -58,32 +60,52 @@ public abstract class AbstractWindowedMutator implements Mutator {
         long nanos = timeReporter.nanos();
         int index = strategy.intervalIndex(nanos);
         long stale = nanos - intervalResolutionInNanos;
-        if(localTimestamps[index] < stale) {
-            // This bucket is stale
-            timestamps.lazySet(index, nanos);
-            localTimestamps[index] = nanos;
-            values.lazySet(index, delta);
-        } else {
-            // Bucket's still fresh...
-            values.lazySet(index, combine(values.get(index), delta));
-        }
+        Storage s;
+        do {
+            s = storage;
+            if(s == null) {
+                s = inflate();
+            }
+
+            if(s.localTimestamps[index] < stale) {
+                // This bucket is stale.  The timestamp is published with a
+                // full volatile write so that a concurrent release() either
+                // sees it, or we see that our storage was released.
+                s.timestamps.set(index, nanos);
+                s.localTimestamps[index] = nanos;
+                s.values.lazySet(index, delta);
+            } else {
+                // Bucket's still fresh...
+                s.values.lazySet(index, combine(s.values.get(index), delta));
+            }
+
+            // If release() freed our storage underneath us, write again into
+            // freshly-inflated storage.
+        } while(storage != s);
     }
 
     public abstract long combine(long local, long delta);
 
     @Override
     public final long get() {
-        long nanos = timeReporter.nanos();
+        return get(timeReporter.nanos());
+    }
+
+    public final long get(long nanos) {
         long result = initialValue;
+        Storage s = storage;
+        if(s == null) {
+            return result;
+        }
         int index = strategy.intervalIndex(nanos);
         long stale = nanos - staleWindowTimestampOffset;
         for(int count=0,i=parw(index-bufferIntervals);
             count<intervals;
             i = parw(i-1),count++) {
 
-            long bucketTimestamp = timestamps.get(i);
+            long bucketTimestamp = s.timestamps.get(i);
             if(bucketTimestamp >= stale) {
-                result = combine(result, values.get(i));
+                result = combine(result, s.values.get(i));
             }
         }
 
@@ -93,14 +115,19 @@ public abstract class AbstractWindowedMutator implements Mutator {
     public final long[] buckets(long nanos) {
         int index = strategy.intervalIndex(nanos);
         long[] ret = new long[intervals];
+        Storage s = storage;
+        if(s == null) {
+            Arrays.fill(ret, initialValue);
+            return ret;
+        }
         long stale = nanos - staleWindowTimestampOffset;
         for(int count=0,i=parw(index-bufferIntervals);
             count<intervals;
             i = parw(i-1),count++) {
 
-            long bucketTimestamp = timestamps.get(i);
+            long bucketTimestamp = s.timestamps.get(i);
             if(bucketTimestamp >= stale) {
-                ret[count] = values.get(i);
+                ret[count] = s.values.get(i);
             } else {
                 ret[count] = initialValue;
             }
@@ -109,20 +136,100 @@ public abstract class AbstractWindowedMutator implements Mutator {
         return ret;
     }
 
+    public final void restore(long[] saved, long nanosAgo) {
+        Storage s = storage;
+        if(s == null) {
+            s = inflate();
+        }
+        long nanos = timeReporter.nanos();
+        long stale = nanos - staleWindowTimestampOffset;
+        int n = Math.min(saved.length, intervals);
+        for(int count=0; count<n; count++) {
+            if(saved[count] == initialValue) {
+                continue;
+            }
+
+            long t = nanos - nanosAgo
+                    - ((bufferIntervals + count) * intervalResolutionInNanos);
+            if(t < stale) {
+                // This bucket, and all older ones, have aged out
+                break;
+            }
+
+            int index = strategy.intervalIndex(t);
+            if(s.localTimestamps[index] < t - intervalResolutionInNanos) {
+                s.timestamps.lazySet(index, t);
+                s.localTimestamps[index] = t;
+                s.values.lazySet(index, saved[count]);
+            } else {
+                s.values.lazySet(index,
+                        combine(s.values.get(index), saved[count]));
+            }
+        }
+    }
+
     public final boolean allBucketsStale(long nanos) {
+        Storage s = storage;
+        if(s == null) {
+            return true;
+        }
         long stale = nanos - staleWindowTimestampOffset;
-        for(int i=0; i<timestamps.length(); i++) {
-            if(timestamps.get(i) >= stale) {
+        for(int i=0; i<s.timestamps.length(); i++) {
+            if(s.timestamps.get(i) >= stale) {
                 return false;
             }
         }
         return true;
     }
 
+    public final boolean release(long nanos, int idleWindows) {
+        Storage s = storage;
+        if(s == null) {
+            return false;
+        }
+
+        long idle = nanos
+                - (staleWindowTimestampOffset * Math.max(1, idleWindows));
+        for(int i=0; i<buckets; i++) {
+            if(s.timestamps.get(i) >= idle) {
+                return false;
+            }
+        }
+        return STORAGE.compareAndSet(this, s, null);
+    }
+
+    public final boolean isReleased() {
+        return storage == null;
+    }
+
+    private Storage inflate() {
+        Storage s = new Storage(buckets);
+        if(STORAGE.compareAndSet(this, null, s)) {
+            return s;
+        }
+        return storage;
+    }
+
     private int parw(int index) {
         if(index < 0) {
             return buckets+index;
         }
         return index;
     }
+
+    /**
+     * The bucket storage of an {@code AbstractWindowedMutator}, which is
+     * released and reallocated as a unit.
+     */
+    private static final class Storage {
+        private final AtomicLongArray values;
+        private final AtomicLongArray timestamps;
+        private final long[] localTimestamps;
+
+        private Storage(int buckets) {
+            this.values = new AtomicLongArray(buckets);
+            this.timestamps = new AtomicLongArray(buckets);
+            this.localTimestamps = new long[buckets];
+        }
+    }
 }
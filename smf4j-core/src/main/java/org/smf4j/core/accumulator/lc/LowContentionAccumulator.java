@@ -15,33 +15,140 @@
  */
 package org.smf4j.core.accumulator.lc;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import org.smf4j.IdleAwareAccumulator;
 import org.smf4j.Mutator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.RecordingAccumulator;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
 import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.core.accumulator.FlightRecorder;
 import org.smf4j.core.accumulator.MutatorFactory;
+import org.smf4j.core.accumulator.Releasable;
+import org.smf4j.core.accumulator.TimeReporter;
+import org.smf4j.core.checkpoint.CheckpointRestorer;
+import org.smf4j.core.checkpoint.Checkpointable;
 
 /**
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public final class LowContentionAccumulator extends AbstractAccumulator {
+public final class LowContentionAccumulator extends AbstractAccumulator
+        implements TimeAwareAccumulator, RecordingAccumulator, Checkpointable,
+        RegistrationAware, Releasable, IdleAwareAccumulator {
 
     private final MutatorFactory mutatorFactory;
     private final Mutator mutator;
+    private final TimeReporter timeReporter;
+    private volatile FlightRecorder recorder;
 
     public LowContentionAccumulator(MutatorFactory mutatorFactory) {
         this.mutatorFactory = mutatorFactory;
         this.mutator = mutatorFactory.createMutator();
+        this.timeReporter = timeReporterFor(mutatorFactory);
     }
 
     public Mutator getMutator() {
-        return mutator;
+        FlightRecorder r = recorder;
+        if(r == null) {
+            return mutator;
+        }
+        return r.wrap(mutator);
     }
 
     public long get() {
         return mutator.get();
     }
 
+    /**
+     * Gets the value of this {@code LowContentionAccumulator} if it sums its
+     * updates with an {@link UnboundedAddMutator}, since that changes with
+     * every non-zero update.  Any other kind of {@code Mutator} can be
+     * updated without its value changing, so this then returns a different
+     * stamp from every call.
+     * @return A stamp that changes whenever this
+     *         {@code LowContentionAccumulator} is updated.
+     */
+    public long getUpdateStamp() {
+        return mutatorFactory instanceof UnboundedAddMutator.Factory
+                ? mutator.get() : untrackedStamp();
+    }
+
+    public long nanos() {
+        return timeReporter.nanos();
+    }
+
+    public long get(long nanos) {
+        if(mutator instanceof AbstractWindowedMutator) {
+            return ((AbstractWindowedMutator)mutator).get(nanos);
+        }
+        return mutator.get();
+    }
+
+    public void startRecording(int eventsPerThread) {
+        recorder = new FlightRecorder(eventsPerThread, timeReporter);
+    }
+
+    public void stopRecording() {
+        recorder = null;
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    public List<RecordedEvent> getRecordedEvents() {
+        FlightRecorder r = recorder;
+        if(r == null) {
+            return Collections.emptyList();
+        }
+        return r.getRecordedEvents();
+    }
+
+    public int releaseIdle(int idleWindows) {
+        if(mutator instanceof AbstractWindowedMutator
+                && ((AbstractWindowedMutator)mutator).release(
+                timeReporter.nanos(), idleWindows)) {
+            return 1;
+        }
+        return 0;
+    }
+
+    public boolean isWindowed() {
+        return mutator instanceof AbstractWindowedMutator;
+    }
+
+    public long[] checkpoint() {
+        if(mutator instanceof AbstractWindowedMutator) {
+            return ((AbstractWindowedMutator)mutator).buckets(
+                    timeReporter.nanos());
+        }
+        return new long[] { mutator.get() };
+    }
+
+    public void restore(long[] state, long nanosAgo) {
+        if(state.length == 0) {
+            return;
+        }
+
+        if(mutator instanceof AbstractWindowedMutator) {
+            ((AbstractWindowedMutator)mutator).restore(state, nanosAgo);
+        } else {
+            mutator.put(state[0]);
+        }
+    }
+
+    public void registered(RegistryNode node, String name) {
+        CheckpointRestorer.INSTANCE.restore(node, name, this);
+    }
+
+    public void unregistered(RegistryNode node, String name) {
+    }
+
     public Map<Object, Object> getMetadata() {
         return mutatorFactory.getMetadata();
     }
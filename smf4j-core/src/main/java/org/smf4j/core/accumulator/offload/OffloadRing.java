@@ -0,0 +1,448 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.ReadOnlyAccumulator;
+
+/**
+ * {@code OffloadRing} moves the cost of updating {@link Accumulator}s off of
+ * the threads that record values, and onto a single background consumer
+ * thread.
+ * <p>
+ * Producers publish <em>events</em> - an accumulator id and a value - into a
+ * pre-allocated, lock-free, multi-producer ring buffer.  The consumer thread
+ * takes events off of the ring in order, and applies each one to the
+ * {@link Mutator} of the target {@link Accumulator}.  Since the consumer is
+ * the only thread that ever writes to the target accumulators, even
+ * expensive structures (windowed, histogram, etc...) cost the producer no
+ * more than claiming and filling a single ring slot.
+ * </p>
+ * <p>
+ * Accumulators are usually attached to an {@code OffloadRing} by wrapping
+ * them in an {@link OffloadedAccumulator}, either directly or via
+ * {@link #offload(RegistryNode)} and {@link #offloadAll(Registrar)}.
+ * </p>
+ * <p>
+ * When the ring is full, producers follow the ring's {@link OverflowPolicy}.
+ * The number of events dropped ({@link #getDropped()}) and the number of
+ * events that had to wait for space ({@link #getLagged()}) are tracked, and
+ * can be published as accumulators via {@link #registerCounters(RegistryNode)}.
+ * </p>
+ * <p>
+ * The consumer thread is a daemon thread, started the first time an
+ * {@link Accumulator} is attached to the ring, and stopped by
+ * {@link #shutdown()}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class OffloadRing {
+
+    /**
+     * The default number of slots in the ring.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final Accumulator[] NO_TARGETS = new Accumulator[0];
+
+    /**
+     * How long the consumer waits, once the ring has been shut down, for a
+     * producer to fill a slot it has claimed before giving up on it.
+     */
+    private static final long ABANDONED_SLOT_NANOS =
+            TimeUnit.SECONDS.toNanos(1L);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final int capacity;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+
+    // The ring itself.  A slot is readable by the consumer once its entry
+    // in 'published' has been set to the slot's sequence number.
+    private final int[] ids;
+    private final long[] values;
+    private final AtomicLongArray published;
+
+    // The last sequence claimed by a producer, and the last sequence
+    // applied by the consumer.
+    private final AtomicLong cursor = new AtomicLong(-1L);
+    private final AtomicLong consumed = new AtomicLong(-1L);
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong lagged = new AtomicLong();
+
+    private final Object targetsLock = new Object();
+    private volatile Accumulator[] targets = NO_TARGETS;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile Thread consumer;
+
+    /**
+     * Creates a new {@code OffloadRing} with {@link #DEFAULT_CAPACITY} slots,
+     * a {@link WaitStrategies#PARKING} wait strategy, and the
+     * {@link OverflowPolicy#DROP} overflow policy.
+     */
+    public OffloadRing() {
+        this(DEFAULT_CAPACITY, WaitStrategies.PARKING, OverflowPolicy.DROP);
+    }
+
+    /**
+     * Creates a new {@code OffloadRing}.
+     * @param capacity The number of slots in the ring.  This is rounded up to
+     *                 the next power of two.
+     * @param waitStrategy The {@link WaitStrategy} used by the consumer while
+     *                     waiting for events, and by producers while waiting
+     *                     for space.
+     * @param overflowPolicy What producers do when the ring is full.
+     */
+    public OffloadRing(int capacity, WaitStrategy waitStrategy,
+            OverflowPolicy overflowPolicy) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        if(waitStrategy == null || overflowPolicy == null) {
+            throw new NullPointerException();
+        }
+
+        int size = 1;
+        while(size < capacity) {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.ids = new int[size];
+        this.values = new long[size];
+        this.published = new AtomicLongArray(size);
+        for(int i=0; i<size; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    /**
+     * Attaches {@code target} to this ring, starting the consumer thread if
+     * necessary.
+     * @param target The {@link Accumulator} that events published with the
+     *               returned id will be applied to.
+     * @return The id to publish events for {@code target} with.
+     */
+    public int attach(Accumulator target) {
+        int id;
+        synchronized(targetsLock) {
+            Accumulator[] old = targets;
+            Accumulator[] grown = new Accumulator[old.length + 1];
+            System.arraycopy(old, 0, grown, 0, old.length);
+            id = old.length;
+            grown[id] = target;
+            targets = grown;
+        }
+
+        if(started.compareAndSet(false, true)) {
+            Thread t = new Thread(new Consumer(), "smf4j-offload-consumer");
+            t.setDaemon(true);
+            consumer = t;
+            t.start();
+        }
+        return id;
+    }
+
+    /**
+     * Detaches the {@link Accumulator} attached with {@code id} from this
+     * ring, so that the ring no longer holds on to it.  Ids are never
+     * reused, so any event for {@code id} that is published, or still
+     * pending, after this call is dropped rather than applied to some other
+     * accumulator.
+     * @param id The id returned from {@link #attach(Accumulator)}.
+     */
+    public void detach(int id) {
+        synchronized(targetsLock) {
+            Accumulator[] old = targets;
+            if(id < 0 || id >= old.length || old[id] == null) {
+                return;
+            }
+            Accumulator[] copy = new Accumulator[old.length];
+            System.arraycopy(old, 0, copy, 0, old.length);
+            copy[id] = null;
+            targets = copy;
+        }
+    }
+
+    /**
+     * Publishes an event for the {@link Accumulator} attached with {@code id}.
+     * @param id The id returned from {@link #attach(Accumulator)}.
+     * @param value The value to apply to the attached {@code Accumulator}'s
+     *              {@link Mutator}.
+     * @return {@code true} if the event was published, {@code false} if it
+     *         was dropped.
+     */
+    public boolean publish(int id, long value) {
+        long seq;
+        int attempt = 0;
+        while(true) {
+            if(!running) {
+                // Nothing will ever apply it
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            long current = cursor.get();
+            long next = current + 1;
+            if(next - capacity > consumed.get()) {
+                // The ring is full
+                if(overflowPolicy == OverflowPolicy.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                if(attempt == 0) {
+                    lagged.incrementAndGet();
+                }
+                waitStrategy.idle(attempt++);
+                continue;
+            }
+
+            if(cursor.compareAndSet(current, next)) {
+                seq = next;
+                break;
+            }
+        }
+
+        int index = (int)(seq & mask);
+        ids[index] = id;
+        values[index] = value;
+        published.lazySet(index, seq);
+        return true;
+    }
+
+    /**
+     * Waits until every event published before this call has been applied,
+     * or until {@code timeout} elapses.
+     * @param timeout The maximum amount of time to wait.
+     * @param unit The units of {@code timeout}.
+     * @return {@code true} if all of the events were applied, {@code false}
+     *         if the timeout elapsed first.
+     * @throws InterruptedException If the calling thread is interrupted
+     *         while waiting.
+     */
+    public boolean drain(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long target = cursor.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while(consumed.get() < target) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if(System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the consumer thread once it has applied every event already
+     * published.  Events published after this call are dropped.
+     * @throws InterruptedException If the calling thread is interrupted
+     *         while waiting for the consumer thread to stop.
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        Thread t = consumer;
+        if(t != null) {
+            t.join();
+        }
+
+        // A producer that raced with us may have claimed a slot after the
+        // consumer's last look at the ring.  Account for it as dropped,
+        // rather than leave it pending forever.
+        long last = cursor.get();
+        long applied = consumed.get();
+        if(last > applied && consumed.compareAndSet(applied, last)) {
+            dropped.addAndGet(last - applied);
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because the ring was full (or shut
+     * down), or because their accumulator had been detached.
+     * @return The number of dropped events.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of events whose producer had to wait for free space.
+     * @return The number of lagged events.
+     */
+    public long getLagged() {
+        return lagged.get();
+    }
+
+    /**
+     * Gets the number of events published, but not yet applied.
+     * @return The number of pending events.
+     */
+    public long getPending() {
+        return cursor.get() - consumed.get();
+    }
+
+    /**
+     * Gets the number of slots in the ring.
+     * @return The number of slots in the ring.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Registers read-only accumulators named {@code dropped}, {@code lagged}
+     * and {@code pending} with {@code node}, reporting this ring's counters.
+     * @param node The {@link RegistryNode} to register the counters with.
+     */
+    public void registerCounters(RegistryNode node) {
+        node.register("dropped", new ReadOnlyAccumulator() {
+            public long get() {
+                return getDropped();
+            }
+        });
+        node.register("lagged", new ReadOnlyAccumulator() {
+            public long get() {
+                return getLagged();
+            }
+        });
+        node.register("pending", new ReadOnlyAccumulator() {
+            public long get() {
+                return getPending();
+            }
+        });
+    }
+
+    /**
+     * Replaces every {@link Accumulator} registered directly in {@code node}
+     * with an {@link OffloadedAccumulator} attached to this ring.
+     * {@link ReadOnlyAccumulator}s, such as this ring's own counters, are
+     * left alone.
+     * <p>
+     * Each accumulator is swapped for its wrapper with
+     * {@link RegistryNode#replace(String, Accumulator, Accumulator)}, so it
+     * never goes missing from {@code node} along the way.  {@code Mutator}s
+     * obtained from the original accumulators before this call continue to
+     * write to them directly.  Accumulators registered with {@code node}
+     * after this call are not affected.
+     * </p>
+     * @param node The {@link RegistryNode} whose accumulators to offload.
+     */
+    public void offload(RegistryNode node) {
+        for(Map.Entry<String, Accumulator> entry :
+                node.getAccumulators().entrySet()) {
+            Accumulator acc = entry.getValue();
+            if(acc instanceof OffloadedAccumulator
+                    || acc instanceof ReadOnlyAccumulator) {
+                continue;
+            }
+
+            OffloadedAccumulator wrapped = new OffloadedAccumulator(acc, this);
+            if(!node.replace(entry.getKey(), acc, wrapped)) {
+                // Someone else got there first
+                wrapped.detach();
+            }
+        }
+    }
+
+    /**
+     * Applies {@link #offload(RegistryNode)} to every node in
+     * {@code registrar}.
+     * @param registrar The {@link Registrar} whose accumulators to offload.
+     */
+    public void offloadAll(Registrar registrar) {
+        offloadAll(registrar.getRootNode());
+    }
+
+    private void offloadAll(RegistryNode node) {
+        offload(node);
+        for(RegistryNode child : node.getChildNodes().values()) {
+            offloadAll(child);
+        }
+    }
+
+    private final class Consumer implements Runnable {
+        public void run() {
+            long next = consumed.get() + 1;
+            int attempt = 0;
+            long abandonAt = 0L;
+            while(running || next <= cursor.get()) {
+                int index = (int)(next & mask);
+                if(published.get(index) != next) {
+                    if(!running && next <= cursor.get()) {
+                        // The slot was claimed, but its producer may never
+                        // get around to filling it.  Don't wait forever.
+                        if(abandonAt == 0L) {
+                            abandonAt = System.nanoTime()
+                                    + ABANDONED_SLOT_NANOS;
+                        } else if(System.nanoTime() - abandonAt > 0) {
+                            dropped.incrementAndGet();
+                            consumed.lazySet(next);
+                            next++;
+                            abandonAt = 0L;
+                            continue;
+                        }
+                    }
+                    waitStrategy.idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+                abandonAt = 0L;
+
+                apply(ids[index], values[index]);
+                consumed.lazySet(next);
+                next++;
+            }
+        }
+
+        private void apply(int id, long value) {
+            Accumulator target = targets[id];
+            if(target == null) {
+                // Detached since the event was published
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                target.getMutator().put(value);
+            } catch(Throwable t) {
+                log.error(String.format("Error applying offloaded value to "
+                        + "accumulator of type '%s'.",
+                        target.getClass().getCanonicalName()), t);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.OnStateAware;
+import org.smf4j.OnStateSource;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code OffloadedAccumulator} wraps another {@link Accumulator}, and routes
+ * all writes to it through an {@link OffloadRing}.
+ * <p>
+ * A call to {@link Mutator#put(long)} on a {@code Mutator} returned from
+ * {@link #getMutator()} only publishes an event to the ring; the value is
+ * applied to the wrapped {@code Accumulator} later, by the ring's consumer
+ * thread.  Reads, on/off state, units and metadata all come straight from
+ * the wrapped {@code Accumulator}.
+ * </p>
+ * <p>
+ * The wrapped {@code Accumulator} is attached to the ring when this
+ * {@code OffloadedAccumulator} is created, and detached once it has been
+ * unregistered from every node it was registered with, so that discarded
+ * accumulators aren't kept alive by the ring.  Writes made while detached
+ * are dropped.  Registering it again attaches it again.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class OffloadedAccumulator
+        implements TimeAwareAccumulator, RegistrationAware, OnStateAware {
+
+    private final Accumulator delegate;
+    private final OffloadRing ring;
+    private final Mutator mutator;
+
+    /**
+     * The id the delegate is attached to the ring with, or {@code -1} once
+     * it has been detached.
+     */
+    private volatile int id;
+
+    /**
+     * The number of nodes this instance is registered with.  Guarded by
+     * {@code this}.
+     */
+    private int registrations;
+
+    /**
+     * Creates a new {@code OffloadedAccumulator} that applies writes to
+     * {@code delegate} via {@code ring}.
+     * @param delegate The {@link Accumulator} to wrap.
+     * @param ring The {@link OffloadRing} to route writes through.
+     */
+    public OffloadedAccumulator(Accumulator delegate, OffloadRing ring) {
+        this.delegate = delegate;
+        this.ring = ring;
+        this.id = ring.attach(delegate);
+        this.mutator = new OffloadMutator();
+    }
+
+    /**
+     * Gets the wrapped {@link Accumulator}.
+     * @return The wrapped {@link Accumulator}.
+     */
+    public Accumulator getDelegate() {
+        return delegate;
+    }
+
+    public boolean isOn() {
+        return delegate.isOn();
+    }
+
+    public void setOn(boolean on) {
+        delegate.setOn(on);
+    }
+
+    public Mutator getMutator() {
+        if(!delegate.isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public long get() {
+        return delegate.get();
+    }
+
+    public long nanos() {
+        if(delegate instanceof TimeAwareAccumulator) {
+            return ((TimeAwareAccumulator)delegate).nanos();
+        }
+        return System.nanoTime();
+    }
+
+    public long get(long nanos) {
+        if(delegate instanceof TimeAwareAccumulator) {
+            return ((TimeAwareAccumulator)delegate).get(nanos);
+        }
+        return delegate.get();
+    }
+
+    public String getUnits() {
+        return delegate.getUnits();
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    public boolean bind(OnStateSource source) {
+        if(delegate instanceof OnStateAware) {
+            return ((OnStateAware)delegate).bind(source);
+        }
+        return false;
+    }
+
+    public void unbind(OnStateSource source) {
+        if(delegate instanceof OnStateAware) {
+            ((OnStateAware)delegate).unbind(source);
+        }
+    }
+
+    public void registered(RegistryNode node, String name) {
+        synchronized(this) {
+            registrations++;
+            if(id < 0) {
+                id = ring.attach(delegate);
+            }
+        }
+        if(delegate instanceof RegistrationAware) {
+            ((RegistrationAware)delegate).registered(node, name);
+        }
+    }
+
+    public void unregistered(RegistryNode node, String name) {
+        synchronized(this) {
+            if(registrations > 0 && --registrations == 0) {
+                detach();
+            }
+        }
+        if(delegate instanceof RegistrationAware) {
+            ((RegistrationAware)delegate).unregistered(node, name);
+        }
+    }
+
+    /**
+     * Detaches the delegate from the ring, until this instance is
+     * registered again.
+     */
+    synchronized void detach() {
+        if(id >= 0) {
+            ring.detach(id);
+            id = -1;
+        }
+    }
+
+    private final class OffloadMutator implements Mutator {
+        public void put(long delta) {
+            int target = id;
+            if(target >= 0) {
+                ring.publish(target, delta);
+            }
+        }
+
+        public long combine(long other) {
+            return delegate.getMutator().combine(other);
+        }
+
+        public long get() {
+            return delegate.get();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+/**
+ * {@code OverflowPolicy} decides what a producer does when it tries to
+ * publish an event to a full {@link OffloadRing}.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The event is discarded, and counted in
+     * {@link OffloadRing#getDropped()}.  The producer never waits.
+     */
+    DROP,
+
+    /**
+     * The producer waits, using the ring's {@link WaitStrategy}, until the
+     * consumer frees up space.  Events that had to wait are counted in
+     * {@link OffloadRing#getLagged()}.
+     */
+    BLOCK
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code WaitStrategies} holds the stock {@link WaitStrategy}
+ * implementations, ordered from lowest latency (and highest CPU cost) to
+ * highest latency (and lowest CPU cost).
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public enum WaitStrategies implements WaitStrategy {
+
+    /**
+     * Spins without yielding the CPU.  Only suitable when the waiting thread
+     * has a core to itself.
+     */
+    BUSY_SPIN {
+        public void idle(int attempt) {
+        }
+    },
+
+    /**
+     * Spins briefly, then yields the CPU to other threads.
+     */
+    YIELDING {
+        public void idle(int attempt) {
+            if(attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * Spins briefly, yields briefly, then parks for short periods.
+     */
+    PARKING {
+        public void idle(int attempt) {
+            if(attempt < SPIN_TRIES) {
+                return;
+            } else if(attempt < SPIN_TRIES * 2) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 100000L;
+}
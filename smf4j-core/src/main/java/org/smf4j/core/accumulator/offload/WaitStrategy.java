@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+/**
+ * {@code WaitStrategy} decides how a thread waiting on an
+ * {@link OffloadRing} spends its time - either the consumer thread waiting
+ * for new events, or a producer waiting for free space under
+ * {@link OverflowPolicy#BLOCK}.
+ *
+ * @see WaitStrategies
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits for a short while.
+     * @param attempt The number of times in a row the calling thread has
+     *                waited without making progress, starting at {@code 0}.
+     */
+    void idle(int attempt);
+}
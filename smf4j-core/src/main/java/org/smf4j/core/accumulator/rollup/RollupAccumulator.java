@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.rollup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+import org.smf4j.util.helpers.GlobMatch;
+import org.smf4j.util.helpers.StandingMatch;
+
+/**
+ * {@code RollupAccumulator} reports the sum, minimum or maximum of the
+ * {@link Accumulator}s that match a glob pattern beneath the node it is
+ * registered with - for example, {@code web:requests} as the sum of
+ * {@code web.*:requests}.
+ * <p>
+ * The pattern is relative to the registering node: each of its node paths
+ * is prefixed with that node's name, so {@code *:requests} registered on
+ * {@code web} matches {@code web.*:requests}.  Members are tracked with a
+ * {@link StandingMatch}, so membership follows the registry as nodes and
+ * accumulators come and go, and is only re-gathered when it has changed.
+ * {@link #get()} is then a single pass over the members' values.
+ * </p>
+ * <p>
+ * Nothing ever writes to a {@code RollupAccumulator}, so its
+ * {@link #getMutator()} is always {@link NopMutator#INSTANCE}, and it costs
+ * nothing on the hot path.  It does not report itself, but it happily
+ * reports other {@code RollupAccumulator}s, so roll-ups can be stacked up a
+ * hierarchy.  A member that another matched roll-up already reports is left
+ * out, so a {@code **} pattern counts each value once, however deeply its
+ * roll-ups are stacked.  Until it is registered, it reports {@code 0}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class RollupAccumulator extends AbstractAccumulator
+        implements RegistrationAware {
+
+    private static final Accumulator[] NO_MEMBERS = new Accumulator[0];
+
+    private final Registrar registrar;
+    private final String globPattern;
+    private final RollupOperation operation;
+
+    /**
+     * Only written while holding {@code this}.
+     */
+    private volatile StandingMatch match;
+    private volatile Members members = new Members(-1L, NO_MEMBERS);
+
+    /**
+     * Creates a new {@code RollupAccumulator} over the
+     * {@link RegistrarFactory#getRegistrar() current} {@link Registrar}.
+     * @param globPattern The pattern of the members to roll up, relative to
+     *                    the node this instance is registered with.
+     * @param operation How the members' values are combined.
+     */
+    public RollupAccumulator(String globPattern, RollupOperation operation) {
+        this(RegistrarFactory.getRegistrar(), globPattern, operation);
+    }
+
+    /**
+     * Creates a new {@code RollupAccumulator}.
+     * @param registrar The {@link Registrar} this instance will be
+     *                  registered in.
+     * @param globPattern The pattern of the members to roll up, relative to
+     *                    the node this instance is registered with.
+     * @param operation How the members' values are combined.
+     */
+    public RollupAccumulator(Registrar registrar, String globPattern,
+            RollupOperation operation) {
+        if(registrar == null) {
+            throw new NullPointerException("registrar");
+        }
+        if(globPattern == null) {
+            throw new NullPointerException("globPattern");
+        }
+        if(operation == null) {
+            throw new NullPointerException("operation");
+        }
+        this.registrar = registrar;
+        this.globPattern = globPattern;
+        this.operation = operation;
+    }
+
+    /**
+     * Gets the pattern of the members to roll up, relative to the node this
+     * instance is registered with.
+     * @return The relative pattern of the members to roll up.
+     */
+    public String getGlobPattern() {
+        return globPattern;
+    }
+
+    /**
+     * Gets how the members' values are combined.
+     * @return How the members' values are combined.
+     */
+    public RollupOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Starts tracking the members beneath {@code node}.  An instance
+     * registered more than once rolls up beneath the node it was most
+     * recently registered with.
+     * </p>
+     */
+    public synchronized void registered(RegistryNode node, String name) {
+        if(match != null) {
+            match.close();
+        }
+        match = new StandingMatch(registrar,
+                absolutePattern(node.getName(), globPattern));
+        members = new Members(-1L, NO_MEMBERS);
+    }
+
+    public synchronized void unregistered(RegistryNode node, String name) {
+        if(match != null) {
+            match.close();
+            match = null;
+        }
+        members = new Members(-1L, NO_MEMBERS);
+    }
+
+    public Mutator getMutator() {
+        return NopMutator.INSTANCE;
+    }
+
+    public long get() {
+        Accumulator[] accs = currentMembers();
+        if(accs.length == 0) {
+            return 0L;
+        }
+
+        long total = accs[0].get();
+        for(int i=1; i<accs.length; i++) {
+            total = operation.combine(total, accs[i].get());
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of {@link Accumulator}s currently rolled up.
+     * @return The number of {@link Accumulator}s currently rolled up.
+     */
+    public int getMemberCount() {
+        return currentMembers().length;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    private Accumulator[] currentMembers() {
+        Members m = members;
+        StandingMatch sm = match;
+        if(sm == null || sm.getVersion() == m.version) {
+            return m.accumulators;
+        }
+
+        // Membership has changed - gather the members again
+        long version = sm.getVersion();
+        List<Accumulator> list = new ArrayList<Accumulator>();
+        Map<Accumulator, Boolean> covered = null;
+        for(GlobMatch gm : sm.getMatches()) {
+            for(Accumulator acc : gm.getAccumulators().values()) {
+                if(acc == this) {
+                    continue;
+                }
+                list.add(acc);
+                if(acc instanceof RollupAccumulator) {
+                    if(covered == null) {
+                        covered = new IdentityHashMap<Accumulator, Boolean>();
+                    }
+                    ((RollupAccumulator)acc).cover(covered);
+                }
+            }
+        }
+
+        // Leave out anything another matched roll-up already reports, so
+        // that a pattern like '**' doesn't count the same values twice.
+        if(covered != null) {
+            for(Iterator<Accumulator> i = list.iterator(); i.hasNext();) {
+                if(covered.containsKey(i.next())) {
+                    i.remove();
+                }
+            }
+        }
+        m = new Members(version,
+                list.toArray(new Accumulator[list.size()]));
+        members = m;
+        return m.accumulators;
+    }
+
+    /**
+     * Adds everything this instance reports to {@code covered}, including
+     * everything reported by the roll-ups it reports.  Works from the raw
+     * matches, so that roll-ups which match one another don't recurse
+     * forever.
+     */
+    private void cover(Map<Accumulator, Boolean> covered) {
+        StandingMatch sm = match;
+        if(sm == null) {
+            return;
+        }
+        for(GlobMatch gm : sm.getMatches()) {
+            for(Accumulator acc : gm.getAccumulators().values()) {
+                if(acc == this || covered.put(acc, Boolean.TRUE) != null) {
+                    continue;
+                }
+                if(acc instanceof RollupAccumulator) {
+                    ((RollupAccumulator)acc).cover(covered);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prefixes each node path in {@code pattern} with {@code nodeName}.
+     */
+    static String absolutePattern(String nodeName, String pattern) {
+        if(nodeName == null || nodeName.length() == 0) {
+            return pattern;
+        }
+
+        int colon = pattern.indexOf(':');
+        String nodes = colon < 0 ? pattern : pattern.substring(0, colon);
+        String rest = colon < 0 ? "" : pattern.substring(colon);
+        StringBuilder sb = new StringBuilder();
+        for(String part : nodes.split(",")) {
+            if(sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(nodeName);
+            if(part.length() > 0) {
+                sb.append('.').append(part);
+            }
+        }
+        return sb.append(rest).toString();
+    }
+
+    /**
+     * The members gathered at a given {@link StandingMatch} version, kept
+     * together so they can be swapped in one write.
+     */
+    private static final class Members {
+        private final long version;
+        private final Accumulator[] accumulators;
+
+        Members(long version, Accumulator[] accumulators) {
+            this.version = version;
+            this.accumulators = accumulators;
+        }
+    }
+}
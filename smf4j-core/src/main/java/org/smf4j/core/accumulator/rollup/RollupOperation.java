@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.rollup;
+
+/**
+ * {@code RollupOperation} decides how a {@link RollupAccumulator} combines
+ * the values of its members.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public enum RollupOperation {
+
+    /**
+     * The members' values are added together.
+     */
+    SUM {
+        long combine(long total, long value) {
+            return total + value;
+        }
+    },
+
+    /**
+     * The smallest of the members' values is reported.
+     */
+    MIN {
+        long combine(long total, long value) {
+            return Math.min(total, value);
+        }
+    },
+
+    /**
+     * The largest of the members' values is reported.
+     */
+    MAX {
+        long combine(long total, long value) {
+            return Math.max(total, value);
+        }
+    };
+
+    /**
+     * Combines the running {@code total} with one member's {@code value}.
+     * @param total The combination of the members seen so far.
+     * @param value The value of the next member.
+     * @return The new combination.
+     */
+    abstract long combine(long total, long value);
+}
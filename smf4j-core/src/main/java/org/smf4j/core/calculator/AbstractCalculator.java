@@ -22,6 +22,8 @@ import org.smf4j.Calculator;
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
 public abstract class AbstractCalculator implements Calculator {
+    protected static final String[] NO_INPUTS = new String[0];
+
     private String units;
 
     public String getUnits() {
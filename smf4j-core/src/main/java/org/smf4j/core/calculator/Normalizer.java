@@ -17,43 +17,92 @@ package org.smf4j.core.calculator;
 
 import java.util.Map;
 import org.smf4j.Accumulator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.SnapshotView;
 import org.smf4j.core.accumulator.IntervalStrategy;
 
 /**
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public class Normalizer extends AbstractCalculator {
+public class Normalizer extends AbstractCalculator
+        implements DependentCalculator, PrimitiveCalculator {
 
     private String accumulator;
     private Frequency frequency = Frequency.SECONDS;
 
+    /**
+     * The time window of the accumulator we last normalized.  An
+     * accumulator's metadata does not change, so this saves us digging
+     * through it on every calculation.
+     */
+    private volatile TimeWindow lastWindow;
+
     @Override
     public Double calculate(Map<String, Long> values,
         Map<String, Accumulator> accumulators) {
+        Long val = values.get(accumulator);
+        if(val == null) {
+            return 0.0d;
+        }
+        return normalize(accumulators.get(accumulator), val);
+    }
 
-        Long val = values.get(getAccumulator());
-        Accumulator a = accumulators.get(getAccumulator());
-        if(a == null || val == null) {
+    @Override
+    public Double calculate(SnapshotView inputs) {
+        if(!inputs.contains(0)) {
             return 0.0d;
         }
+        return normalize(inputs.getAccumulator(0), inputs.get(0));
+    }
 
-        // Grab time window
-        Map<Object, Object> metadata = a.getMetadata();
-        if(metadata == null
-            || !metadata.containsKey(IntervalStrategy.METADATA_TIME_WINDOW)) {
-            return val.doubleValue();
+    private double normalize(Accumulator a, double val) {
+        if(a == null) {
+            return 0.0d;
         }
-        Object o = metadata.get(IntervalStrategy.METADATA_TIME_WINDOW);
-        if(o == null || !(o instanceof Long)) {
-            return val.doubleValue();
+
+        long window = getTimeWindow(a);
+        if(window <= 0L) {
+            return val;
         }
+        return (frequency.getNanos() / (double)window) * val;
+    }
 
-        double window = (Long)o;
-        if(window <= 0.0d) {
-            return val.doubleValue();
+    private long getTimeWindow(Accumulator a) {
+        TimeWindow cached = lastWindow;
+        if(cached != null && cached.accumulator == a) {
+            return cached.window;
+        }
+
+        // Grab time window
+        long window = 0L;
+        Map<Object, Object> metadata = a.getMetadata();
+        if(metadata != null) {
+            Object o = metadata.get(IntervalStrategy.METADATA_TIME_WINDOW);
+            if(o instanceof Long) {
+                window = (Long)o;
+            }
         }
-        return (frequency.getNanos() / window) * val;
+        lastWindow = new TimeWindow(a, window);
+        return window;
+    }
+
+    @Override
+    public Double calculate(Map<String, Long> values,
+        Map<String, Accumulator> accumulators,
+        Map<String, Object> calculated) {
+        return calculate(values, accumulators);
+    }
+
+    @Override
+    public String[] getAccumulatorInputs() {
+        return new String[] { accumulator };
+    }
+
+    @Override
+    public String[] getCalculatorInputs() {
+        return NO_INPUTS;
     }
 
     public String getAccumulator() {
@@ -78,4 +127,14 @@ public class Normalizer extends AbstractCalculator {
     public String getUnits() {
         return frequency.getUnits();
     }
+
+    private static final class TimeWindow {
+        private final Accumulator accumulator;
+        private final long window;
+
+        TimeWindow(Accumulator accumulator, long window) {
+            this.accumulator = accumulator;
+            this.window = window;
+        }
+    }
 }
@@ -17,18 +17,32 @@ package org.smf4j.core.calculator;
 
 import java.util.*;
 import org.smf4j.Accumulator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.SnapshotView;
 
 /**
+ * Formats a value against a set of {@link Grouping}s, such as {@code 1.25MB}.
+ * <p>
+ * The value is either read from {@link #getAccumulator() accumulator},
+ * optionally normalized to {@link #getFrequency() frequency}, or taken from
+ * the result of another calculator in the same node, named by
+ * {@link #getCalculator() calculator}.  The latter lets a {@code RangeGroup}
+ * format the output of, say, a registered {@link Normalizer} rather than
+ * normalizing the accumulator a second time.
+ * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public class RangeGroup extends AbstractCalculator {
+public class RangeGroup extends AbstractCalculator
+        implements DependentCalculator, PrimitiveCalculator {
 
     private static final GroupingComparator sorter = new GroupingComparator();
     private static final Frequency DEFAULT_FREQUENCY = Frequency.SECONDS;
     private static final String DEFAULT_FORMAT_STRING = "%.2f%s";
 
     private String accumulator;
+    private String calculator;
     private List<Grouping> groupings;
     private String formatString = DEFAULT_FORMAT_STRING;
     private double threshold = 0.85d;
@@ -43,22 +57,43 @@ public class RangeGroup extends AbstractCalculator {
     @Override
     public String calculate(Map<String, Long> values,
         Map<String, Accumulator> accumulators) {
-        double start;
+        return calculate(values, accumulators,
+                Collections.<String, Object>emptyMap());
+    }
 
-        if(normalize) {
+    @Override
+    public String calculate(Map<String, Long> values,
+        Map<String, Accumulator> accumulators,
+        Map<String, Object> calculated) {
+        if(calculator != null) {
+            Object val = calculated.get(calculator);
+            return format(val instanceof Number
+                    ? ((Number)val).doubleValue() : 0.0d);
+        } else if(normalize) {
             Double val = normalizer.calculate(values, accumulators);
-            if(val == null) {
-                val = 0.0d;
-            }
-            start = val;
-        } else {
-            Long val = values.get(getAccumulator());
-            if(val == null) {
-                val = 0L;
-            }
-            start = val.doubleValue();
+            return format(val == null ? 0.0d : val);
         }
+        Long val = values.get(accumulator);
+        return format(val == null ? 0L : val);
+    }
 
+    /**
+     * Formats the value of {@link #getAccumulator() accumulator}.  When
+     * {@link #getCalculator() calculator} is set, there is no such input and
+     * the value formatted is always {@code 0}.
+     */
+    @Override
+    public String calculate(SnapshotView inputs) {
+        if(calculator != null) {
+            return format(0.0d);
+        } else if(normalize) {
+            Double val = normalizer.calculate(inputs);
+            return format(val == null ? 0.0d : val);
+        }
+        return format(inputs.get(0));
+    }
+
+    private String format(double start) {
         double sign = Math.signum(start);
         double result = start = Math.abs(start);
         String label = getUnits();
@@ -77,6 +112,22 @@ public class RangeGroup extends AbstractCalculator {
                 label == null ? "" : label);
     }
 
+    @Override
+    public String[] getAccumulatorInputs() {
+        if(calculator != null) {
+            return NO_INPUTS;
+        }
+        return new String[] { accumulator };
+    }
+
+    @Override
+    public String[] getCalculatorInputs() {
+        if(calculator != null) {
+            return new String[] { calculator };
+        }
+        return NO_INPUTS;
+    }
+
     /**
      * @return the unitsOfMeasure
      */
@@ -125,6 +176,21 @@ public class RangeGroup extends AbstractCalculator {
         initNormalizer();
     }
 
+    /**
+     * @return the name of the calculator whose result is formatted, or
+     *         {@code null} if the accumulator is formatted instead
+     */
+    public String getCalculator() {
+        return calculator;
+    }
+
+    /**
+     * @param calculator the name of the calculator whose result is formatted
+     */
+    public void setCalculator(String calculator) {
+        this.calculator = calculator;
+    }
+
     public boolean isNormalize() {
         return normalize;
     }
@@ -17,12 +17,16 @@ package org.smf4j.core.calculator;
 
 import java.util.Map;
 import org.smf4j.Accumulator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.SnapshotView;
 
 /**
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public class Ratio extends AbstractCalculator {
+public class Ratio extends AbstractCalculator
+        implements DependentCalculator, PrimitiveCalculator {
 
     private String numerator;
     private String denominator;
@@ -30,19 +34,46 @@ public class Ratio extends AbstractCalculator {
     @Override
     public Double calculate(Map<String, Long> values,
         Map<String, Accumulator> accumulators) {
-
         Long num = values.get(numerator);
         Long den = values.get(denominator);
-        if(num == null) {
+        if(num == null || den == null) {
             return 0.0d;
         }
-        if(den == null || den == 0L) {
+        return ratio(num, den);
+    }
+
+    @Override
+    public Double calculate(SnapshotView inputs) {
+        if(!inputs.contains(0)) {
             return 0.0d;
         }
+        return ratio(inputs.get(0), inputs.get(1));
+    }
 
+    private static double ratio(long num, long den) {
+        if(den == 0L) {
+            return 0.0d;
+        }
         return (double)num / (double)den;
     }
 
+    @Override
+    public Double calculate(Map<String, Long> values,
+        Map<String, Accumulator> accumulators,
+        Map<String, Object> calculated) {
+        return calculate(values, accumulators);
+    }
+
+    @Override
+    public String[] getAccumulatorInputs() {
+        return new String[] { numerator, denominator };
+    }
+
+    @Override
+    public String[] getCalculatorInputs() {
+        return NO_INPUTS;
+    }
+
     public String getDenominator() {
         return denominator;
     }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.RegistryNode;
+
+/**
+ * {@code CheckpointRestorer} holds state loaded from a checkpoint file until
+ * the matching {@link Checkpointable}s are registered.
+ * <p>
+ * {@link Checkpointable} accumulators call
+ * {@link #restore(RegistryNode, String, Checkpointable)} when they are
+ * registered.  If state was loaded for their
+ * <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">member path</a>,
+ * it is restored into them, and then discarded, so that state is restored at
+ * most once.
+ * </p>
+ *
+ * @see Checkpointer#load(java.io.File)
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class CheckpointRestorer {
+
+    /**
+     * The static singleton instance of {@code CheckpointRestorer}.
+     */
+    public static final CheckpointRestorer INSTANCE = new CheckpointRestorer();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ConcurrentMap<String, SavedState> pending =
+            new ConcurrentHashMap<String, SavedState>();
+
+    /**
+     * {@code CheckpointRestorer} is a static singleton.
+     */
+    private CheckpointRestorer() {
+    }
+
+    /**
+     * Adds {@code states} to the state waiting to be restored.
+     * @param states A map of member paths to saved state.
+     */
+    public void install(Map<String, SavedState> states) {
+        pending.putAll(states);
+    }
+
+    /**
+     * Discards all state waiting to be restored.
+     */
+    public void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Gets the member paths of all state waiting to be restored.
+     * @return The member paths of all state waiting to be restored.
+     */
+    public Iterable<String> getPendingPaths() {
+        return Collections.unmodifiableSet(pending.keySet());
+    }
+
+    /**
+     * Restores any state waiting for the member named {@code name} in
+     * {@code node} into {@code target}.
+     * @param node The {@link RegistryNode} {@code target} was registered with.
+     * @param name The name {@code target} was registered under.
+     * @param target The {@link Checkpointable} to restore state into.
+     * @return {@code true} if state was restored.
+     */
+    public boolean restore(RegistryNode node, String name,
+            Checkpointable target) {
+        if(pending.isEmpty()) {
+            return false;
+        }
+
+        String path = node.getName() + ":" + name;
+        SavedState state = pending.remove(path);
+        if(state == null) {
+            return false;
+        }
+
+        if(state.isWindowed() != target.isWindowed()) {
+            log.warn("Not restoring checkpointed state for '{}': it was "
+                    + "saved from a different kind of accumulator.", path);
+            return false;
+        }
+
+        long nanosAgo = (System.currentTimeMillis() - state.getWallMillis())
+                * 1000000L;
+        target.restore(state.getState(), Math.max(0L, nanosAgo));
+        return true;
+    }
+
+    /**
+     * {@code SavedState} is the state of a single {@link Checkpointable}, as
+     * read from a checkpoint file.
+     */
+    public static final class SavedState {
+        private final boolean windowed;
+        private final long wallMillis;
+        private final long[] state;
+
+        /**
+         * Creates a new {@code SavedState}.
+         * @param windowed Whether the state came from a windowed
+         *                 {@link Checkpointable}.
+         * @param wallMillis The wall-clock time the state was captured.
+         * @param state The state.
+         */
+        public SavedState(boolean windowed, long wallMillis, long[] state) {
+            this.windowed = windowed;
+            this.wallMillis = wallMillis;
+            this.state = state;
+        }
+
+        public boolean isWindowed() {
+            return windowed;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public long[] getState() {
+            return state;
+        }
+    }
+}
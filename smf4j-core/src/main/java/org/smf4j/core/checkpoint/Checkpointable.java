@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import org.smf4j.Accumulator;
+
+/**
+ * {@code Checkpointable} is implemented by {@link Accumulator}s whose state
+ * can be saved by a {@link Checkpointer} and restored after a restart.
+ * <p>
+ * The state of a non-windowed {@code Accumulator} is its value.  The state
+ * of a windowed {@code Accumulator} is the value of each of its intervals,
+ * most recent first.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public interface Checkpointable {
+
+    /**
+     * Gets whether or not this {@code Checkpointable}'s state is a set of
+     * windowed intervals.
+     * @return {@code true} if this {@code Checkpointable} is windowed.
+     */
+    boolean isWindowed();
+
+    /**
+     * Captures the current state of this {@code Checkpointable}.
+     * <p>
+     * This must not block writers.
+     * </p>
+     * @return The current state.
+     */
+    long[] checkpoint();
+
+    /**
+     * Merges previously-captured state into this {@code Checkpointable}.
+     * @param state State previously returned by {@link #checkpoint()}.
+     * @param nanosAgo How long ago, in nanoseconds, {@code state} was
+     *                 captured.
+     */
+    void restore(long[] state, long nanosAgo);
+}
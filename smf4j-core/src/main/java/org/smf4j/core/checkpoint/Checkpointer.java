@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.DaemonScheduler;
+
+/**
+ * {@code Checkpointer} periodically saves the state of every
+ * {@link Checkpointable} {@link Accumulator} in a {@link Registrar} to a
+ * file, so that it can be restored after a restart.
+ * <p>
+ * Each checkpoint is written to a temporary file next to the target file,
+ * forced to disk, and then moved over the target file, so a crash during a
+ * checkpoint leaves the previous checkpoint intact.  Capturing state only
+ * reads from accumulators, so writers are never blocked.
+ * </p>
+ * <p>
+ * To restore state on startup, call {@link #load(File)} before the
+ * application registers its accumulators.  Each {@link Checkpointable} picks
+ * up its saved state through {@link CheckpointRestorer} as it is registered.
+ * Windowed intervals are saved relative to the wall-clock time of the
+ * checkpoint, so intervals that have aged out of their window since then are
+ * dropped on restore.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class Checkpointer {
+
+    private static final int MAGIC = 0x534d4643;    // "SMFC"
+    private static final int VERSION = 2;
+
+    /**
+     * The first version of the format, which stored path lengths as a
+     * {@code short}.  It can still be loaded.
+     */
+    private static final int VERSION_SHORT_PATHS = 1;
+    private static final byte KIND_UNBOUNDED = 'U';
+    private static final byte KIND_WINDOWED = 'W';
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(
+            Checkpointer.class);
+
+    private final Registrar registrar;
+    private final File file;
+    private final File tmpFile;
+    private final Object checkpointLock = new Object();
+    private ByteBuffer buffer;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new {@code Checkpointer}.
+     * @param registrar The {@link Registrar} whose accumulators to save.
+     * @param file The file to save checkpoints to.
+     */
+    public Checkpointer(Registrar registrar, File file) {
+        this.registrar = registrar;
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * Starts saving a checkpoint every {@code period} {@code unit}s, on a
+     * background daemon thread.
+     * @param period The time between checkpoints.
+     * @param unit The units of {@code period}.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if(executor != null) {
+            return;
+        }
+
+        executor = DaemonScheduler.newScheduler("smf4j-checkpointer");
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    checkpoint();
+                } catch(IOException e) {
+                    log.error(String.format("Error writing checkpoint to "
+                            + "'%s'.", file), e);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops saving periodic checkpoints, and saves one final checkpoint.
+     * @throws IOException If the final checkpoint cannot be written.
+     */
+    public synchronized void stop() throws IOException {
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        checkpoint();
+    }
+
+    /**
+     * Saves a checkpoint now.
+     * @return The number of accumulators saved.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public int checkpoint() throws IOException {
+        synchronized(checkpointLock) {
+            buffer.clear();
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(System.currentTimeMillis());
+            int countPosition = buffer.position();
+            buffer.putInt(0);
+
+            int count = writeNode(registrar.getRootNode());
+            buffer.putInt(countPosition, count);
+            buffer.flip();
+
+            RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                channel.truncate(0);
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } finally {
+                raf.close();
+            }
+
+            CheckpointFiles.replace(tmpFile, file);
+            return count;
+        }
+    }
+
+    private int writeNode(RegistryNode node) {
+        int count = 0;
+        for(Map.Entry<String, Accumulator> entry :
+                node.getAccumulators().entrySet()) {
+            if(!(entry.getValue() instanceof Checkpointable)) {
+                continue;
+            }
+
+            Checkpointable c = (Checkpointable)entry.getValue();
+            long[] state = c.checkpoint();
+            byte[] path = utf8(node.getName() + ":" + entry.getKey());
+
+            ensureRemaining(4 + path.length + 1 + 4 + (state.length * 8));
+            buffer.putInt(path.length);
+            buffer.put(path);
+            buffer.put(c.isWindowed() ? KIND_WINDOWED : KIND_UNBOUNDED);
+            buffer.putInt(state.length);
+            for(long l : state) {
+                buffer.putLong(l);
+            }
+            count++;
+        }
+
+        for(RegistryNode child : node.getChildNodes().values()) {
+            count += writeNode(child);
+        }
+        return count;
+    }
+
+    private void ensureRemaining(int needed) {
+        if(buffer.remaining() >= needed) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        while(capacity - buffer.position() < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Reads the checkpoint saved in {@code file}, and installs its state in
+     * {@link CheckpointRestorer#INSTANCE} so that it is restored as
+     * accumulators are registered.
+     * @param file The checkpoint file to read.
+     * @return The number of accumulator states read, or {@code 0} if
+     *         {@code file} does not exist.
+     * @throws IOException If the file cannot be read, or is not a checkpoint
+     *         file.
+     */
+    public static int load(File file) throws IOException {
+        File source = CheckpointFiles.existing(file);
+        if(source == null) {
+            return 0;
+        }
+
+        Map<String, CheckpointRestorer.SavedState> states =
+                new HashMap<String, CheckpointRestorer.SavedState>();
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+        try {
+            MappedByteBuffer in = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if(in.remaining() < 20 || in.getInt() != MAGIC) {
+                throw new IOException(String.format(
+                        "'%s' is not a checkpoint file.", source));
+            }
+            int version = in.getInt();
+            if(version != VERSION && version != VERSION_SHORT_PATHS) {
+                throw new IOException(String.format(
+                        "'%s' has unsupported version %d.", source, version));
+            }
+
+            long wallMillis = in.getLong();
+            int count = in.getInt();
+            for(int i=0; i<count; i++) {
+                int length = version == VERSION_SHORT_PATHS
+                        ? in.getShort() & 0xffff : in.getInt();
+                if(length < 0 || length > in.remaining()) {
+                    throw new IOException(String.format(
+                            "'%s' is corrupt.", source));
+                }
+                byte[] path = new byte[length];
+                in.get(path);
+                boolean windowed = in.get() == KIND_WINDOWED;
+                long[] state = new long[in.getInt()];
+                for(int j=0; j<state.length; j++) {
+                    state[j] = in.getLong();
+                }
+                states.put(new String(path, "UTF-8"),
+                        new CheckpointRestorer.SavedState(windowed,
+                        wallMillis, state));
+            }
+        } finally {
+            raf.close();
+        }
+
+        CheckpointRestorer.INSTANCE.install(states);
+        return states.size();
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.governor;
+
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.OnStateAware;
+import org.smf4j.OnStateSource;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.core.accumulator.hc.MutatorRegistry;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code GovernedAccumulator} wraps another {@link Accumulator}, counts the
+ * updates made to it, and lets a {@link Governor} degrade how faithfully
+ * those updates are recorded.
+ * <p>
+ * At {@link Level#FULL} every value is passed on to the wrapped
+ * {@code Accumulator}.  At {@link Level#SAMPLED} only one value in every
+ * {@code sampleRate} values (per thread) is passed on, and at
+ * {@link Level#OFF} no values are passed on at all.  Updates are counted at
+ * every level, so that the {@code Governor} can tell when it is safe to
+ * restore full recording.  Reads, on/off state, units and metadata all come
+ * straight from the wrapped {@code Accumulator}.
+ * </p>
+ * <p>
+ * Each writing thread counts its updates in a high-contention
+ * {@link UnboundedAddMutator} of its own, which drives sampling as well as
+ * counting, so a value costs one counter write on top of the wrapped
+ * {@code Accumulator}'s own.  The counters live in a {@link MutatorRegistry},
+ * so a new thread takes over the counter of a thread that has died rather
+ * than adding one more.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class GovernedAccumulator
+        implements TimeAwareAccumulator, RegistrationAware, OnStateAware {
+
+    /**
+     * The levels at which a {@code GovernedAccumulator} records values.
+     */
+    public enum Level {
+        /**
+         * Every value is recorded.
+         */
+        FULL,
+
+        /**
+         * One in every {@code sampleRate} values is recorded.
+         */
+        SAMPLED,
+
+        /**
+         * No values are recorded.
+         */
+        OFF
+    }
+
+    private final Accumulator delegate;
+    private final int sampleRate;
+    private final MutatorRegistry counters =
+            new MutatorRegistry(UnboundedAddMutator.MUTATOR_FACTORY);
+    private final ThreadLocal<Mutator> localCounter =
+            new ThreadLocal<Mutator>();
+    private final Mutator full;
+    private final Mutator sampled;
+    private final Mutator off;
+    private final Mutator levelMutator;
+    private volatile Level level;
+    private volatile Mutator mutator;
+
+    /**
+     * Creates a new {@code GovernedAccumulator}.
+     * @param delegate The {@link Accumulator} to wrap.
+     * @param sampleRate At {@link Level#SAMPLED}, one value in every
+     *                   {@code sampleRate} values is recorded.
+     */
+    public GovernedAccumulator(Accumulator delegate, int sampleRate) {
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be >= 1");
+        }
+
+        this.delegate = delegate;
+        this.sampleRate = sampleRate;
+        this.full = new FullMutator();
+        this.sampled = new SampledMutator();
+        this.off = new OffMutator();
+        this.levelMutator = new LevelMutator();
+        setLevel(Level.FULL);
+    }
+
+    /**
+     * Gets the wrapped {@link Accumulator}.
+     * @return The wrapped {@link Accumulator}.
+     */
+    public Accumulator getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the {@link Level} at which values are currently recorded.
+     * @return The {@link Level} at which values are currently recorded.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the {@link Level} at which values are recorded.
+     * <p>
+     * {@code Mutator}s obtained from {@link #getMutator()} pick up the new
+     * level immediately.
+     * </p>
+     * @param level The {@link Level} at which to record values.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+        switch(level) {
+            case FULL:
+                mutator = full;
+                break;
+            case SAMPLED:
+                mutator = sampled;
+                break;
+            default:
+                mutator = off;
+                break;
+        }
+    }
+
+    /**
+     * Gets the sample rate used at {@link Level#SAMPLED}.
+     * @return The sample rate used at {@link Level#SAMPLED}.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the total number of updates made to this
+     * {@code GovernedAccumulator}, whether or not they were recorded.
+     * @return The total number of updates.
+     */
+    public long getUpdates() {
+        long total = 0L;
+        for(Mutator counter : counters) {
+            total = counter.combine(total);
+        }
+        return total;
+    }
+
+    public boolean isOn() {
+        return delegate.isOn();
+    }
+
+    public void setOn(boolean on) {
+        delegate.setOn(on);
+    }
+
+    public Mutator getMutator() {
+        if(!delegate.isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return levelMutator;
+    }
+
+    public long get() {
+        return delegate.get();
+    }
+
+    public long nanos() {
+        if(delegate instanceof TimeAwareAccumulator) {
+            return ((TimeAwareAccumulator)delegate).nanos();
+        }
+        return System.nanoTime();
+    }
+
+    public long get(long nanos) {
+        if(delegate instanceof TimeAwareAccumulator) {
+            return ((TimeAwareAccumulator)delegate).get(nanos);
+        }
+        return delegate.get();
+    }
+
+    public String getUnits() {
+        return delegate.getUnits();
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    public boolean bind(OnStateSource source) {
+        if(delegate instanceof OnStateAware) {
+            return ((OnStateAware)delegate).bind(source);
+        }
+        return false;
+    }
+
+    public void unbind(OnStateSource source) {
+        if(delegate instanceof OnStateAware) {
+            ((OnStateAware)delegate).unbind(source);
+        }
+    }
+
+    public void registered(RegistryNode node, String name) {
+        if(delegate instanceof RegistrationAware) {
+            ((RegistrationAware)delegate).registered(node, name);
+        }
+    }
+
+    public void unregistered(RegistryNode node, String name) {
+        if(delegate instanceof RegistrationAware) {
+            ((RegistrationAware)delegate).unregistered(node, name);
+        }
+    }
+
+    /**
+     * Counts an update made by the calling thread.
+     * @return The number of updates counted by the calling thread's
+     *         counter.
+     */
+    private long countUpdate() {
+        // The registry only hands a counter to another thread once this one
+        // has died, so it is safe to remember it here.
+        Mutator counter = localCounter.get();
+        if(counter == null) {
+            counter = counters.get();
+            localCounter.set(counter);
+        }
+        counter.put(1L);
+        return counter.get();
+    }
+
+    private abstract class DelegatingMutator implements Mutator {
+        public long combine(long other) {
+            return delegate.getMutator().combine(other);
+        }
+
+        public long get() {
+            return delegate.get();
+        }
+    }
+
+    private final class LevelMutator extends DelegatingMutator {
+        public void put(long delta) {
+            mutator.put(delta);
+        }
+    }
+
+    private final class FullMutator extends DelegatingMutator {
+        public void put(long delta) {
+            countUpdate();
+            delegate.getMutator().put(delta);
+        }
+    }
+
+    private final class SampledMutator extends DelegatingMutator {
+        public void put(long delta) {
+            if(countUpdate() % sampleRate == 0L) {
+                delegate.getMutator().put(delta);
+            }
+        }
+    }
+
+    private final class OffMutator extends DelegatingMutator {
+        public void put(long delta) {
+            countUpdate();
+        }
+    }
+}
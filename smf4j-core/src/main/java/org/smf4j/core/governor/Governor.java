@@ -0,0 +1,467 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.governor;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.ReadOnlyAccumulator;
+import org.smf4j.core.accumulator.SecondsIntervalStrategy;
+import org.smf4j.core.accumulator.SystemNanosTimeReporter;
+import org.smf4j.core.accumulator.TimeReporter;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.core.accumulator.hc.WindowedAddMutator;
+import org.smf4j.util.helpers.DaemonScheduler;
+
+/**
+ * {@code Governor} keeps the estimated CPU cost of recording values within a
+ * budget, by degrading the hottest {@link GovernedAccumulator}s when the
+ * budget is exceeded, and restoring them when load drops.
+ * <p>
+ * On every {@link #tick()}, the {@code Governor} works out the update rate of
+ * each {@code GovernedAccumulator} since the previous tick, and multiplies it
+ * by the cost of a single update to estimate the fraction of the machine's
+ * CPU being spent on recording.  The cost of an update is measured
+ * periodically by timing updates to a private probe accumulator.
+ * </p>
+ * <p>
+ * While the estimate is over budget, the accumulator with the highest
+ * estimated cost is moved down a {@link GovernedAccumulator.Level level} -
+ * first from {@code FULL} to {@code SAMPLED}, and then from {@code SAMPLED} to
+ * {@code OFF}.  Once the estimated load of restoring the most recently
+ * degraded accumulator fits comfortably within the budget, it is moved back up
+ * a level.
+ * </p>
+ * <p>
+ * The {@code Governor}'s own state is registered as accumulators in
+ * the node named {@link #DEFAULT_NODE} (or the node passed to the
+ * constructor): {@code estimatedLoadPpm}, {@code costPerUpdateNanos},
+ * {@code governed}, {@code sampled}, {@code off}, {@code degradations} and
+ * {@code restorations}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class Governor {
+
+    /**
+     * The name of the node the {@code Governor} registers its own metrics
+     * with, if none is given.
+     */
+    public static final String DEFAULT_NODE = "smf4j.governor";
+
+    /**
+     * The default rate at which {@link GovernedAccumulator.Level#SAMPLED}
+     * accumulators record values.
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 16;
+
+    /**
+     * Degraded accumulators are only restored once the projected load is
+     * below this fraction of the budget, so that the {@code Governor} doesn't
+     * flap between levels.
+     */
+    private static final double RESTORE_HEADROOM = 0.5;
+    private static final int PROBE_ITERATIONS = 10000;
+    private static final int PROBE_EVERY_TICKS = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(Governor.class);
+
+    private final Registrar registrar;
+    private final RegistryNode metricsNode;
+    private final double budget;
+    private final int sampleRate;
+    private final TimeReporter timeReporter;
+    private final int processors;
+    private final List<Tracked> tracked = new CopyOnWriteArrayList<Tracked>();
+    private final LinkedList<Tracked> degraded = new LinkedList<Tracked>();
+    private final AtomicLong degradations = new AtomicLong();
+    private final AtomicLong restorations = new AtomicLong();
+    private volatile long costPerUpdateNanos;
+    private volatile long estimatedLoadPpm;
+    private int probeEveryTicks = PROBE_EVERY_TICKS;
+    private long ticks;
+    private long lastNanos;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new {@code Governor} that keeps recording within
+     * {@code budget} of the machine's CPU.
+     * @param registrar The {@link Registrar} whose accumulators to govern.
+     * @param budget The fraction of total CPU that recording may use, e.g.
+     *               {@code 0.01} for 1%.
+     */
+    public Governor(Registrar registrar, double budget) {
+        this(registrar, budget, DEFAULT_SAMPLE_RATE, DEFAULT_NODE,
+                SystemNanosTimeReporter.INSTANCE);
+    }
+
+    /**
+     * Creates a new {@code Governor} that keeps recording within
+     * {@code budget} of the machine's CPU.
+     * @param registrar The {@link Registrar} whose accumulators to govern.
+     * @param budget The fraction of total CPU that recording may use, e.g.
+     *               {@code 0.01} for 1%.
+     * @param sampleRate The rate at which sampled accumulators record values.
+     * @param metricsNode The name of the node to register the
+     *                    {@code Governor}'s own metrics with.
+     * @param timeReporter The {@link TimeReporter} used to measure update
+     *                     rates.
+     */
+    public Governor(Registrar registrar, double budget, int sampleRate,
+            String metricsNode, TimeReporter timeReporter) {
+        if(budget <= 0.0) {
+            throw new IllegalArgumentException("budget must be > 0");
+        }
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be >= 1");
+        }
+
+        this.registrar = registrar;
+        this.budget = budget;
+        this.sampleRate = sampleRate;
+        this.timeReporter = timeReporter;
+        this.processors = Runtime.getRuntime().availableProcessors();
+        this.lastNanos = timeReporter.nanos();
+        this.metricsNode = registrar.getNode(metricsNode);
+        registerMetrics();
+    }
+
+    /**
+     * Replaces every {@link Accumulator} registered directly in {@code node}
+     * with a {@link GovernedAccumulator}, and governs it.
+     * <p>
+     * {@code GovernedAccumulator}s already registered in {@code node} are
+     * governed as they are.  {@code Mutator}s obtained from the original
+     * accumulators before this call continue to write to them directly.
+     * </p>
+     * @param node The {@link RegistryNode} whose accumulators to govern.
+     */
+    public void govern(RegistryNode node) {
+        if(node == metricsNode) {
+            return;
+        }
+
+        for(Map.Entry<String, Accumulator> entry :
+                node.getAccumulators().entrySet()) {
+            Accumulator acc = entry.getValue();
+            String path = node.getName() + ":" + entry.getKey();
+            if(acc instanceof GovernedAccumulator) {
+                track((GovernedAccumulator)acc, path);
+                continue;
+            }
+
+            GovernedAccumulator wrapped = new GovernedAccumulator(acc,
+                    sampleRate);
+            if(node.unregister(entry.getKey(), acc)) {
+                node.register(entry.getKey(), wrapped);
+                track(wrapped, path);
+            }
+        }
+    }
+
+    /**
+     * Applies {@link #govern(RegistryNode)} to every node in this
+     * {@code Governor}'s {@link Registrar}.
+     */
+    public void governAll() {
+        governAll(registrar.getRootNode());
+    }
+
+    private void governAll(RegistryNode node) {
+        govern(node);
+        for(RegistryNode child : node.getChildNodes().values()) {
+            governAll(child);
+        }
+    }
+
+    private void track(GovernedAccumulator acc, String path) {
+        for(Tracked t : tracked) {
+            if(t.acc == acc) {
+                return;
+            }
+        }
+        tracked.add(new Tracked(acc, path));
+    }
+
+    /**
+     * Starts re-evaluating the budget every {@code period} {@code unit}s, on
+     * a background daemon thread.
+     * @param period The time between evaluations.
+     * @param unit The units of {@code period}.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if(executor != null) {
+            return;
+        }
+
+        executor = DaemonScheduler.newScheduler("smf4j-governor");
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    tick();
+                } catch(RuntimeException e) {
+                    log.error("Error evaluating instrumentation budget.", e);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops re-evaluating the budget.  Degraded accumulators keep their
+     * current levels.
+     */
+    public synchronized void stop() {
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Measures the cost of a single update, by timing updates to a private
+     * probe accumulator.
+     * @return The measured cost of a single update, in nanoseconds.
+     */
+    public long probe() {
+        long cost = Math.max(
+                probe(new HighContentionAccumulator(
+                    UnboundedAddMutator.MUTATOR_FACTORY)),
+                probe(new HighContentionAccumulator(
+                    new WindowedAddMutator.Factory(
+                    new SecondsIntervalStrategy(60, 60)))));
+        costPerUpdateNanos = cost;
+        return cost;
+    }
+
+    private long probe(HighContentionAccumulator probe) {
+        probe.setOn(true);
+        Mutator mutator = new GovernedAccumulator(probe, sampleRate)
+                .getMutator();
+        long start = System.nanoTime();
+        for(int i=0; i<PROBE_ITERATIONS; i++) {
+            mutator.put(i);
+        }
+        return Math.max(1L, (System.nanoTime() - start) / PROBE_ITERATIONS);
+    }
+
+    /**
+     * Re-evaluates the estimated load against the budget, and degrades or
+     * restores accumulators as needed.
+     */
+    public synchronized void tick() {
+        if(probeEveryTicks > 0 && ticks++ % probeEveryTicks == 0) {
+            probe();
+        }
+
+        long nanos = timeReporter.nanos();
+        long elapsed = nanos - lastNanos;
+        lastNanos = nanos;
+        if(elapsed <= 0L) {
+            return;
+        }
+
+        double load = 0.0;
+        for(Tracked t : tracked) {
+            long updates = t.acc.getUpdates();
+            t.rate = (updates - t.lastUpdates) * 1e9 / elapsed;
+            t.lastUpdates = updates;
+            load += cost(t, t.acc.getLevel());
+        }
+
+        // Degrade the most expensive accumulators until we're in budget
+        while(fraction(load) > budget) {
+            Tracked hottest = null;
+            double hottestCost = 0.0;
+            for(Tracked t : tracked) {
+                double c = cost(t, t.acc.getLevel());
+                if(t.acc.getLevel() != GovernedAccumulator.Level.OFF
+                        && c > hottestCost) {
+                    hottest = t;
+                    hottestCost = c;
+                }
+            }
+            if(hottest == null) {
+                break;
+            }
+
+            GovernedAccumulator.Level level = down(hottest.acc.getLevel());
+            load += cost(hottest, level) - hottestCost;
+            hottest.acc.setLevel(level);
+            degraded.addFirst(hottest);
+            degradations.incrementAndGet();
+            log.info("Degraded '{}' to {}.", hottest.path, level);
+        }
+
+        // Restore the most recently degraded accumulators while there's
+        // plenty of room
+        while(!degraded.isEmpty()) {
+            Tracked t = degraded.getFirst();
+            GovernedAccumulator.Level current = t.acc.getLevel();
+            if(current == GovernedAccumulator.Level.FULL) {
+                degraded.removeFirst();
+                continue;
+            }
+
+            GovernedAccumulator.Level level = up(current);
+            double projected = load - cost(t, current) + cost(t, level);
+            if(fraction(projected) > budget * RESTORE_HEADROOM) {
+                break;
+            }
+
+            load = projected;
+            t.acc.setLevel(level);
+            degraded.removeFirst();
+            restorations.incrementAndGet();
+            log.info("Restored '{}' to {}.", t.path, level);
+        }
+
+        estimatedLoadPpm = (long)(fraction(load) * 1000000.0);
+    }
+
+    private double cost(Tracked t, GovernedAccumulator.Level level) {
+        switch(level) {
+            case FULL:
+                return t.rate * costPerUpdateNanos;
+            case SAMPLED:
+                return t.rate * costPerUpdateNanos / sampleRate;
+            default:
+                return 0.0;
+        }
+    }
+
+    private double fraction(double nanosPerSecond) {
+        return nanosPerSecond / (processors * 1e9);
+    }
+
+    private static GovernedAccumulator.Level down(
+            GovernedAccumulator.Level level) {
+        if(level == GovernedAccumulator.Level.FULL) {
+            return GovernedAccumulator.Level.SAMPLED;
+        }
+        return GovernedAccumulator.Level.OFF;
+    }
+
+    private static GovernedAccumulator.Level up(
+            GovernedAccumulator.Level level) {
+        if(level == GovernedAccumulator.Level.OFF) {
+            return GovernedAccumulator.Level.SAMPLED;
+        }
+        return GovernedAccumulator.Level.FULL;
+    }
+
+    /**
+     * Gets the most recent estimate of the fraction of CPU spent recording,
+     * in parts per million.
+     * @return The estimated load, in parts per million.
+     */
+    public long getEstimatedLoadPpm() {
+        return estimatedLoadPpm;
+    }
+
+    /**
+     * Gets the most recently measured cost of a single update.
+     * @return The cost of a single update, in nanoseconds.
+     */
+    public long getCostPerUpdateNanos() {
+        return costPerUpdateNanos;
+    }
+
+    /**
+     * Sets the cost of a single update, and stops periodic probing.
+     * @param costPerUpdateNanos The cost of a single update, in nanoseconds.
+     */
+    synchronized void setCostPerUpdateNanos(long costPerUpdateNanos) {
+        this.costPerUpdateNanos = costPerUpdateNanos;
+        this.probeEveryTicks = 0;
+    }
+
+    int getProcessors() {
+        return processors;
+    }
+
+    private long count(GovernedAccumulator.Level level) {
+        long count = 0L;
+        for(Tracked t : tracked) {
+            if(t.acc.getLevel() == level) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void registerMetrics() {
+        metricsNode.register("estimatedLoadPpm", new ReadOnlyAccumulator() {
+            public long get() {
+                return estimatedLoadPpm;
+            }
+        });
+        metricsNode.register("costPerUpdateNanos", new ReadOnlyAccumulator() {
+            public long get() {
+                return costPerUpdateNanos;
+            }
+        });
+        metricsNode.register("governed", new ReadOnlyAccumulator() {
+            public long get() {
+                return tracked.size();
+            }
+        });
+        metricsNode.register("sampled", new ReadOnlyAccumulator() {
+            public long get() {
+                return count(GovernedAccumulator.Level.SAMPLED);
+            }
+        });
+        metricsNode.register("off", new ReadOnlyAccumulator() {
+            public long get() {
+                return count(GovernedAccumulator.Level.OFF);
+            }
+        });
+        metricsNode.register("degradations", new ReadOnlyAccumulator() {
+            public long get() {
+                return degradations.get();
+            }
+        });
+        metricsNode.register("restorations", new ReadOnlyAccumulator() {
+            public long get() {
+                return restorations.get();
+            }
+        });
+    }
+
+    private static final class Tracked {
+        private final GovernedAccumulator acc;
+        private final String path;
+        private long lastUpdates;
+        private double rate;
+
+        Tracked(GovernedAccumulator acc, String path) {
+            this.acc = acc;
+            this.path = path;
+            this.lastUpdates = acc.getUpdates();
+        }
+    }
+}
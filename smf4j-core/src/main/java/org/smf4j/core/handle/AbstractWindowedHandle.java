@@ -0,0 +1,302 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.smf4j.Mutator;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.core.accumulator.IntervalStrategy;
+import org.smf4j.core.accumulator.Releasable;
+import org.smf4j.core.accumulator.TimeReporter;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code AbstractWindowedHandle} serves as the base class for the
+ * <em>windowed</em> handles.
+ * <p>
+ * A windowed handle keeps one set of time buckets per stripe, and threads
+ * that share a stripe combine their values into its buckets with
+ * compare-and-set, so writers never block one another.  A bucket that has
+ * gone stale is claimed by a single writer, which resets it for the current
+ * interval.  See {@link CounterHandle} for how handles are meant to be used.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class AbstractWindowedHandle extends AbstractAccumulator
+        implements TimeAwareAccumulator, Releasable {
+
+    /**
+     * The timestamp of a bucket that a writer is in the middle of resetting.
+     * It is older than any real timestamp, so readers treat it as stale.
+     */
+    private static final long RESETTING = Long.MIN_VALUE;
+
+    private final int mask;
+    private final Stripe[] stripes;
+    private final long initialValue;
+    private final IntervalStrategy strategy;
+    private final int buckets;
+    private final int intervals;
+    private final int bufferIntervals;
+    private final long intervalResolutionInNanos;
+    private final long staleWindowTimestampOffset;
+    private final TimeReporter timeReporter;
+    private final Map<Object, Object> metadata;
+    private final Mutator mutator;
+
+    AbstractWindowedHandle(long initialValue, IntervalStrategy strategy,
+            TimeReporter timeReporter) {
+        this.initialValue = initialValue;
+        this.strategy = strategy;
+        this.intervals = strategy.intervals();
+        this.bufferIntervals = strategy.bufferIntervals();
+        this.intervalResolutionInNanos = strategy.intervalResolutionInNanos();
+        this.buckets = intervals + bufferIntervals;
+        this.staleWindowTimestampOffset = intervalResolutionInNanos * buckets;
+        this.timeReporter = timeReporter;
+        this.mutator = new HandleMutator();
+
+        int count = Stripes.count();
+        this.mask = count - 1;
+        this.stripes = new Stripe[count];
+        for(int i=0; i<count; i++) {
+            stripes[i] = new Stripe(buckets);
+        }
+
+        Map<Object, Object> tmp = new HashMap<Object, Object>(2);
+        tmp.put(IntervalStrategy.METADATA_TIME_WINDOW,
+                strategy.timeWindowInNanos());
+        tmp.put(IntervalStrategy.METADATA_INTERVALS, strategy.intervals());
+        this.metadata = Collections.unmodifiableMap(tmp);
+    }
+
+    /**
+     * Combines two recorded values.
+     * @param local The value already held.
+     * @param delta The value to combine with it.
+     * @return The combination of {@code local} and {@code delta}.
+     */
+    abstract long combine(long local, long delta);
+
+    /**
+     * Records {@code value}, if this handle is {@code on}.
+     * @param value The value to record.
+     */
+    public final void put(long value) {
+        if(!isOn()) {
+            return;
+        }
+
+        long nanos = timeReporter.nanos();
+        int index = strategy.intervalIndex(nanos);
+        long stale = nanos - intervalResolutionInNanos;
+        Stripe stripe = stripes[Stripes.index(mask)];
+        Storage s;
+        do {
+            s = stripe.storage;
+            if(s == null) {
+                s = stripe.inflate();
+            }
+            put(s, index, nanos, stale, value);
+
+            // If releaseIdle() freed the storage underneath us, write again
+            // into freshly-inflated storage.
+        } while(stripe.storage != s);
+    }
+
+    private void put(Storage s, int index, long nanos, long stale,
+            long value) {
+        int attempt = 0;
+        while(true) {
+            long timestamp = s.timestamps.get(index);
+            if(timestamp == RESETTING) {
+                // Another writer is resetting this bucket; it's about to
+                // finish.
+                if(++attempt > 64) {
+                    Thread.yield();
+                }
+                continue;
+            }
+
+            if(timestamp < stale) {
+                // This bucket is stale.  Whoever claims it resets it.
+                if(s.timestamps.compareAndSet(index, timestamp, RESETTING)) {
+                    s.values.set(index, value);
+                    s.timestamps.set(index, nanos);
+                    return;
+                }
+                continue;
+            }
+
+            // Bucket's still fresh...
+            long current = s.values.get(index);
+            if(s.values.compareAndSet(index, current,
+                    combine(current, value))) {
+                return;
+            }
+        }
+    }
+
+    public final long get() {
+        return get(timeReporter.nanos());
+    }
+
+    public final long nanos() {
+        return timeReporter.nanos();
+    }
+
+    public final long get(long nanos) {
+        long result = initialValue;
+        int index = strategy.intervalIndex(nanos);
+        long stale = nanos - staleWindowTimestampOffset;
+        for(Stripe stripe : stripes) {
+            Storage s = stripe.storage;
+            if(s == null) {
+                continue;
+            }
+            for(int count=0,i=parw(index-bufferIntervals);
+                count<intervals;
+                i = parw(i-1),count++) {
+
+                if(s.timestamps.get(i) >= stale) {
+                    result = combine(result, s.values.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    public final int releaseIdle(int idleWindows) {
+        long idle = timeReporter.nanos()
+                - (staleWindowTimestampOffset * Math.max(1, idleWindows));
+        int released = 0;
+        for(Stripe stripe : stripes) {
+            if(stripe.release(idle)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is only provided for compatibility with code that expects a
+     * {@link Mutator}; callers should prefer {@link #put(long)}.
+     * </p>
+     */
+    public final Mutator getMutator() {
+        if(!isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public final Map<Object, Object> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Decrements {@code index}, wrapping around to the end of the buckets if
+     * {@code index < 0}.
+     * @param index The index to wrap.
+     * @return {@code index}, or {@code buckets + index} if {@code index < 0}.
+     */
+    private int parw(int index) {
+        if(index < 0) {
+            return buckets+index;
+        }
+        return index;
+    }
+
+    private final class HandleMutator implements Mutator {
+        public void put(long delta) {
+            AbstractWindowedHandle.this.put(delta);
+        }
+
+        public long combine(long other) {
+            return AbstractWindowedHandle.this.combine(
+                    AbstractWindowedHandle.this.get(), other);
+        }
+
+        public long get() {
+            return AbstractWindowedHandle.this.get();
+        }
+    }
+
+    /**
+     * A single stripe, whose buckets are released and reallocated as a unit.
+     */
+    private static final class Stripe {
+        private static final AtomicReferenceFieldUpdater<Stripe, Storage>
+                STORAGE = AtomicReferenceFieldUpdater.newUpdater(
+                Stripe.class, Storage.class, "storage");
+
+        private final int buckets;
+        private volatile Storage storage;
+
+        private Stripe(int buckets) {
+            this.buckets = buckets;
+            this.storage = new Storage(buckets);
+        }
+
+        private Storage inflate() {
+            Storage s = new Storage(buckets);
+            while(true) {
+                Storage current = storage;
+                if(current != null) {
+                    return current;
+                }
+                if(STORAGE.compareAndSet(this, null, s)) {
+                    return s;
+                }
+            }
+        }
+
+        private boolean release(long idle) {
+            Storage s = storage;
+            if(s == null) {
+                return false;
+            }
+            for(int i=0; i<s.timestamps.length(); i++) {
+                long timestamp = s.timestamps.get(i);
+                if(timestamp == RESETTING || timestamp >= idle) {
+                    return false;
+                }
+            }
+            return STORAGE.compareAndSet(this, s, null);
+        }
+    }
+
+    /**
+     * The bucket values and timestamps of a single stripe.
+     */
+    private static final class Storage {
+        private final AtomicLongArray values;
+        private final AtomicLongArray timestamps;
+
+        private Storage(int buckets) {
+            this.values = new AtomicLongArray(buckets);
+            this.timestamps = new AtomicLongArray(buckets);
+        }
+    }
+}
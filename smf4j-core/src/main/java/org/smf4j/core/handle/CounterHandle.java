@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code CounterHandle} is a final, additive {@link Accumulator} that can be
+ * written to directly, without fetching a {@link Mutator}.
+ * <p>
+ * {@code CounterHandle}s are meant to be created once, registered with a
+ * {@link RegistryNode}, and then kept in a {@code static final} field:
+ * </p>
+ * <pre>
+ * private static final CounterHandle requests = ...;
+ *
+ * public void handle(Request request) {
+ *     requests.increment();
+ *     // ...
+ * }
+ * </pre>
+ * <p>
+ * Since the handle is registered like any other {@link Accumulator},
+ * turning its {@link RegistryNode} on or off flips the handle's own on/off
+ * flag - callers never need to re-fetch anything.  While {@code off},
+ * {@link #add(long)} does nothing.  As the class is final, calls to
+ * {@link #add(long)} remain monomorphic and can be fully inlined.
+ * </p>
+ * <p>
+ * Writes are spread over a small number of padded, per-thread stripes, so
+ * {@code CounterHandle} is suitable for use under high contention.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class CounterHandle extends AbstractAccumulator {
+
+    private final int mask;
+    private final AtomicLongArray cells;
+    private final Mutator mutator;
+
+    /**
+     * Creates a new {@code CounterHandle}.
+     */
+    public CounterHandle() {
+        int stripes = Stripes.count();
+        this.mask = stripes - 1;
+        this.cells = Stripes.cells(stripes, 0L);
+        this.mutator = new HandleMutator();
+    }
+
+    /**
+     * Adds {@code delta} to this {@code CounterHandle}, if it is {@code on}.
+     * @param delta The amount to add.
+     */
+    public void add(long delta) {
+        if(isOn()) {
+            cells.getAndAdd(Stripes.index(mask) * Stripes.PAD, delta);
+        }
+    }
+
+    /**
+     * Adds {@code 1} to this {@code CounterHandle}, if it is {@code on}.
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    public long get() {
+        long total = 0L;
+        for(int i=0; i<cells.length(); i += Stripes.PAD) {
+            total += cells.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is only provided for compatibility with code that expects a
+     * {@link Mutator}; callers should prefer {@link #add(long)}.
+     * </p>
+     */
+    public Mutator getMutator() {
+        if(!isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    private final class HandleMutator implements Mutator {
+        public void put(long delta) {
+            add(delta);
+        }
+
+        public long combine(long other) {
+            return CounterHandle.this.get() + other;
+        }
+
+        public long get() {
+            return CounterHandle.this.get();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code MinHandle} is a final {@link Accumulator} that reports the smallest
+ * value it has been shown, and that can be written to directly, without
+ * fetching a {@link Mutator}.
+ * <p>
+ * See {@link CounterHandle} for how handles are meant to be used.  If no
+ * value has been recorded, {@link #get()} reports {@link Long#MAX_VALUE}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MinHandle extends AbstractAccumulator {
+
+    private final int mask;
+    private final AtomicLongArray cells;
+    private final Mutator mutator;
+
+    /**
+     * Creates a new {@code MinHandle}.
+     */
+    public MinHandle() {
+        int stripes = Stripes.count();
+        this.mask = stripes - 1;
+        this.cells = Stripes.cells(stripes, Long.MAX_VALUE);
+        this.mutator = new HandleMutator();
+    }
+
+    /**
+     * Records {@code value}, if this {@code MinHandle} is {@code on}.
+     * @param value The value to record.
+     */
+    public void put(long value) {
+        if(isOn()) {
+            int i = Stripes.index(mask) * Stripes.PAD;
+            long cur;
+            while(value < (cur = cells.get(i))
+                    && !cells.compareAndSet(i, cur, value)) {
+            }
+        }
+    }
+
+    public long get() {
+        long result = Long.MAX_VALUE;
+        for(int i=0; i<cells.length(); i += Stripes.PAD) {
+            long val = cells.get(i);
+            if(val < result) {
+                result = val;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is only provided for compatibility with code that expects a
+     * {@link Mutator}; callers should prefer {@link #put(long)}.
+     * </p>
+     */
+    public Mutator getMutator() {
+        if(!isOn()) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    private final class HandleMutator implements Mutator {
+        public void put(long delta) {
+            MinHandle.this.put(delta);
+        }
+
+        public long combine(long other) {
+            long val = MinHandle.this.get();
+            return val <= other ? val : other;
+        }
+
+        public long get() {
+            return MinHandle.this.get();
+        }
+    }
+}
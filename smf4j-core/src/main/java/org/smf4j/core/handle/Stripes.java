@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code Stripes} holds the helpers shared by the striped handles.
+ * <p>
+ * Striped handles spread their writes over a number of cells, picked by the
+ * identity of the writing thread, so that threads rarely contend for the same
+ * cell.  Each cell is padded out to its own cache line.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class Stripes {
+
+    /**
+     * The number of {@code long}s each cell occupies, so that no two cells
+     * share a cache line.
+     */
+    static final int PAD = 8;
+
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * {@code Stripes} is a static helper class.
+     */
+    private Stripes() {
+    }
+
+    /**
+     * Gets the number of stripes to use: the smallest power of two that is at
+     * least twice the number of available processors, up to a maximum of
+     * {@code 64}.
+     * @return The number of stripes to use.
+     */
+    static int count() {
+        int target = Math.min(MAX_STRIPES,
+                Runtime.getRuntime().availableProcessors() * 2);
+        int count = 1;
+        while(count < target) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the stripe the calling thread should write to.
+     * @param mask {@code count() - 1}.
+     * @return The index of the calling thread's stripe.
+     */
+    static int index(int mask) {
+        int h = System.identityHashCode(Thread.currentThread());
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Creates a padded cell array for {@code stripes} stripes, with each cell
+     * set to {@code initialValue}.
+     * @param stripes The number of stripes.
+     * @param initialValue The initial value of each cell.
+     * @return The padded cell array.
+     */
+    static AtomicLongArray cells(int stripes, long initialValue) {
+        AtomicLongArray cells = new AtomicLongArray(stripes * PAD);
+        for(int i=0; i<stripes; i++) {
+            cells.set(i * PAD, initialValue);
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import org.smf4j.core.accumulator.IntervalStrategy;
+import org.smf4j.core.accumulator.SystemNanosTimeReporter;
+import org.smf4j.core.accumulator.TimeReporter;
+
+/**
+ * {@code WindowedMaxHandle} is a final handle that reports the largest of the
+ * values recorded within its time window.
+ *
+ * @see AbstractWindowedHandle
+ * @see CounterHandle
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class WindowedMaxHandle extends AbstractWindowedHandle {
+
+    /**
+     * Creates a new {@code WindowedMaxHandle}.
+     * @param strategy The {@link IntervalStrategy} that defines the time
+     *                 window.
+     */
+    public WindowedMaxHandle(IntervalStrategy strategy) {
+        this(strategy, SystemNanosTimeReporter.INSTANCE);
+    }
+
+    /**
+     * Creates a new {@code WindowedMaxHandle}.
+     * @param strategy The {@link IntervalStrategy} that defines the time
+     *                 window.
+     * @param timeReporter The {@link TimeReporter} used to tell time.
+     */
+    public WindowedMaxHandle(IntervalStrategy strategy,
+            TimeReporter timeReporter) {
+        super(Long.MIN_VALUE, strategy, timeReporter);
+    }
+
+    @Override
+    long combine(long local, long delta) {
+        return local >= delta ? local : delta;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.snapshot;
+
+/**
+ * {@code CalculatorCost} records how long a single {@link org.smf4j.Calculator}
+ * has taken to evaluate across the snapshots taken by a
+ * {@link ParallelSnapshotter}.
+ * <p>
+ * Instances are immutable copies, as returned by
+ * {@link ParallelSnapshotter#getCosts()}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class CalculatorCost {
+    private final long evaluations;
+    private final long totalNanos;
+    private final long lastNanos;
+    private final long maxNanos;
+    private final long timeouts;
+    private final long failures;
+
+    CalculatorCost(long evaluations, long totalNanos, long lastNanos,
+            long maxNanos, long timeouts, long failures) {
+        this.evaluations = evaluations;
+        this.totalNanos = totalNanos;
+        this.lastNanos = lastNanos;
+        this.maxNanos = maxNanos;
+        this.timeouts = timeouts;
+        this.failures = failures;
+    }
+
+    /**
+     * Gets the number of evaluations that have finished, including ones that
+     * finished after their deadline had passed.
+     * @return The number of evaluations that have finished.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Gets the total time spent in finished evaluations, in nanoseconds.
+     * @return The total time spent in finished evaluations.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Gets the time taken by the most recently finished evaluation, in
+     * nanoseconds.
+     * @return The time taken by the most recently finished evaluation.
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Gets the time taken by the slowest finished evaluation, in nanoseconds.
+     * @return The time taken by the slowest finished evaluation.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets the mean time taken by finished evaluations, in nanoseconds.
+     * @return The mean time taken by finished evaluations, or {@code 0} if
+     *         none have finished.
+     */
+    public long getMeanNanos() {
+        return evaluations == 0L ? 0L : totalNanos / evaluations;
+    }
+
+    /**
+     * Gets the number of snapshots in which the evaluation did not finish
+     * within its budget.
+     * @return The number of snapshots in which the evaluation did not finish
+     *         within its budget.
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Gets the number of evaluations that threw.
+     * @return The number of evaluations that threw.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("evaluations=%d, meanNanos=%d, maxNanos=%d, "
+                + "timeouts=%d, failures=%d", evaluations, getMeanNanos(),
+                maxNanos, timeouts, failures);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.snapshot;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code ParallelSnapshot} is the result of
+ * {@link ParallelSnapshotter#snapshot(java.lang.Iterable)}.
+ * <p>
+ * The values of each node are laid out just like the results of
+ * {@link org.smf4j.RegistryNode#snapshot()}.  A {@link org.smf4j.Calculator}
+ * that did not finish within its budget, or that threw, is given its last
+ * good value instead, and its
+ * <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">member path</a> is
+ * listed in {@link #getStalePaths()}.  If it has never had a good value, it
+ * is left out of the node's values, but is still listed as stale.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class ParallelSnapshot {
+    private final Map<String, Map<String, Object>> values;
+    private final Set<String> stalePaths;
+
+    ParallelSnapshot(Map<String, Map<String, Object>> values,
+            Set<String> stalePaths) {
+        this.values = Collections.unmodifiableMap(values);
+        this.stalePaths = Collections.unmodifiableSet(stalePaths);
+    }
+
+    /**
+     * Gets the values of every node in the snapshot, keyed on node path.
+     * @return The values of every node in the snapshot, keyed on node path.
+     */
+    public Map<String, Map<String, Object>> getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the values of the node at {@code nodePath}.
+     * @param nodePath The path of the node.
+     * @return The values of the node at {@code nodePath}, or {@code null} if
+     *         it is not part of the snapshot.
+     */
+    public Map<String, Object> getValues(String nodePath) {
+        return values.get(nodePath);
+    }
+
+    /**
+     * Gets the member paths of every {@link org.smf4j.Calculator} whose value
+     * in this snapshot is stale.
+     * @return The member paths of every stale {@link org.smf4j.Calculator}.
+     */
+    public Set<String> getStalePaths() {
+        return stalePaths;
+    }
+
+    /**
+     * Gets whether or not the value of the {@link org.smf4j.Calculator} at
+     * {@code memberPath} is stale in this snapshot.
+     * @param memberPath The member path of the {@link org.smf4j.Calculator}.
+     * @return {@code true} if the value is stale.
+     */
+    public boolean isStale(String memberPath) {
+        return stalePaths.contains(memberPath);
+    }
+}
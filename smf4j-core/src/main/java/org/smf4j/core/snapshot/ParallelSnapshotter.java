@@ -0,0 +1,493 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.util.helpers.CalculatorGraph;
+import org.smf4j.util.helpers.GlobMatch;
+
+/**
+ * {@code ParallelSnapshotter} snapshots many {@link RegistryNode}s at once,
+ * spreading the work across an {@link ExecutorService}, and keeps slow
+ * {@link Calculator}s from holding up everything else.
+ * <p>
+ * A snapshot happens in two phases.  First, the {@link Accumulator}s of every
+ * node are read on the calling thread, which is cheap and can't be held up
+ * by anything else the executor is busy with.  Then every {@link Calculator}
+ * is evaluated in its own task, and is given {@code budget} to finish,
+ * counted from when the task starts running rather than from when it was
+ * submitted, so that time spent queued behind other tasks isn't charged to
+ * it.  A task that can't get a thread within {@code budget} of being
+ * submitted is treated as having run out of time.  A {@code Calculator} that
+ * doesn't finish in time, or that throws, falls back to its last good value
+ * and is marked as stale in the resulting {@link ParallelSnapshot}; one that
+ * has never had a good value is left out of the snapshot.  A
+ * {@code Calculator} that is still running from a previous snapshot is not
+ * started again until it has finished; it is marked as stale in the
+ * meantime.
+ * </p>
+ * <p>
+ * Each node's calculators are ordered with a {@link CalculatorGraph}, and are
+ * started in waves, so that a {@link DependentCalculator} is only started
+ * once the calculators it names as inputs have produced this snapshot's
+ * values (or fallen back to their last good ones).  A calculator that a
+ * matched calculator depends upon is evaluated even if it was not matched
+ * itself, but only matched calculators appear in the snapshot.  Every wave
+ * waits at most twice the {@code budget}, so a snapshot can't be held up
+ * indefinitely, however many calculators have hung.
+ * </p>
+ * <p>
+ * The time taken by each {@code Calculator} is recorded, and can be read with
+ * {@link #getCosts()} to find the slow ones.
+ * </p>
+ * <p>
+ * Any {@link ExecutorService} can be used, including a
+ * {@code ForkJoinPool}.  Threads of the executor are never blocked waiting
+ * on other tasks; only the thread calling {@code snapshot} waits.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class ParallelSnapshotter {
+    private static final Logger log =
+            LoggerFactory.getLogger(ParallelSnapshotter.class);
+
+    private final ExecutorService executor;
+    private final long budgetNanos;
+    private final ConcurrentMap<String, CalculatorState> states =
+            new ConcurrentHashMap<String, CalculatorState>();
+
+    /**
+     * Creates a new {@code ParallelSnapshotter}.
+     * @param executor The {@link ExecutorService} to evaluate
+     *                 {@link Calculator}s on.
+     * @param budget The time each {@link Calculator} is given to finish.
+     * @param unit The unit of {@code budget}.
+     */
+    public ParallelSnapshotter(ExecutorService executor, long budget,
+            TimeUnit unit) {
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if(budget < 0L) {
+            throw new IllegalArgumentException("budget must not be negative");
+        }
+        this.executor = executor;
+        this.budgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * Snapshots every node matched by {@code globPattern} in
+     * {@code registrar}.
+     * @param registrar The {@link Registrar} to snapshot.
+     * @param globPattern The
+     *        <a href="{@docRoot}/org/smf4j/Registrar.html#GlobPattern">pattern</a>
+     *        to match.
+     * @return The snapshot.
+     */
+    public ParallelSnapshot snapshot(Registrar registrar,
+            String globPattern) {
+        return snapshot(registrar.match(globPattern));
+    }
+
+    /**
+     * Snapshots {@code nodes}.  If any of {@code nodes} are {@link GlobMatch}es,
+     * only their matched members are included in the snapshot, though their
+     * {@code Calculator}s are still given every {@code Accumulator} of the
+     * node as inputs, just as {@link GlobMatch#snapshot()} does.
+     * @param nodes The nodes to snapshot.
+     * @return The snapshot.
+     */
+    public synchronized ParallelSnapshot snapshot(
+            Iterable<? extends RegistryNode> nodes) {
+        List<NodeTask> tasks = new ArrayList<NodeTask>();
+        for(RegistryNode node : nodes) {
+            tasks.add(new NodeTask(node));
+        }
+
+        // Phase one: read the accumulators of every node.  Time-aware
+        // accumulators are all evaluated as of the same instant, so that
+        // their windows line up with one another.
+        long nanos = 0L;
+        boolean haveNanos = false;
+        for(NodeTask task : tasks) {
+            for(Map.Entry<String, Accumulator> entry :
+                    task.inputs.entrySet()) {
+                Accumulator acc = entry.getValue();
+                long val;
+                if(acc instanceof TimeAwareAccumulator) {
+                    TimeAwareAccumulator timeAware = (TimeAwareAccumulator)acc;
+                    if(!haveNanos) {
+                        nanos = timeAware.nanos();
+                        haveNanos = true;
+                    }
+                    val = timeAware.get(nanos);
+                } else {
+                    val = acc.get();
+                }
+                task.values.put(entry.getKey(), val);
+            }
+        }
+
+        // Phase two: start the calculators a wave at a time, then wait for
+        // each of them until its deadline.
+        Set<String> stale = new HashSet<String>();
+        Set<String> seen = new HashSet<String>();
+        List<Evaluation> evaluations = new ArrayList<Evaluation>();
+        for(int wave=0; ; wave++) {
+            List<Evaluation> started = new ArrayList<Evaluation>();
+            for(NodeTask task : tasks) {
+                for(String name : task.wave(wave)) {
+                    Evaluation evaluation = start(task, name);
+                    seen.add(evaluation.path);
+                    started.add(evaluation);
+                }
+            }
+            if(started.isEmpty()) {
+                break;
+            }
+
+            for(Evaluation evaluation : started) {
+                evaluation.await(stale);
+                if(evaluation.hasValue) {
+                    evaluation.task.calculated.put(evaluation.name,
+                            evaluation.value);
+                }
+            }
+            evaluations.addAll(started);
+        }
+        prune(seen);
+
+        Map<String, Map<String, Object>> values =
+                new HashMap<String, Map<String, Object>>();
+        for(NodeTask task : tasks) {
+            values.put(task.node.getName(), task.results);
+        }
+        Set<String> reportedStale = new HashSet<String>();
+        for(Evaluation evaluation : evaluations) {
+            if(!evaluation.task.matched.contains(evaluation.name)) {
+                // Only evaluated as an input of a matched calculator
+                continue;
+            }
+            if(stale.contains(evaluation.path)) {
+                reportedStale.add(evaluation.path);
+            }
+            if(evaluation.hasValue) {
+                evaluation.task.results.put(evaluation.name,
+                        evaluation.value);
+            }
+        }
+        for(NodeTask task : tasks) {
+            // Accumulator values win over calculator values of the same
+            // name, as they do in RegistryNode.snapshot().
+            for(String name : task.node.getAccumulators().keySet()) {
+                Long value = task.values.get(name);
+                if(value != null) {
+                    task.results.put(name, value);
+                }
+            }
+        }
+
+        return new ParallelSnapshot(values, reportedStale);
+    }
+
+    /**
+     * Gets how long each {@link Calculator} has taken to evaluate, keyed on
+     * <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">member
+     * path</a>.  Only the calculators evaluated by the most recent snapshot,
+     * and any still running from an earlier one, are included, so that the
+     * costs of calculators that have gone away are not kept forever.
+     * @return How long each {@link Calculator} has taken to evaluate.
+     */
+    public Map<String, CalculatorCost> getCosts() {
+        Map<String, CalculatorCost> costs =
+                new HashMap<String, CalculatorCost>();
+        for(Map.Entry<String, CalculatorState> entry : states.entrySet()) {
+            costs.put(entry.getKey(), entry.getValue().getCost());
+        }
+        return costs;
+    }
+
+    private void prune(Set<String> seen) {
+        Iterator<Map.Entry<String, CalculatorState>> i =
+                states.entrySet().iterator();
+        while(i.hasNext()) {
+            Map.Entry<String, CalculatorState> entry = i.next();
+            if(!seen.contains(entry.getKey()) && !entry.getValue().isBusy()) {
+                i.remove();
+            }
+        }
+    }
+
+    private Evaluation start(NodeTask task, String name) {
+        String path = task.node.getName() + ":" + name;
+        CalculatorState state = states.get(path);
+        if(state == null) {
+            state = new CalculatorState();
+            CalculatorState existing = states.putIfAbsent(path, state);
+            if(existing != null) {
+                state = existing;
+            }
+        }
+
+        Evaluation evaluation = new Evaluation(task, name, path, state);
+        if(state.isBusy()) {
+            // Still busy with a previous snapshot
+            return evaluation;
+        }
+
+        Calculator calc = task.calculators.get(name);
+        Map<String, Object> calculated = null;
+        if(calc instanceof DependentCalculator) {
+            // A copy, as a calculator that overruns may still be reading it
+            // when the next wave's results are added.
+            calculated = Collections.unmodifiableMap(
+                    new HashMap<String, Object>(task.calculated));
+        }
+
+        evaluation.budgetNanos = budgetNanos;
+        evaluation.submitted = System.nanoTime();
+        evaluation.calculatorTask = new CalculatorTask(calc, task, calculated,
+                state);
+        evaluation.future = executor.submit(evaluation.calculatorTask);
+        state.running = evaluation.future;
+        return evaluation;
+    }
+
+    /**
+     * The accumulator values and calculators of a single node.
+     */
+    private static final class NodeTask {
+        final RegistryNode node;
+        final Map<String, Accumulator> inputs;
+        final Map<String, Calculator> calculators;
+        final Set<String> matched;
+        final Map<String, Long> values = new HashMap<String, Long>();
+        final Map<String, Object> calculated = new HashMap<String, Object>();
+        final Map<String, Object> results = new HashMap<String, Object>();
+
+        /**
+         * The names of the calculators to evaluate, by wave.
+         */
+        private final List<List<String>> waves = new ArrayList<List<String>>();
+
+        NodeTask(RegistryNode node) {
+            RegistryNode source = node instanceof GlobMatch
+                    ? ((GlobMatch)node).getNode() : node;
+            this.node = node;
+            this.inputs = source.getAccumulators();
+            this.calculators = new HashMap<String, Calculator>(
+                    source.getCalculators());
+            this.matched = node.getCalculators().keySet();
+
+            // A calculator runs in the wave after the last of its inputs.
+            // Inputs that come later in the graph's order close a cycle, and
+            // are ignored, just as the graph ignores them.
+            CalculatorGraph graph = new CalculatorGraph(calculators, matched);
+            Map<String, Integer> levels = new HashMap<String, Integer>();
+            for(String name : graph.getOrder()) {
+                int level = 0;
+                Calculator calc = calculators.get(name);
+                if(calc instanceof DependentCalculator) {
+                    String[] calcInputs =
+                            ((DependentCalculator)calc).getCalculatorInputs();
+                    if(calcInputs != null) {
+                        for(String input : calcInputs) {
+                            Integer inputLevel = levels.get(input);
+                            if(inputLevel != null) {
+                                level = Math.max(level, inputLevel + 1);
+                            }
+                        }
+                    }
+                }
+                levels.put(name, level);
+                while(waves.size() <= level) {
+                    waves.add(new ArrayList<String>());
+                }
+                waves.get(level).add(name);
+            }
+        }
+
+        List<String> wave(int wave) {
+            if(wave < waves.size()) {
+                return waves.get(wave);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Evaluates a single calculator, and records how long it took.
+     */
+    private static final class CalculatorTask implements Callable<Object> {
+        private final Calculator calc;
+        private final NodeTask task;
+        private final Map<String, Object> calculated;
+        private final CalculatorState state;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+
+        CalculatorTask(Calculator calc, NodeTask task,
+                Map<String, Object> calculated, CalculatorState state) {
+            this.calc = calc;
+            this.task = task;
+            this.calculated = calculated;
+            this.state = state;
+        }
+
+        public Object call() throws Exception {
+            long start = System.nanoTime();
+            startedAt = start;
+            started.countDown();
+            boolean failed = true;
+            try {
+                Object o;
+                if(calculated != null) {
+                    o = ((DependentCalculator)calc).calculate(task.values,
+                            task.inputs, calculated);
+                } else {
+                    o = calc.calculate(task.values, task.inputs);
+                }
+                failed = false;
+
+                // Even a late value is good for the next snapshot
+                state.lastGood = o;
+                state.hasGood = true;
+                return o;
+            } finally {
+                state.finished(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * A calculator's value in one snapshot.
+     */
+    private static final class Evaluation {
+        final NodeTask task;
+        final String name;
+        final String path;
+        final CalculatorState state;
+        CalculatorTask calculatorTask;
+        Future<Object> future;
+        long budgetNanos;
+        long submitted;
+        Object value;
+        boolean hasValue;
+
+        Evaluation(NodeTask task, String name, String path,
+                CalculatorState state) {
+            this.task = task;
+            this.name = name;
+            this.path = path;
+            this.state = state;
+        }
+
+        void await(Set<String> stale) {
+            if(future != null) {
+                try {
+                    // The budget only starts once the calculator is running,
+                    // but don't wait forever for a thread to run it on.
+                    if(!calculatorTask.started.await(Math.max(0L,
+                            submitted + budgetNanos - System.nanoTime()),
+                            TimeUnit.NANOSECONDS)) {
+                        throw new TimeoutException();
+                    }
+                    value = future.get(Math.max(0L,
+                            calculatorTask.startedAt + budgetNanos
+                            - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    hasValue = true;
+                    return;
+                } catch(TimeoutException e) {
+                    state.timedOut();
+                    log.warn("Calculator '{}' did not finish within its "
+                            + "budget; using its last good value.", path);
+                } catch(ExecutionException e) {
+                    log.error(String.format("Error executing calculator "
+                            + "named '%s'.", path), e.getCause());
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            value = state.lastGood;
+            hasValue = state.hasGood;
+            stale.add(path);
+        }
+    }
+
+    /**
+     * Everything remembered about a single calculator across snapshots.
+     */
+    private static final class CalculatorState {
+        volatile Object lastGood;
+        volatile boolean hasGood;
+        volatile Future<Object> running;
+        private long evaluations;
+        private long totalNanos;
+        private long lastNanos;
+        private long maxNanos;
+        private long timeouts;
+        private long failures;
+
+        boolean isBusy() {
+            Future<Object> f = running;
+            return f != null && !f.isDone();
+        }
+
+        synchronized void finished(long nanos, boolean failed) {
+            evaluations++;
+            totalNanos += nanos;
+            lastNanos = nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if(failed) {
+                failures++;
+            }
+        }
+
+        synchronized void timedOut() {
+            timeouts++;
+        }
+
+        synchronized CalculatorCost getCost() {
+            return new CalculatorCost(evaluations, totalNanos, lastNanos,
+                    maxNanos, timeouts, failures);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * {@code CheckpointFiles} moves a freshly-written checkpoint over the
+ * previous one.
+ * <p>
+ * This is the Java 11+ version, which replaces the previous checkpoint with
+ * a single atomic {@link Files#move} where the file system supports it.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class CheckpointFiles {
+
+    /**
+     * {@code CheckpointFiles} is a static helper class.
+     */
+    private CheckpointFiles() {
+    }
+
+    /**
+     * Gets the backup file left behind by the Java 5 version of this class.
+     * @param file The checkpoint file.
+     * @return The backup file for {@code file}.
+     */
+    static File backup(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    /**
+     * Gets the checkpoint file to read: {@code file} if it exists, otherwise
+     * its backup, if that exists.
+     * @param file The checkpoint file.
+     * @return The file to read, or {@code null} if there is none.
+     */
+    static File existing(File file) {
+        if(file.exists()) {
+            return file;
+        }
+        File backup = backup(file);
+        if(backup.exists()) {
+            return backup;
+        }
+        return null;
+    }
+
+    /**
+     * Moves {@code source} over {@code target}.
+     * @param source The newly-written checkpoint.
+     * @param target The checkpoint file to replace.
+     * @throws IOException If {@code source} could not be moved.
+     */
+    static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
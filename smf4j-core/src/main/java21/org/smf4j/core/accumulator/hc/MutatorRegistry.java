@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.hc;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.smf4j.Mutator;
+import org.smf4j.core.accumulator.MutatorFactory;
+
+/**
+ * This is the Java 21+ version, which is aware of virtual threads.
+ * <p>
+ * Binding a {@code Mutator} to every thread that writes works well for
+ * platform threads, but an application may run millions of short-lived
+ * virtual threads, and binding a {@code Mutator} to each of them would cost
+ * a {@code Mutator} (and a scan for a reusable one) per virtual thread.
+ * Instead, virtual threads share a fixed set of striped {@code Mutator}s,
+ * and writes to each stripe are serialized.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MutatorRegistry implements Iterable<Mutator>{
+    private final MutatorFactory mutatorFactory;
+    private final ConcurrentMap<WeakThreadRef, Registration> registrations
+            = new ConcurrentHashMap<WeakThreadRef, Registration>();
+    private final Object stripesLock = new Object();
+    private volatile VirtualStripe[] stripes;
+
+    public MutatorRegistry(MutatorFactory mutatorFactory) {
+        this.mutatorFactory = mutatorFactory;
+    }
+
+    public Mutator get() {
+        Thread currentThread = Thread.currentThread();
+        if(currentThread.isVirtual()) {
+            VirtualStripe[] s = stripes;
+            if(s == null) {
+                s = createStripes();
+            }
+            return s[(int)(currentThread.threadId() & (s.length - 1))];
+        }
+
+        // Our implementation of WeakThreadRef is such that instances of
+        // Thread (or a subclass) can be used to find it in the map.
+        @SuppressWarnings("element-type-mismatch")
+        Registration r = registrations.get(currentThread);
+        if(r != null) {
+            return r.mutator;
+        }
+
+        // We don't have a registration yet - let's scan for an existing one
+        // on a dead thread and attempt to acquire it.
+        WeakThreadRef key = null;
+        for(Map.Entry<WeakThreadRef, Registration> existing :
+                registrations.entrySet()) {
+            if(existing.getValue().acquire(currentThread)) {
+                key = existing.getKey();
+                r = existing.getValue();
+                break;
+            }
+        }
+
+        if(key != null) {
+            // We acquired a mutator from a dead thread, so we need to
+            // re-index it so we can find it again later!
+            registrations.remove(key, r);
+            key.reset(currentThread);
+        } else {
+            // We did not acquire a mutator from a dead thread, so we need
+            // to create a new one.
+            Mutator mutator = mutatorFactory.createMutator();
+            r = new Registration(currentThread, mutator);
+            key = new WeakThreadRef(currentThread);
+        }
+
+        // Re-register under this new thread.
+        registrations.put(key, r);
+
+        return r.mutator;
+    }
+
+    /**
+     * Merges checkpointed state into the {@code Mutator} the calling thread
+     * writes to.
+     * @param state State previously captured by a checkpoint.
+     * @param nanosAgo How long ago, in nanoseconds, {@code state} was
+     *                 captured.
+     */
+    public void restore(long[] state, long nanosAgo) {
+        Mutator mutator = get();
+        if(mutator instanceof VirtualStripe) {
+            // Serialize with the other virtual threads writing to this stripe
+            VirtualStripe stripe = (VirtualStripe)mutator;
+            synchronized(stripe) {
+                restore(stripe.mutator, state, nanosAgo);
+            }
+        } else {
+            restore(mutator, state, nanosAgo);
+        }
+    }
+
+    private static void restore(Mutator mutator, long[] state,
+            long nanosAgo) {
+        if(mutator instanceof AbstractWindowedMutator) {
+            ((AbstractWindowedMutator)mutator).restore(state, nanosAgo);
+        } else {
+            mutator.put(state[0]);
+        }
+    }
+
+    /**
+     * Frees the storage of every windowed {@code Mutator} that has not been
+     * written to for at least {@code idleWindows} time windows, and forgets
+     * released {@code Mutator}s whose threads have died.
+     * @param nanos The current time.
+     * @param idleWindows The number of time windows that must have passed
+     *                    since a {@code Mutator} was last written to.
+     * @return The number of {@code Mutator}s released by this call.
+     */
+    public int releaseIdle(long nanos, int idleWindows) {
+        int released = 0;
+        for(Map.Entry<WeakThreadRef, Registration> entry :
+                registrations.entrySet()) {
+            Registration r = entry.getValue();
+            if(!(r.mutator instanceof AbstractWindowedMutator)) {
+                continue;
+            }
+
+            AbstractWindowedMutator windowed =
+                    (AbstractWindowedMutator)r.mutator;
+            if(windowed.release(nanos, idleWindows)) {
+                released++;
+            }
+
+            // A released mutator holds no state, so there's no need to keep
+            // it around for a dead thread.
+            if(windowed.isReleased() && r.retire()) {
+                registrations.remove(entry.getKey(), r);
+            }
+        }
+
+        VirtualStripe[] s = stripes;
+        if(s != null) {
+            for(VirtualStripe stripe : s) {
+                if(stripe.mutator instanceof AbstractWindowedMutator
+                        && ((AbstractWindowedMutator)stripe.mutator).release(
+                        nanos, idleWindows)) {
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    private VirtualStripe[] createStripes() {
+        synchronized(stripesLock) {
+            VirtualStripe[] s = stripes;
+            if(s == null) {
+                int count = Integer.highestOneBit(
+                        Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+                s = new VirtualStripe[count];
+                for(int i=0; i<count; i++) {
+                    s[i] = new VirtualStripe(mutatorFactory.createMutator());
+                }
+                stripes = s;
+            }
+            return s;
+        }
+    }
+
+    public Iterator<Mutator> iterator() {
+        VirtualStripe[] s = stripes;
+        if(s == null) {
+            return new Iter(registrations.values());
+        }
+
+        List<Mutator> all = new ArrayList<Mutator>(
+                registrations.size() + s.length);
+        for(Registration r : registrations.values()) {
+            all.add(r.mutator);
+        }
+        for(VirtualStripe stripe : s) {
+            all.add(stripe.mutator);
+        }
+        return all.iterator();
+    }
+
+    private static final class WeakThreadRef {
+        private WeakReference<Thread> threadRef;
+        private int hash;
+
+        WeakThreadRef(Thread thread) {
+            reset(thread);
+        }
+
+        void reset(Thread thread) {
+            if(thread == null) {
+                throw new NullPointerException();
+            }
+            threadRef = new WeakReference<Thread>(thread);
+            hash = thread.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if(obj == this) {
+                return true;
+            }
+
+            if(obj instanceof Thread) {
+                Thread other = (Thread)obj;
+                return threadRef.get() == other;
+            }
+
+            return false;
+        }
+    }
+
+    private static final class Registration {
+        private volatile WeakReference<Thread> threadRef;
+        private final Mutator mutator;
+        private final AtomicBoolean available;
+
+        private Registration(Thread thread, Mutator mutator) {
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.mutator = mutator;
+            this.available = new AtomicBoolean(false);
+        }
+
+        private boolean acquire(Thread thread) {
+            // Check to see which Thread currently owns this.
+            Thread cur = threadRef.get();
+            if(cur == thread) {
+                // It's already acquired by the current thread.
+                return true;
+            }
+
+            // Check on the status of the currently-owning Thread.
+            if(cur != null && cur.isAlive()) {
+                // It's currently owned by another thread that is still alive.
+                return false;
+            }
+
+            // Try to force this into an 'available' state.  The thread that
+            // successfully sets 'available' from false to true will then
+            // continue on below to acquire this guy, and then set 'available'
+            // back to false.
+            if(!available.compareAndSet(false, true)) {
+                // We did not win the race - somebody else beat the current
+                // thread to acquiring this guy.
+                return false;
+            }
+
+            // The current thread has successfully acquired this, so record it
+            // as such.
+            this.threadRef = new WeakReference<Thread>(thread);
+            this.available.set(false);
+            return true;
+        }
+
+        private boolean retire() {
+            Thread cur = threadRef.get();
+            if(cur != null && cur.isAlive()) {
+                return false;
+            }
+
+            // Leave 'available' set once we've won it, so that no other
+            // thread can acquire this again.
+            if(!available.compareAndSet(false, true)) {
+                return false;
+            }
+
+            // Make sure a live thread didn't acquire this between our
+            // liveness check and winning 'available'.
+            cur = threadRef.get();
+            if(cur != null && cur.isAlive()) {
+                available.set(false);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A {@code Mutator} shared by many virtual threads, whose writes are
+     * serialized.  Writes are short and never block, so holding a monitor
+     * here never pins a carrier thread for long.
+     */
+    private static final class VirtualStripe implements Mutator {
+        private final Mutator mutator;
+
+        VirtualStripe(Mutator mutator) {
+            this.mutator = mutator;
+        }
+
+        public void put(long delta) {
+            synchronized(this) {
+                mutator.put(delta);
+            }
+        }
+
+        public long combine(long other) {
+            return mutator.combine(other);
+        }
+
+        public long get() {
+            return mutator.get();
+        }
+    }
+
+    private static final class Iter implements Iterator<Mutator> {
+        private final Iterator<Registration> inner;
+
+        Iter(Collection<Registration> inner) {
+            this.inner = inner.iterator();
+        }
+
+        public boolean hasNext() {
+            return inner.hasNext();
+        }
+
+        public Mutator next() {
+            return inner.next().mutator;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
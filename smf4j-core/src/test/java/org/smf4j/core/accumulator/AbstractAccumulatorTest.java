@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class AbstractAccumulatorTest {
+
+    private Registrar registrar;
+    private RegistryNode node;
+    private HighContentionAccumulator acc;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(false);
+        registrar = RegistrarFactory.getRegistrar();
+        node = registrar.getNode("a.b");
+        acc = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+    }
+
+    @Test
+    public void followsNodeLazily() {
+        node.register("acc", acc);
+        assertFalse(acc.isOn());
+        assertSame(NopMutator.INSTANCE, acc.getMutator());
+
+        registrar.getRootNode().setOn(true);
+        assertTrue(acc.isOn());
+        acc.getMutator().put(3);
+        assertEquals(3L, acc.get());
+
+        registrar.setOn("a", false);
+        assertFalse(acc.isOn());
+        registrar.clearOn("a");
+        assertTrue(acc.isOn());
+    }
+
+    @Test
+    public void setOnOverridesUntilNextChange() {
+        registrar.getRootNode().setOn(true);
+        node.register("acc", acc);
+        acc.setOn(false);
+        assertFalse(acc.isOn());
+
+        // Other nodes changing state leave the override alone
+        registrar.getNode("x.y").setOn(false);
+        assertFalse(acc.isOn());
+        registrar.getNode("a.c").setOn(true);
+        assertFalse(acc.isOn());
+
+        // Our node changing state ends it
+        node.setOn(false);
+        assertFalse(acc.isOn());
+        node.setOn(true);
+        assertTrue(acc.isOn());
+    }
+
+    @Test
+    public void unbindKeepsState() {
+        registrar.getRootNode().setOn(true);
+        node.register("acc", acc);
+        assertTrue(acc.isOn());
+
+        node.unregister("acc", acc);
+        registrar.getRootNode().setOn(false);
+        assertTrue(acc.isOn());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Mutator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedMaxMutator;
+import org.smf4j.core.accumulator.lc.LowContentionAccumulator;
+
+import static org.junit.Assert.*;
+import static org.smf4j.core.accumulator.TestUtils.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class FlightRecorderTest {
+
+    private TestingTimeReporter timeReporter;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        timeReporter = new TestingTimeReporter();
+    }
+
+    @Test
+    public void keepsLastEvents() {
+        FlightRecorder recorder = new FlightRecorder(3, timeReporter);
+        Mutator m = recorder.wrap(
+                new org.smf4j.core.accumulator.lc.UnboundedAddMutator());
+        for(int i=1; i<=5; i++) {
+            timeReporter.set(timenanos(i));
+            m.put(i * 10);
+        }
+
+        List<RecordedEvent> events = recorder.getRecordedEvents();
+        assertEquals(3, events.size());
+        for(int i=0; i<3; i++) {
+            assertEquals(timenanos(i + 3), events.get(i).getNanos());
+            assertEquals((i + 3) * 10L, events.get(i).getValue());
+            assertEquals(Thread.currentThread().getName(),
+                    events.get(i).getThreadName());
+        }
+        assertEquals(150L, m.get());
+    }
+
+    @Test
+    public void notRecordingByDefault() {
+        HighContentionAccumulator acc = new HighContentionAccumulator(
+                UnboundedMaxMutator.MUTATOR_FACTORY);
+        acc.setOn(true);
+        acc.getMutator().put(5);
+        assertFalse(acc.isRecording());
+        assertTrue(acc.getRecordedEvents().isEmpty());
+
+        acc.startRecording(10);
+        acc.getMutator().put(7);
+        assertEquals(1, acc.getRecordedEvents().size());
+        assertEquals(7L, acc.get());
+
+        acc.stopRecording();
+        assertTrue(acc.getRecordedEvents().isEmpty());
+    }
+
+    @Test
+    public void registrarDump() {
+        Registrar r = RegistrarFactory.getRegistrar();
+        HighContentionAccumulator recording = new HighContentionAccumulator(
+                UnboundedMaxMutator.MUTATOR_FACTORY);
+        LowContentionAccumulator idle = new LowContentionAccumulator(
+                org.smf4j.core.accumulator.lc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        r.getNode("a.b").register("recording", recording);
+        r.getNode("a.b").register("idle", idle);
+
+        recording.startRecording(4);
+        recording.getMutator().put(42);
+
+        Map<String, List<RecordedEvent>> dump = r.getRecordedEvents("a.b");
+        assertEquals(1, dump.size());
+        assertEquals(42L, dump.get("a.b:recording").get(0).getValue());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.IdleAwareAccumulator;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.MutatorRegistry;
+import org.smf4j.core.accumulator.hc.UnboundedMaxMutator;
+import org.smf4j.core.accumulator.hc.WindowedAddMutator;
+import org.smf4j.core.accumulator.lc.LowContentionAccumulator;
+
+import static org.junit.Assert.*;
+import static org.smf4j.core.accumulator.TestUtils.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class IdleSweeperTest {
+
+    private TestingTimeReporter timeReporter;
+    private IntervalStrategy strategy;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        timeReporter = new TestingTimeReporter();
+        strategy = new SecondsIntervalStrategy(5, 5);
+    }
+
+    @Test
+    public void releasesOnlyIdleStorage() {
+        WindowedAddMutator mutator = new WindowedAddMutator(strategy,
+                timeReporter);
+        timeReporter.set(timenanos(0));
+        mutator.put(1);
+
+        timeReporter.set(timenanos(3));
+        assertFalse(mutator.release(timeReporter.nanos(), 1));
+        assertFalse(mutator.isReleased());
+        assertEquals(1L, mutator.get());
+
+        // One full window (plus buffer) later, every bucket is stale
+        timeReporter.set(timenanos(8));
+        assertFalse(mutator.release(timeReporter.nanos(), 2));
+        assertTrue(mutator.release(timeReporter.nanos(), 1));
+        assertTrue(mutator.isReleased());
+        assertFalse(mutator.release(timeReporter.nanos(), 1));
+        assertEquals(0L, mutator.get());
+        assertEquals(0L, mutator.buckets(timeReporter.nanos())[0]);
+
+        // Storage comes back on the next write
+        mutator.put(5);
+        assertFalse(mutator.isReleased());
+        timeReporter.set(timenanos(10));
+        assertEquals(5L, mutator.get());
+    }
+
+    @Test
+    public void updateStamps() {
+        HighContentionAccumulator hcAdd = new HighContentionAccumulator(
+                org.smf4j.core.accumulator.hc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        LowContentionAccumulator lcAdd = new LowContentionAccumulator(
+                org.smf4j.core.accumulator.lc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        hcAdd.setOn(true);
+        lcAdd.setOn(true);
+        for(IdleAwareAccumulator acc : new IdleAwareAccumulator[] {
+                hcAdd, lcAdd}) {
+            long stamp = acc.getUpdateStamp();
+            assertEquals(stamp, acc.getUpdateStamp());
+            acc.getMutator().put(3);
+            assertTrue(stamp != acc.getUpdateStamp());
+        }
+
+        // A maximum can be updated without changing, so it can't tell
+        HighContentionAccumulator hcMax = new HighContentionAccumulator(
+                UnboundedMaxMutator.MUTATOR_FACTORY);
+        LowContentionAccumulator lcWindowed = new LowContentionAccumulator(
+                new org.smf4j.core.accumulator.lc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        for(IdleAwareAccumulator acc : new IdleAwareAccumulator[] {
+                hcMax, lcWindowed}) {
+            assertTrue(acc.getUpdateStamp() != acc.getUpdateStamp());
+        }
+    }
+
+    @Test
+    public void forgetsReleasedMutatorsOfDeadThreads() throws Exception {
+        final MutatorRegistry registry = new MutatorRegistry(
+                new WindowedAddMutator.Factory(strategy, timeReporter));
+        timeReporter.set(timenanos(0));
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                registry.get().put(1);
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals(1, count(registry));
+
+        timeReporter.set(timenanos(8));
+        assertEquals(1, registry.releaseIdle(timeReporter.nanos(), 1));
+        assertEquals(0, count(registry));
+        assertEquals(0, registry.releaseIdle(timeReporter.nanos(), 1));
+
+        // A live thread's released mutator is kept, and re-inflated on use
+        registry.get().put(2);
+        timeReporter.set(timenanos(16));
+        assertEquals(1, registry.releaseIdle(timeReporter.nanos(), 1));
+        assertEquals(1, count(registry));
+        registry.get().put(3);
+        timeReporter.set(timenanos(18));
+        assertEquals(3L, registry.iterator().next().get());
+    }
+
+    @Test
+    public void sweepsRegistrar() {
+        Registrar r = RegistrarFactory.getRegistrar();
+        HighContentionAccumulator hc = new HighContentionAccumulator(
+                new WindowedAddMutator.Factory(strategy, timeReporter));
+        LowContentionAccumulator lc = new LowContentionAccumulator(
+                new org.smf4j.core.accumulator.lc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        HighContentionAccumulator unbounded = new HighContentionAccumulator(
+                org.smf4j.core.accumulator.hc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        r.getNode("a").register("hc", hc);
+        r.getNode("a.b").register("lc", lc);
+        r.getNode("a.b").register("unbounded", unbounded);
+        hc.setOn(true);
+        lc.setOn(true);
+        unbounded.setOn(true);
+
+        timeReporter.set(timenanos(0));
+        hc.getMutator().put(1);
+        lc.getMutator().put(1);
+        unbounded.getMutator().put(1);
+
+        IdleSweeper sweeper = new IdleSweeper(r, 1);
+        timeReporter.set(timenanos(3));
+        assertEquals(0, sweeper.sweep());
+        assertEquals(1L, hc.get());
+
+        timeReporter.set(timenanos(8));
+        assertEquals(2, sweeper.sweep());
+        assertEquals(0L, hc.get());
+        assertEquals(0L, lc.get());
+        assertEquals(1L, unbounded.get());
+
+        hc.getMutator().put(3);
+        lc.getMutator().put(4);
+        timeReporter.set(timenanos(10));
+        assertEquals(3L, hc.get());
+        assertEquals(4L, lc.get());
+    }
+
+    private static int count(MutatorRegistry registry) {
+        int count = 0;
+        for(Mutator m : registry) {
+            count++;
+        }
+        return count;
+    }
+}
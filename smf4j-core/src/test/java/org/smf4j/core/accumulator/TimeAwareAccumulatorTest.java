@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.lc.LowContentionAccumulator;
+
+import static org.junit.Assert.*;
+import static org.smf4j.core.accumulator.TestUtils.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class TimeAwareAccumulatorTest {
+
+    private TestingTimeReporter timeReporter;
+    private IntervalStrategy strategy;
+
+    @Before
+    public void before() {
+        timeReporter = new TestingTimeReporter();
+        strategy = new SecondsIntervalStrategy(5, 5);
+    }
+
+    @Test
+    public void hcUsesGivenInstant() {
+        HighContentionAccumulator acc = new HighContentionAccumulator(
+                new org.smf4j.core.accumulator.hc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        acc.setOn(true);
+        checkUsesGivenInstant(acc);
+    }
+
+    @Test
+    public void lcUsesGivenInstant() {
+        LowContentionAccumulator acc = new LowContentionAccumulator(
+                new org.smf4j.core.accumulator.lc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        acc.setOn(true);
+        checkUsesGivenInstant(acc);
+    }
+
+    @Test
+    public void unboundedIgnoresInstant() {
+        HighContentionAccumulator acc = new HighContentionAccumulator(
+                org.smf4j.core.accumulator.hc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        acc.setOn(true);
+        acc.getMutator().put(5);
+        assertEquals(5L, acc.get(timenanos(100)));
+        assertEquals(acc.get(), acc.get(acc.nanos()));
+    }
+
+    private void checkUsesGivenInstant(TimeAwareAccumulator acc) {
+        timeReporter.set(timenanos(0));
+        acc.getMutator().put(1);
+        timeReporter.set(timenanos(1));
+        acc.getMutator().put(2);
+
+        timeReporter.set(timenanos(3));
+        assertEquals(timenanos(3), acc.nanos());
+        assertEquals(acc.get(), acc.get(acc.nanos()));
+        assertEquals(3L, acc.get(timenanos(3)));
+
+        // Evaluating at an instant other than 'now' must not consult the
+        // clock at all.
+        assertEquals(1L, acc.get(timenanos(2)));
+        assertEquals(0L, acc.get(timenanos(20)));
+    }
+}
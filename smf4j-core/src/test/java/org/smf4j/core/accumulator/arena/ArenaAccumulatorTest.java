@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.arena;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class ArenaAccumulatorTest {
+
+    private ArenaGroup group;
+    private RegistryNode node;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        Registrar r = RegistrarFactory.getRegistrar();
+        node = r.getNode("arena");
+        group = new ArenaGroup();
+    }
+
+    @Test
+    public void slotAssignedAtRegistration() {
+        ArenaAccumulator a = new ArenaAccumulator(group);
+        ArenaAccumulator b = new ArenaAccumulator(group);
+        assertEquals(-1, a.getSlot());
+        assertSame(NopMutator.INSTANCE, a.getMutator());
+
+        node.register("a", a);
+        node.register("b", b);
+        assertEquals(0, a.getSlot());
+        assertEquals(1, b.getSlot());
+        assertEquals(2, group.slotCount());
+
+        // Re-registering doesn't allocate a new slot
+        node.unregister("a", a);
+        node.register("a2", a);
+        assertEquals(0, a.getSlot());
+    }
+
+    @Test
+    public void sumsAcrossThreads() throws Exception {
+        final ArenaAccumulator a = new ArenaAccumulator(group);
+        final ArenaAccumulator b = new ArenaAccumulator(group);
+        node.register("a", a);
+        node.register("b", b);
+
+        Thread[] threads = new Thread[4];
+        for(int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0; j<1000; j++) {
+                        a.getMutator().put(1);
+                        b.getMutator().put(2);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(4000L, a.get());
+        assertEquals(8000L, b.get());
+        assertArrayEquals(new long[] {4000L, 8000L}, group.snapshot());
+    }
+
+    @Test
+    public void slabGrowsForLateSlots() {
+        ArenaAccumulator first = new ArenaAccumulator(group);
+        node.register("first", first);
+        first.getMutator().put(1);
+
+        ArenaAccumulator last = null;
+        for(int i=0; i<100; i++) {
+            last = new ArenaAccumulator(group);
+            node.register("late" + i, last);
+        }
+        last.getMutator().put(5);
+
+        assertEquals(1L, first.get());
+        assertEquals(5L, last.get());
+    }
+
+    @Test
+    public void offMeansNop() {
+        ArenaAccumulator a = new ArenaAccumulator(group);
+        node.register("a", a);
+        a.setOn(false);
+        assertSame(NopMutator.INSTANCE, a.getMutator());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.family;
+
+import org.junit.Test;
+import org.smf4j.Mutator;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class CounterFamilyTest {
+
+    @Test
+    public void entriesByLabel() {
+        CounterFamily f = new CounterFamily("code", "region");
+        assertSame(NopMutator.INSTANCE, f.getMutator("200", "eu"));
+        assertEquals(0, f.size());
+
+        f.setOn(true);
+        Mutator ok = f.getMutator("200", "eu");
+        ok.put(2L);
+        f.getMutator("500", "eu").put(1L);
+        f.getMutator(new String[] {"200", "eu"}).put(3L);
+        assertEquals(5L, ok.get());
+
+        assertEquals(2, f.size());
+        assertArrayEquals(new String[] {"200", "eu"}, f.getLabelValues(0));
+        assertArrayEquals(new String[] {"500", "eu"}, f.getLabelValues(1));
+        assertEquals(5L, f.get(0));
+        assertEquals(1L, f.get(1));
+        assertEquals(6L, f.get());
+    }
+
+    @Test
+    public void overflow() {
+        CounterFamily f = new CounterFamily(2, "tenant");
+        f.setOn(true);
+        f.getMutator("a").put(1L);
+        f.getMutator("b").put(1L);
+        f.getMutator("c").put(1L);
+        f.getMutator("d").put(1L);
+        f.getMutator("a").put(1L);
+
+        assertEquals(3, f.size());
+        assertArrayEquals(new String[] {CounterFamily.OVERFLOW_LABEL},
+                f.getLabelValues(2));
+        assertEquals(2L, f.get(0));
+        assertEquals(1L, f.get(1));
+        assertEquals(2L, f.get(2));
+        assertEquals(5L, f.get());
+    }
+
+    @Test
+    public void unlabeledWritesHaveTheirOwnEntry() {
+        CounterFamily f = new CounterFamily(2, "tenant");
+        f.setOn(true);
+        f.getMutator().put(1L);
+        f.getMutator("a").put(1L);
+        f.getMutator("b").put(1L);
+        f.getMutator("c").put(1L);
+        f.getMutator().put(1L);
+
+        // The unlabeled entry neither counts towards the cap, nor is it
+        // mixed up with the overflow entry
+        assertEquals(4, f.size());
+        assertArrayEquals(new String[] {CounterFamily.UNLABELED_LABEL},
+                f.getLabelValues(0));
+        assertEquals(2L, f.get(0));
+        assertArrayEquals(new String[] {"a"}, f.getLabelValues(1));
+        assertArrayEquals(new String[] {"b"}, f.getLabelValues(2));
+        assertArrayEquals(new String[] {CounterFamily.OVERFLOW_LABEL},
+                f.getLabelValues(3));
+        assertEquals(1L, f.get(3));
+
+        // A label that reads like the unlabeled entry is a label like any
+        // other
+        CounterFamily g = new CounterFamily(2, "tenant");
+        g.setOn(true);
+        g.getMutator().put(1L);
+        g.getMutator(CounterFamily.UNLABELED_LABEL).put(2L);
+        assertEquals(2, g.size());
+        assertEquals(1L, g.get(0));
+        assertEquals(2L, g.get(1));
+    }
+
+    @Test
+    public void growsToTheCap() {
+        CounterFamily f = new CounterFamily(100, "key");
+        f.setOn(true);
+        for(int i=0; i<150; i++) {
+            f.getMutator(Integer.toString(i)).put(i);
+        }
+
+        // Entries written before each grow are still found afterwards
+        assertEquals(101, f.size());
+        for(int i=0; i<100; i++) {
+            assertArrayEquals(new String[] {Integer.toString(i)},
+                    f.getLabelValues(i));
+            assertEquals(i, f.get(i));
+            assertEquals((long)i,
+                    f.getMutator(Integer.toString(i)).get());
+        }
+        assertEquals(6225L, f.get(100));
+    }
+
+    @Test
+    public void mutatorsAreCached() {
+        CounterFamily f = new CounterFamily("key");
+        f.setOn(true);
+        assertSame(f.getMutator("a"), f.getMutator("a"));
+        assertSame(f.getMutator(), f.getMutator());
+        assertNotSame(f.getMutator("a"), f.getMutator("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongLabelCount() {
+        new CounterFamily("code", "region").getMutator("200");
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        final CounterFamily f = new CounterFamily(64, "key");
+        f.setOn(true);
+        Thread[] threads = new Thread[4];
+        for(int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0; j<10000; j++) {
+                        f.getMutator(Integer.toString(j % 100)).put(1L);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(65, f.size());
+        assertEquals(40000L, f.get());
+        for(int i=0; i<64; i++) {
+            assertEquals(400L, f.get(i));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.hc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.core.accumulator.SecondsIntervalStrategy;
+import org.smf4j.core.accumulator.TestingTimeReporter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises {@link HighContentionAccumulator} from virtual threads.
+ * <p>
+ * This is an integration test so that it runs against the packaged
+ * multi-release jar, where the Java 21 {@link MutatorRegistry} is the one
+ * that gets loaded.  It is skipped on JVMs without virtual threads.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class VirtualThreadsIT {
+
+    private static final long A_BILLION = 1000000000L;
+
+    private TestingTimeReporter timeReporter;
+    private HighContentionAccumulator windowed;
+
+    @Before
+    public void before() {
+        timeReporter = new TestingTimeReporter();
+        timeReporter.set(midsecond(0));
+        windowed = new HighContentionAccumulator(
+                new WindowedAddMutator.Factory(
+                new SecondsIntervalStrategy(5, 5), timeReporter));
+        windowed.setOn(true);
+    }
+
+    @Test
+    public void windowedFromVirtualThreads() throws Exception {
+        run(new Runnable() {
+            public void run() {
+                windowed.getMutator().put(1);
+            }
+        }, 1000);
+
+        timeReporter.set(midsecond(2));
+        assertEquals(1000L, windowed.get());
+        assertEquals(1000L, windowed.get(timeReporter.nanos()));
+
+        final long[] state = windowed.checkpoint();
+        long total = 0L;
+        for(long l : state) {
+            total += l;
+        }
+        assertEquals(1000L, total);
+
+        // Restoring from a virtual thread must restore every interval
+        final HighContentionAccumulator restored =
+                new HighContentionAccumulator(new WindowedAddMutator.Factory(
+                new SecondsIntervalStrategy(5, 5), timeReporter));
+        restored.setOn(true);
+        run(new Runnable() {
+            public void run() {
+                restored.restore(state, 0L);
+            }
+        }, 1);
+        assertEquals(1000L, restored.get());
+
+        // Stripes that were never written to are idle, but the restored
+        // intervals are not
+        restored.releaseIdle(1);
+        assertEquals(1000L, restored.get());
+    }
+
+    private static void run(Runnable task, int times) throws Exception {
+        Method factory;
+        try {
+            factory = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+        } catch(NoSuchMethodException e) {
+            factory = null;
+        }
+        Assume.assumeNotNull(factory);
+
+        ExecutorService executor = (ExecutorService)factory.invoke(null);
+        try {
+            for(int i=0; i<times; i++) {
+                executor.submit(task);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static long midsecond(int seconds) {
+        return (A_BILLION * 10) + ((long)seconds * A_BILLION)
+                + (A_BILLION / 2);
+    }
+}
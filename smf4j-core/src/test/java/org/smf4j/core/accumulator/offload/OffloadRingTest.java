@@ -0,0 +1,231 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class OffloadRingTest {
+
+    private OffloadRing ring;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+    }
+
+    @After
+    public void after() throws Exception {
+        if(ring != null) {
+            ring.shutdown();
+        }
+    }
+
+    @Test
+    public void appliesOnConsumer() throws Exception {
+        ring = new OffloadRing(1024, WaitStrategies.YIELDING,
+                OverflowPolicy.BLOCK);
+        final HighContentionAccumulator hca = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+        hca.setOn(true);
+        final OffloadedAccumulator acc = new OffloadedAccumulator(hca, ring);
+
+        Thread[] threads = new Thread[4];
+        for(int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    Mutator m = acc.getMutator();
+                    for(int j=0; j<10000; j++) {
+                        m.put(1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(40000L, acc.get());
+        assertEquals(0L, ring.getDropped());
+        assertEquals(0L, ring.getPending());
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        ring = new OffloadRing(4, WaitStrategies.PARKING, OverflowPolicy.DROP);
+        BlockingAccumulator blocking = new BlockingAccumulator();
+        OffloadedAccumulator acc = new OffloadedAccumulator(blocking, ring);
+
+        // The first event blocks the consumer while it still occupies its
+        // slot, so the next three fill the ring.
+        Mutator m = acc.getMutator();
+        try {
+            m.put(1);
+            blocking.applying.await();
+            for(int i=0; i<3; i++) {
+                m.put(1);
+            }
+            m.put(1);
+            m.put(1);
+
+            assertEquals(2L, ring.getDropped());
+        } finally {
+            blocking.release.countDown();
+        }
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(4L, blocking.value);
+    }
+
+    @Test
+    public void dropsAfterShutdown() throws Exception {
+        ring = new OffloadRing(16, WaitStrategies.YIELDING,
+                OverflowPolicy.BLOCK);
+        HighContentionAccumulator hca = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+        hca.setOn(true);
+        OffloadedAccumulator acc = new OffloadedAccumulator(hca, ring);
+        Mutator m = acc.getMutator();
+        m.put(1);
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+
+        ring.shutdown();
+        assertFalse(ring.publish(0, 1L));
+        assertEquals(1L, ring.getDropped());
+        assertEquals(0L, ring.getPending());
+        assertTrue(ring.drain(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void offloadAllWrapsRegistered() throws Exception {
+        ring = new OffloadRing();
+        Registrar r = RegistrarFactory.getRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        HighContentionAccumulator hca = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+        node.register("count", hca);
+        ring.registerCounters(r.getNode("offload"));
+
+        ring.offloadAll(r);
+
+        Accumulator acc = node.getAccumulator("count");
+        assertTrue(acc instanceof OffloadedAccumulator);
+        assertSame(hca, ((OffloadedAccumulator)acc).getDelegate());
+        assertFalse(r.getNode("offload").getAccumulator("dropped")
+                instanceof OffloadedAccumulator);
+
+        acc.getMutator().put(3);
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(3L, hca.get());
+
+        node.setOn(false);
+        assertSame(NopMutator.INSTANCE, acc.getMutator());
+    }
+
+    @Test
+    public void unregisteringDetaches() throws Exception {
+        ring = new OffloadRing(16, WaitStrategies.YIELDING,
+                OverflowPolicy.BLOCK);
+        Registrar r = RegistrarFactory.getRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        HighContentionAccumulator hca = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+        node.register("count", hca);
+        ring.offload(node);
+        OffloadedAccumulator acc =
+                (OffloadedAccumulator)node.getAccumulator("count");
+
+        // Writes made once it is unregistered go nowhere
+        Mutator m = acc.getMutator();
+        assertTrue(node.unregister("count", acc));
+        m.put(3);
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(0L, hca.get());
+
+        // ... until it is registered again
+        node.register("count", acc);
+        acc.getMutator().put(4);
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(4L, hca.get());
+
+        // Events for a detached id are dropped
+        int id = ring.attach(hca);
+        ring.detach(id);
+        assertTrue(ring.publish(id, 5));
+        assertTrue(ring.drain(10, TimeUnit.SECONDS));
+        assertEquals(4L, hca.get());
+        assertEquals(1L, ring.getDropped());
+    }
+
+    private static final class BlockingAccumulator extends AbstractAccumulator
+            implements Mutator {
+        final CountDownLatch applying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile long value;
+
+        BlockingAccumulator() {
+            setOn(true);
+        }
+
+        public void put(long delta) {
+            applying.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            value += delta;
+        }
+
+        public long combine(long other) {
+            return value + other;
+        }
+
+        public Mutator getMutator() {
+            return this;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.offload;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class WaitStrategiesTest {
+
+    @Test
+    public void everyStageReturns() {
+        // Past the spinning, yielding and (for PARKING) parking stages
+        for(WaitStrategies strategy : WaitStrategies.values()) {
+            for(int attempt=0; attempt<500; attempt++) {
+                strategy.idle(attempt);
+            }
+        }
+    }
+
+    @Test
+    public void ringMakesProgress() throws Exception {
+        for(WaitStrategies strategy : WaitStrategies.values()) {
+            OffloadRing ring = new OffloadRing(8, strategy,
+                    OverflowPolicy.BLOCK);
+            try {
+                HighContentionAccumulator hca = new HighContentionAccumulator(
+                        UnboundedAddMutator.MUTATOR_FACTORY);
+                hca.setOn(true);
+                OffloadedAccumulator acc = new OffloadedAccumulator(hca, ring);
+
+                // More events than slots, so producers wait for space too
+                for(int i=0; i<100; i++) {
+                    acc.getMutator().put(1);
+                }
+                assertTrue(strategy.name(),
+                        ring.drain(10, TimeUnit.SECONDS));
+                assertEquals(strategy.name(), 100L, hca.get());
+            } finally {
+                ring.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.accumulator.rollup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.arena.ArenaAccumulator;
+import org.smf4j.core.accumulator.arena.ArenaGroup;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class RollupAccumulatorTest {
+
+    private Registrar r;
+    private ArenaGroup group;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        r = RegistrarFactory.getRegistrar();
+        group = new ArenaGroup();
+    }
+
+    @Test
+    public void absolutePattern() {
+        assertEquals("*:a", RollupAccumulator.absolutePattern("", "*:a"));
+        assertEquals("web.*:requests",
+                RollupAccumulator.absolutePattern("web", "*:requests"));
+        assertEquals("web.a.**,web.b:x,y",
+                RollupAccumulator.absolutePattern("web", "a.**,b:x,y"));
+        assertEquals("web:x", RollupAccumulator.absolutePattern("web", ":x"));
+    }
+
+    @Test
+    public void rollsUpChildren()
+    throws Exception {
+        RollupAccumulator sum = new RollupAccumulator(r, "*:requests",
+                RollupOperation.SUM);
+        RollupAccumulator max = new RollupAccumulator(r, "*:requests",
+                RollupOperation.MAX);
+        assertEquals(0L, sum.get());
+
+        RegistryNode web = r.getNode("web");
+        web.register("requests", sum);
+        web.register("max", max);
+        assertSame(NopMutator.INSTANCE, sum.getMutator());
+
+        put(r.getNode("web.a"), "requests", 3L);
+        put(r.getNode("web.b"), "requests", 4L);
+        put(r.getNode("web.b"), "other", 100L);
+        put(r.getNode("api"), "requests", 100L);
+        awaitMembers(sum, 2);
+        awaitMembers(max, 2);
+        assertEquals(7L, sum.get());
+        assertEquals(4L, max.get());
+
+        // Members come and go with the registry
+        put(r.getNode("web.c"), "requests", 5L);
+        awaitMembers(sum, 3);
+        assertEquals(12L, sum.get());
+
+        // Roll-ups stack
+        RollupAccumulator total = new RollupAccumulator(r, "*:requests",
+                RollupOperation.SUM);
+        r.getRootNode().register("requests", total);
+        awaitMembers(total, 2);
+        assertEquals(112L, total.get());
+
+        // Once unregistered, nothing is tracked
+        web.unregister("requests", sum);
+        assertEquals(0L, sum.get());
+    }
+
+    @Test
+    public void stackedGlobstarsCountOnce()
+    throws Exception {
+        // web.a rolls up its own children, and web and the root each roll
+        // up everything beneath them
+        RollupAccumulator a = new RollupAccumulator(r, "*:requests",
+                RollupOperation.SUM);
+        RollupAccumulator web = new RollupAccumulator(r, "**:requests",
+                RollupOperation.SUM);
+        RollupAccumulator total = new RollupAccumulator(r, "**:requests",
+                RollupOperation.SUM);
+        r.getNode("web.a").register("requests", a);
+        r.getNode("web").register("requests", web);
+        r.getRootNode().register("requests", total);
+
+        put(r.getNode("web.a.x"), "requests", 1L);
+        put(r.getNode("web.a.y"), "requests", 2L);
+        put(r.getNode("web.b"), "requests", 4L);
+        put(r.getNode("api"), "requests", 100L);
+        awaitMembers(a, 2);
+        assertEquals(3L, a.get());
+
+        // web reports web.a and web.b, but not web.a's children
+        awaitMembers(web, 2);
+        assertEquals(7L, web.get());
+
+        // The root reports web and api, but nothing web already reports
+        awaitMembers(total, 2);
+        assertEquals(107L, total.get());
+
+        // Without web's roll-up, its members are reported directly
+        r.getNode("web").unregister("requests", web);
+        awaitMembers(total, 3);
+        assertEquals(107L, total.get());
+    }
+
+    private void put(RegistryNode node, String name, long value) {
+        ArenaAccumulator acc = new ArenaAccumulator(group);
+        acc.setOn(true);
+        node.register(name, acc);
+        acc.getMutator().put(value);
+    }
+
+    private static void awaitMembers(RollupAccumulator acc, int count)
+    throws InterruptedException {
+        for(int i=0; i<500 && acc.getMemberCount() != count; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(count, acc.getMemberCount());
+    }
+}
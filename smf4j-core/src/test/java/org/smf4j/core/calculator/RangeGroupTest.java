@@ -67,6 +67,18 @@ public class RangeGroupTest {
         assertEquals("20.00 B", c.calculate(vals, as));
     }
 
+    @Test
+    public void fromCalculator() {
+        set(20L);
+        c.setCalculator("rate");
+        Map<String, Object> calculated = new HashMap<String, Object>();
+        calculated.put("rate", 1500.0d);
+        assertArrayEquals(new String[] {"rate"}, c.getCalculatorInputs());
+        assertEquals(0, c.getAccumulatorInputs().length);
+        assertEquals("1500.00 B", c.calculate(vals, as, calculated));
+        assertEquals("0.00 B", c.calculate(vals, as));
+    }
+
     @Test
     public void formatString() {
         set(20L);
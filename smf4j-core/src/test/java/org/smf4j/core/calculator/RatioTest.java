@@ -22,6 +22,8 @@ import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.smf4j.Accumulator;
+import org.smf4j.SnapshotView;
+import org.smf4j.util.helpers.ArraySnapshotView;
 
 /**
  *
@@ -63,6 +65,23 @@ public class RatioTest {
         }
     }
 
+    @Test
+    public void snapshotView() {
+        String[] names = new String[] {"d", "n"};
+        long[] values = new long[] {4L, 1L};
+        SnapshotView view = new ArraySnapshotView(c.getAccumulatorInputs(),
+                names, values, new Accumulator[] {d, n});
+        assertEquals(0.25d, c.calculate(view), 0.0000001d);
+
+        // The view reads the arrays in place
+        values[1] = 2L;
+        assertEquals(0.5d, c.calculate(view), 0.0000001d);
+
+        view = new ArraySnapshotView(c.getAccumulatorInputs(),
+                new String[] {"d"}, new long[] {4L}, new Accumulator[] {d});
+        assertEquals(0.0d, c.calculate(view), 0.0000001d);
+    }
+
     @Test
     public void bothNull() {
         set(null, null);
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class CheckpointFilesTest {
+
+    private File dir;
+    private File target;
+
+    @Before
+    public void before() throws IOException {
+        dir = File.createTempFile("checkpoint", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        target = new File(dir, "checkpoint");
+    }
+
+    @After
+    public void after() {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void replacesExisting() throws IOException {
+        write(target, "old");
+        File source = new File(dir, "checkpoint.tmp");
+        write(source, "new");
+
+        CheckpointFiles.replace(source, target);
+        assertEquals("new", read(target));
+        assertFalse(source.exists());
+        assertFalse(CheckpointFiles.backup(target).exists());
+    }
+
+    @Test
+    public void replacesNothing() throws IOException {
+        File source = new File(dir, "checkpoint.tmp");
+        write(source, "new");
+
+        CheckpointFiles.replace(source, target);
+        assertEquals("new", read(target));
+        assertFalse(source.exists());
+    }
+
+    @Test
+    public void existingFallsBackToBackup() throws IOException {
+        assertNull(CheckpointFiles.existing(target));
+
+        File backup = CheckpointFiles.backup(target);
+        write(backup, "old");
+        assertEquals(backup, CheckpointFiles.existing(target));
+
+        write(target, "new");
+        assertEquals(target, CheckpointFiles.existing(target));
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+}
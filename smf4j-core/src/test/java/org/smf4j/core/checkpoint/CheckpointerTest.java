@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.checkpoint;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.IntervalStrategy;
+import org.smf4j.core.accumulator.SecondsIntervalStrategy;
+import org.smf4j.core.accumulator.TestingTimeReporter;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.lc.LowContentionAccumulator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class CheckpointerTest {
+
+    private static final long A_BILLION = 1000000000L;
+
+    private File file;
+    private TestingTimeReporter timeReporter;
+    private IntervalStrategy strategy;
+
+    @Before
+    public void before() throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        CheckpointRestorer.INSTANCE.clear();
+        file = File.createTempFile("smf4j", ".checkpoint");
+        file.delete();
+        timeReporter = new TestingTimeReporter();
+        strategy = new SecondsIntervalStrategy(5, 5);
+    }
+
+    @After
+    public void after() {
+        CheckpointRestorer.INSTANCE.clear();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+        new File(file.getPath() + ".bak").delete();
+    }
+
+    @Test
+    public void loadMissingFile() throws Exception {
+        assertEquals(0, Checkpointer.load(file));
+        assertFalse(CheckpointRestorer.INSTANCE.getPendingPaths()
+                .iterator().hasNext());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Registrar r = RegistrarFactory.getRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        HighContentionAccumulator counter = unbounded();
+        HighContentionAccumulator windowed = windowed();
+        LowContentionAccumulator lcWindowed = lcWindowed();
+        node.register("counter", counter);
+        node.register("windowed", windowed);
+        node.register("lcWindowed", lcWindowed);
+
+        counter.getMutator().put(42);
+        timeReporter.set(midsecond(0));
+        windowed.getMutator().put(1);
+        lcWindowed.getMutator().put(1);
+        timeReporter.set(midsecond(1));
+        windowed.getMutator().put(2);
+        lcWindowed.getMutator().put(2);
+        timeReporter.set(midsecond(3));
+
+        Checkpointer checkpointer = new Checkpointer(r, file);
+        assertEquals(3, checkpointer.checkpoint());
+        assertTrue(file.exists());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // Simulate a restart
+        RegistrarFactoryForUnitTests.reset(true);
+        assertEquals(3, Checkpointer.load(file));
+        r = RegistrarFactory.getRegistrar();
+        node = r.getNode("a.b");
+
+        counter = unbounded();
+        windowed = windowed();
+        lcWindowed = lcWindowed();
+        node.register("counter", counter);
+        node.register("windowed", windowed);
+        node.register("lcWindowed", lcWindowed);
+
+        assertEquals(42L, counter.get());
+        assertEquals(3L, windowed.get());
+        assertEquals(3L, lcWindowed.get());
+        assertFalse(CheckpointRestorer.INSTANCE.getPendingPaths()
+                .iterator().hasNext());
+
+        // Restored intervals age out of the window as usual
+        timeReporter.set(midsecond(7));
+        assertEquals(2L, windowed.get());
+        timeReporter.set(midsecond(20));
+        assertEquals(0L, windowed.get());
+        assertEquals(42L, counter.get());
+    }
+
+    @Test
+    public void longPathsAndBackup() throws Exception {
+        StringBuilder name = new StringBuilder("a.");
+        for(int i=0; i<40000; i++) {
+            name.append('x');
+        }
+        Registrar r = RegistrarFactory.getRegistrar();
+        HighContentionAccumulator counter = unbounded();
+        r.getNode(name.toString()).register("counter", counter);
+        counter.getMutator().put(7);
+
+        // The second checkpoint replaces the first
+        Checkpointer checkpointer = new Checkpointer(r, file);
+        assertEquals(1, checkpointer.checkpoint());
+        assertEquals(1, checkpointer.checkpoint());
+
+        // A crash part way through replacing it leaves only the backup
+        assertTrue(file.renameTo(new File(file.getPath() + ".bak")));
+        RegistrarFactoryForUnitTests.reset(true);
+        assertEquals(1, Checkpointer.load(file));
+        r = RegistrarFactory.getRegistrar();
+        counter = unbounded();
+        r.getNode(name.toString()).register("counter", counter);
+        assertEquals(7L, counter.get());
+    }
+
+    @Test
+    public void restoredOnlyOnce() throws Exception {
+        Registrar r = RegistrarFactory.getRegistrar();
+        HighContentionAccumulator counter = unbounded();
+        r.getNode("a").register("counter", counter);
+        counter.getMutator().put(7);
+        new Checkpointer(r, file).checkpoint();
+
+        RegistrarFactoryForUnitTests.reset(true);
+        Checkpointer.load(file);
+        r = RegistrarFactory.getRegistrar();
+
+        HighContentionAccumulator first = unbounded();
+        HighContentionAccumulator second = unbounded();
+        r.getNode("a").register("counter", first);
+        r.getNode("a").unregister("counter", first);
+        r.getNode("a").register("counter", second);
+        assertEquals(7L, first.get());
+        assertEquals(0L, second.get());
+    }
+
+    @Test
+    public void mismatchedKindNotRestored() throws Exception {
+        Registrar r = RegistrarFactory.getRegistrar();
+        HighContentionAccumulator counter = unbounded();
+        r.getNode("a").register("x", counter);
+        counter.getMutator().put(7);
+        new Checkpointer(r, file).checkpoint();
+
+        RegistrarFactoryForUnitTests.reset(true);
+        Checkpointer.load(file);
+        r = RegistrarFactory.getRegistrar();
+
+        timeReporter.set(midsecond(0));
+        HighContentionAccumulator windowed = windowed();
+        r.getNode("a").register("x", windowed);
+        assertEquals(0L, windowed.get());
+    }
+
+    private HighContentionAccumulator unbounded() {
+        HighContentionAccumulator acc = new HighContentionAccumulator(
+                org.smf4j.core.accumulator.hc.UnboundedAddMutator
+                .MUTATOR_FACTORY);
+        acc.setOn(true);
+        return acc;
+    }
+
+    private HighContentionAccumulator windowed() {
+        HighContentionAccumulator acc = new HighContentionAccumulator(
+                new org.smf4j.core.accumulator.hc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        acc.setOn(true);
+        return acc;
+    }
+
+    private LowContentionAccumulator lcWindowed() {
+        LowContentionAccumulator acc = new LowContentionAccumulator(
+                new org.smf4j.core.accumulator.lc.WindowedAddMutator.Factory(
+                strategy, timeReporter));
+        acc.setOn(true);
+        return acc;
+    }
+
+    private static long midsecond(int s) {
+        return A_BILLION*10 + s*A_BILLION + A_BILLION/2;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.governor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.TestingTimeReporter;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.core.governor.GovernedAccumulator.Level;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class GovernorTest {
+
+    private static final long A_BILLION = 1000000000L;
+
+    private Registrar registrar;
+    private RegistryNode node;
+    private TestingTimeReporter timeReporter;
+    private Governor governor;
+    private int processors;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        registrar = RegistrarFactory.getRegistrar();
+        node = registrar.getNode("app");
+        node.register("hot", counter());
+        node.register("cold", counter());
+
+        timeReporter = new TestingTimeReporter();
+        timeReporter.set(A_BILLION);
+        governor = new Governor(registrar, 0.01, 16, Governor.DEFAULT_NODE,
+                timeReporter);
+        // Each update costs 1ms, so the budget allows 10 updates per second
+        // per processor
+        governor.setCostPerUpdateNanos(1000000L);
+        processors = governor.getProcessors();
+        governor.governAll();
+    }
+
+    @Test
+    public void governsInPlace() {
+        assertTrue(node.getAccumulator("hot") instanceof GovernedAccumulator);
+        assertTrue(node.getAccumulator("cold") instanceof GovernedAccumulator);
+        assertEquals(2L, metric("governed"));
+
+        // Governing again doesn't double-wrap
+        governor.governAll();
+        assertEquals(2L, metric("governed"));
+        assertFalse(governed("hot").getDelegate()
+                instanceof GovernedAccumulator);
+    }
+
+    @Test
+    public void degradesHottestAndRestores() {
+        put("hot", 1000 * processors);
+        put("cold", 1);
+        tick();
+
+        assertEquals(Level.OFF, governed("hot").getLevel());
+        assertEquals(Level.FULL, governed("cold").getLevel());
+        assertEquals(1L, metric("off"));
+        assertEquals(2L, metric("degradations"));
+        assertEquals(1000L * processors, governed("hot").getUpdates());
+        assertEquals(1000L * processors, governed("hot").get());
+
+        // Updates while off are counted, but not recorded
+        put("hot", 10);
+        assertEquals(1000L * processors, governed("hot").get());
+
+        // Load drops; hot is restored
+        tick();
+        tick();
+        assertEquals(Level.FULL, governed("hot").getLevel());
+        assertEquals(2L, metric("restorations"));
+        assertEquals(0L, metric("off"));
+    }
+
+    @Test
+    public void samplesWhenThatIsEnough() {
+        put("hot", 100 * processors);
+        tick();
+        assertEquals(Level.SAMPLED, governed("hot").getLevel());
+        assertEquals(1L, metric("sampled"));
+        assertTrue(metric("estimatedLoadPpm") <= 10000L);
+
+        long before = governed("hot").get();
+        put("hot", 160);
+        assertEquals(before + 10L, governed("hot").get());
+    }
+
+    @Test
+    public void probeMeasuresCost() {
+        assertTrue(governor.probe() > 0L);
+        assertEquals(governor.getCostPerUpdateNanos(),
+                metric("costPerUpdateNanos"));
+    }
+
+    @Test
+    public void countsAcrossShortLivedThreads()
+    throws Exception {
+        // Each thread dies before the next starts, so they all share one
+        // counter, and none of their updates are lost
+        for(int i=0; i<50; i++) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    put("hot", 10);
+                }
+            });
+            t.start();
+            t.join();
+        }
+        assertEquals(500L, governed("hot").getUpdates());
+    }
+
+    private void tick() {
+        timeReporter.set(timeReporter.nanos() + A_BILLION);
+        governor.tick();
+    }
+
+    private void put(String name, int count) {
+        Accumulator acc = node.getAccumulator(name);
+        for(int i=0; i<count; i++) {
+            acc.getMutator().put(1L);
+        }
+    }
+
+    private GovernedAccumulator governed(String name) {
+        return (GovernedAccumulator)node.getAccumulator(name);
+    }
+
+    private long metric(String name) {
+        return registrar.getNode(Governor.DEFAULT_NODE).getAccumulator(name)
+                .get();
+    }
+
+    private static Accumulator counter() {
+        return new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.handle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.SecondsIntervalStrategy;
+import org.smf4j.core.accumulator.TestingTimeReporter;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class HandleTest {
+
+    private static final long A_BILLION = 1000000000L;
+
+    private Registrar registrar;
+    private RegistryNode node;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(false);
+        registrar = RegistrarFactory.getRegistrar();
+        node = registrar.getNode("handles");
+    }
+
+    @Test
+    public void nodeStateFlipsHandle() {
+        CounterHandle counter = new CounterHandle();
+        node.register("counter", counter);
+
+        counter.increment();
+        assertEquals(0L, counter.get());
+
+        node.setOn(true);
+        counter.increment();
+        counter.add(4);
+        assertEquals(5L, counter.get());
+
+        node.setOn(false);
+        counter.add(100);
+        assertEquals(5L, counter.get());
+    }
+
+    @Test
+    public void counterAcrossThreads() throws Exception {
+        final CounterHandle counter = new CounterHandle();
+        counter.setOn(true);
+
+        Thread[] threads = new Thread[8];
+        for(int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0; j<10000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        assertEquals(80000L, counter.get());
+    }
+
+    @Test
+    public void maxAndMin() {
+        MaxHandle max = new MaxHandle();
+        MinHandle min = new MinHandle();
+        max.setOn(true);
+        min.setOn(true);
+        assertEquals(Long.MIN_VALUE, max.get());
+        assertEquals(Long.MAX_VALUE, min.get());
+
+        for(long v : new long[] {5, -3, 12, 7}) {
+            max.put(v);
+            min.put(v);
+        }
+        assertEquals(12L, max.get());
+        assertEquals(-3L, min.get());
+        assertEquals(20L, max.getMutator().combine(20));
+    }
+
+    @Test
+    public void windowed() {
+        TestingTimeReporter timeReporter = new TestingTimeReporter();
+        SecondsIntervalStrategy strategy = new SecondsIntervalStrategy(5, 5);
+        WindowedCounterHandle counter =
+                new WindowedCounterHandle(strategy, timeReporter);
+        WindowedMaxHandle max = new WindowedMaxHandle(strategy, timeReporter);
+        counter.setOn(true);
+        max.setOn(true);
+
+        timeReporter.set(timenanos(0));
+        counter.put(1);
+        max.put(1);
+        timeReporter.set(timenanos(1));
+        counter.put(2);
+        max.put(9);
+
+        timeReporter.set(timenanos(3));
+        assertEquals(3L, counter.get());
+        assertEquals(9L, max.get());
+        assertEquals(0L, counter.get(timenanos(20)));
+    }
+
+    @Test
+    public void windowedAcrossThreads() throws Exception {
+        TestingTimeReporter timeReporter = new TestingTimeReporter();
+        timeReporter.set(timenanos(0));
+        final WindowedCounterHandle counter = new WindowedCounterHandle(
+                new SecondsIntervalStrategy(5, 5), timeReporter);
+        counter.setOn(true);
+
+        Thread[] threads = new Thread[8];
+        for(int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0; j<10000; j++) {
+                        counter.put(1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        timeReporter.set(timenanos(2));
+        assertEquals(80000L, counter.get());
+    }
+
+    private static long timenanos(int seconds) {
+        return (A_BILLION * 10) + ((long)seconds * A_BILLION);
+    }
+}
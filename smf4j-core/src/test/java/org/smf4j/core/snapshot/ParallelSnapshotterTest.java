@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.core.snapshot;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+import org.smf4j.core.calculator.RangeGroup;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class ParallelSnapshotterTest {
+
+    private Registrar registrar;
+    private ExecutorService executor;
+    private ParallelSnapshotter snapshotter;
+
+    @Before
+    public void before() {
+        RegistrarFactoryForUnitTests.reset(true);
+        registrar = RegistrarFactory.getRegistrar();
+        executor = Executors.newFixedThreadPool(4);
+        snapshotter = new ParallelSnapshotter(executor, 200L,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void matchesNodeSnapshot() {
+        for(int i=0; i<10; i++) {
+            RegistryNode node = registrar.getNode("app.n" + i);
+            Accumulator a = counter();
+            Accumulator b = counter();
+            node.register("a", a);
+            node.register("b", b);
+            node.register("sum", new Sum());
+            a.getMutator().put(i);
+            b.getMutator().put(10);
+        }
+
+        ParallelSnapshot snapshot = snapshotter.snapshot(registrar, "app.**");
+        assertEquals(10, snapshot.getValues().size());
+        assertTrue(snapshot.getStalePaths().isEmpty());
+        for(int i=0; i<10; i++) {
+            RegistryNode node = registrar.getNode("app.n" + i);
+            Map<String, Object> values = snapshot.getValues(node.getName());
+            assertEquals(node.snapshot(), values);
+            assertEquals(Long.valueOf(10L + i), values.get("sum"));
+        }
+
+        CalculatorCost cost = snapshotter.getCosts().get("app.n3:sum");
+        assertEquals(1L, cost.getEvaluations());
+        assertEquals(0L, cost.getTimeouts());
+    }
+
+    @Test
+    public void slowCalculatorFallsBack()
+    throws Exception {
+        RegistryNode node = registrar.getNode("app");
+        Accumulator a = counter();
+        node.register("a", a);
+        node.register("sum", new Sum());
+        Slow slow = new Slow();
+        node.register("slow", slow);
+        a.getMutator().put(5);
+
+        // The first evaluation is fast, and becomes the last good value
+        slow.release.countDown();
+        ParallelSnapshot snapshot = snapshotter.snapshot(registrar, "app");
+        assertFalse(snapshot.isStale("app:slow"));
+        assertEquals(Long.valueOf(1L), snapshot.getValues("app").get("slow"));
+
+        // The second one blows its budget
+        slow.release = new CountDownLatch(1);
+        a.getMutator().put(5);
+        snapshot = snapshotter.snapshot(registrar, "app");
+        assertTrue(snapshot.isStale("app:slow"));
+        assertFalse(snapshot.isStale("app:sum"));
+        assertEquals(Long.valueOf(1L), snapshot.getValues("app").get("slow"));
+        assertEquals(Long.valueOf(10L), snapshot.getValues("app").get("sum"));
+
+        // While it is still running, it isn't started again
+        snapshot = snapshotter.snapshot(registrar, "app");
+        assertTrue(snapshot.isStale("app:slow"));
+        assertEquals(2, slow.calls);
+
+        // Once it finishes, it is evaluated as usual again
+        slow.release.countDown();
+        while(snapshotter.getCosts().get("app:slow").getEvaluations() < 2L) {
+            Thread.sleep(10L);
+        }
+        snapshot = snapshotter.snapshot(registrar, "app");
+        assertFalse(snapshot.isStale("app:slow"));
+        assertEquals(Long.valueOf(5L), snapshot.getValues("app").get("slow"));
+
+        CalculatorCost cost = snapshotter.getCosts().get("app:slow");
+        assertEquals(1L, cost.getTimeouts());
+        assertTrue(cost.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(200L));
+    }
+
+    @Test
+    public void failingCalculatorFallsBack() {
+        RegistryNode node = registrar.getNode("app");
+        Failing failing = new Failing();
+        node.register("failing", failing);
+
+        ParallelSnapshot snapshot = snapshotter.snapshot(registrar, "app");
+        assertFalse(snapshot.isStale("app:failing"));
+
+        failing.fail = true;
+        snapshot = snapshotter.snapshot(registrar, "app");
+        assertTrue(snapshot.isStale("app:failing"));
+        assertEquals(Long.valueOf(7L),
+                snapshot.getValues("app").get("failing"));
+        assertEquals(1L,
+                snapshotter.getCosts().get("app:failing").getFailures());
+    }
+
+    @Test
+    public void staleFirstRunIsLeftOut() {
+        RegistryNode node = registrar.getNode("app");
+        Failing failing = new Failing();
+        failing.fail = true;
+        node.register("failing", failing);
+
+        ParallelSnapshot snapshot = snapshotter.snapshot(registrar, "app");
+        assertTrue(snapshot.isStale("app:failing"));
+        assertFalse(snapshot.getValues("app").containsKey("failing"));
+    }
+
+    @Test
+    public void queueTimeIsNotCharged() {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            ParallelSnapshotter serial = new ParallelSnapshotter(single,
+                    200L, TimeUnit.MILLISECONDS);
+            RegistryNode node = registrar.getNode("app");
+            node.register("first", new Sleeping(120L));
+            node.register("second", new Sleeping(120L));
+
+            // The second one waits ~120ms for the only thread, then runs
+            // for ~120ms, which is over budget counted from submission
+            ParallelSnapshot snapshot = serial.snapshot(registrar, "app");
+            assertTrue(snapshot.getStalePaths().isEmpty());
+            assertEquals(Long.valueOf(120L),
+                    snapshot.getValues("app").get("second"));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void dependentCalculatorsSeeTheirInputs() {
+        RegistryNode node = registrar.getNode("app");
+        Accumulator a = counter();
+        node.register("a", a);
+        node.register("sum", new Sum());
+        RangeGroup formatted = new RangeGroup();
+        formatted.setCalculator("sum");
+        formatted.setFormatString("%.0f%s");
+        node.register("formatted", formatted);
+        a.getMutator().put(42);
+
+        ParallelSnapshot snapshot = snapshotter.snapshot(registrar, "app");
+        assertEquals(node.snapshot(), snapshot.getValues("app"));
+        assertEquals("42", snapshot.getValues("app").get("formatted"));
+
+        // The input is evaluated, but only the matched calculator is reported
+        snapshot = snapshotter.snapshot(registrar, "app:formatted");
+        assertEquals("42", snapshot.getValues("app").get("formatted"));
+        assertFalse(snapshot.getValues("app").containsKey("sum"));
+    }
+
+    @Test
+    public void costsOfRemovedCalculatorsAreDropped() {
+        RegistryNode node = registrar.getNode("app");
+        node.register("sum", new Sum());
+        snapshotter.snapshot(registrar, "app");
+        assertTrue(snapshotter.getCosts().containsKey("app:sum"));
+
+        node.unregister("sum", node.getCalculator("sum"));
+        snapshotter.snapshot(registrar, "app");
+        assertFalse(snapshotter.getCosts().containsKey("app:sum"));
+    }
+
+    private static Accumulator counter() {
+        return new HighContentionAccumulator(UnboundedAddMutator.MUTATOR_FACTORY);
+    }
+
+    public static final class Sum implements Calculator {
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            long sum = 0L;
+            for(Long value : values.values()) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    public static final class Slow implements Calculator {
+        volatile CountDownLatch release = new CountDownLatch(1);
+        volatile int calls;
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            calls++;
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Long.valueOf(calls * 2 - 1);
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    public static final class Sleeping implements Calculator {
+        private final long millis;
+
+        Sleeping(long millis) {
+            this.millis = millis;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            try {
+                Thread.sleep(millis);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return millis;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    public static final class Failing implements Calculator {
+        volatile boolean fail;
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            if(fail) {
+                throw new IllegalStateException("failing");
+            }
+            return 7L;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+}
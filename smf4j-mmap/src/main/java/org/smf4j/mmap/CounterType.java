@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+/**
+ * {@code CounterType} identifies how the slots of a mapped counter combine
+ * into its value.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public enum CounterType {
+
+    /**
+     * The counter reports the sum of all values.
+     */
+    ADD(1, 0L) {
+        public long combine(long a, long b) {
+            return a + b;
+        }
+    },
+
+    /**
+     * The counter reports the largest value.
+     */
+    MAX(2, Long.MIN_VALUE) {
+        public long combine(long a, long b) {
+            return a >= b ? a : b;
+        }
+    },
+
+    /**
+     * The counter reports the smallest value.
+     */
+    MIN(3, Long.MAX_VALUE) {
+        public long combine(long a, long b) {
+            return a <= b ? a : b;
+        }
+    };
+
+    private final int code;
+    private final long identity;
+
+    CounterType(int code, long identity) {
+        this.code = code;
+        this.identity = identity;
+    }
+
+    /**
+     * Combines two values according to this {@code CounterType}.
+     * @param a The first value.
+     * @param b The second value.
+     * @return The combination of {@code a} and {@code b}.
+     */
+    public abstract long combine(long a, long b);
+
+    /**
+     * Gets the value of a slot that has not been written to.
+     * @return The identity value for {@link #combine(long, long)}.
+     */
+    public long getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Gets the code used to store this {@code CounterType} in a mapped file.
+     * @return The code used to store this {@code CounterType}.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the {@code CounterType} stored as {@code code}.
+     * @param code A code returned by {@link #getCode()}.
+     * @return The matching {@code CounterType}, or {@code null} if there is
+     *         none.
+     */
+    public static CounterType fromCode(int code) {
+        for(CounterType type : values()) {
+            if(type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+import java.util.Collections;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.AbstractAccumulator;
+import org.smf4j.nop.NopMutator;
+
+/**
+ * {@code MappedAccumulator} is an {@link Accumulator} whose value lives in a
+ * {@link MappedCounterTable}, where it can be read by other processes.
+ * <p>
+ * The counter is allocated in the table the first time the
+ * {@code MappedAccumulator} is registered with a {@link RegistryNode}, and is
+ * named after its <a href="{@docRoot}/org/smf4j/Registrar.html#MemberPath">
+ * member path</a>.  Until then - or if the table has no room for it -
+ * {@link #getMutator()} returns {@link NopMutator#INSTANCE} and
+ * {@link #get()} reports the identity value of its {@link CounterType}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MappedAccumulator extends AbstractAccumulator
+        implements RegistrationAware {
+
+    private static final int UNALLOCATED = -1;
+
+    private final MappedCounterTable table;
+    private final CounterType type;
+    private final Mutator mutator;
+    private volatile int index = UNALLOCATED;
+
+    /**
+     * Creates a new {@code MappedAccumulator}.
+     * @param table The {@link MappedCounterTable} to store values in.
+     * @param type How values written to this {@code MappedAccumulator} are
+     *             combined.
+     */
+    public MappedAccumulator(MappedCounterTable table, CounterType type) {
+        this.table = table;
+        this.type = type;
+        this.mutator = new MappedMutator();
+    }
+
+    public void registered(RegistryNode node, String name) {
+        if(index != UNALLOCATED) {
+            return;
+        }
+
+        String path = node.getName() + ":" + name;
+        synchronized(this) {
+            if(index == UNALLOCATED) {
+                index = table.allocate(path, type);
+            }
+        }
+    }
+
+    public void unregistered(RegistryNode node, String name) {
+        // The counter stays in the table - readers may still be watching it
+    }
+
+    public Mutator getMutator() {
+        if(!isOn() || index == UNALLOCATED) {
+            return NopMutator.INSTANCE;
+        }
+        return mutator;
+    }
+
+    public long get() {
+        int i = index;
+        if(i == UNALLOCATED) {
+            return type.getIdentity();
+        }
+        return table.get(i, type);
+    }
+
+    /**
+     * Gets the {@link CounterType} of this {@code MappedAccumulator}.
+     * @return The {@link CounterType} of this {@code MappedAccumulator}.
+     */
+    public CounterType getType() {
+        return type;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+
+    private final class MappedMutator implements Mutator {
+        public void put(long delta) {
+            table.put(index, type, delta);
+        }
+
+        public long combine(long other) {
+            return type.combine(MappedAccumulator.this.get(), other);
+        }
+
+        public long get() {
+            return MappedAccumulator.this.get();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.smf4j.mmap.MappedFormat.*;
+
+/**
+ * {@code MappedCounterReader} reads the counters written to a file by a
+ * {@link MappedCounterTable}, typically from another process.
+ * <p>
+ * The file is mapped read-only; reading values never touches the writing
+ * JVM.  Counters allocated by the writer after this reader was opened are
+ * picked up by {@link #refresh()}.  The mapping is held until
+ * {@link #close()} is called.
+ * </p>
+ * <p>
+ * Instances of {@code MappedCounterReader} are not thread-safe.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MappedCounterReader implements Closeable {
+
+    private MappedByteBuffer buffer;
+    private final int capacity;
+    private final int stripes;
+    private final List<String> names = new ArrayList<String>();
+    private final List<CounterType> types = new ArrayList<CounterType>();
+
+    /**
+     * Opens {@code file} for reading.
+     * @param file A file written by a {@link MappedCounterTable}.
+     * @throws IOException If the file cannot be mapped, or is not a mapped
+     *         counter file.
+     */
+    public MappedCounterReader(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    raf.length());
+        } finally {
+            raf.close();
+        }
+
+        if(buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            close();
+            throw new IOException(String.format(
+                    "'%s' is not a mapped counter file.", file));
+        }
+        if(buffer.getInt(OFFSET_VERSION) != VERSION) {
+            int version = buffer.getInt(OFFSET_VERSION);
+            close();
+            throw new IOException(String.format(
+                    "'%s' has unsupported version %d.", file, version));
+        }
+
+        capacity = buffer.getInt(OFFSET_CAPACITY);
+        stripes = buffer.getInt(OFFSET_STRIPES);
+        refresh();
+    }
+
+    /**
+     * Picks up any counters allocated since the last call.
+     * <p>
+     * An entry whose type or name length is not valid is not picked up, nor
+     * is any entry after it, since a reader's indexes must match the
+     * writer's.  Such an entry is usually one the writer has not finished
+     * publishing, and is retried by the next call.
+     * </p>
+     * @return {@code true} if new counters were found.
+     */
+    public boolean refresh() {
+        MappedByteBuffer b = mapping();
+        int count = Math.min(b.getInt(OFFSET_COUNT), capacity);
+        boolean found = false;
+        for(int index=names.size(); index<count; index++) {
+            int entry = entryOffset(index);
+            CounterType type = CounterType.fromCode(
+                    b.get(entry + ENTRY_OFFSET_TYPE));
+            int length = b.getShort(entry + ENTRY_OFFSET_NAME_LENGTH);
+            if(type == null || length < 0 || length > MAX_NAME_BYTES) {
+                break;
+            }
+
+            byte[] bytes = new byte[length];
+            for(int i=0; i<length; i++) {
+                bytes[i] = b.get(entry + ENTRY_OFFSET_NAME + i);
+            }
+            names.add(utf8(bytes));
+            types.add(type);
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of counters known to this reader.
+     * @return The number of counters known to this reader.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Gets the name of the counter at {@code index}.
+     * @param index The index of the counter.
+     * @return The name of the counter at {@code index}.
+     */
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Gets the index of the counter named {@code name}.
+     * @param name The name of the counter.
+     * @return The index of the counter, or {@code -1} if there is no such
+     *         counter.
+     */
+    public int indexOf(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Gets the current value of the counter at {@code index}.
+     * <p>
+     * This does not allocate, so it is suitable for polling at high
+     * frequency.
+     * </p>
+     * @param index The index of the counter.
+     * @return The current value of the counter.
+     */
+    public long get(int index) {
+        MappedByteBuffer b = mapping();
+        CounterType type = types.get(index);
+        long result = type.getIdentity();
+        for(int s=0; s<stripes; s++) {
+            result = type.combine(result,
+                    b.getLong(slotOffset(capacity, stripes, index, s)));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the current value of every counter known to this reader.
+     * @return A map of counter names to values, in allocation order.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<String, Long>();
+        for(int i=0; i<names.size(); i++) {
+            values.put(names.get(i), get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Releases the mapping.  Once closed, this reader may no longer be used.
+     */
+    public void close() {
+        MappedByteBuffer b = buffer;
+        buffer = null;
+        if(b != null) {
+            unmap(b);
+        }
+    }
+
+    private MappedByteBuffer mapping() {
+        MappedByteBuffer b = buffer;
+        if(b == null) {
+            throw new IllegalStateException("The reader has been closed.");
+        }
+        return b;
+    }
+
+    /**
+     * Unmaps {@code b} right away, rather than waiting for it to be garbage
+     * collected.  There is no public API for this, so it is done
+     * reflectively; if neither the newer nor the older JDK hook is
+     * available, the mapping is left for the garbage collector.
+     * @param b The buffer to unmap.
+     */
+    private static void unmap(MappedByteBuffer b) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), b);
+            return;
+        } catch(Exception e) {
+            // Fall through to the older hook
+        }
+
+        try {
+            // Java 8 and earlier
+            Method cleanerMethod = b.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(b);
+            if(cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch(Exception e) {
+            // Leave it to the garbage collector
+        }
+    }
+
+    private static String utf8(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.smf4j.mmap.MappedFormat.*;
+
+/**
+ * {@code MappedCounterTable} stores counter values in a memory-mapped file,
+ * so that they can be read by other processes on the same host (via
+ * {@link MappedCounterReader}) without JMX or attaching to the JVM.
+ * <p>
+ * Each counter is given a number of <em>stripes</em>.  Each writing thread
+ * claims one stripe in the table for its own, and is the only thread that
+ * ever writes to that stripe of any counter, so writes need no
+ * read-modify-write synchronization.  A quarter of the stripes (at least one)
+ * are held back as <em>shared</em> stripes.  Once every other stripe has been
+ * claimed by a live thread, further threads are spread over the shared
+ * stripes by identity hash, and writes to each shared stripe are serialized
+ * separately.
+ * </p>
+ * <p>
+ * Counters are usually created as {@link MappedAccumulator}s, which allocate
+ * their counter when they are registered with a {@code RegistryNode}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MappedCounterTable {
+
+    /**
+     * The default maximum number of counters in a table.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default number of stripes per counter.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MappedCounterTable.class);
+
+    private final File file;
+    private final int capacity;
+    private final int stripes;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private final AtomicReferenceArray<WeakReference<Thread>> owners;
+    private final ThreadLocal<Claim> localClaim = new ThreadLocal<Claim>();
+    private final int privateStripes;
+    private final Object[] sharedLocks;
+    private int count;
+
+    private MappedCounterTable(File file, int capacity, int stripes,
+            MappedByteBuffer buffer) {
+        this.file = file;
+        this.capacity = capacity;
+        this.stripes = stripes;
+        this.buffer = buffer;
+        this.privateStripes = stripes - Math.max(1, stripes / 4);
+        this.owners = new AtomicReferenceArray<WeakReference<Thread>>(
+                privateStripes);
+        this.sharedLocks = new Object[stripes - privateStripes];
+        for(int i=0; i<sharedLocks.length; i++) {
+            sharedLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Creates a new, empty {@code MappedCounterTable} with
+     * {@link #DEFAULT_CAPACITY} counters of {@link #DEFAULT_STRIPES} stripes,
+     * backed by {@code file}.
+     * @param file The file to map.  Any existing content is replaced.
+     * @return The new {@code MappedCounterTable}.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public static MappedCounterTable create(File file) throws IOException {
+        return create(file, DEFAULT_CAPACITY, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a new, empty {@code MappedCounterTable} backed by {@code file}.
+     * @param file The file to map.  Any existing content is replaced.
+     * @param capacity The maximum number of counters in the table.
+     * @param stripes The number of stripes per counter.
+     * @return The new {@code MappedCounterTable}.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public static MappedCounterTable create(File file, int capacity,
+            int stripes) throws IOException {
+        if(capacity < 1 || stripes < 1) {
+            throw new IllegalArgumentException(
+                    "capacity and stripes must be positive.");
+        }
+
+        int size = fileSize(capacity, stripes);
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(size);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    size);
+        } finally {
+            raf.close();
+        }
+
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_STRIPES, stripes);
+        buffer.putInt(OFFSET_COUNT, 0);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        // Write the magic number last, so readers never see a partial header
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+
+        return new MappedCounterTable(file, capacity, stripes, buffer);
+    }
+
+    /**
+     * Gets the file backing this {@code MappedCounterTable}.
+     * @return The file backing this {@code MappedCounterTable}.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Allocates a counter named {@code name}, or finds the existing counter
+     * with that name.
+     * @param name The name of the counter.
+     * @param type The {@link CounterType} of the counter.
+     * @return The index of the counter, or {@code -1} if the table is full,
+     *         {@code name} is too long, or an existing counter named
+     *         {@code name} has a different {@link CounterType}.
+     */
+    public synchronized int allocate(String name, CounterType type) {
+        Integer existing = indexes.get(name);
+        if(existing != null) {
+            int index = existing;
+            int code = buffer.get(entryOffset(index) + ENTRY_OFFSET_TYPE);
+            if(code != type.getCode()) {
+                log.warn("Mapped counter '{}' already exists with a different "
+                        + "type.", name);
+                return -1;
+            }
+            return index;
+        }
+
+        byte[] nameBytes = utf8(name);
+        if(nameBytes.length > MAX_NAME_BYTES) {
+            log.warn("Mapped counter name '{}' is too long.", name);
+            return -1;
+        }
+        if(count == capacity) {
+            log.warn("Mapped counter table '{}' is full; cannot add '{}'.",
+                    file, name);
+            return -1;
+        }
+
+        int index = count;
+        for(int s=0; s<stripes; s++) {
+            buffer.putLong(slotOffset(capacity, stripes, index, s),
+                    type.getIdentity());
+        }
+        int entry = entryOffset(index);
+        buffer.put(entry + ENTRY_OFFSET_TYPE, (byte)type.getCode());
+        buffer.putShort(entry + ENTRY_OFFSET_NAME_LENGTH,
+                (short)nameBytes.length);
+        for(int i=0; i<nameBytes.length; i++) {
+            buffer.put(entry + ENTRY_OFFSET_NAME + i, nameBytes[i]);
+        }
+
+        // Publish the new entry
+        count++;
+        buffer.putInt(OFFSET_COUNT, count);
+        indexes.put(name, index);
+        return index;
+    }
+
+    /**
+     * Records {@code value} in the counter at {@code index}, from the calling
+     * thread's stripe.
+     * @param index The index of the counter, as returned by
+     *              {@link #allocate(String, CounterType)}.
+     * @param type The {@link CounterType} of the counter.
+     * @param value The value to record.
+     */
+    public void put(int index, CounterType type, long value) {
+        Claim claim = localClaim.get();
+        if(claim == null) {
+            claim = claimStripe(Thread.currentThread());
+            localClaim.set(claim);
+        }
+
+        int offset = slotOffset(capacity, stripes, index, claim.stripe);
+        if(claim.shared) {
+            synchronized(sharedLocks[claim.stripe - privateStripes]) {
+                buffer.putLong(offset,
+                        type.combine(buffer.getLong(offset), value));
+            }
+        } else {
+            buffer.putLong(offset, type.combine(buffer.getLong(offset), value));
+        }
+    }
+
+    /**
+     * Gets the value of the counter at {@code index}.
+     * @param index The index of the counter.
+     * @param type The {@link CounterType} of the counter.
+     * @return The combination of all of the counter's stripes.
+     */
+    public long get(int index, CounterType type) {
+        long result = type.getIdentity();
+        for(int s=0; s<stripes; s++) {
+            result = type.combine(result,
+                    buffer.getLong(slotOffset(capacity, stripes, index, s)));
+        }
+        return result;
+    }
+
+    /**
+     * Asks the operating system to write the mapped content to disk.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    private Claim claimStripe(Thread thread) {
+        for(int s=0; s<owners.length(); s++) {
+            WeakReference<Thread> owner = owners.get(s);
+            Thread cur = owner == null ? null : owner.get();
+            if(cur != null && cur.isAlive()) {
+                continue;
+            }
+            if(owners.compareAndSet(s, owner,
+                    new WeakReference<Thread>(thread))) {
+                return new Claim(s, false);
+            }
+        }
+
+        // Every private stripe is taken - share one of the shared stripes.
+        int h = System.identityHashCode(thread);
+        h ^= (h >>> 16);
+        return new Claim(privateStripes
+                + ((h & Integer.MAX_VALUE) % sharedLocks.length), true);
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Claim {
+        private final int stripe;
+        private final boolean shared;
+
+        Claim(int stripe, boolean shared) {
+            this.stripe = stripe;
+            this.shared = shared;
+        }
+    }
+}
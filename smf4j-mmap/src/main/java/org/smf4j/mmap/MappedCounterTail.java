@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * {@code MappedCounterTail} is a command-line tool that polls a mapped
+ * counter file and prints counters as their values change.
+ * <pre>
+ * java -jar smf4j-mmap.jar &lt;file&gt; [intervalMillis] [namePrefix]
+ * </pre>
+ * <p>
+ * Each line printed is of the form
+ * {@code <currentTimeMillis> <counter name> <value>}.  Every counter is
+ * printed on the first poll; afterwards, only counters whose values have
+ * changed are printed.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MappedCounterTail {
+
+    private static final long DEFAULT_INTERVAL_MILLIS = 100L;
+
+    private final MappedCounterReader reader;
+    private final String prefix;
+    private final PrintStream out;
+    private long[] last = new long[0];
+    private boolean[] seen = new boolean[0];
+
+    MappedCounterTail(MappedCounterReader reader, String prefix,
+            PrintStream out) {
+        this.reader = reader;
+        this.prefix = prefix;
+        this.out = out;
+    }
+
+    /**
+     * Polls the reader once, printing any changed counters.
+     */
+    void poll() {
+        reader.refresh();
+        int size = reader.size();
+        if(size > last.length) {
+            long[] grownLast = new long[size];
+            boolean[] grownSeen = new boolean[size];
+            System.arraycopy(last, 0, grownLast, 0, last.length);
+            System.arraycopy(seen, 0, grownSeen, 0, seen.length);
+            last = grownLast;
+            seen = grownSeen;
+        }
+
+        long now = System.currentTimeMillis();
+        for(int i=0; i<size; i++) {
+            if(prefix != null && !reader.getName(i).startsWith(prefix)) {
+                continue;
+            }
+
+            long value = reader.get(i);
+            if(!seen[i] || value != last[i]) {
+                seen[i] = true;
+                last[i] = value;
+                out.print(now);
+                out.print(' ');
+                out.print(reader.getName(i));
+                out.print(' ');
+                out.println(value);
+            }
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1 || args.length > 3) {
+            System.err.println("Usage: MappedCounterTail <file> "
+                    + "[intervalMillis] [namePrefix]");
+            System.exit(1);
+        }
+
+        long interval = DEFAULT_INTERVAL_MILLIS;
+        if(args.length > 1) {
+            interval = Long.parseLong(args[1]);
+        }
+        String prefix = args.length > 2 ? args[2] : null;
+
+        MappedCounterTail tail = new MappedCounterTail(
+                new MappedCounterReader(new File(args[0])), prefix,
+                System.out);
+        while(true) {
+            tail.poll();
+            try {
+                Thread.sleep(interval);
+            } catch(InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
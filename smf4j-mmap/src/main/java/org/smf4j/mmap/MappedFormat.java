@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+/**
+ * {@code MappedFormat} describes the layout of a mapped counter file, and is
+ * shared by {@link MappedCounterTable} and {@link MappedCounterReader}.
+ * <p>
+ * A mapped counter file has three sections:
+ * </p>
+ * <ol>
+ * <li>A fixed-size header, starting with {@link #MAGIC} and
+ *     {@link #VERSION}, that records the table's capacity, the number of
+ *     stripes per counter, and the number of counters allocated so far.</li>
+ * <li>A directory of fixed-size entries, one per counter, holding the
+ *     counter's {@link CounterType} and its name.</li>
+ * <li>The data section, holding {@code stripes} cache-line-sized slots for
+ *     each counter.  The value of a counter is the combination of its
+ *     slots, as defined by its {@link CounterType}.</li>
+ * </ol>
+ * <p>
+ * The location of a counter's entry and slots is derived purely from its
+ * index, so readers only ever need to look at the header and directory once
+ * per counter.  All values are stored big-endian.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class MappedFormat {
+
+    static final int MAGIC = 0x534d4634;   // "SMF4"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_CAPACITY = 8;
+    static final int OFFSET_STRIPES = 12;
+    static final int OFFSET_COUNT = 16;
+
+    static final int ENTRY_SIZE = 128;
+    static final int ENTRY_OFFSET_TYPE = 0;
+    static final int ENTRY_OFFSET_NAME_LENGTH = 2;
+    static final int ENTRY_OFFSET_NAME = 4;
+    static final int MAX_NAME_BYTES = ENTRY_SIZE - ENTRY_OFFSET_NAME;
+
+    static final int SLOT_SIZE = 64;
+
+    /**
+     * {@code MappedFormat} is a static helper class.
+     */
+    private MappedFormat() {
+    }
+
+    static int entryOffset(int index) {
+        return HEADER_SIZE + (index * ENTRY_SIZE);
+    }
+
+    static int dataOffset(int capacity) {
+        return HEADER_SIZE + (capacity * ENTRY_SIZE);
+    }
+
+    static int slotOffset(int capacity, int stripes, int index, int stripe) {
+        return dataOffset(capacity)
+                + (((index * stripes) + stripe) * SLOT_SIZE);
+    }
+
+    static int fileSize(int capacity, int stripes) {
+        return dataOffset(capacity) + (capacity * stripes * SLOT_SIZE);
+    }
+}
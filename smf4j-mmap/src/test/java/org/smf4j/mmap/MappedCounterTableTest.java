@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.mmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Mutator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopMutator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class MappedCounterTableTest {
+
+    private File file;
+    private MappedCounterTable table;
+    private RegistryNode node;
+
+    @Before
+    public void before() throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        Registrar r = RegistrarFactory.getRegistrar();
+        node = r.getNode("a.b");
+        file = File.createTempFile("smf4j-mmap", ".dat");
+        table = MappedCounterTable.create(file, 8, 4);
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void allocatedAtRegistration() throws Exception {
+        MappedAccumulator count = new MappedAccumulator(table, CounterType.ADD);
+        assertSame(NopMutator.INSTANCE, count.getMutator());
+
+        node.register("count", count);
+        count.getMutator().put(3);
+        count.getMutator().put(4);
+        assertEquals(7L, count.get());
+
+        MappedCounterReader reader = new MappedCounterReader(file);
+        assertEquals(1, reader.size());
+        assertEquals("a.b:count", reader.getName(0));
+        assertEquals(7L, reader.get(0));
+    }
+
+    @Test
+    public void stripesAcrossThreads() throws Exception {
+        final MappedAccumulator count =
+                new MappedAccumulator(table, CounterType.ADD);
+        final MappedAccumulator max =
+                new MappedAccumulator(table, CounterType.MAX);
+        node.register("count", count);
+        node.register("max", max);
+
+        // More threads than private stripes, so some must share
+        Thread[] threads = new Thread[8];
+        for(int i=0; i<threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    Mutator c = count.getMutator();
+                    Mutator m = max.getMutator();
+                    for(int j=0; j<10000; j++) {
+                        c.put(1);
+                        m.put(id * 100 + j % 100);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        MappedCounterReader reader = new MappedCounterReader(file);
+        Map<String, Long> values = reader.snapshot();
+        assertEquals(Long.valueOf(80000L), values.get("a.b:count"));
+        assertEquals(Long.valueOf(799L), values.get("a.b:max"));
+    }
+
+    @Test
+    public void readerRefreshAndTail() throws Exception {
+        MappedCounterReader reader = new MappedCounterReader(file);
+        assertEquals(0, reader.size());
+
+        MappedAccumulator min = new MappedAccumulator(table, CounterType.MIN);
+        node.register("min", min);
+        min.getMutator().put(5);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MappedCounterTail tail = new MappedCounterTail(reader, "a.b",
+                new PrintStream(bytes));
+        tail.poll();
+        assertTrue(bytes.toString().trim().endsWith("a.b:min 5"));
+
+        bytes.reset();
+        tail.poll();
+        assertEquals(0, bytes.size());
+
+        min.getMutator().put(2);
+        tail.poll();
+        assertTrue(bytes.toString().trim().endsWith("a.b:min 2"));
+    }
+
+    @Test
+    public void fullTable() throws Exception {
+        for(int i=0; i<8; i++) {
+            assertEquals(i, table.allocate("c" + i, CounterType.ADD));
+        }
+        assertEquals(-1, table.allocate("c8", CounterType.ADD));
+        assertEquals(3, table.allocate("c3", CounterType.ADD));
+        assertEquals(-1, table.allocate("c3", CounterType.MAX));
+    }
+
+    @Test
+    public void readerSkipsUnknownTypesAndCloses() throws Exception {
+        table.allocate("good", CounterType.ADD);
+        table.allocate("bad", CounterType.ADD);
+        table.allocate("after", CounterType.ADD);
+
+        // Corrupt the type of the second entry
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(MappedFormat.entryOffset(1)
+                    + MappedFormat.ENTRY_OFFSET_TYPE);
+            raf.write(0x7f);
+        } finally {
+            raf.close();
+        }
+
+        MappedCounterReader reader = new MappedCounterReader(file);
+        assertEquals(1, reader.size());
+        assertEquals("good", reader.getName(0));
+        assertFalse(reader.refresh());
+
+        reader.close();
+        try {
+            reader.get(0);
+            fail();
+        } catch(IllegalStateException e) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+
+/**
+ * {@code NodeState} is the immutable contents of one node in a
+ * {@link PersistentRegistrar}'s tree: its members, its children, and its
+ * local on/off state.
+ * <p>
+ * A node's path is not stored at all - it is implied by where the node sits
+ * in the tree - and empty maps are shared, so a node with nothing in it
+ * costs a single small object.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class NodeState {
+
+    static final NodeState EMPTY = new NodeState(null,
+            PersistentMap.<Accumulator>empty(),
+            PersistentMap.<Calculator>empty(),
+            PersistentMap.<NodeState>empty());
+
+    final Boolean localOn;
+    final PersistentMap<Accumulator> accumulators;
+    final PersistentMap<Calculator> calculators;
+    final PersistentMap<NodeState> children;
+
+    private NodeState(Boolean localOn, PersistentMap<Accumulator> accumulators,
+            PersistentMap<Calculator> calculators,
+            PersistentMap<NodeState> children) {
+        this.localOn = localOn;
+        this.accumulators = accumulators;
+        this.calculators = calculators;
+        this.children = children;
+    }
+
+    NodeState withLocalOn(Boolean on) {
+        if(on == null ? localOn == null : on.equals(localOn)) {
+            return this;
+        }
+        return new NodeState(on, accumulators, calculators, children);
+    }
+
+    NodeState withAccumulators(PersistentMap<Accumulator> accs) {
+        if(accs == accumulators) {
+            return this;
+        }
+        return new NodeState(localOn, accs, calculators, children);
+    }
+
+    NodeState withCalculators(PersistentMap<Calculator> calcs) {
+        if(calcs == calculators) {
+            return this;
+        }
+        return new NodeState(localOn, accumulators, calcs, children);
+    }
+
+    NodeState withChild(String name, NodeState child) {
+        PersistentMap<NodeState> kids = children.plus(name, child);
+        if(kids == children) {
+            return this;
+        }
+        return new NodeState(localOn, accumulators, calculators, kids);
+    }
+
+    /**
+     * Finds the state at {@code parts} beneath this node.
+     * @return The state at {@code parts}, or {@code null} if there is no
+     *         such node.
+     */
+    NodeState find(String[] parts) {
+        NodeState cur = this;
+        for(int i=0; i<parts.length && cur != null; i++) {
+            cur = cur.children.get(parts[i]);
+        }
+        return cur;
+    }
+}
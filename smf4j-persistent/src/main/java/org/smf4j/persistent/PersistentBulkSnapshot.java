@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import org.smf4j.BulkSnapshot;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.AbstractBulkSnapshot;
+
+/**
+ * The {@link BulkSnapshot} handed out by {@link PersistentRegistrar}.
+ * <p>
+ * The glob pattern is matched against a single tree, and only matched
+ * again when the registrar's tree is no longer that same tree.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class PersistentBulkSnapshot extends AbstractBulkSnapshot {
+    private final PersistentRegistrar registrar;
+    private final String globPattern;
+    private NodeState tree;
+
+    PersistentBulkSnapshot(PersistentRegistrar registrar, String globPattern) {
+        this.registrar = registrar;
+        this.globPattern = globPattern;
+    }
+
+    @Override
+    protected Iterable<? extends RegistryNode> rematch() {
+        NodeState current = registrar.root();
+        if(current == tree) {
+            return null;
+        }
+        tree = current;
+        RegistryNode root = new PersistentRegistryNode(registrar,
+                PersistentRegistrar.NO_PARTS, current);
+        return registrar.getMatcher(globPattern).matchTree(root);
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@code PersistentMap} is an immutable map from {@code String} keys to
+ * values, stored as a hash array mapped trie.
+ * <p>
+ * Each level of the trie consumes five bits of the key's hash, and each
+ * trie node only allocates room for the slots that are in use, as flagged
+ * in its bitmap.  {@link #plus(String, Object) plus} and
+ * {@link #minus(String) minus} return a new map that shares every trie node
+ * they did not have to change with the original, so an update costs one
+ * small array copy per level, rather than a copy of the whole map.  Keys
+ * whose hashes collide completely are kept in a flat list below the last
+ * level.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class PersistentMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 32;
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY =
+            new PersistentMap(new Node(0, NO_SLOTS), 0);
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * A read-only {@code Map} view of this map, created on first use.
+     * Racing creators build equivalent views, so it is not synchronized.
+     */
+    private Map<String, V> view;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty {@code PersistentMap}.
+     * @return The empty {@code PersistentMap}.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty() {
+        return (PersistentMap<V>)EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        int hash = hash(key);
+        Node node = root;
+        int shift = 0;
+        while(true) {
+            Object[] slots = node.slots;
+            if(shift >= MAX_SHIFT) {
+                for(int i=0; i<slots.length; i+=2) {
+                    if(key.equals(slots[i])) {
+                        return (V)slots[i + 1];
+                    }
+                }
+                return null;
+            }
+
+            int bit = bit(hash, shift);
+            if((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            int i = index(node.bitmap, bit);
+            Object k = slots[i];
+            if(k == null) {
+                node = (Node)slots[i + 1];
+                shift += BITS;
+            } else {
+                return key.equals(k) ? (V)slots[i + 1] : null;
+            }
+        }
+    }
+
+    /**
+     * Gets a map with {@code key} mapped to {@code value}.
+     * @return A new map, or this map if {@code key} was already mapped to
+     *         {@code value}.
+     */
+    PersistentMap<V> plus(String key, V value) {
+        if(key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, key, hash(key), value, 0, added);
+        if(newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Gets a map without {@code key}.
+     * @return A new map, or this map if {@code key} was not mapped.
+     */
+    PersistentMap<V> minus(String key) {
+        Node newRoot = remove(root, key, hash(key), 0);
+        if(newRoot == root) {
+            return this;
+        }
+        if(size == 1) {
+            return empty();
+        }
+        return new PersistentMap<V>(newRoot, size - 1);
+    }
+
+    /**
+     * Gets a read-only {@code Map} view of this map.
+     * @return A read-only {@code Map} view of this map.
+     */
+    Map<String, V> asMap() {
+        Map<String, V> v = view;
+        if(v == null) {
+            v = new MapView();
+            view = v;
+        }
+        return v;
+    }
+
+    private static Node put(Node node, String key, int hash, Object value,
+            int shift, boolean[] added) {
+        Object[] slots = node.slots;
+        if(shift >= MAX_SHIFT) {
+            for(int i=0; i<slots.length; i+=2) {
+                if(key.equals(slots[i])) {
+                    if(slots[i + 1] == value) {
+                        return node;
+                    }
+                    Object[] copy = slots.clone();
+                    copy[i + 1] = value;
+                    return new Node(0, copy);
+                }
+            }
+            added[0] = true;
+            return new Node(0, insert(slots, slots.length, key, value));
+        }
+
+        int bit = bit(hash, shift);
+        int i = index(node.bitmap, bit);
+        if((node.bitmap & bit) == 0) {
+            added[0] = true;
+            return new Node(node.bitmap | bit, insert(slots, i, key, value));
+        }
+
+        Object k = slots[i];
+        Object v = slots[i + 1];
+        Object[] copy;
+        if(k == null) {
+            Node child = put((Node)v, key, hash, value, shift + BITS, added);
+            if(child == v) {
+                return node;
+            }
+            copy = slots.clone();
+            copy[i + 1] = child;
+        } else if(key.equals(k)) {
+            if(v == value) {
+                return node;
+            }
+            copy = slots.clone();
+            copy[i + 1] = value;
+        } else {
+            // Two keys share this slot - push them both down a level
+            added[0] = true;
+            copy = slots.clone();
+            copy[i] = null;
+            copy[i + 1] = pair((String)k, hash((String)k), v, key, hash,
+                    value, shift + BITS);
+        }
+        return new Node(node.bitmap, copy);
+    }
+
+    private static Node pair(String k1, int h1, Object v1, String k2, int h2,
+            Object v2, int shift) {
+        if(shift >= MAX_SHIFT) {
+            return new Node(0, new Object[] { k1, v1, k2, v2 });
+        }
+
+        int b1 = bit(h1, shift);
+        int b2 = bit(h2, shift);
+        if(b1 == b2) {
+            return new Node(b1, new Object[] {
+                null, pair(k1, h1, v1, k2, h2, v2, shift + BITS) });
+        }
+        if(((h1 >>> shift) & MASK) < ((h2 >>> shift) & MASK)) {
+            return new Node(b1 | b2, new Object[] { k1, v1, k2, v2 });
+        }
+        return new Node(b1 | b2, new Object[] { k2, v2, k1, v1 });
+    }
+
+    private static Node remove(Node node, String key, int hash, int shift) {
+        Object[] slots = node.slots;
+        if(shift >= MAX_SHIFT) {
+            for(int i=0; i<slots.length; i+=2) {
+                if(key.equals(slots[i])) {
+                    return new Node(0, delete(slots, i));
+                }
+            }
+            return node;
+        }
+
+        int bit = bit(hash, shift);
+        if((node.bitmap & bit) == 0) {
+            return node;
+        }
+
+        int i = index(node.bitmap, bit);
+        Object k = slots[i];
+        if(k == null) {
+            Node child = (Node)slots[i + 1];
+            Node newChild = remove(child, key, hash, shift + BITS);
+            if(newChild == child) {
+                return node;
+            }
+            if(newChild.slots.length == 0) {
+                return new Node(node.bitmap & ~bit, delete(slots, i));
+            }
+            Object[] copy = slots.clone();
+            if(newChild.slots.length == 2 && newChild.slots[0] != null) {
+                // Only one key left below - pull it up into this slot
+                copy[i] = newChild.slots[0];
+                copy[i + 1] = newChild.slots[1];
+            } else {
+                copy[i + 1] = newChild;
+            }
+            return new Node(node.bitmap, copy);
+        }
+
+        if(!key.equals(k)) {
+            return node;
+        }
+        return new Node(node.bitmap & ~bit, delete(slots, i));
+    }
+
+    private static Object[] insert(Object[] slots, int i, Object key,
+            Object value) {
+        Object[] copy = new Object[slots.length + 2];
+        System.arraycopy(slots, 0, copy, 0, i);
+        copy[i] = key;
+        copy[i + 1] = value;
+        System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+        return copy;
+    }
+
+    private static Object[] delete(Object[] slots, int i) {
+        if(slots.length == 2) {
+            return NO_SLOTS;
+        }
+        Object[] copy = new Object[slots.length - 2];
+        System.arraycopy(slots, 0, copy, 0, i);
+        System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+        return copy;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Gets the index in a node's slots of the key for {@code bit}.
+     */
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1)) << 1;
+    }
+
+    /**
+     * A node of the trie.  {@code slots} holds a key and a value for each
+     * bit set in {@code bitmap}, in bit order.  A {@code null} key means the
+     * value is a child {@code Node}.  Below the last level, {@code bitmap}
+     * is unused and {@code slots} is a flat list of keys and values.
+     */
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Walks every key and value in the trie, depth first.
+     */
+    /**
+     * A read-only entry of the {@code Map} view.
+     */
+    private static final class ImmutableEntry<V>
+            implements Map.Entry<String, V> {
+        private final String key;
+        private final V value;
+
+        ImmutableEntry(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>)obj;
+            return key.equals(other.getKey()) && (value == null
+                    ? other.getValue() == null
+                    : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, V>> {
+        private final Node[] nodes = new Node[MAX_SHIFT / BITS + 2];
+        private final int[] positions = new int[nodes.length];
+        private int depth;
+        private Map.Entry<String, V> next;
+
+        EntryIterator() {
+            nodes[0] = root;
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while(depth >= 0) {
+                Node node = nodes[depth];
+                int pos = positions[depth];
+                if(pos >= node.slots.length) {
+                    depth--;
+                    continue;
+                }
+
+                positions[depth] = pos + 2;
+                Object k = node.slots[pos];
+                if(k == null) {
+                    depth++;
+                    nodes[depth] = (Node)node.slots[pos + 1];
+                    positions[depth] = 0;
+                } else {
+                    next = new ImmutableEntry<V>((String)k,
+                            (V)node.slots[pos + 1]);
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<String, V> next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, V> result = next;
+            advance();
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The read-only {@code Map} view returned by {@link #asMap()}.
+     */
+    private final class MapView extends AbstractMap<String, V> {
+        private final Set<Map.Entry<String, V>> entries =
+                new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public V get(Object key) {
+            return key instanceof String ? PersistentMap.this.get((String)key)
+                    : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
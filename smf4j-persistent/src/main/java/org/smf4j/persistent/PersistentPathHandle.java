@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopCalculator;
+
+/**
+ * The {@link PathHandle} handed out by {@link PersistentRegistrar}.  It holds
+ * the live handle of its node, so its member is looked up in whatever tree is
+ * current, with no need to be told of changes.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class PersistentPathHandle implements PathHandle {
+    private final String path;
+    private final int id;
+    private final PersistentRegistryNode node;
+    private final String memberName;
+
+    PersistentPathHandle(int id, PersistentRegistryNode node,
+            String memberName) {
+        this.id = id;
+        this.node = node;
+        this.memberName = memberName;
+        this.path = memberName == null
+                ? node.getName() : node.getName() + ":" + memberName;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public RegistryNode getNode() {
+        return node;
+    }
+
+    @Override
+    public String getMemberName() {
+        return memberName;
+    }
+
+    @Override
+    public Accumulator getAccumulator() {
+        if(memberName == null) {
+            return NopAccumulator.INSTANCE;
+        }
+        return node.getAccumulator(memberName);
+    }
+
+    @Override
+    public Calculator getCalculator() {
+        if(memberName == null) {
+            return NopCalculator.INSTANCE;
+        }
+        return node.getCalculator(memberName);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
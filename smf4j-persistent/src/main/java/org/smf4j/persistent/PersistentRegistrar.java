@@ -0,0 +1,523 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
+import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RecordedEvent;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.RegistryListener;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopPathHandle;
+import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.GlobMatcher;
+import org.smf4j.util.helpers.GlobMatcherCache;
+import org.smf4j.util.helpers.RegistrarHelper;
+
+/**
+ * {@code PersistentRegistrar} is a {@link Registrar} whose whole tree is one
+ * immutable value, held in a single {@link AtomicReference}.
+ * <p>
+ * Every node's members and children are kept in
+ * {@link PersistentMap}s - hash array mapped tries - so a change copies
+ * only the trie nodes along the path from the root to what changed, and
+ * shares everything else with the previous tree.  Changes are published by
+ * compare-and-set on the root, retrying if another change got there first.
+ * Reading the tree never locks or retries, and the tree as of any instant
+ * is a single read of the root: {@link #getTopology()} hands that out as a
+ * consistent, read-only view, and {@link #match(String)} and
+ * {@link #snapshot(String)} always work from one.
+ * </p>
+ * <p>
+ * The {@link RegistryNode}s handed out by {@link #getNode(String)} are
+ * light handles onto a path, rather than the nodes themselves, so they
+ * always see the latest tree.  Nodes are never pruned, and idle eviction is
+ * not supported: accumulators registered with an idle timeout stay
+ * registered until they are unregistered.
+ * </p>
+ * <p>
+ * Because every change goes through the one root, registration is best
+ * suited to applications that register up front or at a modest rate.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class PersistentRegistrar implements Registrar {
+    static final String[] NO_PARTS = new String[0];
+
+    private final AtomicReference<NodeState> root;
+    private final PersistentRegistryNode rootNode;
+
+    /**
+     * Bumped every time the on/off state of any node changes.
+     */
+    final AtomicLong generation;
+
+    /**
+     * Registered accumulators that must have their on/off state pushed to
+     * them eagerly, as they are not {@code OnStateAware}.
+     */
+    final ConcurrentMap<Accumulator, Boolean> eagerAccumulators;
+    final ReentrantLock stateLock;
+    final TopologyNotifier notifier;
+
+    /**
+     * The live handle for every node path that has been asked for.
+     */
+    private final ConcurrentMap<String, PersistentRegistryNode> nodes;
+
+    /**
+     * Every path that has been resolved to a node, or to a member that is
+     * registered, mapped to its handle.
+     */
+    private final ConcurrentMap<String, PathHandle> handles;
+
+    /**
+     * Handles to members that aren't registered, held weakly, so that
+     * lookups of made-up names can't grow the cache without bound, but
+     * anyone still holding a handle gets the same one back if its member is
+     * registered.  Guarded by itself, which is also held while moving a
+     * handle between it and {@link #handles}.
+     */
+    private final Map<String, AbsentHandle> absentHandles;
+    private final ReferenceQueue<PathHandle> absentQueue;
+    private final AtomicInteger handleIds;
+    private final GlobMatcherCache matchers;
+
+    public PersistentRegistrar() {
+        this(TopologyNotifier.DEFAULT_BATCH_DELAY_MILLIS);
+    }
+
+    PersistentRegistrar(long batchDelayMillis) {
+        this.root = new AtomicReference<NodeState>(NodeState.EMPTY);
+        this.generation = new AtomicLong();
+        this.eagerAccumulators = new ConcurrentHashMap<Accumulator, Boolean>();
+        this.stateLock = new ReentrantLock();
+        this.notifier = new TopologyNotifier(this, batchDelayMillis);
+        this.nodes = new ConcurrentHashMap<String, PersistentRegistryNode>();
+        this.handles = new ConcurrentHashMap<String, PathHandle>();
+        this.absentHandles = new HashMap<String, AbsentHandle>();
+        this.absentQueue = new ReferenceQueue<PathHandle>();
+        this.handleIds = new AtomicInteger();
+        this.matchers = new GlobMatcherCache();
+        this.rootNode = new PersistentRegistryNode(this, NO_PARTS, null);
+        this.nodes.put("", rootNode);
+    }
+
+    /**
+     * Gets a read-only view of the whole tree as it stands right now.  The
+     * view never changes, no matter what happens to the registrar
+     * afterwards, so it can be walked at leisure.  Registrations made
+     * through the view's nodes go to the live tree.
+     * @return The root of a read-only view of the tree as it stands.
+     */
+    public RegistryNode getTopology() {
+        return new PersistentRegistryNode(this, NO_PARTS, root.get());
+    }
+
+    /**
+     * Gets the root of the tree as it stands right now.
+     */
+    NodeState root() {
+        return root.get();
+    }
+
+    /**
+     * {@code Edit} is a change to a single node, applied by
+     * {@link #update(String[], Edit, boolean) update}.  It may be applied
+     * more than once if other changes race with it, so it must not have
+     * side effects beyond recording its {@link #result}.
+     */
+    abstract static class Edit {
+        Object result;
+
+        abstract NodeState apply(NodeState node);
+    }
+
+    /**
+     * Changes nothing, so that applying it with {@code create} just creates
+     * the node.
+     */
+    private static final Edit IDENTITY = new Edit() {
+        NodeState apply(NodeState node) {
+            return node;
+        }
+    };
+
+    /**
+     * Applies {@code edit} to the node at {@code parts}, copying the path
+     * from the root down to it, and publishes the new tree.
+     * @param create {@code true} to create the node (and its ancestors) if
+     *        it doesn't exist yet, or {@code false} to leave the tree alone.
+     * @return {@code true} if the tree changed.
+     */
+    boolean update(String[] parts, Edit edit, boolean create) {
+        while(true) {
+            NodeState oldRoot = root.get();
+            NodeState newRoot = apply(oldRoot, parts, 0, edit, create);
+            if(newRoot == oldRoot) {
+                return false;
+            }
+            if(root.compareAndSet(oldRoot, newRoot)) {
+                notifier.changed();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Applies each of {@code edits} to the node at the matching entry of
+     * {@code paths}, creating nodes as needed, and publishes all of the
+     * changes together as one new tree.
+     * @return {@code true} if the tree changed.
+     */
+    boolean update(List<String[]> paths, List<Edit> edits) {
+        while(true) {
+            NodeState oldRoot = root.get();
+            NodeState newRoot = oldRoot;
+            for(int i=0; i<paths.size(); i++) {
+                newRoot = apply(newRoot, paths.get(i), 0, edits.get(i), true);
+            }
+            if(newRoot == oldRoot) {
+                return false;
+            }
+            if(root.compareAndSet(oldRoot, newRoot)) {
+                notifier.changed();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets the path parts of the child {@code childName} of the node at
+     * {@code parts}.
+     */
+    static String[] child(String[] parts, String childName) {
+        String[] childParts = new String[parts.length + 1];
+        System.arraycopy(parts, 0, childParts, 0, parts.length);
+        childParts[parts.length] = childName;
+        return childParts;
+    }
+
+    private static NodeState apply(NodeState node, String[] parts, int depth,
+            Edit edit, boolean create) {
+        if(depth == parts.length) {
+            return edit.apply(node);
+        }
+
+        NodeState child = node.children.get(parts[depth]);
+        boolean exists = child != null;
+        if(!exists) {
+            if(!create) {
+                return node;
+            }
+            child = NodeState.EMPTY;
+        }
+
+        NodeState newChild = apply(child, parts, depth + 1, edit, create);
+        if(exists && newChild == child) {
+            return node;
+        }
+        return node.withChild(parts[depth], newChild);
+    }
+
+    @Override
+    public RegistryNode getRootNode() {
+        return rootNode;
+    }
+
+    @Override
+    public RegistryNode getNode(String nodePath) {
+        return findNode(nodePath, true);
+    }
+
+    @Override
+    public RegistryNode lookupNode(String nodePath) {
+        return findNode(nodePath, false);
+    }
+
+    @Override
+    public Accumulator getAccumulator(String memberPath) {
+        String[] split = RegistrarHelper.splitMemberPath(memberPath);
+        if(split == null) {
+            return NopAccumulator.INSTANCE;
+        }
+        return lookupNode(split[0]).getAccumulator(split[1]);
+    }
+
+    @Override
+    public Calculator getCalculator(String memberPath) {
+        String[] split = RegistrarHelper.splitMemberPath(memberPath);
+        if(split == null) {
+            return NopCalculator.INSTANCE;
+        }
+        return lookupNode(split[0]).getCalculator(split[1]);
+    }
+
+    @Override
+    public void setOn(String nodePath, boolean on) {
+        getNode(nodePath).setOn(on);
+    }
+
+    @Override
+    public void clearOn(String nodePath) {
+        getNode(nodePath).clearOn();
+    }
+
+    @Override
+    public PathHandle resolve(String path) {
+        if(path == null) {
+            return NopPathHandle.INSTANCE;
+        }
+
+        PathHandle handle = handles.get(path);
+        if(handle != null && !isStale(handle)) {
+            return handle;
+        }
+
+        // Not seen before - parse it once, then remember it
+        String nodePath = path;
+        String memberName = null;
+        if(path.indexOf(':') >= 0) {
+            String[] split = RegistrarHelper.splitMemberPath(path);
+            if(split == null) {
+                return NopPathHandle.INSTANCE;
+            }
+            nodePath = split[0];
+            memberName = split[1];
+        }
+
+        RegistryNode node = findNode(nodePath, true);
+        if(node == NopRegistryNode.INSTANCE) {
+            return NopPathHandle.INSTANCE;
+        }
+        if(memberName == null) {
+            // Nodes are never pruned, so their handles never go stale
+            handle = new PersistentPathHandle(handleIds.getAndIncrement(),
+                    (PersistentRegistryNode)node, null);
+            PathHandle raced = handles.putIfAbsent(path, handle);
+            return raced != null ? raced : handle;
+        }
+
+        synchronized(absentHandles) {
+            purgeAbsentHandles();
+            handle = handles.get(path);
+            if(handle == null) {
+                AbsentHandle absent = absentHandles.get(path);
+                handle = absent != null ? absent.get() : null;
+            }
+            if(handle == null) {
+                handle = new PersistentPathHandle(handleIds.getAndIncrement(),
+                        (PersistentRegistryNode)node, memberName);
+            }
+            place(path, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Gets whether {@code handle} points at a member that is not
+     * registered.
+     */
+    private static boolean isStale(PathHandle handle) {
+        String memberName = handle.getMemberName();
+        if(memberName == null) {
+            return false;
+        }
+        RegistryNode node = handle.getNode();
+        return node.getAccumulator(memberName) == NopAccumulator.INSTANCE
+                && node.getCalculator(memberName) == NopCalculator.INSTANCE;
+    }
+
+    /**
+     * Caches {@code handle} under {@code path} if its member is registered,
+     * or holds it weakly if it isn't.  Must be called while holding
+     * {@link #absentHandles}.
+     */
+    private void place(String path, PathHandle handle) {
+        if(!isStale(handle)) {
+            handles.put(path, handle);
+            absentHandles.remove(path);
+            return;
+        }
+
+        handles.remove(path, handle);
+        AbsentHandle absent = absentHandles.get(path);
+        if(absent == null || absent.get() != handle) {
+            absentHandles.put(path,
+                    new AbsentHandle(path, handle, absentQueue));
+        }
+    }
+
+    /**
+     * Stops caching the handle for {@code path}, after its member has been
+     * unregistered.  Anyone still holding the handle keeps it, and gets it
+     * back if the member is registered again.
+     * @param path The path of the unregistered member.
+     */
+    void forgetHandle(String path) {
+        synchronized(absentHandles) {
+            purgeAbsentHandles();
+            PathHandle handle = handles.get(path);
+            if(handle != null) {
+                place(path, handle);
+            }
+        }
+    }
+
+    /**
+     * Forgets the absent handles that nobody holds any more.  Must be called
+     * while holding {@link #absentHandles}.
+     */
+    private void purgeAbsentHandles() {
+        AbsentHandle absent;
+        while((absent = (AbsentHandle)absentQueue.poll()) != null) {
+            if(absentHandles.get(absent.path) == absent) {
+                absentHandles.remove(absent.path);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of resolved paths currently cached.
+     * @return The number of resolved paths currently cached.
+     */
+    int cachedHandles() {
+        return handles.size();
+    }
+
+    RegistryNode findNode(String nodePath, boolean create) {
+        String[] parts = splitFullNodeName(nodePath);
+        if(parts == null) {
+            return NopRegistryNode.INSTANCE;
+        }
+        if(parts.length == 0) {
+            return rootNode;
+        }
+
+        if(create) {
+            update(parts, IDENTITY, true);
+        } else if(root.get().find(parts) == null) {
+            return NopRegistryNode.INSTANCE;
+        }
+        return node(parts);
+    }
+
+    /**
+     * Gets the live handle for the node at {@code parts}, whether or not
+     * the node exists.
+     */
+    PersistentRegistryNode node(String[] parts) {
+        String name = PersistentRegistryNode.join(parts);
+        PersistentRegistryNode node = nodes.get(name);
+        if(node == null) {
+            node = new PersistentRegistryNode(this, parts, null);
+            PersistentRegistryNode raced = nodes.putIfAbsent(name, node);
+            if(raced != null) {
+                node = raced;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Splits {@code fullNodeName} as
+     * {@link RegistrarHelper#splitFullNodeName(String)} does, except that
+     * an empty (or all whitespace) name is the root node, which has no
+     * parts.
+     */
+    String[] splitFullNodeName(String fullNodeName) {
+        if(fullNodeName != null && fullNodeName.trim().length() == 0) {
+            return NO_PARTS;
+        }
+        return RegistrarHelper.splitFullNodeName(fullNodeName);
+    }
+
+    @Override
+    public Iterable<? extends RegistryNode> match(String globPattern) {
+        return getMatcher(globPattern).matchTree(getTopology());
+    }
+
+    GlobMatcher getMatcher(String globPattern) {
+        return matchers.get(globPattern);
+    }
+
+    @Override
+    public void addListener(RegistryListener listener) {
+        notifier.addListener("", listener);
+    }
+
+    @Override
+    public void removeListener(RegistryListener listener) {
+        notifier.removeListener("", listener);
+    }
+
+    @Override
+    public BulkSnapshot snapshot(String globPattern) {
+        PersistentBulkSnapshot snapshot =
+                new PersistentBulkSnapshot(this, globPattern);
+        snapshot.refresh();
+        return snapshot;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every change in the batch is published by a single compare-and-set of
+     * the root, so readers see either none of the batch or all of it.
+     * </p>
+     */
+    @Override
+    public RegistrationBatch batch() {
+        return new PersistentRegistrationBatch(this);
+    }
+
+    @Override
+    public Map<String, List<RecordedEvent>> getRecordedEvents(
+            String globPattern) {
+        return RegistrarHelper.getRecordedEvents(match(globPattern));
+    }
+
+    /**
+     * A weakly held handle to a member that isn't registered.
+     */
+    private static final class AbsentHandle
+            extends WeakReference<PathHandle> {
+        private final String path;
+
+        AbsentHandle(String path, PathHandle handle,
+                ReferenceQueue<PathHandle> queue) {
+            super(handle, queue);
+            this.path = path;
+        }
+    }
+}
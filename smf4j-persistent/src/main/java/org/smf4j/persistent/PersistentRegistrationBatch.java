@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.util.helpers.AbstractRegistrationBatch;
+
+/**
+ * The {@link RegistrationBatch} handed out by {@link PersistentRegistrar}.
+ * Each node path is split once, and then the whole batch is applied to the
+ * tree and published with a single compare-and-set of the root.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class PersistentRegistrationBatch extends AbstractRegistrationBatch {
+    private final PersistentRegistrar registrar;
+
+    PersistentRegistrationBatch(PersistentRegistrar registrar) {
+        this.registrar = registrar;
+    }
+
+    @Override
+    protected void apply(Map<String, NodeRegistrations> nodes) {
+        List<String[]> paths = new ArrayList<String[]>();
+        List<PersistentRegistrar.Edit> edits =
+                new ArrayList<PersistentRegistrar.Edit>();
+        for(Map.Entry<String, NodeRegistrations> entry : nodes.entrySet()) {
+            String[] parts = registrar.splitFullNodeName(entry.getKey());
+            if(parts != null) {
+                paths.add(parts);
+                edits.add(new AddAll(entry.getValue()));
+            }
+        }
+
+        if(!registrar.update(paths, edits)) {
+            return;
+        }
+        for(int i=0; i<paths.size(); i++) {
+            NodeRegistrations added = (NodeRegistrations)edits.get(i).result;
+            if(!added.isEmpty()) {
+                registrar.node(paths.get(i)).registeredAll(added);
+            }
+        }
+    }
+
+    /**
+     * Adds every member of a node's registrations that isn't already
+     * registered with it, and records the ones it added.
+     */
+    private static final class AddAll extends PersistentRegistrar.Edit {
+        private final NodeRegistrations batch;
+
+        AddAll(NodeRegistrations batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        NodeState apply(NodeState node) {
+            NodeRegistrations added = new NodeRegistrations();
+            PersistentMap<Accumulator> accs = node.accumulators;
+            for(Map.Entry<String, Accumulator> entry :
+                    batch.getAccumulators().entrySet()) {
+                if(accs.get(entry.getKey()) == null) {
+                    accs = accs.plus(entry.getKey(), entry.getValue());
+                    added.getAccumulators().put(entry.getKey(),
+                            entry.getValue());
+                }
+            }
+
+            PersistentMap<Calculator> calcs = node.calculators;
+            for(Map.Entry<String, Calculator> entry :
+                    batch.getCalculators().entrySet()) {
+                if(calcs.get(entry.getKey()) == null) {
+                    calcs = calcs.plus(entry.getKey(), entry.getValue());
+                    added.getCalculators().put(entry.getKey(),
+                            entry.getValue());
+                }
+            }
+
+            result = added;
+            return node.withAccumulators(accs).withCalculators(calcs);
+        }
+    }
+}
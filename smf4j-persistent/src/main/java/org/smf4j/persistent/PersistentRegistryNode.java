@@ -0,0 +1,492 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.RegistryListener;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.AbstractRegistrationBatch.NodeRegistrations;
+import org.smf4j.util.helpers.AbstractRegistryNode;
+import org.smf4j.util.helpers.CalculatorGraph;
+
+/**
+ * The {@link RegistryNode} handed out by {@link PersistentRegistrar}.
+ * <p>
+ * A {@code PersistentRegistryNode} is a handle onto a path in the tree,
+ * rather than the node itself.  A <em>live</em> handle reads whatever tree
+ * is current, and remembers the node it found in the last tree it read, so
+ * that repeated reads of an unchanged tree don't walk it again.  A handle
+ * from {@link PersistentRegistrar#getTopology()} is pinned to one tree, and
+ * sees it forever.  Either way, changes go to the live tree.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class PersistentRegistryNode extends AbstractRegistryNode {
+
+    private final PersistentRegistrar registrar;
+    private final String[] parts;
+    private final String name;
+
+    /**
+     * The tree this handle is pinned to, or {@code null} if it is live.
+     */
+    private final NodeState pinned;
+    private volatile Resolved resolved;
+    private volatile CalculatorPlan calculatorPlan;
+
+    PersistentRegistryNode(PersistentRegistrar registrar, String[] parts,
+            NodeState pinned) {
+        this.registrar = registrar;
+        this.parts = parts;
+        this.name = join(parts);
+        this.pinned = pinned;
+    }
+
+    static String join(String[] parts) {
+        StringBuilder sb = new StringBuilder();
+        for(String part : parts) {
+            if(sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets this node's state in the tree this handle reads, or
+     * {@link NodeState#EMPTY} if the node isn't in that tree.
+     */
+    private NodeState state() {
+        NodeState tree = pinned != null ? pinned : registrar.root();
+        Resolved r = resolved;
+        if(r != null && r.tree == tree) {
+            return r.state;
+        }
+
+        NodeState state = tree.find(parts);
+        if(state == null) {
+            state = NodeState.EMPTY;
+        }
+        resolved = new Resolved(tree, state);
+        return state;
+    }
+
+    /**
+     * Gets the live handle for this node's path.
+     */
+    private PersistentRegistryNode live() {
+        return pinned == null ? this : registrar.node(parts);
+    }
+
+    private PersistentRegistryNode child(String childName) {
+        String[] childParts = PersistentRegistrar.child(parts, childName);
+        if(pinned == null) {
+            return registrar.node(childParts);
+        }
+        return new PersistentRegistryNode(registrar, childParts, pinned);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Accumulator register(final String memberName,
+            final Accumulator acc) {
+        if(pinned != null) {
+            return live().register(memberName, acc);
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                result = node.accumulators.get(memberName);
+                if(result != null) {
+                    return node;
+                }
+                return node.withAccumulators(
+                        node.accumulators.plus(memberName, acc));
+            }
+        };
+        registrar.update(parts, edit, true);
+        if(edit.result != null) {
+            return (Accumulator)edit.result;
+        }
+
+        bindState(acc);
+        notifyRegistered(memberName, acc);
+        return acc;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link PersistentRegistrar} does not evict idle accumulators, so this
+     * is the same as {@link #register(String, Accumulator)}.
+     * </p>
+     */
+    @Override
+    public Accumulator register(String memberName, Accumulator acc,
+            long idleTimeout, TimeUnit unit) {
+        if(unit == null || idleTimeout <= 0L) {
+            throw new IllegalArgumentException(
+                    "idleTimeout must be positive.");
+        }
+        return register(memberName, acc);
+    }
+
+    @Override
+    public Calculator register(final String memberName,
+            final Calculator calc) {
+        if(pinned != null) {
+            return live().register(memberName, calc);
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                result = node.calculators.get(memberName);
+                if(result != null) {
+                    return node;
+                }
+                return node.withCalculators(
+                        node.calculators.plus(memberName, calc));
+            }
+        };
+        registrar.update(parts, edit, true);
+        if(edit.result != null) {
+            return (Calculator)edit.result;
+        }
+
+        notifyRegistered(memberName, calc);
+        return calc;
+    }
+
+    @Override
+    public boolean unregister(final String memberName, final Accumulator acc) {
+        if(pinned != null) {
+            return live().unregister(memberName, acc);
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                if(node.accumulators.get(memberName) != acc) {
+                    return node;
+                }
+                return node.withAccumulators(
+                        node.accumulators.minus(memberName));
+            }
+        };
+        if(!registrar.update(parts, edit, false)) {
+            return false;
+        }
+
+        if(!state().accumulators.asMap().containsValue(acc)) {
+            unbindState(acc);
+        }
+        registrar.forgetHandle(name + ":" + memberName);
+        notifyUnregistered(memberName, acc);
+        return true;
+    }
+
+    @Override
+    public boolean replace(final String memberName, final Accumulator acc,
+            final Accumulator with) {
+        if(pinned != null) {
+            return live().replace(memberName, acc, with);
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                if(node.accumulators.get(memberName) != acc) {
+                    return node;
+                }
+                return node.withAccumulators(
+                        node.accumulators.plus(memberName, with));
+            }
+        };
+        if(!registrar.update(parts, edit, false)) {
+            return false;
+        }
+
+        if(!state().accumulators.asMap().containsValue(acc)) {
+            unbindState(acc);
+        }
+        bindState(with);
+        notifyUnregistered(memberName, acc);
+        notifyRegistered(memberName, with);
+        return true;
+    }
+
+    @Override
+    public boolean unregister(final String memberName, final Calculator calc) {
+        if(pinned != null) {
+            return live().unregister(memberName, calc);
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                if(node.calculators.get(memberName) != calc) {
+                    return node;
+                }
+                return node.withCalculators(
+                        node.calculators.minus(memberName));
+            }
+        };
+        if(!registrar.update(parts, edit, false)) {
+            return false;
+        }
+
+        registrar.forgetHandle(name + ":" + memberName);
+        notifyUnregistered(memberName, calc);
+        return true;
+    }
+
+    /**
+     * Finishes registering members that a batch has added to this node,
+     * just as {@link #register(String, Accumulator)} would have, except
+     * that our on/off state is only worked out once for all of them.
+     */
+    @Override
+    protected void registeredAll(NodeRegistrations added) {
+        if(pinned != null) {
+            live().registeredAll(added);
+            return;
+        }
+        super.registeredAll(added);
+    }
+
+    @Override
+    protected void addEager(Accumulator acc) {
+        registrar.eagerAccumulators.put(acc, Boolean.TRUE);
+    }
+
+    @Override
+    protected void removeEager(Accumulator acc) {
+        registrar.eagerAccumulators.remove(acc);
+    }
+
+    private void changeState(final Boolean on) {
+        if(pinned != null) {
+            live().changeState(on);
+            return;
+        }
+
+        PersistentRegistrar.Edit edit = new PersistentRegistrar.Edit() {
+            NodeState apply(NodeState node) {
+                return node.withLocalOn(on);
+            }
+        };
+        if(!registrar.update(parts, edit, on != null)) {
+            return;
+        }
+        registrar.generation.incrementAndGet();
+
+        if(!registrar.eagerAccumulators.isEmpty()) {
+            registrar.stateLock.lock();
+            try {
+                pushEagerState(this, state());
+            } finally {
+                registrar.stateLock.unlock();
+            }
+        }
+    }
+
+    private void pushEagerState(PersistentRegistryNode node, NodeState state) {
+        boolean on = node.isOn();
+        for(Accumulator acc : state.accumulators.asMap().values()) {
+            if(registrar.eagerAccumulators.containsKey(acc)) {
+                acc.setOn(on);
+            }
+        }
+
+        for(Map.Entry<String, NodeState> entry :
+                state.children.asMap().entrySet()) {
+            if(entry.getValue().localOn == null) {
+                // Only children that inherit our state are affected
+                pushEagerState(node.child(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> snapshot() {
+        NodeState state = state();
+        return snapshot(state.accumulators.asMap(), getCalculatorGraph(state));
+    }
+
+    /**
+     * Gets the {@link CalculatorGraph} for {@code state}'s calculators,
+     * which is only rebuilt when the calculators themselves have changed.
+     */
+    private CalculatorGraph getCalculatorGraph(NodeState state) {
+        CalculatorPlan plan = calculatorPlan;
+        if(plan == null || plan.calculators != state.calculators) {
+            plan = new CalculatorPlan(state.calculators,
+                    new CalculatorGraph(state.calculators.asMap()));
+            calculatorPlan = plan;
+        }
+        return plan.graph;
+    }
+
+    @Override
+    public Map<String, Accumulator> getAccumulators() {
+        return state().accumulators.asMap();
+    }
+
+    @Override
+    public Accumulator getAccumulator(String memberName) {
+        Accumulator result = state().accumulators.get(memberName);
+        if(result == null) {
+            result = NopAccumulator.INSTANCE;
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Calculator> getCalculators() {
+        return state().calculators.asMap();
+    }
+
+    @Override
+    public Calculator getCalculator(String memberName) {
+        Calculator result = state().calculators.get(memberName);
+        if(result == null) {
+            result = NopCalculator.INSTANCE;
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, RegistryNode> getChildNodes() {
+        PersistentMap<NodeState> children = state().children;
+        if(children.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, RegistryNode> result =
+                new LinkedHashMap<String, RegistryNode>();
+        for(String childName : children.asMap().keySet()) {
+            result.put(childName, child(childName));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public RegistryNode getChildNode(String childName) {
+        if(state().children.get(childName) == null) {
+            return NopRegistryNode.INSTANCE;
+        }
+        return child(childName);
+    }
+
+    @Override
+    public void addListener(RegistryListener listener) {
+        registrar.notifier.addListener(name, listener);
+    }
+
+    @Override
+    public void removeListener(RegistryListener listener) {
+        registrar.notifier.removeListener(name, listener);
+    }
+
+    @Override
+    public long getGeneration() {
+        return registrar.generation.get();
+    }
+
+    @Override
+    public boolean isOn() {
+        // The on/off state is that of the nearest node on our path, from
+        // ourselves up, that has a local state.  The root node is off unless
+        // turned on.
+        NodeState cur = pinned != null ? pinned : registrar.root();
+        boolean on = Boolean.TRUE.equals(cur.localOn);
+        for(int i=0; i<parts.length; i++) {
+            cur = cur.children.get(parts[i]);
+            if(cur == null) {
+                break;
+            }
+            if(cur.localOn != null) {
+                on = cur.localOn.booleanValue();
+            }
+        }
+        return on;
+    }
+
+    @Override
+    public void setOn(boolean on) {
+        changeState(Boolean.valueOf(on));
+    }
+
+    @Override
+    public void clearOn() {
+        changeState(null);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof PersistentRegistryNode)) {
+            return false;
+        }
+        PersistentRegistryNode other = (PersistentRegistryNode)obj;
+        return registrar == other.registrar && pinned == other.pinned
+                && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * The node found at our path in a given tree.
+     */
+    private static final class Resolved {
+        private final NodeState tree;
+        private final NodeState state;
+
+        Resolved(NodeState tree, NodeState state) {
+            this.tree = tree;
+            this.state = state;
+        }
+    }
+
+    private static final class CalculatorPlan {
+        private final PersistentMap<Calculator> calculators;
+        private final CalculatorGraph graph;
+
+        CalculatorPlan(PersistentMap<Calculator> calculators,
+                CalculatorGraph graph) {
+            this.calculators = calculators;
+            this.graph = graph;
+        }
+    }
+}
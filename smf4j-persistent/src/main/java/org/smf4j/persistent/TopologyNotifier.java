@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
+import org.smf4j.util.helpers.AbstractEventDispatcher;
+
+/**
+ * Delivers the {@link RegistryEvent}s of a {@link PersistentRegistrar} to
+ * its {@link RegistryListener}s in batches.
+ * <p>
+ * Rather than record each change as it happens, the notifier remembers the
+ * tree it last reported on.  Shortly after a change, it compares that tree
+ * with the current one and reports the differences.  Subtrees that are the
+ * same object in both trees are the same, so are skipped without looking
+ * inside them; the comparison costs about as much as the changes
+ * themselves.  A burst of changes comes out as a single batch, and a
+ * member added then removed again within a batch is never reported at
+ * all.  While there are no listeners, changes cost nothing.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class TopologyNotifier extends AbstractEventDispatcher {
+    static final long DEFAULT_BATCH_DELAY_MILLIS = 100L;
+
+    private final PersistentRegistrar registrar;
+
+    /**
+     * The tree that listeners have last been told about, or {@code null}
+     * if there have never been any listeners.
+     */
+    private volatile NodeState delivered;
+
+    TopologyNotifier(PersistentRegistrar registrar) {
+        this(registrar, DEFAULT_BATCH_DELAY_MILLIS);
+    }
+
+    TopologyNotifier(PersistentRegistrar registrar, long batchDelayMillis) {
+        super(batchDelayMillis);
+        this.registrar = registrar;
+    }
+
+    @Override
+    protected void started() {
+        // Listeners only hear about changes from here on
+        delivered = registrar.root();
+    }
+
+    /**
+     * Called after every change to the registrar's tree.
+     */
+    void changed() {
+        if(hasListeners()) {
+            schedule();
+        }
+    }
+
+    @Override
+    protected List<RegistryEvent> collect() {
+        NodeState from = delivered;
+        NodeState to = registrar.root();
+        if(from == null || from == to) {
+            return null;
+        }
+        delivered = to;
+
+        List<RegistryEvent> batch = new ArrayList<RegistryEvent>();
+        diff(batch, PersistentRegistrar.NO_PARTS, from, to);
+        return batch;
+    }
+
+    private void diff(List<RegistryEvent> batch, String[] parts,
+            NodeState from, NodeState to) {
+        PersistentRegistryNode node = registrar.node(parts);
+        if(from.localOn == null
+                ? to.localOn != null : !from.localOn.equals(to.localOn)) {
+            batch.add(new RegistryEvent(RegistryEvent.Type.STATE_CHANGED,
+                    node, null, null));
+        }
+
+        if(from.accumulators != to.accumulators) {
+            diffMembers(batch, node, from.accumulators.asMap(),
+                    to.accumulators.asMap(),
+                    RegistryEvent.Type.ACCUMULATOR_ADDED,
+                    RegistryEvent.Type.ACCUMULATOR_REMOVED);
+        }
+        if(from.calculators != to.calculators) {
+            diffMembers(batch, node, from.calculators.asMap(),
+                    to.calculators.asMap(),
+                    RegistryEvent.Type.CALCULATOR_ADDED,
+                    RegistryEvent.Type.CALCULATOR_REMOVED);
+        }
+
+        if(from.children == to.children) {
+            return;
+        }
+        Map<String, NodeState> fromChildren = from.children.asMap();
+        Map<String, NodeState> toChildren = to.children.asMap();
+        for(Map.Entry<String, NodeState> entry : fromChildren.entrySet()) {
+            if(!toChildren.containsKey(entry.getKey())) {
+                batch.add(new RegistryEvent(RegistryEvent.Type.NODE_REMOVED,
+                        registrar.node(PersistentRegistrar.child(parts,
+                        entry.getKey())), null, null));
+            }
+        }
+        for(Map.Entry<String, NodeState> entry : toChildren.entrySet()) {
+            NodeState fromChild = fromChildren.get(entry.getKey());
+            NodeState toChild = entry.getValue();
+            String[] childParts =
+                    PersistentRegistrar.child(parts, entry.getKey());
+            if(fromChild == null) {
+                added(batch, childParts, toChild);
+            } else if(fromChild != toChild) {
+                diff(batch, childParts, fromChild, toChild);
+            }
+        }
+    }
+
+    private void added(List<RegistryEvent> batch, String[] parts,
+            NodeState state) {
+        PersistentRegistryNode node = registrar.node(parts);
+        batch.add(new RegistryEvent(RegistryEvent.Type.NODE_ADDED,
+                node, null, null));
+        if(state.localOn != null) {
+            batch.add(new RegistryEvent(RegistryEvent.Type.STATE_CHANGED,
+                    node, null, null));
+        }
+        for(Map.Entry<String, Accumulator> entry :
+                state.accumulators.asMap().entrySet()) {
+            batch.add(new RegistryEvent(RegistryEvent.Type.ACCUMULATOR_ADDED,
+                    node, entry.getKey(), entry.getValue()));
+        }
+        for(Map.Entry<String, Calculator> entry :
+                state.calculators.asMap().entrySet()) {
+            batch.add(new RegistryEvent(RegistryEvent.Type.CALCULATOR_ADDED,
+                    node, entry.getKey(), entry.getValue()));
+        }
+        for(Map.Entry<String, NodeState> entry :
+                state.children.asMap().entrySet()) {
+            added(batch, PersistentRegistrar.child(parts, entry.getKey()),
+                    entry.getValue());
+        }
+    }
+
+    private static <T> void diffMembers(List<RegistryEvent> batch,
+            PersistentRegistryNode node, Map<String, T> from,
+            Map<String, T> to, RegistryEvent.Type addedType,
+            RegistryEvent.Type removedType) {
+        for(Map.Entry<String, T> entry : from.entrySet()) {
+            if(to.get(entry.getKey()) != entry.getValue()) {
+                batch.add(new RegistryEvent(removedType, node,
+                        entry.getKey(), entry.getValue()));
+            }
+        }
+        for(Map.Entry<String, T> entry : to.entrySet()) {
+            if(from.get(entry.getKey()) != entry.getValue()) {
+                batch.add(new RegistryEvent(addedType, node,
+                        entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class PersistentMapTest {
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42L);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        PersistentMap<Integer> map = PersistentMap.empty();
+        for(int i=0; i<20000; i++) {
+            String key = "k" + random.nextInt(2000);
+            if(random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                Integer value = random.nextInt();
+                expected.put(key, value);
+                map = map.plus(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertEquals(expected, map.asMap());
+        for(String key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertNull(map.get("missing"));
+    }
+
+    @Test
+    public void versionsAreIndependent() {
+        PersistentMap<String> empty = PersistentMap.empty();
+        PersistentMap<String> one = empty.plus("a", "1");
+        PersistentMap<String> two = one.plus("b", "2");
+        PersistentMap<String> changed = two.plus("a", "3");
+
+        assertTrue(empty.isEmpty());
+        assertEquals("{a=1}", one.asMap().toString());
+        assertEquals("1", two.get("a"));
+        assertEquals("3", changed.get("a"));
+        assertEquals(2, changed.size());
+
+        // No-op changes hand back the same map
+        assertSame(two, two.plus("a", two.get("a")));
+        assertSame(two, two.minus("missing"));
+        assertSame(empty, one.minus("a"));
+    }
+
+    @Test
+    public void collidingKeys() {
+        // "Aa" and "BB" have the same hash code
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        PersistentMap<String> map = PersistentMap.<String>empty()
+                .plus("Aa", "1").plus("BB", "2").plus("AaAa", "3")
+                .plus("BBBB", "4").plus("AaBB", "5");
+
+        assertEquals(5, map.size());
+        assertEquals("1", map.get("Aa"));
+        assertEquals("2", map.get("BB"));
+        assertEquals("5", map.get("AaBB"));
+        assertNull(map.get("BBAa"));
+
+        map = map.minus("Aa").minus("AaAa").minus("AaBB");
+        assertEquals(2, map.size());
+        assertEquals("2", map.get("BB"));
+        assertEquals("4", map.get("BBBB"));
+        assertEquals(2, map.asMap().size());
+
+        map = map.minus("BB").minus("BBBB");
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.persistent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
+import org.smf4j.Calculator;
+import org.smf4j.Mutator;
+import org.smf4j.OnStateSource;
+import org.smf4j.PathHandle;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
+import org.smf4j.RegistryNode;
+import org.smf4j.SnapshotView;
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopMutator;
+import org.smf4j.nop.NopPathHandle;
+import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.GlobMatch;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class PersistentRegistrarTest {
+
+    @Test
+    public void registerAndLookup() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("a.b"));
+        assertTrue(r.getRootNode().getChildNodes().isEmpty());
+
+        ValueAcc one = new ValueAcc(1L);
+        RegistryNode ab = r.getNode("a.b");
+        assertSame(ab, r.getNode("a.b"));
+        assertSame(ab, r.lookupNode(" a . b "));
+        assertSame(one, ab.register("one", one));
+        assertSame(one, ab.register("one", new ValueAcc(2L)));
+        assertSame(one, r.getAccumulator("a.b:one"));
+        assertSame(NopAccumulator.INSTANCE, r.getAccumulator("a.b:two"));
+        assertSame(NopAccumulator.INSTANCE, r.getAccumulator("a.c:one"));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("a..b"));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("a.c"));
+        assertEquals("[b]",
+                r.getNode("a").getChildNodes().keySet().toString());
+
+        assertFalse(ab.unregister("one", new ValueAcc(1L)));
+        assertTrue(ab.unregister("one", one));
+        assertFalse(ab.unregister("one", one));
+        assertTrue(ab.getAccumulators().isEmpty());
+
+        try {
+            ab.register("ttl", one, 0L, TimeUnit.SECONDS);
+            fail("Non-positive idle timeout allowed.");
+        } catch(IllegalArgumentException e) {
+        }
+        assertSame(one, ab.register("ttl", one, 1L, TimeUnit.SECONDS));
+        assertSame(one, ab.getAccumulator("ttl"));
+    }
+
+    @Test
+    public void topologyIsFrozen() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        ValueAcc one = new ValueAcc(1L);
+        r.getNode("a").register("one", one);
+
+        RegistryNode topology = r.getTopology();
+        r.getNode("a").register("two", new ValueAcc(2L));
+        r.getNode("a").unregister("one", one);
+        r.getNode("b");
+
+        assertEquals("[a]", topology.getChildNodes().keySet().toString());
+        RegistryNode a = topology.getChildNode("a");
+        assertEquals("a", a.getName());
+        assertEquals("[one]", a.getAccumulators().keySet().toString());
+        assertSame(NopRegistryNode.INSTANCE, topology.getChildNode("b"));
+
+        // The live tree has moved on
+        assertEquals("[two]", r.getNode("a").getAccumulators().keySet()
+                .toString());
+        assertEquals(2, r.getRootNode().getChildNodes().size());
+
+        // Changes through a frozen view go to the live tree
+        a.register("three", one);
+        assertSame(one, r.getAccumulator("a:three"));
+        assertFalse(a.getAccumulators().containsKey("three"));
+    }
+
+    @Test
+    public void onState() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        ValueAcc eager = new ValueAcc(0L);
+        r.getNode("a.b").register("eager", eager);
+        RegistryNode ab = r.getNode("a.b");
+        assertFalse(ab.isOn());
+        assertFalse(eager.on);
+
+        OnStateSource source = (OnStateSource)ab;
+        long generation = source.getGeneration();
+        r.setOn("a", true);
+        assertTrue(ab.isOn());
+        assertTrue(eager.on);
+        assertTrue(source.getGeneration() != generation);
+
+        ab.setOn(false);
+        r.setOn("a", true);
+        assertFalse(ab.isOn());
+        assertFalse(eager.on);
+
+        ab.clearOn();
+        assertTrue(ab.isOn());
+        assertTrue(eager.on);
+
+        r.getRootNode().setOn(true);
+        r.setOn("a", false);
+        assertFalse(r.getNode("a.b.c").isOn());
+        assertTrue(r.getNode("x").isOn());
+    }
+
+    @Test
+    public void matchAndSnapshot() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        r.getNode("app.web").register("requests", new ValueAcc(3L));
+        r.getNode("app.web").register("errors", new ValueAcc(1L));
+        r.getNode("app.db").register("queries", new ValueAcc(5L));
+        r.getNode("app.web").register("total", new SumCalc());
+
+        List<String> names = new ArrayList<String>();
+        for(RegistryNode node : r.match("app.*:requests")) {
+            GlobMatch match = (GlobMatch)node;
+            names.add(match.getName() + match.getMemberNames());
+        }
+        Collections.sort(names);
+        assertEquals("[app.db[], app.web[requests]]", names.toString());
+
+        Map<String, Object> values = r.getNode("app.web").snapshot();
+        assertEquals(3L, values.get("requests"));
+        assertEquals(4L, values.get("total"));
+
+        BulkSnapshot snapshot = r.snapshot("app.**");
+        assertEquals("[app.db:queries, app.web:errors, app.web:requests]",
+                Arrays.toString(snapshot.getAccumulatorPaths()));
+        assertEquals("[5, 1, 3]", Arrays.toString(snapshot.getValues()));
+        assertEquals("[app.web:total]",
+                Arrays.toString(snapshot.getCalculatorPaths()));
+        assertEquals(4.0, snapshot.getCalculatedValues()[0], 0.0);
+        long schema = snapshot.getSchemaVersion();
+
+        assertEquals(3, snapshot.getChangedCount());
+        assertEquals(1, snapshot.getChangedCalculatorCount());
+
+        snapshot.refresh();
+        assertEquals(schema, snapshot.getSchemaVersion());
+        assertEquals(0, snapshot.getChangedCount());
+        assertEquals(0, snapshot.getChangedCalculatorCount());
+
+        r.getNode("app.rpc").register("calls", new ValueAcc(7L));
+        snapshot.refresh();
+        assertTrue(snapshot.getSchemaVersion() != schema);
+        assertEquals("[5, 7, 1, 3]", Arrays.toString(snapshot.getValues()));
+    }
+
+    @Test
+    public void primitiveSnapshot() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        ValueAcc one = new ValueAcc(1L);
+        r.getNode("a").register("one", one);
+        r.getNode("a").register("two", new ValueAcc(2L));
+        r.getNode("a").register("sum", new PrimitiveSum("one", "two"));
+
+        // The persistent snapshot shares the primitive path, so the Map
+        // overload is never called
+        BulkSnapshot snapshot = r.snapshot("a:sum");
+        assertEquals(3.0, snapshot.getCalculatedValues()[0], 0.0);
+        one.value = 5L;
+        snapshot.refresh();
+        assertEquals(7.0, snapshot.getCalculatedValues()[0], 0.0);
+    }
+
+    @Test
+    public void resolve() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        PathHandle handle = r.resolve("a.b:one");
+        assertSame(handle, r.resolve("a.b:one"));
+        assertEquals("a.b:one", handle.getPath());
+        assertEquals("one", handle.getMemberName());
+        assertSame(NopAccumulator.INSTANCE, handle.getAccumulator());
+
+        ValueAcc one = new ValueAcc(1L);
+        r.getNode("a.b").register("one", one);
+        assertSame(one, handle.getAccumulator());
+        r.getNode("a.b").unregister("one", one);
+        assertSame(NopAccumulator.INSTANCE, handle.getAccumulator());
+
+        assertSame(NopPathHandle.INSTANCE, r.resolve("a..b:one"));
+        assertTrue(handle.getId() != r.resolve("a.b").getId());
+    }
+
+    @Test
+    public void replace() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        ValueAcc one = new ValueAcc(1L);
+        ValueAcc two = new ValueAcc(2L);
+        node.register("one", one);
+        PathHandle handle = r.resolve("a.b:one");
+        RegistryNode view = r.getTopology();
+
+        assertFalse(node.replace("one", two, one));
+        assertTrue(node.replace("one", one, two));
+        assertSame(two, node.getAccumulator("one"));
+        assertSame(two, handle.getAccumulator());
+        assertSame(handle, r.resolve("a.b:one"));
+        assertSame(one, view.getChildNode("a").getChildNode("b")
+                .getAccumulator("one"));
+    }
+
+    @Test
+    public void handleCacheIsBounded() {
+        PersistentRegistrar r = new PersistentRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        r.resolve("a.b");
+        int baseline = r.cachedHandles();
+
+        // Resolving members that don't exist caches nothing
+        for(int i=0; i<1000; i++) {
+            r.resolve("a.b:n" + i);
+        }
+        assertEquals(baseline, r.cachedHandles());
+
+        // ... but a held handle is handed back once its member exists
+        PathHandle handle = r.resolve("a.b:one");
+        ValueAcc one = new ValueAcc(1L);
+        node.register("one", one);
+        assertSame(handle, r.resolve("a.b:one"));
+        assertSame(one, handle.getAccumulator());
+        assertEquals(baseline + 1, r.cachedHandles());
+
+        // Unregistering evicts it again
+        node.unregister("one", one);
+        assertEquals(baseline, r.cachedHandles());
+        assertSame(NopAccumulator.INSTANCE, handle.getAccumulator());
+        assertSame(handle, r.resolve("a.b:one"));
+    }
+
+    @Test
+    public void listeners()
+    throws Exception {
+        // Events are only ever delivered by drain()
+        PersistentRegistrar r = new PersistentRegistrar(Long.MAX_VALUE / 2);
+        RegistryNode a = r.getNode("a");
+        ValueAcc one = new ValueAcc(1L);
+        ValueAcc two = new ValueAcc(2L);
+
+        // No listeners, no events
+        a.register("one", one);
+        r.notifier.drain();
+
+        Recorder all = new Recorder();
+        Recorder underB = new Recorder();
+        r.addListener(all);
+        r.addListener(all);
+        r.getNode("a.b").addListener(underB);
+
+        RegistryNode ab = r.getNode("a.b");
+        ab.register("two", two);
+        ab.setOn(true);
+        a.register("three", two);
+        a.unregister("three", two);
+        a.unregister("one", one);
+        r.notifier.drain();
+
+        assertEquals("[ACCUMULATOR_REMOVED a:one, NODE_ADDED a.b, "
+                + "STATE_CHANGED a.b, ACCUMULATOR_ADDED a.b:two]",
+                all.events.toString());
+        assertEquals("[NODE_ADDED a.b, STATE_CHANGED a.b, "
+                + "ACCUMULATOR_ADDED a.b:two]", underB.events.toString());
+
+        // Changes that undo one another aren't reported at all
+        ab.setOn(false);
+        ab.setOn(true);
+        r.notifier.drain();
+        assertEquals(4, all.events.size());
+
+        r.removeListener(all);
+        a.register("one", one);
+        r.notifier.drain();
+        assertEquals(4, all.events.size());
+    }
+
+    @Test
+    public void batch()
+    throws Exception {
+        PersistentRegistrar r = new PersistentRegistrar(Long.MAX_VALUE / 2);
+        Recorder recorder = new Recorder();
+        r.addListener(recorder);
+        r.setOn("a", true);
+        ValueAcc existing = new ValueAcc(0L);
+        r.getNode("a.b").register("one", existing);
+        r.notifier.drain();
+        recorder.events.clear();
+
+        ValueAcc one = new ValueAcc(1L);
+        ValueAcc two = new ValueAcc(2L);
+        SumCalc sum = new SumCalc();
+        RegistrationBatch batch = r.batch()
+                .register("a.b", "one", one)
+                .register("a.b", "two", two)
+                .register("a.b", "two", new ValueAcc(3L))
+                .register("a.b", "sum", sum)
+                .register("x.y", "one", one)
+                .register("a..b", "bad", new ValueAcc(4L))
+                .node("a.empty");
+
+        // Nothing happens until commit, and then it all happens at once
+        NodeState before = r.root();
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("x.y"));
+        batch.commit();
+        NodeState after = r.root();
+        assertNotSame(before, after);
+        assertNull(before.find(new String[] {"x", "y"}));
+        assertSame(one, after.find(new String[] {"x", "y"})
+                .accumulators.get("one"));
+
+        RegistryNode ab = r.getNode("a.b");
+        assertSame(existing, ab.getAccumulator("one"));
+        assertSame(two, ab.getAccumulator("two"));
+        assertSame(sum, ab.getCalculator("sum"));
+        assertTrue(two.on);
+        assertNotSame(NopRegistryNode.INSTANCE, r.lookupNode("a.empty"));
+
+        r.notifier.drain();
+        List<String> events = new ArrayList<String>();
+        for(RegistryEvent event : recorder.events) {
+            events.add(event.toString());
+        }
+        Collections.sort(events);
+        assertEquals("[ACCUMULATOR_ADDED a.b:two, "
+                + "ACCUMULATOR_ADDED x.y:one, CALCULATOR_ADDED a.b:sum, "
+                + "NODE_ADDED a.empty, NODE_ADDED x, NODE_ADDED x.y]",
+                events.toString());
+
+        try {
+            batch.commit();
+            fail("Committed twice.");
+        } catch(IllegalStateException e) {
+        }
+    }
+
+    private static final class Recorder implements RegistryListener {
+        final List<RegistryEvent> events = new ArrayList<RegistryEvent>();
+
+        public synchronized void registryChanged(List<RegistryEvent> batch) {
+            events.addAll(batch);
+        }
+    }
+
+    private static final class ValueAcc implements Accumulator {
+        private volatile long value;
+        private volatile boolean on;
+
+        ValueAcc(long value) {
+            this.value = value;
+        }
+
+        public boolean isOn() {
+            return on;
+        }
+
+        public void setOn(boolean on) {
+            this.on = on;
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class SumCalc implements Calculator {
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            long sum = 0L;
+            for(Long val : values.values()) {
+                sum += val;
+            }
+            return sum;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    private static final class PrimitiveSum implements PrimitiveCalculator {
+        private final String[] inputs;
+
+        PrimitiveSum(String... inputs) {
+            this.inputs = inputs;
+        }
+
+        public String[] getAccumulatorInputs() {
+            return inputs;
+        }
+
+        public Long calculate(SnapshotView view) {
+            long sum = 0L;
+            for(int i=0; i<view.size(); i++) {
+                if(view.contains(i)) {
+                    sum += view.get(i);
+                }
+            }
+            return sum;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+}
@@ -21,7 +21,7 @@ import org.smf4j.Calculator;
 import org.smf4j.Accumulator;
 import org.smf4j.RegistrarFactory;
 import org.smf4j.Registrar;
-import org.smf4j.RegistryNode;
+import org.smf4j.RegistrationBatch;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -78,14 +78,29 @@ public class RegistrarFactoryBean implements FactoryBean<Registrar>,
         }
 
         initialized = true;
-        Registrar r = RegistrarFactory.getRegistrar();
+
+        // Register everything in one batch, rather than one member at a time
+        RegistrationBatch batch = RegistrarFactory.getRegistrar().batch();
         for(RegistryNodeProxy nodeProxy : nodeProxies) {
-            registerProxy(r, nodeProxy, "");
+            registerProxy(batch, nodeProxy, "");
         }
+        batch.commit();
     }
 
+    /**
+     * Registers {@code nodeProxy}, and everything beneath it, with {@code r}
+     * in a batch of its own. {@link #initialize()} batches every proxy
+     * together through the {@link RegistrationBatch} overload instead.
+     */
     protected void registerProxy(Registrar r, RegistryNodeProxy nodeProxy,
             String parentName) {
+        RegistrationBatch batch = r.batch();
+        registerProxy(batch, nodeProxy, parentName);
+        batch.commit();
+    }
+
+    protected void registerProxy(RegistrationBatch batch,
+            RegistryNodeProxy nodeProxy, String parentName) {
         String name = nodeProxy.getName();
         if(StringUtils.hasLength(parentName)) {
             name = parentName + "." + name;
@@ -99,12 +114,12 @@ public class RegistrarFactoryBean implements FactoryBean<Registrar>,
                 Object obj = applicationContext.getBean(beanRef);
                 if(obj instanceof Accumulator) {
                     // An accumulator
-                    RegistryNode node = r.getNode(name);
-                    node.register(childProxy.getName(),(Accumulator)obj);
+                    batch.register(name, childProxy.getName(),
+                            (Accumulator)obj);
                 } else if(obj instanceof Calculator) {
                     // A Caclulator
-                    RegistryNode node = r.getNode(name);
-                    node.register(childProxy.getName(),(Calculator)obj);
+                    batch.register(name, childProxy.getName(),
+                            (Calculator)obj);
                 } else {
                     throw new RuntimeException(String.format(
                             "[Node: %s, Child: %s] Node child "
@@ -113,8 +128,8 @@ public class RegistrarFactoryBean implements FactoryBean<Registrar>,
                 }
             } else if(proxy instanceof RegistryNodeProxy) {
                 // An embedded node
-                r.getNode(name);
-                registerProxy(r, (RegistryNodeProxy)proxy, name);
+                batch.node(name);
+                registerProxy(batch, (RegistryNodeProxy)proxy, name);
             }
         }
     }
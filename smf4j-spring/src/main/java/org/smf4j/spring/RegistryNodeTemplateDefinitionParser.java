@@ -60,6 +60,7 @@ public class RegistryNodeTemplateDefinitionParser extends
     public static final String UNITS_ATTR = "units";
     public static final String FREQUENCY_ATTR = "frequency";
     public static final String ACCUMULATOR_ATTR = "accumulator";
+    public static final String CALCULATOR_ATTR = "calculator";
     public static final String NUMERATOR_ATTR = "numerator";
     public static final String DENOMINATOR_ATTR = "denominator";
     public static final String NORMALIZE_ATTR = "normalize";
@@ -528,6 +529,7 @@ public class RegistryNodeTemplateDefinitionParser extends
     protected String createRangeGroup(ParserContext context, Element element) {
         String name = getName(context, element);
         String accumulator = element.getAttribute(ACCUMULATOR_ATTR);
+        String calculator = element.getAttribute(CALCULATOR_ATTR);
         String units = element.getAttribute(UNITS_ATTR);
         String ranges = element.getAttribute(RANGES_ATTR);
         String suffixes = element.getAttribute(SUFFIXES_ATTR);
@@ -536,6 +538,14 @@ public class RegistryNodeTemplateDefinitionParser extends
         String threshold = element.getAttribute(THRESHOLD_ATTR);
         String format = element.getAttribute(FORMAT_ATTR);
 
+        if(!StringUtils.hasLength(accumulator)
+                && !StringUtils.hasLength(calculator)) {
+            context.getReaderContext().error(
+                    "<range-group> must have an 'accumulator' or a "
+                    + "'calculator'.", context.extractSource(element));
+            return null;
+        }
+
         ManagedList<RuntimeBeanReference> groupings =
                 createGroupings(context, element, ranges, suffixes);
         if(groupings == null) {
@@ -554,6 +564,9 @@ public class RegistryNodeTemplateDefinitionParser extends
         Object frequency = getFrequency(context, element, freq);
         bdb.addPropertyValue(FREQUENCY_ATTR, frequency);
         bdb.addPropertyValue(ACCUMULATOR_ATTR, accumulator);
+        if(StringUtils.hasLength(calculator)) {
+            bdb.addPropertyValue(CALCULATOR_ATTR, calculator);
+        }
         bdb.addPropertyValue(THRESHOLD_ATTR, threshold);
         bdb.addPropertyValue(FORMATSTRING_ATTR, format);
 
@@ -406,6 +406,13 @@ public class RegistrarTest {
         assertTrue(rg.isNormalize());
         assertEquals(Frequency.MILLIS, rg.getFrequency());
         assertEquals("%.3f%s", rg.getFormatString());
+
+        RangeGroup formatted = (RangeGroup)
+                foobar.getCalculator("formatted");
+        assertNotNull(formatted);
+        assertEquals("normalize", formatted.getCalculator());
+        assertArrayEquals(new String[] { "normalize" },
+                formatted.getCalculatorInputs());
     }
 
     private void assertCounterMakeup(Accumulator accumulator,
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import org.smf4j.BulkSnapshot;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.AbstractBulkSnapshot;
+
+/**
+ * The {@link BulkSnapshot} handed out by {@link DefaultRegistrar}.
+ * <p>
+ * The glob pattern is matched again whenever the registrar's topology
+ * counter has moved since the last refresh.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class DefaultBulkSnapshot extends AbstractBulkSnapshot {
+    private final DefaultRegistrar registrar;
+    private final String globPattern;
+    private long topology = -1L;
+
+    DefaultBulkSnapshot(DefaultRegistrar registrar, String globPattern) {
+        this.registrar = registrar;
+        this.globPattern = globPattern;
+    }
+
+    @Override
+    protected Iterable<? extends RegistryNode> rematch() {
+        // Read the topology before matching, so that a change that races
+        // with the match gets picked up by the next refresh.
+        long currentTopology = registrar.topology.get();
+        if(currentTopology == topology) {
+            return null;
+        }
+        topology = currentTopology;
+        return registrar.match(globPattern);
+    }
+}
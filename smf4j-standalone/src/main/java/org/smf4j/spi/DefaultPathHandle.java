@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopCalculator;
+
+/**
+ * The {@link PathHandle} handed out by {@link DefaultRegistrar}.  There is
+ * exactly one {@code DefaultPathHandle} per node and per member name, owned
+ * by the {@link DefaultRegistryNode} it points at.  The node refreshes a
+ * member handle whenever a member is registered or unregistered under its
+ * name, so reading the handle's member never touches the node's maps.  A
+ * handle for a name with no member registered is only held weakly, so it
+ * lives exactly as long as somebody is holding on to it.  Each handle also
+ * remembers the path strings under which {@link DefaultRegistrar} has cached
+ * it, so that they can be forgotten without scanning the whole cache.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class DefaultPathHandle implements PathHandle {
+    private final String path;
+    private final int id;
+    private final DefaultRegistryNode node;
+    private final String memberName;
+    private volatile Accumulator accumulator;
+    private volatile Calculator calculator;
+
+    /**
+     * The registrar's cache keys that map to this handle, or {@code null} if
+     * there are none.  Guarded by {@code this}.
+     */
+    private List<String> keys;
+
+    DefaultPathHandle(int id, DefaultRegistryNode node, String memberName) {
+        this.id = id;
+        this.node = node;
+        this.memberName = memberName;
+        this.path = memberName == null
+                ? node.getName() : node.getName() + ":" + memberName;
+        this.accumulator = NopAccumulator.INSTANCE;
+        this.calculator = NopCalculator.INSTANCE;
+    }
+
+    /**
+     * Re-reads this handle's member from its node.  Both the node's
+     * registration methods and the creation of the handle call this after
+     * changing what they change, and the last of them to get here reads
+     * the latest state.
+     */
+    synchronized void refresh() {
+        if(memberName != null) {
+            accumulator = node.getAccumulator(memberName);
+            calculator = node.getCalculator(memberName);
+        }
+    }
+
+    /**
+     * Records that {@code key} maps to this handle in the registrar's cache.
+     */
+    synchronized void addKey(String key) {
+        if(keys == null) {
+            keys = new ArrayList<String>(1);
+        }
+        if(!keys.contains(key)) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Records that {@code key} no longer maps to this handle.
+     */
+    synchronized void removeKey(String key) {
+        if(keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Gets, and forgets, every cache key that maps to this handle.
+     */
+    synchronized List<String> takeKeys() {
+        List<String> result = keys;
+        keys = null;
+        if(result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    /**
+     * Gets whether a member is currently registered under this handle's
+     * member name.
+     */
+    boolean hasMember() {
+        return accumulator != NopAccumulator.INSTANCE
+                || calculator != NopCalculator.INSTANCE;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public RegistryNode getNode() {
+        return node;
+    }
+
+    @Override
+    public String getMemberName() {
+        return memberName;
+    }
+
+    @Override
+    public Accumulator getAccumulator() {
+        return accumulator;
+    }
+
+    @Override
+    public Calculator getCalculator() {
+        return calculator;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -15,36 +15,95 @@
  */
 package org.smf4j.spi;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.regex.Pattern;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
 import org.smf4j.Calculator;
+import org.smf4j.PathHandle;
+import org.smf4j.RecordedEvent;
 import org.smf4j.nop.NopRegistryNode;
 import org.smf4j.RegistryNode;
 import org.smf4j.Registrar;
-import org.smf4j.util.helpers.GlobMatch;
-import org.smf4j.util.helpers.GlobMatcher;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.RegistryListener;
+import org.smf4j.util.helpers.GlobMatcherCache;
+import org.smf4j.util.helpers.RegistrarHelper;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
+import org.smf4j.nop.NopPathHandle;
 
 /**
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
 class DefaultRegistrar implements Registrar {
-    private static final Pattern validPartChars =
-            Pattern.compile("[\\w]+");
     private volatile DefaultRegistryNode root;
 
-    private final Logger log = LoggerFactory.getLogger(DefaultRegistrar.class);
     final ReentrantLock stateLock;
 
+    /**
+     * Bumped every time the on/off state of any node changes.
+     */
+    final AtomicLong generation;
+
+    /**
+     * The number of registered accumulators that must have their on/off
+     * state pushed to them eagerly.
+     */
+    final AtomicInteger eagerAccumulators;
+
+    /**
+     * Bumped every time a node is created, or a member is registered or
+     * unregistered.
+     */
+    final AtomicLong topology;
+
+    final RegistryEventDispatcher events;
+
+    /**
+     * Held for reading while adding anything to a node, and for writing
+     * while removing an empty node from the tree, so that nothing is ever
+     * added to a node as it is being pruned.
+     */
+    final ReentrantReadWriteLock pruneLock;
+
+    final IdleEvictor evictor;
+
+    /**
+     * Every path string that has been resolved, mapped to its handle.  Only
+     * valid paths are cached.
+     */
+    private final ConcurrentMap<String, PathHandle> handles;
+    private final AtomicInteger handleIds;
+
+    /**
+     * Compiled glob patterns, keyed on the pattern.
+     */
+    private final GlobMatcherCache matchers;
+
     DefaultRegistrar() {
+        this(new RegistryEventDispatcher());
+    }
+
+    DefaultRegistrar(RegistryEventDispatcher events) {
         this.stateLock = new ReentrantLock();
+        this.generation = new AtomicLong();
+        this.eagerAccumulators = new AtomicInteger();
+        this.topology = new AtomicLong();
+        this.events = events;
+        this.pruneLock = new ReentrantReadWriteLock();
+        this.evictor = new IdleEvictor(this);
+        this.handles = new ConcurrentHashMap<String, PathHandle>();
+        this.handleIds = new AtomicInteger();
+        this.matchers = new GlobMatcherCache();
         this.root = new DefaultRegistryNode(this, null, "");
     }
 
@@ -55,76 +114,196 @@ class DefaultRegistrar implements Registrar {
 
     @Override
     public RegistryNode getNode(String fullNodeName) {
-        return findNode(fullNodeName);
+        PathHandle handle = resolve(fullNodeName);
+        if(handle.getMemberName() != null) {
+            return NopRegistryNode.INSTANCE;
+        }
+        return handle.getNode();
     }
 
     @Override
-    public Accumulator getAccumulator(String memberPath) {
-        String[] split = splitMemberPath(memberPath);
-        if(split == null) {
-            return NopAccumulator.INSTANCE;
+    public RegistryNode lookupNode(String nodePath) {
+        PathHandle handle = lookup(nodePath);
+        if(handle.getMemberName() != null) {
+            return NopRegistryNode.INSTANCE;
         }
-        return findNode(split[0]).getAccumulator(split[1]);
+        return handle.getNode();
+    }
+
+    @Override
+    public Accumulator getAccumulator(String memberPath) {
+        return lookup(memberPath).getAccumulator();
     }
 
     @Override
     public Calculator getCalculator(String memberPath) {
-        String[] split = splitMemberPath(memberPath);
-        if(split == null) {
-            return NopCalculator.INSTANCE;
+        return lookup(memberPath).getCalculator();
+    }
+
+    /**
+     * Like {@link #resolve(java.lang.String) resolve}, but without creating
+     * the node if it doesn't exist yet.
+     */
+    private PathHandle lookup(String path) {
+        if(path == null) {
+            return NopPathHandle.INSTANCE;
+        }
+
+        PathHandle handle = handles.get(path);
+        if(handle != null && !isStale(handle)) {
+            return handle;
+        }
+
+        int colon = path.indexOf(':');
+        String nodePath = colon < 0 ? path : path.substring(0, colon);
+        RegistryNode node = findNode(nodePath, false);
+        if(node == NopRegistryNode.INSTANCE) {
+            return NopPathHandle.INSTANCE;
         }
-        return findNode(split[0]).getCalculator(split[1]);
+        if(colon >= 0) {
+            // Don't create a handle just to find that a member isn't there
+            String[] split = RegistrarHelper.splitMemberPath(path);
+            if(split == null
+                    || (node.getAccumulator(split[1])
+                        == NopAccumulator.INSTANCE
+                    && node.getCalculator(split[1])
+                        == NopCalculator.INSTANCE)) {
+                return NopPathHandle.INSTANCE;
+            }
+        }
+        return resolve(path);
     }
 
     @Override
     public void setOn(String fullNodeName, boolean on) {
-        findNode(fullNodeName).setOn(on);
+        getNode(fullNodeName).setOn(on);
     }
 
     @Override
     public void clearOn(String fullNodeName) {
-        findNode(fullNodeName).clearOn();
+        getNode(fullNodeName).clearOn();
     }
 
-    String[] splitFullNodeName(String fullNodeName) {
-        if(fullNodeName == null) {
-            log.warn("Error in node name: Node name is null.");
-            return null;
+    @Override
+    public PathHandle resolve(String path) {
+        if(path == null) {
+            return NopPathHandle.INSTANCE;
         }
 
-        // Trim whitespace off of full node name
-        fullNodeName = fullNodeName.trim();
+        PathHandle handle = handles.get(path);
+        if(handle != null) {
+            if(!isStale(handle)) {
+                return handle;
+            }
+            if(handles.remove(path, handle)) {
+                ((DefaultPathHandle)handle).removeKey(path);
+            }
+        }
 
-        // Split by dots
-        String[] parts = fullNodeName.split("\\.", -1);
+        // Not seen before - parse and walk it once, then remember it
+        if(path.indexOf(':') < 0) {
+            RegistryNode node = findNode(path);
+            if(node == NopRegistryNode.INSTANCE) {
+                return NopPathHandle.INSTANCE;
+            }
+            handle = ((DefaultRegistryNode)node).getHandle();
+        } else {
+            String[] split = RegistrarHelper.splitMemberPath(path);
+            if(split == null) {
+                return NopPathHandle.INSTANCE;
+            }
+            RegistryNode node = findNode(split[0]);
+            if(node == NopRegistryNode.INSTANCE) {
+                return NopPathHandle.INSTANCE;
+            }
+            handle = ((DefaultRegistryNode)node).getHandle(split[1]);
+        }
 
-        // Ensure that for non-root full node names, no part of the name
-        // is empty
-        for(int i=0; i<parts.length; i++) {
-            // Trim whitespace off of part
-            parts[i] = parts[i].trim();
-
-            if(parts[i].length() == 0) {
-                // A part cannot be all whitespace (only the root node can
-                // be empty).
-                log.warn("Error in node name '{}': No part of a "
-                        + "node name can be empty (or all whitespace).",
-                        fullNodeName);
-                return null;
-            } else if(!validPartChars.matcher(parts[i]).matches()) {
-                log.warn("Error in node name '{}': A part of a node name can "
-                        + "only consist of the characters 'a'-'z', 'A'-'Z', "
-                        + "'0'-'9', and '_' .",
-                        fullNodeName);
-                return null;
+        // Each node and member owns exactly one handle, so it doesn't matter
+        // who wins a race to cache it.  Paths to members that don't exist
+        // aren't cached, so that lookups of made-up names can't grow the
+        // cache without bound.  The key is recorded before the handle is
+        // cached, and the handle checked again after, so that a handle
+        // forgotten in between doesn't stay cached.
+        if(!isStale(handle)) {
+            ((DefaultPathHandle)handle).addKey(path);
+            handles.put(path, handle);
+            if(isStale(handle)) {
+                handles.remove(path, handle);
             }
         }
+        return handle;
+    }
+
+    /**
+     * Gets whether {@code handle} points into a node that has since been
+     * pruned, or at a member that is not registered.
+     */
+    private static boolean isStale(PathHandle handle) {
+        if(((DefaultRegistryNode)handle.getNode()).isPruned()) {
+            return true;
+        }
+        return handle.getMemberName() != null
+                && !((DefaultPathHandle)handle).hasMember();
+    }
+
+    /**
+     * Forgets the resolved handles for the given nodes, after they have been
+     * pruned.  A pruned node is empty, and the handles of its members were
+     * forgotten as they were unregistered, so only the node's own handle is
+     * left.
+     * @param nodes The pruned nodes.
+     */
+    void forgetHandles(Collection<DefaultRegistryNode> nodes) {
+        for(DefaultRegistryNode node : nodes) {
+            DefaultPathHandle handle = node.peekHandle();
+            if(handle != null) {
+                forgetHandle(handle);
+            }
+        }
+    }
+
+    /**
+     * Forgets every path resolved to {@code handle}, after its member has
+     * been unregistered.
+     * @param handle The handle to forget.
+     */
+    void forgetHandle(DefaultPathHandle handle) {
+        for(String key : handle.takeKeys()) {
+            handles.remove(key, handle);
+        }
+    }
 
-        return parts;
+    /**
+     * Gets the number of resolved paths currently cached.
+     * @return The number of resolved paths currently cached.
+     */
+    int cachedHandles() {
+        return handles.size();
+    }
+
+    int nextHandleId() {
+        return handleIds.getAndIncrement();
+    }
+
+    /**
+     * Forgets every resolved handle and every idle registration, and marks
+     * the topology as changed.  Must be called by anything that replaces the
+     * root node.
+     */
+    void clearHandles() {
+        evictor.forget();
+        handles.clear();
+        handleIds.set(0);
+        topology.incrementAndGet();
     }
 
     RegistryNode findNode(String fullNodeName) {
-        String[] parts = splitFullNodeName(fullNodeName);
+        return findNode(fullNodeName, true);
+    }
+
+    RegistryNode findNode(String fullNodeName, boolean create) {
+        String[] parts = RegistrarHelper.splitFullNodeName(fullNodeName);
 
         if(parts == null) {
             return NopRegistryNode.INSTANCE;
@@ -135,11 +314,22 @@ class DefaultRegistrar implements Registrar {
         }
 
         DefaultRegistryNode cur = (DefaultRegistryNode)getRootNode();
-        for(String part : parts) {
-            RegistryNode node = cur.getChildNode(part);
+        for(int i=0; i<parts.length; i++) {
+            RegistryNode node = cur.getChildNode(parts[i]);
             if(node == NopRegistryNode.INSTANCE) {
+                if(!create) {
+                    return NopRegistryNode.INSTANCE;
+                }
+
                 // No node yet - we need to create it
-                node = cur.add(part, new DefaultRegistryNode(this, cur, part));
+                node = cur.add(parts[i],
+                        new DefaultRegistryNode(this, cur, parts[i]));
+                if(node == null) {
+                    // cur was pruned out from under us - start over
+                    cur = (DefaultRegistryNode)getRootNode();
+                    i = -1;
+                    continue;
+                }
             }
 
             // Next!
@@ -148,52 +338,37 @@ class DefaultRegistrar implements Registrar {
         return cur;
     }
 
-    void dfs(RegistryNode node, RegistryNodeCall call) {
-        call.call(node);
-        for(RegistryNode child : node.getChildNodes().values()) {
-            dfs(child, call);
-        }
-    }
-
     @Override
     public Iterable<? extends RegistryNode> match(String globPattern) {
-        final ArrayList<GlobMatch> list = new ArrayList<GlobMatch>();
-        final GlobMatcher matcher = new GlobMatcher(globPattern);
-        dfs(getRootNode(), new MatcherCall(list, matcher));
-        return list;
+        return matchers.get(globPattern).matchTree(getRootNode());
     }
 
-    private String[] splitMemberPath(String memberPath) {
-        if(memberPath == null) {
-            return null;
-        }
-
-        String[] results = memberPath.split(":");
-        if(results.length != 2) {
-            return null;
-        }
-
-        return results;
+    @Override
+    public void addListener(RegistryListener listener) {
+        events.addListener("", listener);
     }
 
-    interface RegistryNodeCall {
-        void call(RegistryNode node);
+    @Override
+    public void removeListener(RegistryListener listener) {
+        events.removeListener("", listener);
     }
 
-    static class MatcherCall implements RegistryNodeCall {
-        private final List<GlobMatch> list;
-        private final GlobMatcher matcher;
+    @Override
+    public BulkSnapshot snapshot(String globPattern) {
+        DefaultBulkSnapshot snapshot =
+                new DefaultBulkSnapshot(this, globPattern);
+        snapshot.refresh();
+        return snapshot;
+    }
 
-        public MatcherCall(List<GlobMatch> list, GlobMatcher matcher) {
-            this.list = list;
-            this.matcher = matcher;
-        }
+    @Override
+    public RegistrationBatch batch() {
+        return new DefaultRegistrationBatch(this);
+    }
 
-        public void call(RegistryNode node) {
-            GlobMatch match = matcher.match(node);
-            if(match.isNodeMatched()) {
-                list.add(match);
-            }
-        }
+    @Override
+    public Map<String, List<RecordedEvent>> getRecordedEvents(
+            String globPattern) {
+        return RegistrarHelper.getRecordedEvents(match(globPattern));
     }
 }
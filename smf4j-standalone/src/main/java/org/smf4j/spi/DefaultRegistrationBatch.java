@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.RegistryNode;
+import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.AbstractRegistrationBatch;
+
+/**
+ * The {@link RegistrationBatch} handed out by {@link DefaultRegistrar}.
+ * <p>
+ * The whole batch is added to the tree under a single hold of the prune lock,
+ * so no node of the batch can be pruned while it is being filled, and each
+ * node's path is only walked once.  The registrar's topology is only marked
+ * as changed once the whole batch is in, so a {@code BulkSnapshot} that
+ * refreshes while the batch is being applied may or may not see parts of
+ * it, but always sees all of it on its next refresh.
+ * </p>
+ * <p>
+ * The batch is not published atomically, though.  Its members are added to
+ * their nodes one at a time, so a reader that goes straight to the tree,
+ * through {@code getNode}, {@code getAccumulator} or a {@code PathHandle},
+ * can see some of the batch before the rest of it is in.  Making the
+ * members of several nodes appear at once would mean locking every read of
+ * the tree.  Registrars that keep an immutable tree can publish a batch as
+ * a single swap instead.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class DefaultRegistrationBatch extends AbstractRegistrationBatch {
+    private final DefaultRegistrar registrar;
+
+    DefaultRegistrationBatch(DefaultRegistrar registrar) {
+        this.registrar = registrar;
+    }
+
+    @Override
+    protected void apply(Map<String, NodeRegistrations> nodes) {
+        List<DefaultRegistryNode> targets =
+                new ArrayList<DefaultRegistryNode>();
+        List<NodeRegistrations> added = new ArrayList<NodeRegistrations>();
+        Lock lock = registrar.pruneLock.readLock();
+        lock.lock();
+        try {
+            for(Map.Entry<String, NodeRegistrations> entry :
+                    nodes.entrySet()) {
+                RegistryNode node = registrar.findNode(entry.getKey());
+                if(node == NopRegistryNode.INSTANCE
+                        || entry.getValue().isEmpty()) {
+                    continue;
+                }
+
+                DefaultRegistryNode target = (DefaultRegistryNode)node;
+                NodeRegistrations nodeAdded =
+                        target.addAll(entry.getValue());
+                if(!nodeAdded.isEmpty()) {
+                    targets.add(target);
+                    added.add(nodeAdded);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if(targets.isEmpty()) {
+            return;
+        }
+        for(int i=0; i<targets.size(); i++) {
+            targets.get(i).registeredAll(added.get(i));
+        }
+        registrar.topology.incrementAndGet();
+    }
+}
@@ -16,28 +16,51 @@
 package org.smf4j.spi;
 
 import org.smf4j.RegistryNode;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Pattern;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.smf4j.Calculator;
 import org.smf4j.Accumulator;
+import org.smf4j.IdleAwareAccumulator;
+import org.smf4j.OnStateAware;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
 import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.AbstractRegistrationBatch.NodeRegistrations;
+import org.smf4j.util.helpers.AbstractRegistryNode;
+import org.smf4j.util.helpers.CalculatorGraph;
 
 /**
+ * The on/off state of a {@code DefaultRegistryNode} is evaluated lazily.
+ * Turning a node on or off only records its new local state and bumps the
+ * registrar's generation; each node (and each {@link OnStateAware}
+ * accumulator) re-derives its effective state the next time it is asked for
+ * it after the generation has changed.  Only accumulators that are not
+ * {@code OnStateAware} still have their state pushed to them eagerly.
+ * <p>
+ * A snapshot evaluates the node's calculators through a
+ * {@link CalculatorGraph}, which is only rebuilt after a calculator has been
+ * registered or unregistered.  The graph outlives each snapshot, so that
+ * dependent calculators whose inputs have not changed can reuse their last
+ * result.
+ * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-class DefaultRegistryNode implements RegistryNode {
+class DefaultRegistryNode extends AbstractRegistryNode {
     private static final Pattern invalidNameChars = Pattern.compile("[+*.]");
 
-    private final Logger log = LoggerFactory.getLogger(getClass());
     private final DefaultRegistrar registrar;
     private final DefaultRegistryNode parent;
     private final String name;
@@ -47,9 +70,37 @@ class DefaultRegistryNode implements RegistryNode {
     private final Map<String, Calculator> readOnlyCalculations;
     private final ConcurrentMap<String, RegistryNode> childNodes;
     private final Map<String, RegistryNode> readOnlyChildNodes;
-    private volatile boolean state;
+
+    /**
+     * The accumulators that can't follow our on/off state lazily, or
+     * {@code null} until the first one is registered.  Like
+     * {@link #memberHandles}, this is created on first use, as most nodes
+     * never need it.
+     */
+    private volatile ConcurrentMap<Accumulator, Boolean> eagerAccumulators;
+    private volatile MemberHandles memberHandles;
+    private volatile DefaultPathHandle handle;
     private volatile Boolean localState;
 
+    /**
+     * Set once this node has been removed from its parent because it was
+     * empty.  Guarded by the registrar's {@code pruneLock}.
+     */
+    private volatile boolean pruned;
+
+    /**
+     * Bumped whenever a calculator is registered or unregistered, so that
+     * {@link #snapshot()} knows to rebuild its {@link CalculatorGraph}.
+     */
+    private final AtomicInteger calculatorsVersion = new AtomicInteger();
+    private volatile CalculatorPlan calculatorPlan;
+
+    /**
+     * The registrar generation our cached inherited state was computed at,
+     * shifted left by one, with the cached state in the lowest bit.
+     */
+    private volatile long stamp = -1L;
+
     public DefaultRegistryNode(DefaultRegistrar registrar,
             DefaultRegistryNode parent, String name) {
         this.registrar = registrar;
@@ -77,44 +128,350 @@ class DefaultRegistryNode implements RegistryNode {
         }
     }
 
+    /**
+     * Adds {@code child} under {@code name}, unless there already is a child
+     * by that name.
+     * @return The child registered under {@code name}, or {@code null} if
+     *         this node has been pruned and can no longer take children.
+     */
     DefaultRegistryNode add(String name, DefaultRegistryNode child) {
-        DefaultRegistryNode added = (DefaultRegistryNode)
-                childNodes.putIfAbsent(name, child);
+        DefaultRegistryNode added;
+        Lock lock = registrar.pruneLock.readLock();
+        lock.lock();
+        try {
+            if(pruned) {
+                return null;
+            }
+            added = (DefaultRegistryNode)childNodes.putIfAbsent(name, child);
+        } finally {
+            lock.unlock();
+        }
+
         if(added == null) {
-            // We won the add - must recalculate state
+            // We won the add.  Our state is derived lazily, so there's
+            // nothing more to do.
             added = child;
-            added.recalculateState();
+            registrar.topology.incrementAndGet();
+            registrar.events.fire(RegistryEvent.Type.NODE_ADDED, child, null,
+                    null);
         }
 
         return added;
     }
 
     boolean remove(String name, DefaultRegistryNode child) {
-        return childNodes.remove(name, child);
+        if(childNodes.remove(name, child)) {
+            registrar.topology.incrementAndGet();
+            registrar.events.fire(RegistryEvent.Type.NODE_REMOVED, child, null,
+                    null);
+            return true;
+        }
+        return false;
+    }
+
+    boolean isPruned() {
+        return pruned;
+    }
+
+    /**
+     * Removes this node from its parent if it is empty, and then does the
+     * same for its parent, and so on, stopping at the first node that is not
+     * empty.  Nodes with a local on/off state are never considered empty.
+     * @param prunedNodes Receives the nodes that were removed.
+     */
+    void pruneIfEmpty(List<DefaultRegistryNode> prunedNodes) {
+        DefaultRegistryNode node = this;
+        while(node.parent != null) {
+            Lock lock = registrar.pruneLock.writeLock();
+            lock.lock();
+            try {
+                if(node.pruned || !node.isEmpty()) {
+                    return;
+                }
+                String shortName = node.name.substring(
+                        node.name.lastIndexOf('.') + 1);
+                if(!node.parent.remove(shortName, node)) {
+                    return;
+                }
+                node.pruned = true;
+            } finally {
+                lock.unlock();
+            }
+
+            prunedNodes.add(node);
+            node = node.parent;
+        }
+    }
+
+    private boolean isEmpty() {
+        return accumulators.isEmpty() && calcuations.isEmpty()
+                && childNodes.isEmpty() && localState == null;
+    }
+
+    /**
+     * Gets the live node at this node's path, to stand in for this node once
+     * it has been pruned.
+     */
+    private RegistryNode replacement() {
+        return registrar.getNode(name);
+    }
+
+    /**
+     * Gets this node's own handle, if it has been resolved.
+     */
+    DefaultPathHandle peekHandle() {
+        return handle;
+    }
+
+    DefaultPathHandle getHandle() {
+        DefaultPathHandle result = handle;
+        if(result == null) {
+            synchronized(this) {
+                result = handle;
+                if(result == null) {
+                    result = new DefaultPathHandle(
+                            registrar.nextHandleId(), this, null);
+                    handle = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    DefaultPathHandle getHandle(String memberName) {
+        MemberHandles handles = memberHandles;
+        if(handles == null) {
+            synchronized(this) {
+                handles = memberHandles;
+                if(handles == null) {
+                    handles = new MemberHandles();
+                    memberHandles = handles;
+                }
+            }
+        }
+
+        DefaultPathHandle result = handles.present.get(memberName);
+        if(result == null) {
+            synchronized(handles) {
+                result = handles.present.get(memberName);
+                if(result == null) {
+                    result = handles.absent(memberName);
+                    if(result == null) {
+                        result = new DefaultPathHandle(
+                                registrar.nextHandleId(), this, memberName);
+                    }
+                    place(handles, memberName, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void refreshHandle(String name) {
+        // No member of this node has been resolved yet.  One resolved from
+        // here on reads the member as it is created.
+        MemberHandles handles = memberHandles;
+        if(handles == null) {
+            return;
+        }
+
+        synchronized(handles) {
+            DefaultPathHandle memberHandle = handles.present.get(name);
+            if(memberHandle == null) {
+                memberHandle = handles.absent(name);
+            }
+            if(memberHandle != null) {
+                place(handles, name, memberHandle);
+            }
+        }
+    }
+
+    /**
+     * Refreshes {@code memberHandle}, and holds it strongly if its member
+     * exists, or weakly if it doesn't.  Must hold {@code handles}.
+     */
+    private void place(MemberHandles handles, String name,
+            DefaultPathHandle memberHandle) {
+        memberHandle.refresh();
+        if(memberHandle.hasMember()) {
+            handles.present.put(name, memberHandle);
+            handles.absent.remove(name);
+            return;
+        }
+
+        if(handles.present.remove(name) != null) {
+            registrar.forgetHandle(memberHandle);
+        }
+        handles.purge();
+        if(handles.absent(name) != memberHandle) {
+            handles.absent.put(name,
+                    new AbsentHandle(name, memberHandle, handles.queue));
+        }
     }
 
     @Override
     public Accumulator register(String name, Accumulator acc) {
-        Accumulator registered = accumulators.putIfAbsent(name, acc);
+        Accumulator registered;
+        Lock lock = registrar.pruneLock.readLock();
+        lock.lock();
+        try {
+            if(pruned) {
+                return replacement().register(name, acc);
+            }
+            registered = accumulators.putIfAbsent(name, acc);
+        } finally {
+            lock.unlock();
+        }
+
         if(null == registered) {
-            acc.setOn(isOn());
+            bindState(acc);
+            registrar.topology.incrementAndGet();
+            refreshHandle(name);
+            registrar.events.fire(RegistryEvent.Type.ACCUMULATOR_ADDED, this,
+                    name, acc);
+            notifyRegistered(name, acc);
             registered = acc;
         }
         return registered;
     }
 
+    @Override
+    public Accumulator register(String name, Accumulator acc,
+            long idleTimeout, TimeUnit unit) {
+        if(unit == null || idleTimeout <= 0L) {
+            throw new IllegalArgumentException(
+                    "idleTimeout must be positive.");
+        }
+
+        Accumulator registered = register(name, acc);
+        if(registered == acc && acc instanceof IdleAwareAccumulator) {
+            // Track it against whichever node it actually landed in
+            RegistryNode owner = this;
+            while(owner instanceof DefaultRegistryNode
+                    && ((DefaultRegistryNode)owner).pruned) {
+                owner = ((DefaultRegistryNode)owner).replacement();
+            }
+            if(owner instanceof DefaultRegistryNode) {
+                registrar.evictor.track((DefaultRegistryNode)owner, name,
+                        (IdleAwareAccumulator)acc, unit.toNanos(idleTimeout));
+            }
+        }
+        return registered;
+    }
+
     @Override
     public Calculator register(String name, Calculator calc) {
-        Calculator registered = calcuations.putIfAbsent(name, calc);
+        Calculator registered;
+        Lock lock = registrar.pruneLock.readLock();
+        lock.lock();
+        try {
+            if(pruned) {
+                return replacement().register(name, calc);
+            }
+            registered = calcuations.putIfAbsent(name, calc);
+        } finally {
+            lock.unlock();
+        }
+
         if(null == registered) {
+            calculatorsVersion.incrementAndGet();
+            registrar.topology.incrementAndGet();
+            refreshHandle(name);
+            registrar.events.fire(RegistryEvent.Type.CALCULATOR_ADDED, this,
+                    name, calc);
+            notifyRegistered(name, calc);
             registered = calc;
         }
         return registered;
     }
 
+    /**
+     * Adds every member of {@code batch} that isn't already registered with
+     * this node.  The caller must hold the prune lock for reading, and must
+     * then pass the result to {@link #registeredAll(NodeRegistrations)}.
+     * @return The members that were added.
+     */
+    NodeRegistrations addAll(NodeRegistrations batch) {
+        NodeRegistrations added = new NodeRegistrations();
+        for(Map.Entry<String, Accumulator> entry :
+                batch.getAccumulators().entrySet()) {
+            if(accumulators.putIfAbsent(entry.getKey(), entry.getValue())
+                    == null) {
+                added.getAccumulators().put(entry.getKey(),
+                        entry.getValue());
+            }
+        }
+        for(Map.Entry<String, Calculator> entry :
+                batch.getCalculators().entrySet()) {
+            if(calcuations.putIfAbsent(entry.getKey(), entry.getValue())
+                    == null) {
+                added.getCalculators().put(entry.getKey(), entry.getValue());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Finishes registering the members added by
+     * {@link #addAll(NodeRegistrations)}, just as
+     * {@link #register(String, Accumulator)} would have, except that our
+     * on/off state is only worked out once for all of them.
+     */
+    @Override
+    protected void registeredAll(NodeRegistrations added) {
+        if(!added.getCalculators().isEmpty()) {
+            calculatorsVersion.incrementAndGet();
+        }
+        super.registeredAll(added);
+    }
+
+    @Override
+    protected void accumulatorAdded(String name, Accumulator acc) {
+        refreshHandle(name);
+        registrar.events.fire(RegistryEvent.Type.ACCUMULATOR_ADDED, this,
+                name, acc);
+        notifyRegistered(name, acc);
+    }
+
+    @Override
+    protected void calculatorAdded(String name, Calculator calc) {
+        refreshHandle(name);
+        registrar.events.fire(RegistryEvent.Type.CALCULATOR_ADDED, this,
+                name, calc);
+        notifyRegistered(name, calc);
+    }
+
     @Override
     public boolean unregister(String name, Accumulator acc) {
         if(accumulators.remove(name, acc)) {
+            if(!accumulators.containsValue(acc)) {
+                unbindState(acc);
+            }
+            registrar.topology.incrementAndGet();
+            refreshHandle(name);
+            registrar.events.fire(RegistryEvent.Type.ACCUMULATOR_REMOVED, this,
+                    name, acc);
+            notifyUnregistered(name, acc);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean replace(String name, Accumulator acc, Accumulator with) {
+        if(accumulators.replace(name, acc, with)) {
+            if(!accumulators.containsValue(acc)) {
+                unbindState(acc);
+            }
+            bindState(with);
+            registrar.topology.incrementAndGet();
+            refreshHandle(name);
+            registrar.events.fire(RegistryEvent.Type.ACCUMULATOR_REMOVED, this,
+                    name, acc);
+            notifyUnregistered(name, acc);
+            registrar.events.fire(RegistryEvent.Type.ACCUMULATOR_ADDED, this,
+                    name, with);
+            notifyRegistered(name, with);
             return true;
         }
         return false;
@@ -123,79 +480,104 @@ class DefaultRegistryNode implements RegistryNode {
     @Override
     public boolean unregister(String name, Calculator calc) {
         if(calcuations.remove(name, calc)) {
+            calculatorsVersion.incrementAndGet();
+            registrar.topology.incrementAndGet();
+            refreshHandle(name);
+            registrar.events.fire(RegistryEvent.Type.CALCULATOR_REMOVED, this,
+                    name, calc);
+            notifyUnregistered(name, calc);
             return true;
         }
         return false;
     }
 
-    void recalculateState() {
-        registrar.stateLock.lock();
-        try {
-            boolean calculatedState;
-
-            if(localState != null) {
-                // If we have a local state, set it
-                calculatedState = localState;
-            } else {
-                // If we don't have a local state set, use
-                // our parent's state (or false, if we're the root)
-                if(parent != null) {
-                    calculatedState = parent.isOn();
-                } else {
-                    calculatedState = false;
+    @Override
+    protected void addEager(Accumulator acc) {
+        ConcurrentMap<Accumulator, Boolean> eager = eagerAccumulators;
+        if(eager == null) {
+            synchronized(this) {
+                eager = eagerAccumulators;
+                if(eager == null) {
+                    eager = new ConcurrentHashMap<Accumulator, Boolean>();
+                    eagerAccumulators = eager;
                 }
             }
+        }
+        if(eager.putIfAbsent(acc, Boolean.TRUE) == null) {
+            registrar.eagerAccumulators.incrementAndGet();
+        }
+    }
 
-            if(state == calculatedState) {
-                // Nothing has changed...
+    @Override
+    protected void removeEager(Accumulator acc) {
+        ConcurrentMap<Accumulator, Boolean> eager = eagerAccumulators;
+        if(eager != null && eager.remove(acc) != null) {
+            registrar.eagerAccumulators.decrementAndGet();
+        }
+    }
+
+    private void changeState(Boolean on) {
+        Lock lock = registrar.pruneLock.readLock();
+        lock.lock();
+        try {
+            if(pruned) {
+                if(on == null) {
+                    replacement().clearOn();
+                } else {
+                    replacement().setOn(on);
+                }
                 return;
             }
+            localState = on;
+        } finally {
+            lock.unlock();
+        }
+        registrar.generation.incrementAndGet();
+        registrar.events.fire(RegistryEvent.Type.STATE_CHANGED, this, null,
+                null);
 
-            // Set our new state now
-            state = calculatedState;
+        if(registrar.eagerAccumulators.get() > 0) {
+            registrar.stateLock.lock();
+            try {
+                pushEagerState();
+            } finally {
+                registrar.stateLock.unlock();
+            }
+        }
+    }
 
-            // Set the new state on all of our existing accumulators
-            for(Accumulator accumulator : accumulators.values()) {
-                accumulator.setOn(calculatedState);
+    private void pushEagerState() {
+        ConcurrentMap<Accumulator, Boolean> eager = eagerAccumulators;
+        if(eager != null && !eager.isEmpty()) {
+            boolean on = isOn();
+            for(Accumulator accumulator : eager.keySet()) {
+                accumulator.setOn(on);
             }
+        }
 
-            // Our state has changed - we need to tell all of our
-            // children to recalculate their states
-            for(RegistryNode childNode : childNodes.values()) {
-                ((DefaultRegistryNode)childNode).recalculateState();
+        for(RegistryNode childNode : childNodes.values()) {
+            DefaultRegistryNode child = (DefaultRegistryNode)childNode;
+            if(child.localState == null) {
+                // Only children that inherit our state are affected
+                child.pushEagerState();
             }
-        } finally {
-            registrar.stateLock.unlock();
         }
     }
 
     @Override
     public Map<String, Object> snapshot() {
+        return snapshot(readOnlyAccumulators, getCalculatorGraph());
+    }
 
-        // Snapshot the values for all of the accumulators
-        Map<String, Long> vals = new HashMap<String, Long>();
-        for(Map.Entry<String, Accumulator> entry : accumulators.entrySet()) {
-            vals.put(entry.getKey(), entry.getValue().get());
-        }
-
-        // Run calculations with accumulator values as input
-        Map<String, Object> results = new HashMap<String, Object>();
-        for(Map.Entry<String, Calculator> entry : calcuations.entrySet()) {
-            Object o = null;
-            try {
-                o = entry.getValue().calculate(vals, readOnlyAccumulators);
-            } catch(Throwable t) {
-                log.error(String.format("Error executing calculator named '%s'"
-                        + " of type '%s'.", entry.getKey(),
-                        entry.getValue().getClass().getCanonicalName()), t);
-            }
-            results.put(entry.getKey(), o);
+    private CalculatorGraph getCalculatorGraph() {
+        int version = calculatorsVersion.get();
+        CalculatorPlan plan = calculatorPlan;
+        if(plan == null || plan.version != version) {
+            plan = new CalculatorPlan(version,
+                    new CalculatorGraph(readOnlyCalculations));
+            calculatorPlan = plan;
         }
-
-        // Stuff all recorded accumulator values into the results as well.
-        results.putAll(vals);
-
-        return results;
+        return plan.graph;
     }
 
     @Override
@@ -245,35 +627,117 @@ class DefaultRegistryNode implements RegistryNode {
         return result;
     }
 
+    @Override
+    public void addListener(RegistryListener listener) {
+        registrar.events.addListener(name, listener);
+    }
+
+    @Override
+    public void removeListener(RegistryListener listener) {
+        registrar.events.removeListener(name, listener);
+    }
+
+    @Override
+    public long getGeneration() {
+        return registrar.generation.get();
+    }
+
     @Override
     public boolean isOn() {
-        if(localState != null) {
-            return localState.equals(Boolean.TRUE);
+        // The generation must be read before any state, so that a state
+        // change that races with us leaves a stale generation in the stamp.
+        long generation = registrar.generation.get();
+        Boolean local = localState;
+        if(local != null) {
+            return local.booleanValue();
+        }
+
+        if(parent == null) {
+            // The root node is off unless turned on
+            return false;
+        }
+
+        long s = stamp;
+        if((s >>> 1) == generation) {
+            return (s & 1L) != 0L;
         }
-        return state;
+
+        boolean on = parent.isOn();
+        stamp = (generation << 1) | (on ? 1L : 0L);
+        return on;
     }
 
     @Override
     public void setOn(boolean on) {
-        registrar.stateLock.lock();
-        try {
-
-            localState = on;
-            recalculateState();
-        } finally {
-            registrar.stateLock.unlock();
-        }
+        changeState(Boolean.valueOf(on));
     }
 
     @Override
     public void clearOn() {
-        registrar.stateLock.lock();
-        try {
+        changeState(null);
+    }
 
-            localState = null;
-            recalculateState();
-        } finally {
-            registrar.stateLock.unlock();
+    private static final class CalculatorPlan {
+        private final int version;
+        private final CalculatorGraph graph;
+
+        CalculatorPlan(int version, CalculatorGraph graph) {
+            this.version = version;
+            this.graph = graph;
+        }
+    }
+
+    /**
+     * The handles resolved for the members of a node.
+     */
+    private static final class MemberHandles {
+        final ConcurrentMap<String, DefaultPathHandle> present =
+                new ConcurrentHashMap<String, DefaultPathHandle>();
+
+        /**
+         * Handles resolved for names that have no member registered.  They
+         * are held weakly, so that resolving names that never get registered
+         * can't grow the node without bound.  Guarded by {@code this}.
+         */
+        final Map<String, AbsentHandle> absent =
+                new HashMap<String, AbsentHandle>();
+        final ReferenceQueue<DefaultPathHandle> queue =
+                new ReferenceQueue<DefaultPathHandle>();
+
+        /**
+         * Gets the weakly-held handle for {@code name}, if it is still
+         * around.  Must hold {@code this}.
+         */
+        DefaultPathHandle absent(String name) {
+            AbsentHandle handle = absent.get(name);
+            return handle == null ? null : handle.get();
+        }
+
+        /**
+         * Forgets weakly-held handles that have been collected.  Must hold
+         * {@code this}.
+         */
+        void purge() {
+            AbsentHandle collected;
+            while((collected = (AbsentHandle)queue.poll()) != null) {
+                if(absent.get(collected.name) == collected) {
+                    absent.remove(collected.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * A weakly-held handle for a name with no member registered.
+     */
+    private static final class AbsentHandle
+            extends WeakReference<DefaultPathHandle> {
+        private final String name;
+
+        AbsentHandle(String name, DefaultPathHandle handle,
+                ReferenceQueue<DefaultPathHandle> queue) {
+            super(handle, queue);
+            this.name = name;
         }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.smf4j.Accumulator;
+import org.smf4j.Mutator;
+
+/**
+ * A simple counter that {@link IdleEvictor} registers to report how many
+ * accumulators and nodes it has evicted.  The standalone provider has no
+ * accumulator implementations of its own to reuse for this.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class EvictionCounter implements Accumulator, Mutator {
+    private final AtomicLong count = new AtomicLong();
+    private volatile boolean on = true;
+
+    public boolean isOn() {
+        return on;
+    }
+
+    public void setOn(boolean on) {
+        this.on = on;
+    }
+
+    public Mutator getMutator() {
+        return this;
+    }
+
+    public void put(long delta) {
+        if(on) {
+            count.addAndGet(delta);
+        }
+    }
+
+    public long get() {
+        return on ? count.get() : 0L;
+    }
+
+    public long combine(long other) {
+        return other + get();
+    }
+
+    public String getUnits() {
+        return null;
+    }
+
+    public Map<Object, Object> getMetadata() {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.IdleAwareAccumulator;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.DaemonScheduler;
+
+/**
+ * Unregisters the {@link IdleAwareAccumulator}s that were registered with an
+ * idle timeout once they stop being updated, and prunes the nodes that
+ * leaves empty.
+ * <p>
+ * An accumulator counts as idle for as long as its
+ * {@link IdleAwareAccumulator#getUpdateStamp() update stamp} stays the same.
+ * Sweeps run on the {@link DaemonScheduler#shared() shared} housekeeping
+ * thread.  They are only scheduled once something has been registered with
+ * an idle timeout, and then at half of the shortest timeout, within
+ * {@link #MIN_SWEEP_NANOS} and {@link #MAX_SWEEP_NANOS}.  Each sweep looks
+ * at no more than {@link #SWEEP_BATCH} accumulators before letting go of its
+ * lock; a sweep that doesn't get through them all picks up where it left
+ * off {@link #MIN_SWEEP_NANOS} later.
+ * </p>
+ * <p>
+ * The number of evicted accumulators and pruned nodes are published as the
+ * accumulators {@code accumulators} and {@code nodes} of the node
+ * {@value #METRICS_NODE}, which is created along with the first tracked
+ * accumulator.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class IdleEvictor implements Runnable {
+    static final String METRICS_NODE = "smf4j.evictions";
+    static final long MIN_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+    static final long MAX_SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1L);
+    static final int SWEEP_BATCH = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final DefaultRegistrar registrar;
+    private final ConcurrentMap<String, IdleEntry> entries =
+            new ConcurrentHashMap<String, IdleEntry>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private EvictionCounter evictedAccumulators;
+    private EvictionCounter evictedNodes;
+
+    /**
+     * Where the sweep in progress is up to, or {@code null} if the next
+     * sweep starts from the beginning.
+     */
+    private Iterator<Map.Entry<String, IdleEntry>> cursor;
+
+    /**
+     * The shortest idle timeout seen so far by the sweep in progress, and
+     * as of the last complete sweep.
+     */
+    private long sweepShortest = Long.MAX_VALUE;
+    private long shortest = Long.MAX_VALUE;
+
+    IdleEvictor(DefaultRegistrar registrar) {
+        this.registrar = registrar;
+    }
+
+    void track(DefaultRegistryNode node, String name,
+            IdleAwareAccumulator acc, long idleNanos) {
+        IdleEntry entry = new IdleEntry(node, name, acc, idleNanos,
+                acc.getUpdateStamp(), System.nanoTime());
+        entries.put(node.getName() + ":" + name, entry);
+
+        synchronized(this) {
+            if(evictedAccumulators == null) {
+                RegistryNode metrics = registrar.getNode(METRICS_NODE);
+                evictedAccumulators = counter(metrics, "accumulators");
+                evictedNodes = counter(metrics, "nodes");
+            }
+            shortest = Math.min(shortest, idleNanos);
+        }
+        schedule(delay(idleNanos));
+    }
+
+    private EvictionCounter counter(RegistryNode metrics, String name) {
+        EvictionCounter counter = new EvictionCounter();
+        Accumulator registered = metrics.register(name, counter);
+        if(registered instanceof EvictionCounter) {
+            return (EvictionCounter)registered;
+        }
+        log.warn("'{}:{}' is already registered; evictions will not be "
+                + "reported there.", METRICS_NODE, name);
+        return counter;
+    }
+
+    private void schedule(long delayNanos) {
+        if(!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        DaemonScheduler.shared().schedule(this, delayNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    private static long delay(long idleNanos) {
+        return Math.max(MIN_SWEEP_NANOS,
+                Math.min(MAX_SWEEP_NANOS, idleNanos / 2L));
+    }
+
+    public void run() {
+        long next = MAX_SWEEP_NANOS;
+        try {
+            next = sweep(System.nanoTime(), SWEEP_BATCH);
+        } catch(Throwable t) {
+            log.error("Error evicting idle accumulators.", t);
+        } finally {
+            scheduled.set(false);
+            if(!entries.isEmpty()) {
+                schedule(next);
+            }
+        }
+    }
+
+    /**
+     * Forgets everything being tracked.  Used when the registrar's tree is
+     * replaced wholesale.
+     */
+    synchronized void forget() {
+        entries.clear();
+        cursor = null;
+        sweepShortest = Long.MAX_VALUE;
+        shortest = Long.MAX_VALUE;
+        evictedAccumulators = null;
+        evictedNodes = null;
+    }
+
+    /**
+     * Evicts every tracked accumulator that has been idle for its timeout as
+     * of {@code nanos}, and prunes the nodes that leaves empty.
+     * @param nanos The current time, in nanoseconds.
+     */
+    synchronized void sweep(long nanos) {
+        cursor = null;
+        sweep(nanos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Carries on with the sweep in progress, or starts a new one, looking at
+     * no more than {@code limit} tracked accumulators.
+     * @param nanos The current time, in nanoseconds.
+     * @param limit The most tracked accumulators to look at.
+     * @return How long to wait, in nanoseconds, before sweeping again.
+     */
+    synchronized long sweep(long nanos, int limit) {
+        if(cursor == null) {
+            cursor = entries.entrySet().iterator();
+            sweepShortest = Long.MAX_VALUE;
+        }
+
+        Set<DefaultRegistryNode> emptied =
+                new LinkedHashSet<DefaultRegistryNode>();
+        long evicted = 0L;
+        int seen = 0;
+        while(seen < limit && cursor.hasNext()) {
+            seen++;
+            Map.Entry<String, IdleEntry> mapEntry = cursor.next();
+            IdleEntry entry = mapEntry.getValue();
+            if(entry.node.getAccumulators().get(entry.name) != entry.acc) {
+                // Unregistered by someone else
+                entries.remove(mapEntry.getKey(), entry);
+                continue;
+            }
+
+            long stamp = entry.acc.getUpdateStamp();
+            if(stamp != entry.lastStamp) {
+                entry.lastStamp = stamp;
+                entry.lastChange = nanos;
+            } else if(nanos - entry.lastChange >= entry.idleNanos) {
+                entries.remove(mapEntry.getKey(), entry);
+                if(entry.node.unregister(entry.name, entry.acc)) {
+                    evicted++;
+                    emptied.add(entry.node);
+                }
+                continue;
+            }
+            sweepShortest = Math.min(sweepShortest, entry.idleNanos);
+        }
+
+        List<DefaultRegistryNode> pruned =
+                new ArrayList<DefaultRegistryNode>();
+        for(DefaultRegistryNode node : emptied) {
+            node.pruneIfEmpty(pruned);
+        }
+        if(!pruned.isEmpty()) {
+            registrar.forgetHandles(pruned);
+        }
+
+        if(evictedAccumulators != null) {
+            evictedAccumulators.put(evicted);
+            evictedNodes.put(pruned.size());
+        }
+        if(evicted > 0L) {
+            log.debug("Evicted {} idle accumulators and {} empty nodes.",
+                    evicted, pruned.size());
+        }
+
+        if(cursor.hasNext()) {
+            return MIN_SWEEP_NANOS;
+        }
+        cursor = null;
+        shortest = sweepShortest;
+        return delay(shortest);
+    }
+
+    private static final class IdleEntry {
+        private final DefaultRegistryNode node;
+        private final String name;
+        private final IdleAwareAccumulator acc;
+        private final long idleNanos;
+
+        /**
+         * Only touched by {@link IdleEvictor#sweep(long)}, or before the
+         * entry is published.
+         */
+        private long lastStamp;
+        private long lastChange;
+
+        IdleEntry(DefaultRegistryNode node, String name,
+                IdleAwareAccumulator acc, long idleNanos, long lastStamp,
+                long lastChange) {
+            this.node = node;
+            this.name = name;
+            this.acc = acc;
+            this.idleNanos = idleNanos;
+            this.lastStamp = lastStamp;
+            this.lastChange = lastChange;
+        }
+    }
+}
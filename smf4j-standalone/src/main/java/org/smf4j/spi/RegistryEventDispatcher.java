@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.AbstractEventDispatcher;
+
+/**
+ * Collects the {@link RegistryEvent}s of a {@link DefaultRegistrar} and
+ * delivers them to its {@link RegistryListener}s in batches.
+ * <p>
+ * Events are held for a short delay after the first event of a batch, so
+ * that a burst of changes is delivered together.  Within a batch, only the
+ * latest event about each node or member is kept, and an addition followed by
+ * the removal of the same node or member drops both.  A removal followed by
+ * an addition under the same name is delivered as both events, in that
+ * order, since the node or member that listeners knew about is gone.  While
+ * there are no listeners, events are dropped without taking any locks or
+ * allocating.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class RegistryEventDispatcher extends AbstractEventDispatcher {
+    static final long DEFAULT_BATCH_DELAY_MILLIS = 100L;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private LinkedHashMap<String, Pending> pending =
+            new LinkedHashMap<String, Pending>();
+
+    RegistryEventDispatcher() {
+        this(DEFAULT_BATCH_DELAY_MILLIS);
+    }
+
+    RegistryEventDispatcher(long batchDelayMillis) {
+        super(batchDelayMillis);
+    }
+
+    void fire(RegistryEvent.Type type, RegistryNode node, String memberName,
+            Object member) {
+        if(!hasListeners()) {
+            return;
+        }
+
+        String key = key(type, node.getName(), memberName);
+        RegistryEvent event = new RegistryEvent(type, node, memberName, member);
+        synchronized(this) {
+            Pending previous = pending.remove(key);
+            if(previous == null) {
+                pending.put(key, new Pending(null, event));
+            } else if(member == previous.last.getMember()
+                    && cancels(previous.last.getType(), type)) {
+                // Whatever was removed before the cancelled addition still
+                // has to be reported
+                if(previous.removed != null) {
+                    pending.put(key, new Pending(null, previous.removed));
+                }
+                return;
+            } else if(isRemoval(previous.last.getType())
+                    && !isRemoval(type)) {
+                pending.put(key, new Pending(previous.last, event));
+            } else {
+                pending.put(key, new Pending(previous.removed, event));
+            }
+            schedule();
+        }
+    }
+
+    @Override
+    protected synchronized List<RegistryEvent> collect() {
+        if(pending.isEmpty()) {
+            return null;
+        }
+
+        List<RegistryEvent> batch =
+                new ArrayList<RegistryEvent>(pending.size());
+        for(Pending p : pending.values()) {
+            if(p.removed != null) {
+                batch.add(p.removed);
+            }
+            batch.add(p.last);
+        }
+        pending = new LinkedHashMap<String, Pending>();
+        return batch;
+    }
+
+    private static String key(RegistryEvent.Type type, String nodePath,
+            String memberName) {
+        char kind;
+        switch(type) {
+            case NODE_ADDED:
+            case NODE_REMOVED:
+                kind = 'N';
+                break;
+            case ACCUMULATOR_ADDED:
+            case ACCUMULATOR_REMOVED:
+                kind = 'A';
+                break;
+            case CALCULATOR_ADDED:
+            case CALCULATOR_REMOVED:
+                kind = 'C';
+                break;
+            default:
+                kind = 'S';
+                break;
+        }
+        return memberName == null
+                ? kind + nodePath : kind + nodePath + ":" + memberName;
+    }
+
+    private static boolean cancels(RegistryEvent.Type first,
+            RegistryEvent.Type second) {
+        return (first == RegistryEvent.Type.NODE_ADDED
+                    && second == RegistryEvent.Type.NODE_REMOVED)
+                || (first == RegistryEvent.Type.ACCUMULATOR_ADDED
+                    && second == RegistryEvent.Type.ACCUMULATOR_REMOVED)
+                || (first == RegistryEvent.Type.CALCULATOR_ADDED
+                    && second == RegistryEvent.Type.CALCULATOR_REMOVED);
+    }
+
+    private static boolean isRemoval(RegistryEvent.Type type) {
+        return type == RegistryEvent.Type.NODE_REMOVED
+                || type == RegistryEvent.Type.ACCUMULATOR_REMOVED
+                || type == RegistryEvent.Type.CALCULATOR_REMOVED;
+    }
+
+    /**
+     * The events held about a single node or member: the latest one, and
+     * the removal that came before it, if it is a re-addition.
+     */
+    private static final class Pending {
+        final RegistryEvent removed;
+        final RegistryEvent last;
+
+        Pending(RegistryEvent removed, RegistryEvent last) {
+            this.removed = removed;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.spi;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
+import org.smf4j.Calculator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.Mutator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.RegistryNode;
+import org.smf4j.SnapshotView;
+import org.smf4j.nop.NopMutator;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class DefaultBulkSnapshotTest {
+
+    @Test
+    public void columns()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode a = r.getNode("a");
+        RegistryNode ab = r.getNode("a.b");
+        ValueAcc one = new ValueAcc(1L);
+        ValueAcc two = new ValueAcc(2L);
+        ValueAcc three = new ValueAcc(3L);
+        a.register("one", one);
+        a.register("two", two);
+        ab.register("three", three);
+        a.register("sum", new SumCalc());
+
+        BulkSnapshot snapshot = r.snapshot("a,a.**");
+        assertArrayEquals(new String[] {"a.b:three", "a:one", "a:two"},
+                snapshot.getAccumulatorPaths());
+        assertArrayEquals(new long[] {3L, 1L, 2L}, snapshot.getValues());
+        assertArrayEquals(new String[] {"a:sum"},
+                snapshot.getCalculatorPaths());
+        assertEquals(3.0, snapshot.getCalculatedValues()[0], 0.0);
+
+        // Refreshing reuses the schema and the arrays
+        long version = snapshot.getSchemaVersion();
+        long[] values = snapshot.getValues();
+        one.value = 10L;
+        snapshot.refresh();
+        assertEquals("Schema changed", version, snapshot.getSchemaVersion());
+        assertSame("Values reallocated", values, snapshot.getValues());
+        assertArrayEquals(new long[] {3L, 10L, 2L}, snapshot.getValues());
+        assertEquals(12.0, snapshot.getCalculatedValues()[0], 0.0);
+
+        // Topology changes outside of the pattern don't change the schema
+        r.getNode("c").register("four", new ValueAcc(4L));
+        snapshot.refresh();
+        assertEquals("Schema changed", version, snapshot.getSchemaVersion());
+
+        // ... but changes inside of it do
+        ab.unregister("three", three);
+        snapshot.refresh();
+        assertTrue("Schema unchanged", version != snapshot.getSchemaVersion());
+        assertArrayEquals(new String[] {"a:one", "a:two"},
+                snapshot.getAccumulatorPaths());
+        assertArrayEquals(new long[] {10L, 2L}, snapshot.getValues());
+    }
+
+    @Test
+    public void changes()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode a = r.getNode("a");
+        RegistryNode b = r.getNode("b");
+        ValueAcc one = new ValueAcc(1L);
+        ValueAcc two = new ValueAcc(2L);
+        ValueAcc three = new ValueAcc(0L);
+        DependentSum sumA = new DependentSum("one", "two");
+        DependentSum sumB = new DependentSum("three");
+        a.register("one", one);
+        a.register("two", two);
+        a.register("sum", sumA);
+        b.register("three", three);
+        b.register("sum", sumB);
+
+        // Everything has changed the first time, even values of zero
+        BulkSnapshot snapshot = r.snapshot("**");
+        assertEquals(3, snapshot.getChangedCount());
+        assertEquals(2, snapshot.getChangedCalculatorCount());
+        assertEquals(1, sumA.calls);
+        assertEquals(1, sumB.calls);
+
+        // Nothing changed, so nothing is reported or calculated
+        snapshot.refresh();
+        assertEquals(0, snapshot.getChangedCount());
+        assertEquals(0, snapshot.getChangedCalculatorCount());
+        assertEquals(1, sumA.calls);
+        assertEquals(1, sumB.calls);
+
+        // Only the changed columns, and only the affected node's calculators
+        two.value = 5L;
+        snapshot.refresh();
+        assertEquals(1, snapshot.getChangedCount());
+        assertEquals("a:two", snapshot.getAccumulatorPaths()[
+                snapshot.getChangedIndexes()[0]]);
+        assertEquals(1, snapshot.getChangedCalculatorCount());
+        assertEquals("a:sum", snapshot.getCalculatorPaths()[
+                snapshot.getChangedCalculatorIndexes()[0]]);
+        assertEquals(6.0, snapshot.getCalculatedValues()[
+                snapshot.getChangedCalculatorIndexes()[0]], 0.0);
+        assertEquals(2, sumA.calls);
+        assertEquals(1, sumB.calls);
+
+        // Inputs that change without changing the result
+        one.value = 2L;
+        two.value = 4L;
+        snapshot.refresh();
+        assertEquals(2, snapshot.getChangedCount());
+        assertArrayEquals(new int[] {0, 1}, Arrays.copyOf(
+                snapshot.getChangedIndexes(), 2));
+        assertEquals(0, snapshot.getChangedCalculatorCount());
+        assertEquals(3, sumA.calls);
+
+        // A new schema changes everything again
+        b.register("four", new ValueAcc(4L));
+        snapshot.refresh();
+        assertEquals(4, snapshot.getChangedCount());
+        assertEquals(2, snapshot.getChangedCalculatorCount());
+    }
+
+    @Test
+    public void plainCalculatorsAlwaysRun()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode a = r.getNode("a");
+        SumCalc plain = new SumCalc();
+        DependentSum dependent = new DependentSum("one");
+        a.register("one", new ValueAcc(1L));
+        a.register("plain", plain);
+        a.register("dependent", dependent);
+
+        BulkSnapshot snapshot = r.snapshot("a:*");
+        assertEquals(1, plain.calls);
+        assertEquals(1, dependent.calls);
+
+        // A plain calculator may read more than its node's values, so it is
+        // evaluated again; the dependent one reuses its previous result
+        snapshot.refresh();
+        assertEquals(0, snapshot.getChangedCalculatorCount());
+        assertEquals(2, plain.calls);
+        assertEquals(1, dependent.calls);
+    }
+
+    @Test
+    public void primitiveCalculators()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode a = r.getNode("a");
+        ValueAcc one = new ValueAcc(1L);
+        a.register("one", one);
+        a.register("two", new ValueAcc(2L));
+        a.register("sum", new PrimitiveSum("one", "two", "missing"));
+
+        // Every calculator is primitive, so no Map is ever built
+        BulkSnapshot snapshot = r.snapshot("a:sum");
+        assertEquals(3.0, snapshot.getCalculatedValues()[0], 0.0);
+        one.value = 5L;
+        snapshot.refresh();
+        assertEquals(7.0, snapshot.getCalculatedValues()[0], 0.0);
+
+        // Mixed with a plain calculator, the Map is adapted into a view
+        a.register("plain", new SumCalc());
+        snapshot = r.snapshot("a:sum,plain");
+        assertArrayEquals(new String[] {"a:plain", "a:sum"},
+                snapshot.getCalculatorPaths());
+        assertEquals(7.0, snapshot.getCalculatedValues()[0], 0.0);
+        assertEquals(7.0, snapshot.getCalculatedValues()[1], 0.0);
+    }
+
+    @Test
+    public void calculatorsShareColumnReads()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode a = r.getNode("a");
+        TickingAcc ticks = new TickingAcc();
+        TickingAcc hidden = new TickingAcc();
+        a.register("ticks", ticks);
+        a.register("hidden", hidden);
+        a.register("sum", new PrimitiveSum("ticks"));
+
+        // Each read of 'ticks' gives a new value, so a calculator that read
+        // it again would disagree with its column
+        BulkSnapshot snapshot = r.snapshot("a:ticks,sum");
+        for(int i=1; i<=3; i++) {
+            assertEquals(i, ticks.reads);
+            assertEquals(i, hidden.reads);
+            assertEquals((double)snapshot.getValues()[0],
+                    snapshot.getCalculatedValues()[0], 0.0);
+            snapshot.refresh();
+        }
+    }
+
+    @Test
+    public void noAllocation()
+    throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)bean;
+        if(!threads.isThreadAllocatedMemorySupported()
+                || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        DefaultRegistrar r = new DefaultRegistrar();
+        for(int i=0; i<10; i++) {
+            RegistryNode node = r.getNode("n" + i);
+            for(int j=0; j<10; j++) {
+                node.register("acc" + j, new ValueAcc(1000L * i + j));
+            }
+        }
+
+        BulkSnapshot snapshot = r.snapshot("**");
+        for(int i=0; i<20000; i++) {
+            snapshot.refresh();
+        }
+
+        long id = Thread.currentThread().getId();
+        long overhead = threads.getThreadAllocatedBytes(id);
+        overhead = threads.getThreadAllocatedBytes(id) - overhead;
+        long before = threads.getThreadAllocatedBytes(id);
+        for(int i=0; i<1000; i++) {
+            snapshot.refresh();
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals("Refresh allocated", 0L, allocated - overhead);
+        assertEquals(100, snapshot.getValues().length);
+    }
+
+    private static final class ValueAcc implements Accumulator {
+        private volatile long value;
+
+        ValueAcc(long value) {
+            this.value = value;
+        }
+
+        public boolean isOn() {
+            return true;
+        }
+
+        public void setOn(boolean on) {
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class TickingAcc implements Accumulator {
+        private int reads;
+
+        public boolean isOn() {
+            return true;
+        }
+
+        public void setOn(boolean on) {
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return ++reads;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class SumCalc implements Calculator {
+        private int calls;
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            calls++;
+            long sum = 0L;
+            for(Long value : values.values()) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    private static final class DependentSum implements DependentCalculator {
+        private final String[] inputs;
+        private int calls;
+
+        DependentSum(String... inputs) {
+            this.inputs = inputs;
+        }
+
+        public String[] getAccumulatorInputs() {
+            return inputs;
+        }
+
+        public String[] getCalculatorInputs() {
+            return new String[0];
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators,
+                Map<String, Object> calculated) {
+            calls++;
+            long sum = 0L;
+            for(String input : inputs) {
+                Long value = values.get(input);
+                if(value != null) {
+                    sum += value;
+                }
+            }
+            return sum;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            return calculate(values, accumulators, null);
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    private static final class PrimitiveSum implements PrimitiveCalculator {
+        private final String[] inputs;
+
+        PrimitiveSum(String... inputs) {
+            this.inputs = inputs;
+        }
+
+        public String[] getAccumulatorInputs() {
+            return inputs;
+        }
+
+        public Long calculate(SnapshotView view) {
+            long sum = 0L;
+            for(int i=0; i<view.size(); i++) {
+                if(view.contains(i)) {
+                    assertNotNull(view.getAccumulator(i));
+                    sum += view.get(i);
+                }
+            }
+            return sum;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+}
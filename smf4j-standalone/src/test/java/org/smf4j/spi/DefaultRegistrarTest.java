@@ -15,14 +15,35 @@
  */
 package org.smf4j.spi;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.smf4j.RegistryNode;
 import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.IdleAwareAccumulator;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
 import org.smf4j.Mutator;
+import org.smf4j.OnStateAware;
+import org.smf4j.OnStateSource;
+import org.smf4j.PathHandle;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistrationBatch;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
 import org.smf4j.nop.NopAccumulator;
+import org.smf4j.nop.NopMutator;
+import org.smf4j.nop.NopPathHandle;
+import org.smf4j.nop.NopRegistryNode;
+import org.smf4j.util.helpers.GlobMatch;
+import org.smf4j.util.helpers.GlobMatcher;
+import org.smf4j.util.helpers.RegistrarHelper;
+import org.smf4j.util.helpers.StandingMatch;
 
 /**
  *
@@ -46,9 +67,8 @@ public class DefaultRegistrarTest {
     }
 
     private void hierarchyTrial(boolean pass, String hierarchy, String message){
-        DefaultRegistrar r = new DefaultRegistrar();
         boolean caught = false;
-        if(null == r.splitFullNodeName(hierarchy)) {
+        if(null == RegistrarHelper.splitFullNodeName(hierarchy)) {
             caught = true;
         }
         assertTrue(message, caught != pass);
@@ -74,9 +94,8 @@ public class DefaultRegistrarTest {
 
     private void accumulatorTrial(boolean pass, String fullNodeName, String message,
             String... parts) {
-        DefaultRegistrar r = new DefaultRegistrar();
         boolean caught = false;
-        String[] results = r.splitFullNodeName(fullNodeName);
+        String[] results = RegistrarHelper.splitFullNodeName(fullNodeName);
         if(results == null) {
             caught = true;
         }
@@ -234,6 +253,296 @@ public class DefaultRegistrarTest {
         assertEquals("Not 0 accumulators", 0, root.getAccumulators().size());
     }
 
+    @Test
+    public void replace()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode node = r.getNode("a.b");
+        Accumulator one = createAcc();
+        Accumulator two = createAcc();
+        node.register("one", one);
+        PathHandle handle = r.resolve("a.b:one");
+
+        assertFalse(node.replace("one", two, one));
+        assertFalse(node.replace("two", one, two));
+        assertTrue(node.replace("one", one, two));
+        assertSame(two, node.getAccumulator("one"));
+        assertSame(two, handle.getAccumulator());
+        assertSame(handle, r.resolve("a.b:one"));
+        assertEquals(1, node.getAccumulators().size());
+    }
+
+    @Test
+    public void listeners()
+    throws Exception {
+        // Events are only ever delivered by drain()
+        DefaultRegistrar r = new DefaultRegistrar(
+                new RegistryEventDispatcher(Long.MAX_VALUE / 2));
+        RegistryNode a = r.getNode("a");
+        Accumulator one = createAcc();
+        Accumulator two = createAcc();
+
+        // No listeners, no events
+        a.register("one", one);
+        r.events.drain();
+
+        Recorder all = new Recorder();
+        Recorder underB = new Recorder();
+        r.addListener(all);
+        r.addListener(all);
+        r.getNode("a.b").addListener(underB);
+
+        RegistryNode ab = r.getNode("a.b");
+        ab.register("two", two);
+        ab.setOn(true);
+        ab.setOn(false);
+        a.register("three", two);
+        a.unregister("three", two);
+        a.unregister("one", one);
+        r.events.drain();
+
+        assertEquals("[NODE_ADDED a.b, ACCUMULATOR_ADDED a.b:two, "
+                + "STATE_CHANGED a.b, ACCUMULATOR_REMOVED a:one]",
+                all.events.toString());
+        assertEquals("[NODE_ADDED a.b, ACCUMULATOR_ADDED a.b:two, "
+                + "STATE_CHANGED a.b]", underB.events.toString());
+
+        r.removeListener(all);
+        a.register("one", one);
+        r.events.drain();
+        assertEquals(4, all.events.size());
+    }
+
+    @Test
+    public void replacedMembersAndClose()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar(
+                new RegistryEventDispatcher(Long.MAX_VALUE / 2));
+        RegistryNode a = r.getNode("a");
+        Accumulator one = createAcc();
+        Accumulator two = createAcc();
+        Accumulator three = createAcc();
+        a.register("one", one);
+
+        Recorder all = new Recorder();
+        r.addListener(all);
+
+        // Both halves of a replacement are delivered
+        a.unregister("one", one);
+        a.register("one", two);
+        r.events.drain();
+        assertEquals("[ACCUMULATOR_REMOVED a:one, ACCUMULATOR_ADDED a:one]",
+                all.events.toString());
+        assertSame(one, all.events.get(0).getMember());
+        assertSame(two, all.events.get(1).getMember());
+
+        // ...unless the replacement is itself removed again
+        all.events.clear();
+        a.unregister("one", two);
+        a.register("one", three);
+        a.unregister("one", three);
+        r.events.drain();
+        assertEquals("[ACCUMULATOR_REMOVED a:one]", all.events.toString());
+        assertSame(two, all.events.get(0).getMember());
+
+        // Closing delivers what is pending, then drops the listeners
+        all.events.clear();
+        a.register("one", one);
+        r.events.close();
+        assertEquals("[ACCUMULATOR_ADDED a:one]", all.events.toString());
+        a.unregister("one", one);
+        r.events.drain();
+        assertEquals(1, all.events.size());
+    }
+
+    @Test
+    public void matchPrunes()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        String[] names = {"foo", "bar", "xbaz"};
+        for(String a : names) {
+            for(String b : names) {
+                for(String c : names) {
+                    r.getNode(a + "." + b + "." + c).register("requests",
+                            createAcc());
+                    r.getNode(a + "." + b).register("other", createAcc());
+                }
+            }
+        }
+
+        String[] patterns = {"**", "**:requests", "foo.**", "foo.**:other",
+            "foo.x*.bar", "*.bar", "*.*.*", "foo.**.bar", "**.bar",
+            "x???", "bar,foo.bar.**", "xb?z.**:req*", "foo.bar.foo:nope"};
+        for(String pattern : patterns) {
+            GlobMatcher matcher = new GlobMatcher(pattern);
+            List<String> expected = new ArrayList<String>();
+            matchEverything(matcher, r.getRootNode(), expected);
+            List<String> actual = new ArrayList<String>();
+            for(RegistryNode node : r.match(pattern)) {
+                GlobMatch match = (GlobMatch)node;
+                actual.add(match.getName() + match.getMemberNames());
+            }
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(pattern, expected, actual);
+        }
+    }
+
+    private void matchEverything(GlobMatcher matcher, RegistryNode node,
+            List<String> results) {
+        GlobMatch match = matcher.match(node);
+        if(match.isNodeMatched()) {
+            results.add(match.getName() + match.getMemberNames());
+        }
+        for(RegistryNode child : node.getChildNodes().values()) {
+            matchEverything(matcher, child, results);
+        }
+    }
+
+    @Test
+    public void standingMatch()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar(
+                new RegistryEventDispatcher(Long.MAX_VALUE / 2));
+        r.getNode("app.web").register("requests", createAcc());
+        r.getNode("app.db").register("queries", createAcc());
+
+        StandingMatch match = new StandingMatch(r, "app.**:requests");
+        assertEquals(2, match.getMatches().size());
+        long version = match.getVersion();
+
+        r.getNode("app.rpc").register("requests", createAcc());
+        r.getNode("other").register("requests", createAcc());
+        r.events.drain();
+        assertTrue(match.getVersion() != version);
+        List<String> names = new ArrayList<String>();
+        for(GlobMatch m : match) {
+            names.add(m.getName() + m.getMemberNames());
+        }
+        assertEquals("[app.db[], app.rpc[requests], app.web[requests]]",
+                names.toString());
+
+        match.close();
+        r.getNode("app.more");
+        r.events.drain();
+        assertEquals(3, match.getMatches().size());
+    }
+
+    private static final class Recorder implements RegistryListener {
+        final List<RegistryEvent> events = new ArrayList<RegistryEvent>();
+
+        public synchronized void registryChanged(List<RegistryEvent> batch) {
+            events.addAll(batch);
+        }
+    }
+
+    @Test
+    public void calculatorGraph()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode node = r.getNode("graph");
+        ValueAcc a = new ValueAcc();
+        a.value = 1L;
+        node.register("a", a);
+
+        // Registered out of order, so evaluation must follow the graph
+        SumCalc formatted = new SumCalc(new String[0], new String[] {"rate"});
+        SumCalc rate = new SumCalc(new String[] {"a"}, new String[0]);
+        final int[] plainCalls = new int[1];
+        Calculator plain = new Calculator() {
+            public Long calculate(Map<String, Long> values,
+                    Map<String, Accumulator> accumulators) {
+                plainCalls[0]++;
+                return values.get("a");
+            }
+
+            public String getUnits() {
+                return null;
+            }
+        };
+        node.register("formatted", formatted);
+        node.register("rate", rate);
+        node.register("plain", plain);
+
+        Map<String, Object> snapshot = node.snapshot();
+        assertEquals(1L, snapshot.get("rate"));
+        assertEquals(1L, snapshot.get("formatted"));
+        assertEquals(1, rate.calls);
+        assertEquals(1, formatted.calls);
+
+        // Unchanged inputs reuse the last results; plain calculators still run
+        snapshot = node.snapshot();
+        assertEquals(1L, snapshot.get("formatted"));
+        assertEquals(1, rate.calls);
+        assertEquals(1, formatted.calls);
+        assertEquals(2, plainCalls[0]);
+
+        a.value = 5L;
+        snapshot = node.snapshot();
+        assertEquals(5L, snapshot.get("rate"));
+        assertEquals(5L, snapshot.get("formatted"));
+        assertEquals(2, rate.calls);
+        assertEquals(2, formatted.calls);
+
+        // Losing an input re-evaluates the dependent calculator without it
+        node.unregister("rate", rate);
+        snapshot = node.snapshot();
+        assertEquals(0L, snapshot.get("formatted"));
+        assertEquals(3, formatted.calls);
+
+        // Cycles are broken rather than failing the snapshot
+        node.register("x", new SumCalc(new String[] {"a"},
+                new String[] {"y"}));
+        node.register("y", new SumCalc(new String[0], new String[] {"x"}));
+        snapshot = node.snapshot();
+        assertNotNull(snapshot.get("x"));
+        assertNotNull(snapshot.get("y"));
+    }
+
+    @Test
+    public void resolve()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        Accumulator one = createAcc();
+        Accumulator two = createAcc();
+
+        PathHandle node = r.resolve("a.b");
+        PathHandle member = r.resolve("a.b:one");
+        assertSame("Node not created", r.getNode("a.b"), node.getNode());
+        assertSame("Member has wrong node", node.getNode(), member.getNode());
+        assertNull("Node has a member", node.getMemberName());
+        assertEquals("Wrong member", "one", member.getMemberName());
+        assertEquals("Wrong path", "a.b:one", member.getPath());
+        assertEquals("Ids not dense", 0, node.getId());
+        assertEquals("Ids not dense", 1, member.getId());
+
+        // Repeated and equivalent paths share a handle
+        assertSame("Not cached", member, r.resolve("a.b:one"));
+        assertSame("Not canonical", member, r.resolve(" a . b:one"));
+        assertSame("Not canonical", node, r.resolve("a. b"));
+
+        // Handles follow registration
+        assertSame("one is present", NopAccumulator.INSTANCE,
+                member.getAccumulator());
+        node.getNode().register("one", one);
+        assertSame("one not present", one, member.getAccumulator());
+        assertSame("one not present", one, r.getAccumulator("a.b:one"));
+        node.getNode().unregister("one", one);
+        node.getNode().register("one", two);
+        assertSame("two not present", two, member.getAccumulator());
+
+        // Invalid paths
+        assertSame("Invalid node resolved", NopPathHandle.INSTANCE,
+                r.resolve("a..b"));
+        assertSame("Invalid member resolved", NopPathHandle.INSTANCE,
+                r.resolve("a:b:c"));
+        assertSame("Null resolved", NopPathHandle.INSTANCE, r.resolve(null));
+        assertSame("Member path is a node", NopRegistryNode.INSTANCE,
+                r.getNode("a.b:one"));
+        assertSame("Node path is a member", NopAccumulator.INSTANCE,
+                r.getAccumulator("a.b"));
+    }
+
     @Test
     public void nodeStates()
     throws Exception {
@@ -313,4 +622,403 @@ public class DefaultRegistrarTest {
         assertFalse(one.isOn());
         assertTrue(two.isOn());
     }
+
+    @Test
+    public void idleEviction()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        long hour = TimeUnit.HOURS.toNanos(1L);
+
+        // Lookups never create anything
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant.a"));
+        assertSame(NopAccumulator.INSTANCE, r.getAccumulator("tenant.a:acc"));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant"));
+
+        RegistryNode a = r.getNode("tenant.a");
+        ValueAcc idle = new ValueAcc();
+        ValueAcc busy = new ValueAcc();
+        Accumulator untracked = createAcc();
+        assertSame(idle, a.register("idle", idle, 1L, TimeUnit.HOURS));
+        r.getNode("tenant.b").register("busy", busy, 1L, TimeUnit.HOURS);
+        r.getNode("tenant.c").register("untracked", untracked, 1L,
+                TimeUnit.HOURS);
+        assertSame(a, r.lookupNode("tenant.a"));
+        assertSame(idle, r.getAccumulator("tenant.a:idle"));
+        r.getNode(IdleEvictor.METRICS_NODE).setOn(true);
+
+        // Only the one that wasn't updated is evicted, and its empty nodes
+        // pruned; a changing value doesn't count as an update
+        long now = System.nanoTime();
+        r.evictor.sweep(now + hour / 2);
+        idle.value = 1L;
+        busy.stamp = 1L;
+        r.evictor.sweep(now + 2 * hour);
+        assertSame(NopAccumulator.INSTANCE, r.getAccumulator("tenant.a:idle"));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant.a"));
+        assertSame(busy, r.getAccumulator("tenant.b:busy"));
+        assertEquals(1L, r.getAccumulator(
+                IdleEvictor.METRICS_NODE + ":accumulators").get());
+        assertEquals(1L, r.getAccumulator(
+                IdleEvictor.METRICS_NODE + ":nodes").get());
+
+        // Registering through a stale reference lands in its replacement
+        ValueAcc late = new ValueAcc();
+        assertSame(late, a.register("late", late, 1L, TimeUnit.HOURS));
+        assertNotSame(a, r.lookupNode("tenant.a"));
+        assertSame(late, r.getAccumulator("tenant.a:late"));
+
+        // Everything that can tell goes once idle, parents included
+        r.evictor.sweep(now + 8 * hour);
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant.a"));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant.b"));
+        assertSame(untracked, r.getAccumulator("tenant.c:untracked"));
+        assertEquals(3L, r.getAccumulator(
+                IdleEvictor.METRICS_NODE + ":accumulators").get());
+        assertEquals(3L, r.getAccumulator(
+                IdleEvictor.METRICS_NODE + ":nodes").get());
+    }
+
+    @Test
+    public void incrementalEviction()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        long hour = TimeUnit.HOURS.toNanos(1L);
+        RegistryNode node = r.getNode("tenant");
+        for(int i=0; i<5; i++) {
+            node.register("acc" + i, new ValueAcc(), 1L, TimeUnit.HOURS);
+        }
+        int baseline = r.cachedHandles();
+        for(int i=0; i<5; i++) {
+            r.resolve("tenant:acc" + i);
+        }
+        assertEquals(baseline + 5, r.cachedHandles());
+
+        // Each sweep only gets so far, and the next one carries on from there
+        long now = System.nanoTime();
+        assertEquals(IdleEvictor.MIN_SWEEP_NANOS,
+                r.evictor.sweep(now + 2 * hour, 2));
+        assertEquals(3, node.getAccumulators().size());
+        assertEquals(IdleEvictor.MIN_SWEEP_NANOS,
+                r.evictor.sweep(now + 2 * hour, 2));
+        assertEquals(1, node.getAccumulators().size());
+        assertEquals(IdleEvictor.MAX_SWEEP_NANOS,
+                r.evictor.sweep(now + 2 * hour, 2));
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("tenant"));
+
+        // The evicted members, and the pruned node, are no longer cached
+        assertEquals(baseline - 1, r.cachedHandles());
+    }
+
+    @Test
+    public void lazyAccStates()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        RegistryNode root = r.getRootNode();
+        RegistryNode first = r.getNode("first");
+        LazyAcc one = new LazyAcc();
+        LazyAcc two = new LazyAcc();
+        Accumulator eager = createAcc();
+
+        root.register("one", one);
+        first.register("two", two);
+        assertSame(root, one.source);
+        assertSame(first, two.source);
+        assertFalse(one.isOn());
+        assertFalse(two.isOn());
+
+        // Toggling bumps the generation, but never touches bound accumulators
+        long generation = ((OnStateSource)root).getGeneration();
+        root.setOn(true);
+        assertTrue(((OnStateSource)root).getGeneration() != generation);
+        assertTrue(one.isOn());
+        assertTrue(two.isOn());
+        first.setOn(false);
+        assertTrue(one.isOn());
+        assertFalse(two.isOn());
+        first.clearOn();
+        assertTrue(two.isOn());
+        assertEquals(0, one.setOnCalls);
+        assertEquals(0, two.setOnCalls);
+
+        // Eager accumulators still work alongside lazy ones
+        first.register("eager", eager);
+        assertTrue(eager.isOn());
+        root.setOn(false);
+        assertFalse(eager.isOn());
+        assertFalse(two.isOn());
+        assertEquals(0, two.setOnCalls);
+
+        // Nodes created after a toggle inherit lazily
+        RegistryNode deep = r.getNode("first.a.b.c");
+        assertFalse(deep.isOn());
+        first.setOn(true);
+        assertTrue(deep.isOn());
+
+        // Unregistering unbinds
+        first.unregister("two", two);
+        assertNull(two.source);
+    }
+
+    @Test
+    public void handleCacheIsBounded()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar();
+        Accumulator one = createAcc();
+        RegistryNode node = r.getNode("a.b");
+        int baseline = r.cachedHandles();
+
+        // Looking up members that don't exist caches nothing
+        for(int i=0; i<1000; i++) {
+            assertSame(NopAccumulator.INSTANCE, r.getAccumulator("a.b:m" + i));
+            r.resolve("a.b:n" + i);
+        }
+        assertEquals(baseline, r.cachedHandles());
+
+        // ... but a held handle still follows registration
+        PathHandle handle = r.resolve("a.b:one");
+        assertSame(handle, r.resolve("a.b:one"));
+        node.register("one", one);
+        assertSame(one, handle.getAccumulator());
+        assertSame(one, r.getAccumulator("a.b:one"));
+        assertEquals(baseline + 1, r.cachedHandles());
+
+        // Unregistering evicts it again
+        node.unregister("one", one);
+        assertEquals(baseline, r.cachedHandles());
+        assertSame(NopAccumulator.INSTANCE, handle.getAccumulator());
+        assertSame(handle, r.resolve("a.b:one"));
+    }
+
+    @Test
+    public void batch()
+    throws Exception {
+        DefaultRegistrar r = new DefaultRegistrar(
+                new RegistryEventDispatcher(Long.MAX_VALUE / 2));
+        Recorder recorder = new Recorder();
+        r.addListener(recorder);
+        r.setOn("a", true);
+        Accumulator existing = createAcc();
+        r.getNode("a.b").register("one", existing);
+        PathHandle handle = r.resolve("a.b:two");
+        r.events.drain();
+        recorder.events.clear();
+
+        Accumulator one = createAcc();
+        Accumulator two = createAcc();
+        Accumulator three = createAcc();
+        LazyAcc lazy = new LazyAcc();
+        SumCalc sum = new SumCalc(new String[] {"one", "two"}, new String[0]);
+        RegistrationBatch batch = r.batch()
+                .register("a.b", "one", one)
+                .register("a.b", "two", two)
+                .register("a.b", "two", three)
+                .register("a.b", "sum", sum)
+                .register("x.y", "lazy", lazy)
+                .register("a..b", "bad", createAcc())
+                .node("a.empty");
+
+        // Nothing happens until commit
+        assertSame(NopRegistryNode.INSTANCE, r.lookupNode("x.y"));
+        long topology = r.topology.get();
+        batch.commit();
+        assertTrue(r.topology.get() != topology);
+
+        RegistryNode ab = r.getNode("a.b");
+        assertSame(existing, ab.getAccumulator("one"));
+        assertSame(two, ab.getAccumulator("two"));
+        assertSame(two, handle.getAccumulator());
+        assertSame(sum, ab.getCalculator("sum"));
+        assertTrue(two.isOn());
+        assertSame(r.getNode("x.y"), lazy.source);
+        assertNotSame(NopRegistryNode.INSTANCE, r.lookupNode("a.empty"));
+
+        r.events.drain();
+        assertEquals("[NODE_ADDED x, NODE_ADDED x.y, NODE_ADDED a.empty, "
+                + "ACCUMULATOR_ADDED a.b:two, CALCULATOR_ADDED a.b:sum, "
+                + "ACCUMULATOR_ADDED x.y:lazy]", recorder.events.toString());
+
+        try {
+            batch.commit();
+            fail("Committed twice.");
+        } catch(IllegalStateException e) {
+        }
+        try {
+            batch.node("more");
+            fail("Added to a committed batch.");
+        } catch(IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void batchIsNotPublishedAtomically()
+    throws Exception {
+        final DefaultRegistrar r = new DefaultRegistrar(
+                new RegistryEventDispatcher(Long.MAX_VALUE / 2));
+        final Accumulator other = createAcc();
+        final Object[] seen = new Object[2];
+        Accumulator witness = new AwareAcc() {
+            @Override
+            public void registered(RegistryNode node, String name) {
+                // Every member is already in the tree, but the topology
+                // change that publishes them is still to come.
+                seen[0] = r.lookupNode("b").getAccumulator("other");
+                seen[1] = r.topology.get();
+            }
+        };
+        r.batch()
+                .register("a", "witness", witness)
+                .register("b", "other", other)
+                .commit();
+
+        assertSame(other, seen[0]);
+        assertEquals(((Long)seen[1]).longValue() + 1, r.topology.get());
+    }
+
+    private static class AwareAcc implements Accumulator, RegistrationAware {
+        public void registered(RegistryNode node, String name) {
+        }
+
+        public void unregistered(RegistryNode node, String name) {
+        }
+
+        public boolean isOn() {
+            return false;
+        }
+
+        public void setOn(boolean on) {
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return 0L;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class LazyAcc implements Accumulator, OnStateAware {
+        private OnStateSource source;
+        private int setOnCalls;
+
+        public boolean bind(OnStateSource source) {
+            this.source = source;
+            return true;
+        }
+
+        public void unbind(OnStateSource source) {
+            if(this.source == source) {
+                this.source = null;
+            }
+        }
+
+        public boolean isOn() {
+            return source != null && source.isOn();
+        }
+
+        public void setOn(boolean on) {
+            setOnCalls++;
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return 0L;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class ValueAcc implements IdleAwareAccumulator {
+        private volatile long value;
+        private volatile long stamp;
+
+        public long getUpdateStamp() {
+            return stamp;
+        }
+
+        public boolean isOn() {
+            return true;
+        }
+
+        public void setOn(boolean on) {
+        }
+
+        public Mutator getMutator() {
+            return NopMutator.INSTANCE;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        public String getUnits() {
+            return null;
+        }
+
+        public Map<Object, Object> getMetadata() {
+            return null;
+        }
+    }
+
+    private static final class SumCalc implements DependentCalculator {
+        private final String[] accumulatorInputs;
+        private final String[] calculatorInputs;
+        private int calls;
+
+        SumCalc(String[] accumulatorInputs, String[] calculatorInputs) {
+            this.accumulatorInputs = accumulatorInputs;
+            this.calculatorInputs = calculatorInputs;
+        }
+
+        public String[] getAccumulatorInputs() {
+            return accumulatorInputs;
+        }
+
+        public String[] getCalculatorInputs() {
+            return calculatorInputs;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators,
+                Map<String, Object> calculated) {
+            calls++;
+            long sum = 0L;
+            for(String input : accumulatorInputs) {
+                Long val = values.get(input);
+                sum += val == null ? 0L : val;
+            }
+            for(String input : calculatorInputs) {
+                Object val = calculated.get(input);
+                sum += val instanceof Long ? (Long)val : 0L;
+            }
+            return sum;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            return calculate(values, accumulators,
+                    Collections.<String, Object>emptyMap());
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
 }
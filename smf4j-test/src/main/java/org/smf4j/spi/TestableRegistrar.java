@@ -30,6 +30,7 @@ public class TestableRegistrar extends DefaultRegistrar {
 
     public void clear() {
         root = new DefaultRegistryNode(this, null, "");
+        clearHandles();
     }
 
     @Override
@@ -15,17 +15,13 @@
  */
 package org.smf4j.to.csv;
 
-import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.PropertyAccessors;
 
 /**
  *
@@ -37,7 +33,13 @@ public class CsvCalculatorColumn extends CsvDataColumn {
             LoggerFactory.getLogger(CsvCalculatorColumn.class);
 
     private final String calcName;
-    private final List<String> path;
+    private final String[] path;
+
+    /**
+     * The portion of {@code dataName} that precedes each part of
+     * {@link #path}, for error messages.
+     */
+    private final String[] walkedPaths;
 
     public CsvCalculatorColumn(RegistryNode node, String dataName,
             String units) {
@@ -54,11 +56,14 @@ public class CsvCalculatorColumn extends CsvDataColumn {
         }
 
         calcName = parts[0];
-        path = new ArrayList<String>();
-        for(int i=1; i<parts.length; i++) {
-            path.add(parts[i]);
+        path = new String[parts.length - 1];
+        walkedPaths = new String[path.length];
+        String walkedPath = calcName;
+        for(int i=0; i<path.length; i++) {
+            path[i] = parts[i + 1];
+            walkedPaths[i] = walkedPath;
+            walkedPath = walkedPath + "." + path[i];
         }
-
     }
 
     @Override
@@ -75,30 +80,20 @@ public class CsvCalculatorColumn extends CsvDataColumn {
 
     protected Object walkPath(Object calc)
     throws IntrospectionException {
-        StringBuilder walkedPath = new StringBuilder();
-        walkedPath.append(calcName);
-
         Object cur = calc;
-        for(String part : path) {
+        for(int i=0; i<path.length; i++) {
             if(cur == null) {
-                log.info("null value encountered at '{}'", walkedPath);
+                log.info("null value encountered at '{}'", walkedPaths[i]);
                 return null;
             }
 
             // Find property getting for this portion of the path
-            BeanInfo bi = Introspector.getBeanInfo(cur.getClass());
-            Method m = null;
-            for(PropertyDescriptor pd : bi.getPropertyDescriptors()) {
-                if(!pd.getName().equals(part)) {
-                    continue;
-                }
-                m = pd.getReadMethod();
-            }
-
+            Method m = PropertyAccessors.getReadMethod(cur.getClass(),
+                    path[i]);
             if(m == null) {
                 throw new DataException(String.format(
                         "Unable to get property read method for %s.[%s]",
-                        walkedPath.toString(), part));
+                        walkedPaths[i], path[i]));
             }
 
             Object val = null;
@@ -107,12 +102,10 @@ public class CsvCalculatorColumn extends CsvDataColumn {
             } catch (Throwable t) {
                 throw new DataException(String.format(
                         "Unable to get property %s.[%s]",
-                        walkedPath.toString(), part), t);
+                        walkedPaths[i], path[i]), t);
             }
 
             // Next!
-            walkedPath.append(".");
-            walkedPath.append(part);
             cur = val;
         }
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.to.csv;
+
+import java.util.Map;
+import org.smf4j.AccumulatorFamily;
+import org.smf4j.RegistryNode;
+import org.smf4j.util.helpers.FamilyHelper;
+
+/**
+ * A column holding one entry of an {@link AccumulatorFamily}.  The value is
+ * read straight from the family, rather than from the node's snapshot,
+ * which only holds the family's total.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class CsvFamilyColumn extends CsvDataColumn {
+
+    private final AccumulatorFamily family;
+    private final int index;
+
+    public CsvFamilyColumn(RegistryNode node, String familyName,
+            AccumulatorFamily family, int index) {
+        super(node, FamilyHelper.getEntryName(familyName, family, index),
+                family.getUnits());
+        this.family = family;
+        this.index = index;
+    }
+
+    public AccumulatorFamily getFamily() {
+        return family;
+    }
+
+    @Override
+    public Object getDatum(Map<String, Object> snapshot) {
+        return family.get(index);
+    }
+}
@@ -302,6 +302,9 @@ public class CsvFile implements Closeable, Runnable, Callable<Boolean> {
 
             apiClosed.getAndSet(true);
             closeFile();
+            if(layout != null) {
+                layout.close();
+            }
         } finally {
             fileIoLock.unlock();
         }
@@ -20,29 +20,119 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.smf4j.Calculator;
 import org.smf4j.Accumulator;
+import org.smf4j.AccumulatorFamily;
 import org.smf4j.Registrar;
 import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
 import org.smf4j.util.helpers.CalculatorHelper;
 import org.smf4j.RegistryNode;
 import org.smf4j.util.helpers.CalculatorProperty;
+import org.smf4j.util.helpers.GlobMatcher;
 
 /**
+ * Lays out the columns of a {@link CsvFile}, from the nodes that match the
+ * layout's filters.
+ * <p>
+ * The layout listens to the {@link Registrar} for changes, and only rescans
+ * the registry in {@link #prepare()} once a change has touched a node that
+ * matches one of its filters, or once an {@link AccumulatorFamily} it lays
+ * out has gained entries.  Each entry of a family gets a column of its own,
+ * alongside the column for the family's total.
+ * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
 public class CsvFileLayout {
     private List<String> filters = new ArrayList<String>();
+    private List<String> matchedFilters;
+    private volatile List<GlobMatcher> matchers = new ArrayList<GlobMatcher>();
     private List<CsvDataColumn> columns;
+    private Map<AccumulatorFamily, Integer> familySizes =
+            new IdentityHashMap<AccumulatorFamily, Integer>();
+    private Registrar listening;
+    private volatile boolean dirty = true;
+    private final RegistryListener listener = new RegistryListener() {
+        public void registryChanged(List<RegistryEvent> events) {
+            for(RegistryEvent event : events) {
+                if(matches(event.getNode())) {
+                    dirty = true;
+                    return;
+                }
+            }
+        }
+    };
 
     public void prepare() {
+        Registrar r = RegistrarFactory.getRegistrar();
+        if(r != listening) {
+            if(listening != null) {
+                listening.removeListener(listener);
+            }
+            r.addListener(listener);
+            listening = r;
+            dirty = true;
+        }
+
+        if(!filters.equals(matchedFilters)) {
+            List<GlobMatcher> newMatchers = new ArrayList<GlobMatcher>();
+            for(String filter : filters) {
+                newMatchers.add(new GlobMatcher(filter));
+            }
+            matchers = newMatchers;
+            matchedFilters = new ArrayList<String>(filters);
+            dirty = true;
+        }
+
+        if(!dirty && columns != null && !familiesGrew()) {
+            // Nothing we lay out has changed
+            return;
+        }
+
+        // Clear the flag before scanning, so that changes that race with the
+        // scan are picked up next time.
+        dirty = false;
         this.columns = createColumns(gatherAllNodes());
     }
 
+    /**
+     * Stops listening to the {@link Registrar}, so that a layout that is no
+     * longer used can be collected.  A later {@link #prepare()} starts
+     * listening again, and rescans the registry.
+     */
+    public void close() {
+        if(listening != null) {
+            listening.removeListener(listener);
+            listening = null;
+        }
+        dirty = true;
+    }
+
+    private boolean familiesGrew() {
+        for(Map.Entry<AccumulatorFamily, Integer> entry :
+                familySizes.entrySet()) {
+            if(entry.getKey().size() != entry.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matches(RegistryNode node) {
+        for(GlobMatcher matcher : matchers) {
+            if(matcher.match(node).isNodeMatched()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public List<CsvDataColumn> getColumns() {
         if(columns == null) {
             prepare();
@@ -53,6 +143,8 @@ public class CsvFileLayout {
     protected List<CsvDataColumn> createColumns(List<RegistryNode> nodes) {
         List<CsvDataColumn> cols = new ArrayList<CsvDataColumn>();
         Map<String, CsvDataColumn> names = new HashMap<String, CsvDataColumn>();
+        Map<AccumulatorFamily, Integer> sizes =
+                new IdentityHashMap<AccumulatorFamily, Integer>();
 
         for(RegistryNode node : nodes) {
             Map<String, Accumulator> accs = node.getAccumulators();
@@ -72,6 +164,25 @@ public class CsvFileLayout {
                 }
 
                 cols.add(col);
+
+                if(entry.getValue() instanceof AccumulatorFamily) {
+                    AccumulatorFamily family =
+                            (AccumulatorFamily)entry.getValue();
+                    int size = family.size();
+                    for(int i=0; i<size; i++) {
+                        CsvFamilyColumn fcol =
+                                new CsvFamilyColumn(node, name, family, i);
+                        String fname = fcol.getDataName();
+                        if(names.containsKey(fname)) {
+                            names.get(fname).setUseFullName(true);
+                            fcol.setUseFullName(true);
+                        } else {
+                            names.put(fname, fcol);
+                        }
+                        cols.add(fcol);
+                    }
+                    sizes.put(family, size);
+                }
             }
 
             Map<String, Calculator> calcs = node.getCalculators();
@@ -100,6 +211,7 @@ public class CsvFileLayout {
             }
         }
 
+        familySizes = sizes;
         Collections.sort(cols, new Comparator<CsvDataColumn>() {
             @Override
             public int compare(CsvDataColumn o1, CsvDataColumn o2) {
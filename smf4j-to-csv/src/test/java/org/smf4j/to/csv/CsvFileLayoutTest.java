@@ -19,10 +19,14 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import org.junit.BeforeClass;
 
 import org.junit.Test;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
 import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.family.CounterFamily;
 
 /**
  *
@@ -77,6 +81,123 @@ public class CsvFileLayoutTest {
         }
     }
 
+    @Test
+    public void prepareRescansOnlyAfterChanges()
+    throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        RegistryNode watched = RegistrarFactory.getNode("watched");
+        RegistryNode ignored = RegistrarFactory.getNode("ignored");
+        watched.register("a", new MockAccumulator(1));
+
+        final int[] scans = new int[1];
+        CsvFileLayout l = new CsvFileLayout() {
+            @Override
+            protected List<RegistryNode> gatherAllNodes() {
+                scans[0]++;
+                return super.gatherAllNodes();
+            }
+        };
+        List<String> filters = new ArrayList<String>();
+        filters.add("watched");
+        l.setFilters(filters);
+
+        l.prepare();
+        l.prepare();
+        assertEquals(1, scans[0]);
+        assertEquals(1, l.getColumns().size());
+
+        // Changes to nodes we don't lay out are ignored
+        ignored.register("b", new MockAccumulator(1));
+        watched.register("c", new MockAccumulator(1));
+        for(int i=0; i<500 && scans[0] == 1; i++) {
+            Thread.sleep(10L);
+            l.prepare();
+        }
+        assertEquals(2, scans[0]);
+        assertEquals(2, l.getColumns().size());
+    }
+
+    @Test
+    public void closeStopsListening()
+    throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        RegistryNode watched = RegistrarFactory.getNode("watched");
+        List<String> filters = new ArrayList<String>();
+        filters.add("watched");
+
+        final AtomicIntegerArray heard = new AtomicIntegerArray(2);
+        CsvFileLayout closed = new CsvFileLayout() {
+            @Override
+            boolean matches(RegistryNode node) {
+                heard.incrementAndGet(0);
+                return super.matches(node);
+            }
+        };
+        CsvFileLayout open = new CsvFileLayout() {
+            @Override
+            boolean matches(RegistryNode node) {
+                heard.incrementAndGet(1);
+                return super.matches(node);
+            }
+        };
+        closed.setFilters(filters);
+        open.setFilters(filters);
+        closed.prepare();
+        open.prepare();
+        closed.close();
+
+        // Once the open layout has heard about the change, so would the
+        // closed one have
+        watched.register("a", new MockAccumulator(1));
+        for(int i=0; i<500 && heard.get(1) == 0; i++) {
+            Thread.sleep(10L);
+        }
+        assertTrue(heard.get(1) > 0);
+        assertEquals(0, heard.get(0));
+        open.close();
+    }
+
+    @Test
+    public void familyColumns()
+    throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        RegistryNode node = RegistrarFactory.getNode("web");
+        CounterFamily requests = new CounterFamily("code");
+        requests.setOn(true);
+        node.register("requests", requests);
+        requests.getMutator("200").put(3L);
+        requests.getMutator("500").put(1L);
+
+        final int[] scans = new int[1];
+        CsvFileLayout l = new CsvFileLayout() {
+            @Override
+            protected List<RegistryNode> gatherAllNodes() {
+                scans[0]++;
+                return super.gatherAllNodes();
+            }
+        };
+        List<String> filters = new ArrayList<String>();
+        filters.add("web");
+        l.setFilters(filters);
+
+        l.prepare();
+        List<CsvDataColumn> cols = l.getColumns();
+        assertEquals(3, cols.size());
+        assertEquals("requests", cols.get(0).getColumnName());
+        assertEquals("requests{code=200}", cols.get(1).getColumnName());
+        assertEquals("requests{code=500}", cols.get(2).getColumnName());
+        assertEquals(3L, cols.get(1).getDatum(null));
+        assertEquals(1L, cols.get(2).getDatum(null));
+
+        // A new label value is picked up without any registry change
+        l.prepare();
+        assertEquals(1, scans[0]);
+        requests.getMutator("404").put(1L);
+        l.prepare();
+        assertEquals(2, scans[0]);
+        assertEquals(4, l.getColumns().size());
+    }
+
     private static String[] expectedNames = new String[] {
             "acc1",
             "acc2",
@@ -18,8 +18,10 @@ package org.smf4j.to.csv;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.smf4j.Accumulator;
 import org.smf4j.Calculator;
+import org.smf4j.RegistryListener;
 import org.smf4j.RegistryNode;
 
 /**
@@ -50,6 +52,12 @@ public class MockRegistryNode implements RegistryNode {
         return accs.get(name);
     }
 
+    @Override
+    public Accumulator register(String name, Accumulator accumulator,
+            long idleTimeout, TimeUnit unit) {
+        return register(name, accumulator);
+    }
+
     @Override
     public Calculator register(String name, Calculator calculator) {
         if(!calcs.containsKey(name)) {
@@ -64,6 +72,16 @@ public class MockRegistryNode implements RegistryNode {
         return accs.remove(name) != null;
     }
 
+    @Override
+    public boolean replace(String name, Accumulator accumulator,
+            Accumulator replacement) {
+        if(accs.get(name) != accumulator) {
+            return false;
+        }
+        accs.put(name, replacement);
+        return true;
+    }
+
     @Override
     public boolean unregister(String name, Calculator calculator) {
         return calcs.remove(name) != null;
@@ -137,4 +155,12 @@ public class MockRegistryNode implements RegistryNode {
     @Override
     public void clearOn() {
     }
+
+    @Override
+    public void addListener(RegistryListener listener) {
+    }
+
+    @Override
+    public void removeListener(RegistryListener listener) {
+    }
 }
@@ -16,6 +16,8 @@
 package org.smf4j.to.jmx;
 
 import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -30,13 +32,19 @@ import org.smf4j.Accumulator;
 import org.smf4j.Calculator;
 import org.smf4j.Registrar;
 import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
 import org.smf4j.RegistryNode;
 
 /**
+ * Publishes every {@link RegistryNode} of the application's {@link Registrar}
+ * as an MBean.  While published, the publisher listens to the
+ * {@code Registrar} and keeps the set of MBeans, and the attributes of each,
+ * in step with the registry as nodes and members come and go.
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
-public class JmxRegistrarPublisher {
+public class JmxRegistrarPublisher implements RegistryListener {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final Registrar registrar;
@@ -45,31 +53,48 @@ public class JmxRegistrarPublisher {
     private final Map<String, RegistryNodeDynamicMBean> registeredBeans;
 
     public JmxRegistrarPublisher() {
+        this(RegistrarFactory.getRegistrar(),
+                ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxRegistrarPublisher(Registrar registrar, MBeanServer server) {
         this.published = new AtomicBoolean(false);
-        this.server = ManagementFactory.getPlatformMBeanServer();
+        this.server = server;
         this.registeredBeans =
                 new ConcurrentHashMap<String, RegistryNodeDynamicMBean>();
-        this.registrar = RegistrarFactory.getRegistrar();
+        this.registrar = registrar;
     }
 
     public void publish() {
         if(published.compareAndSet(false, true)) {
+            registrar.addListener(this);
             registerNodes(registrar.getRootNode());
         }
     }
 
     public void unpublish() {
         if(published.compareAndSet(true, false)) {
+            registrar.removeListener(this);
             unregisterNodes(registrar.getRootNode());
         }
     }
 
     void registerNodes(RegistryNode node) {
+        if(!registerNode(node)) {
+            return;
+        }
+
+        for(RegistryNode child : node.getChildNodes().values()) {
+            registerNodes(child);
+        }
+    }
+
+    boolean registerNode(RegistryNode node) {
         String name = node.getName();
         if(registeredBeans.containsKey(name)) {
             log.error("Unable to locate a registered MBean for node '{}' "
                     + "because it is already recorded as registered.", name);
-            return;
+            return false;
         }
 
         RegistryNodeDynamicMBean mb = new RegistryNodeDynamicMBean(node);
@@ -79,30 +104,35 @@ public class JmxRegistrarPublisher {
             log.error(String.format("Unable to register node '%s' with "
                     + "ObjectName '%s' because the JMX server reports that it "
                     + "is already registered.", name, mb.getObjectName()), ex);
-            return;
+            return false;
         } catch (MBeanRegistrationException ex) {
             log.error(String.format("Unable to register node '%s' with "
                     + "ObjectName '%s' because the JMX server reports that a "
                     + "general registration error has occurred.", name,
                     mb.getObjectName()), ex);
-            return;
+            return false;
         } catch (NotCompliantMBeanException ex) {
             log.error(String.format("Unable to register node '%s' with "
                     + "ObjectName '%s' because the JMX server reports that "
                     + "it is not a compliant MBean.", name, mb.getObjectName()),
                     ex);
-            return;
+            return false;
         }
 
-        registeredBeans.put(node.getName(), mb);
+        registeredBeans.put(name, mb);
+        return true;
+    }
+
+    void unregisterNodes(RegistryNode node) {
+        unregisterNode(node);
         for(RegistryNode child : node.getChildNodes().values()) {
-            registerNodes(child);
+            unregisterNodes(child);
         }
     }
 
-    void unregisterNodes(RegistryNode node) {
+    void unregisterNode(RegistryNode node) {
         String name = node.getName();
-        RegistryNodeDynamicMBean mb = registeredBeans.get(name);
+        RegistryNodeDynamicMBean mb = registeredBeans.remove(name);
         if(mb == null) {
             log.error("Unable to locate a registered MBean for node '{}'",
                     name);
@@ -121,14 +151,62 @@ public class JmxRegistrarPublisher {
                     + "due to a general error.", name, mb.getObjectName()),
                     ex);
         }
+    }
 
-        for(RegistryNode child : node.getChildNodes().values()) {
-            registerNodes(child);
+    /**
+     * Re-registers the MBean for {@code node}, so that its attributes
+     * reflect the node's current members.
+     */
+    void refreshNode(RegistryNode node) {
+        if(registeredBeans.containsKey(node.getName())) {
+            unregisterNode(node);
+        }
+        registerNode(node);
+    }
+
+    /**
+     * Brings the MBeans in step with a batch of changes.  A node whose
+     * members have changed has its MBean re-registered once for the whole
+     * batch, however many of its members changed.
+     */
+    public void registryChanged(List<RegistryEvent> events) {
+        if(!published.get()) {
+            return;
+        }
+
+        Map<String, RegistryNode> changed =
+                new LinkedHashMap<String, RegistryNode>();
+        for(RegistryEvent event : events) {
+            RegistryNode node = event.getNode();
+            switch(event.getType()) {
+                case NODE_ADDED:
+                    nodeAdded(node);
+                    break;
+                case NODE_REMOVED:
+                    changed.remove(node.getName());
+                    nodeRemoved(node);
+                    break;
+                case ACCUMULATOR_ADDED:
+                case ACCUMULATOR_REMOVED:
+                case CALCULATOR_ADDED:
+                case CALCULATOR_REMOVED:
+                    changed.put(node.getName(), node);
+                    break;
+                default:
+                    // The 'On' attribute is read live
+                    break;
+            }
+        }
+
+        for(RegistryNode node : changed.values()) {
+            refreshNode(node);
         }
     }
 
     public void nodeAdded(RegistryNode registryNode) {
-        registerNodes(registryNode);
+        if(!registeredBeans.containsKey(registryNode.getName())) {
+            registerNode(registryNode);
+        }
     }
 
     public void nodeRemoved(RegistryNode registryNode) {
@@ -137,21 +215,21 @@ public class JmxRegistrarPublisher {
 
     public void accumulatorAdded(RegistryNode registryNode,
             Accumulator accumulator) {
-        registerNodes(registryNode);
+        refreshNode(registryNode);
     }
 
     public void accumulatorRemoved(RegistryNode registryNode,
             Accumulator accumulator) {
-        registerNodes(registryNode);
+        refreshNode(registryNode);
     }
 
     public void calculatorAdded(RegistryNode registryNode,
             Calculator calculator) {
-        registerNodes(registryNode);
+        refreshNode(registryNode);
     }
 
     public void calculatorRemoved(RegistryNode registryNode,
             Calculator calculator) {
-        registerNodes(registryNode);
+        refreshNode(registryNode);
     }
 }
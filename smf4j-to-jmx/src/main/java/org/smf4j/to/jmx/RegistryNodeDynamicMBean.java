@@ -29,6 +29,7 @@ import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
@@ -36,10 +37,14 @@ import javax.management.modelmbean.DescriptorSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smf4j.Accumulator;
+import org.smf4j.AccumulatorFamily;
 import org.smf4j.Calculator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.RecordingAccumulator;
 import org.smf4j.util.helpers.CalculatorHelper;
 import org.smf4j.RegistryNode;
 import org.smf4j.util.helpers.CalculatorProperty;
+import org.smf4j.util.helpers.FamilyHelper;
 
 /**
  *
@@ -49,6 +54,11 @@ public class RegistryNodeDynamicMBean implements DynamicMBean {
 
     private static final String ATTR_ON = "On";
     private static final String OPER_CLEAR_ON = "clearOn";
+    private static final String OPER_START_RECORDING = "startRecording";
+    private static final String OPER_STOP_RECORDING = "stopRecording";
+    private static final String OPER_DUMP_RECORDING = "dumpRecording";
+    private static final String PARAM_ACCUMULATOR = "accumulator";
+    private static final String PARAM_EVENTS = "eventsPerThread";
     private static final String ROOT_NAME = "[root]";
     private static final String DEFAULT_DOMAIN = "smf4j";
 
@@ -79,6 +89,21 @@ public class RegistryNodeDynamicMBean implements DynamicMBean {
             return registryNode.isOn();
         }
 
+        // Is it an entry in an accumulator family?
+        int brace = attribute.indexOf('{');
+        if(brace > 0) {
+            String familyName = attribute.substring(0, brace);
+            Accumulator acc = registryNode.getAccumulator(familyName);
+            if(acc instanceof AccumulatorFamily) {
+                AccumulatorFamily family = (AccumulatorFamily)acc;
+                int index = FamilyHelper.findEntry(familyName, family,
+                        attribute);
+                if(index >= 0) {
+                    return family.get(index);
+                }
+            }
+        }
+
         // Is it a named accumulator?
         Accumulator acc = registryNode.getAccumulator(attribute);
         if(acc != null) {
@@ -147,11 +172,115 @@ public class RegistryNodeDynamicMBean implements DynamicMBean {
     public Object invoke(String actionName, Object[] params, String[] signature)
     throws MBeanException, ReflectionException {
         if(OPER_CLEAR_ON.equals(actionName)) {
+            checkParamCount(actionName, params, 0);
             registryNode.clearOn();
+        } else if(OPER_START_RECORDING.equals(actionName)) {
+            checkParamCount(actionName, params, 2);
+            String target = stringParam(actionName, params, 0);
+            int events = intParam(actionName, params, 1);
+            if(events < 1) {
+                throw new MBeanException(new IllegalArgumentException(
+                        PARAM_EVENTS + " must be positive."), String.format(
+                        "Invalid %s %d for operation '%s' of node '%s'.",
+                        PARAM_EVENTS, events, actionName, name));
+            }
+            for(RecordingAccumulator acc : recordingAccumulators(target)) {
+                acc.startRecording(events);
+            }
+        } else if(OPER_STOP_RECORDING.equals(actionName)) {
+            checkParamCount(actionName, params, 1);
+            String target = stringParam(actionName, params, 0);
+            for(RecordingAccumulator acc : recordingAccumulators(target)) {
+                acc.stopRecording();
+            }
+        } else if(OPER_DUMP_RECORDING.equals(actionName)) {
+            checkParamCount(actionName, params, 1);
+            return dumpRecording(stringParam(actionName, params, 0));
+        } else {
+            throw new ReflectionException(
+                    new NoSuchMethodException(actionName), String.format(
+                    "Node '%s' has no operation '%s'.", name, actionName));
         }
         return null;
     }
 
+    private void checkParamCount(String actionName, Object[] params,
+            int count)
+    throws ReflectionException {
+        int actual = params == null ? 0 : params.length;
+        if(actual != count) {
+            throw new ReflectionException(new IllegalArgumentException(
+                    String.format("Expected %d parameters, but got %d.",
+                    count, actual)), String.format(
+                    "Wrong number of parameters for operation '%s' of "
+                    + "node '%s'.", actionName, name));
+        }
+    }
+
+    private String stringParam(String actionName, Object[] params, int index)
+    throws ReflectionException {
+        Object param = params[index];
+        if(param != null && !(param instanceof String)) {
+            throw badParam(actionName, index, String.class, param);
+        }
+        return (String)param;
+    }
+
+    private int intParam(String actionName, Object[] params, int index)
+    throws ReflectionException {
+        Object param = params[index];
+        if(!(param instanceof Integer)) {
+            throw badParam(actionName, index, int.class, param);
+        }
+        return (Integer)param;
+    }
+
+    private ReflectionException badParam(String actionName, int index,
+            Class<?> expected, Object param) {
+        String actual = param == null ? "null" : param.getClass().getName();
+        return new ReflectionException(new IllegalArgumentException(
+                String.format("Expected %s, but got %s.", expected.getName(),
+                actual)), String.format("Invalid parameter %d for "
+                + "operation '%s' of node '%s'.", index, actionName, name));
+    }
+
+    private String[] dumpRecording(String target) {
+        List<String> lines = new ArrayList<String>();
+        for(Map.Entry<String, Accumulator> entry :
+                registryNode.getAccumulators().entrySet()) {
+            if(!isRecordingTarget(target, entry)) {
+                continue;
+            }
+            RecordingAccumulator acc = (RecordingAccumulator)entry.getValue();
+            for(RecordedEvent event : acc.getRecordedEvents()) {
+                lines.add(entry.getKey() + " " + event);
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private List<RecordingAccumulator> recordingAccumulators(String target) {
+        List<RecordingAccumulator> list = new ArrayList<RecordingAccumulator>();
+        for(Map.Entry<String, Accumulator> entry :
+                registryNode.getAccumulators().entrySet()) {
+            if(isRecordingTarget(target, entry)) {
+                list.add((RecordingAccumulator)entry.getValue());
+            }
+        }
+        return list;
+    }
+
+    private boolean isRecordingTarget(String target,
+            Map.Entry<String, Accumulator> entry) {
+        if(!(entry.getValue() instanceof RecordingAccumulator)) {
+            return false;
+        }
+
+        // An empty accumulator name targets every accumulator in the node
+        return target == null || target.length() == 0
+                || target.equals(entry.getKey());
+    }
+
     public MBeanInfo getMBeanInfo() {
         return mBeanInfo;
     }
@@ -180,11 +309,33 @@ public class RegistryNodeDynamicMBean implements DynamicMBean {
         gatherAccumulatorAttributeInfos(attrs);
         gatherCalculatorAttributeInfos(attrs);
 
+        MBeanParameterInfo accParam = new MBeanParameterInfo(
+                PARAM_ACCUMULATOR, String.class.getCanonicalName(),
+                "The accumulator name, or empty for all accumulators.");
+        MBeanParameterInfo eventsParam = new MBeanParameterInfo(
+                PARAM_EVENTS, int.class.getCanonicalName(),
+                "The number of raw events to keep for each thread.");
+
         MBeanOperationInfo[] opers = {
             new MBeanOperationInfo(OPER_CLEAR_ON,
                 "Forces the node to use its parent's off/on state.", null,
                 java.lang.Void.class.getCanonicalName(),
-                MBeanOperationInfo.ACTION)
+                MBeanOperationInfo.ACTION),
+            new MBeanOperationInfo(OPER_START_RECORDING,
+                "Starts recording the raw values written to accumulators.",
+                new MBeanParameterInfo[] { accParam, eventsParam },
+                java.lang.Void.class.getCanonicalName(),
+                MBeanOperationInfo.ACTION),
+            new MBeanOperationInfo(OPER_STOP_RECORDING,
+                "Stops recording, and discards recorded values.",
+                new MBeanParameterInfo[] { accParam },
+                java.lang.Void.class.getCanonicalName(),
+                MBeanOperationInfo.ACTION),
+            new MBeanOperationInfo(OPER_DUMP_RECORDING,
+                "Dumps the recorded values, oldest first.",
+                new MBeanParameterInfo[] { accParam },
+                String[].class.getName(),
+                MBeanOperationInfo.INFO)
         };
 
         DescriptorSupport desc = new DescriptorSupport();
@@ -201,6 +352,17 @@ public class RegistryNodeDynamicMBean implements DynamicMBean {
                 registryNode.getAccumulators().entrySet()) {
             attrs.add(createAccumluatorAttributeInfo(entry.getKey(),
                     entry.getValue()));
+
+            // Each entry of a family gets an attribute of its own
+            if(entry.getValue() instanceof AccumulatorFamily) {
+                AccumulatorFamily family = (AccumulatorFamily)entry.getValue();
+                int size = family.size();
+                for(int i=0; i<size; i++) {
+                    attrs.add(createAccumluatorAttributeInfo(
+                            FamilyHelper.getEntryName(entry.getKey(), family,
+                            i), family));
+                }
+            }
         }
     }
 
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.to.jmx;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerFactory;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class JmxRegistrarPublisherTest {
+
+    private Registrar registrar;
+    private MBeanServer server;
+    private JmxRegistrarPublisher publisher;
+    private final List<String> registrations = new ArrayList<String>();
+
+    @Before
+    public void before()
+    throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        registrar = RegistrarFactory.getRegistrar();
+        server = MBeanServerFactory.newMBeanServer();
+        server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+                new NotificationListener() {
+            public void handleNotification(Notification n, Object handback) {
+                if(MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(
+                        n.getType())) {
+                    registrations.add(((MBeanServerNotification)n)
+                            .getMBeanName().getKeyProperty("name"));
+                }
+            }
+        }, null, null);
+        publisher = new JmxRegistrarPublisher(registrar, server);
+    }
+
+    @After
+    public void after() {
+        publisher.unpublish();
+    }
+
+    @Test
+    public void publishesEveryNode()
+    throws Exception {
+        registrar.getNode("web.a").register("count", counter());
+
+        publisher.publish();
+        assertTrue(server.isRegistered(objectName("[root]")));
+        assertTrue(server.isRegistered(objectName("web")));
+        assertTrue(server.isRegistered(objectName("web.a")));
+        assertEquals(0L, server.getAttribute(objectName("web.a"), "count"));
+
+        publisher.unpublish();
+        assertFalse(server.isRegistered(objectName("[root]")));
+        assertFalse(server.isRegistered(objectName("web")));
+        assertFalse(server.isRegistered(objectName("web.a")));
+    }
+
+    @Test
+    public void followsTheRegistry()
+    throws Exception {
+        publisher.publish();
+        RegistryNode node = registrar.getNode("api");
+        node.register("count", counter());
+
+        for(int i=0; i<500; i++) {
+            if(server.isRegistered(objectName("api")) && hasAttribute("api",
+                    "count")) {
+                break;
+            }
+            Thread.sleep(10L);
+        }
+        assertTrue(hasAttribute("api", "count"));
+    }
+
+    @Test
+    public void refreshesEachNodeOncePerBatch()
+    throws Exception {
+        RegistryNode web = registrar.getNode("web");
+        RegistryNode api = registrar.getNode("api");
+        List<RegistryEvent> batch = new ArrayList<RegistryEvent>();
+        for(int i=0; i<3; i++) {
+            Accumulator acc = counter();
+            web.register("count" + i, acc);
+            batch.add(new RegistryEvent(RegistryEvent.Type.ACCUMULATOR_ADDED,
+                    web, "count" + i, acc));
+            batch.add(new RegistryEvent(RegistryEvent.Type.ACCUMULATOR_ADDED,
+                    api, "count" + i, acc));
+        }
+
+        publisher.publish();
+        registrations.clear();
+        publisher.registryChanged(batch);
+        assertEquals(2, registrations.size());
+        assertTrue(registrations.contains("web"));
+        assertTrue(registrations.contains("api"));
+        assertTrue(hasAttribute("web", "count2"));
+    }
+
+    @Test
+    public void removedNodesAreNotRefreshed()
+    throws Exception {
+        RegistryNode web = registrar.getNode("web");
+        Accumulator acc = counter();
+        web.register("count", acc);
+        publisher.publish();
+
+        List<RegistryEvent> batch = new ArrayList<RegistryEvent>();
+        batch.add(new RegistryEvent(RegistryEvent.Type.ACCUMULATOR_ADDED,
+                web, "count", acc));
+        batch.add(new RegistryEvent(RegistryEvent.Type.NODE_REMOVED, web,
+                null, null));
+        registrations.clear();
+        publisher.registryChanged(batch);
+        assertTrue(registrations.isEmpty());
+        assertFalse(server.isRegistered(objectName("web")));
+    }
+
+    private boolean hasAttribute(String node, String attribute)
+    throws Exception {
+        ObjectName name = objectName(node);
+        if(!server.isRegistered(name)) {
+            return false;
+        }
+        return server.getAttributes(name, new String[] { attribute })
+                .size() == 1;
+    }
+
+    private static Accumulator counter() {
+        return new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+    }
+
+    private static ObjectName objectName(String node) {
+        return RegistryNodeDynamicMBean.buildObjectName("smf4j", node);
+    }
+}
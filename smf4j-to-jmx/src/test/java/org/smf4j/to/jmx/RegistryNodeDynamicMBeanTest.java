@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.to.jmx;
+
+import static org.junit.Assert.*;
+
+import javax.management.Attribute;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.junit.Before;
+import org.junit.Test;
+import org.smf4j.RegistrarFactory;
+import org.smf4j.RegistrarFactoryForUnitTests;
+import org.smf4j.RegistryNode;
+import org.smf4j.core.accumulator.family.CounterFamily;
+import org.smf4j.core.accumulator.hc.HighContentionAccumulator;
+import org.smf4j.core.accumulator.hc.UnboundedAddMutator;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class RegistryNodeDynamicMBeanTest {
+
+    private static final String[] START_SIG = {
+        String.class.getName(), int.class.getName()
+    };
+    private static final String[] TARGET_SIG = { String.class.getName() };
+
+    private MBeanServer server;
+    private RegistryNode node;
+    private HighContentionAccumulator count;
+    private ObjectName objectName;
+
+    @Before
+    public void before()
+    throws Exception {
+        RegistrarFactoryForUnitTests.reset(true);
+        node = RegistrarFactory.getNode("web.requests");
+        count = new HighContentionAccumulator(
+                UnboundedAddMutator.MUTATOR_FACTORY);
+        node.register("count", count);
+        CounterFamily byCode = new CounterFamily("code");
+        node.register("byCode", byCode);
+        byCode.getMutator("200").put(3L);
+
+        RegistryNodeDynamicMBean mb = new RegistryNodeDynamicMBean("test",
+                node);
+        objectName = mb.getObjectName();
+        server = MBeanServerFactory.newMBeanServer();
+        server.registerMBean(mb, objectName);
+    }
+
+    @Test
+    public void attributes()
+    throws Exception {
+        assertEquals(
+                new ObjectName("test:type=RegistryNode,name=web.requests"),
+                objectName);
+        count.getMutator().put(5L);
+        assertEquals(Boolean.TRUE, server.getAttribute(objectName, "On"));
+        assertEquals(5L, server.getAttribute(objectName, "count"));
+        assertEquals(3L, server.getAttribute(objectName, "byCode{code=200}"));
+
+        server.setAttribute(objectName, new Attribute("On", Boolean.FALSE));
+        assertFalse(node.isOn());
+    }
+
+    @Test
+    public void recording()
+    throws Exception {
+        server.invoke(objectName, "startRecording",
+                new Object[] { "count", 4 }, START_SIG);
+        assertTrue(count.isRecording());
+        count.getMutator().put(7L);
+
+        String[] lines = (String[])server.invoke(objectName, "dumpRecording",
+                new Object[] { null }, TARGET_SIG);
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].startsWith("count "));
+
+        server.invoke(objectName, "stopRecording", new Object[] { "" },
+                TARGET_SIG);
+        assertFalse(count.isRecording());
+    }
+
+    @Test
+    public void missingParams()
+    throws Exception {
+        assertInvalid("startRecording", null);
+        assertInvalid("startRecording", new Object[] { "count" });
+        assertInvalid("stopRecording", new Object[0]);
+        assertInvalid("clearOn", new Object[] { "count" });
+        assertFalse(count.isRecording());
+    }
+
+    @Test
+    public void wrongParamTypes()
+    throws Exception {
+        assertInvalid("startRecording", new Object[] { "count", null });
+        assertInvalid("startRecording", new Object[] { "count", "4" });
+        assertInvalid("startRecording", new Object[] { 4, 4 });
+        assertInvalid("dumpRecording", new Object[] { 4 });
+        assertFalse(count.isRecording());
+    }
+
+    @Test
+    public void invalidEventCount()
+    throws Exception {
+        try {
+            server.invoke(objectName, "startRecording",
+                    new Object[] { "count", 0 }, START_SIG);
+            fail();
+        } catch(MBeanException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertFalse(count.isRecording());
+    }
+
+    @Test
+    public void unknownOperation()
+    throws Exception {
+        try {
+            server.invoke(objectName, "reset", null, null);
+            fail();
+        } catch(ReflectionException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+            assertEquals("reset", e.getCause().getMessage());
+        }
+    }
+
+    private void assertInvalid(String operation, Object[] params)
+    throws Exception {
+        try {
+            server.invoke(objectName, operation, params, null);
+            fail(operation);
+        } catch(ReflectionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.BulkSnapshot;
+import org.smf4j.Calculator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.RegistryNode;
+import org.smf4j.SnapshotView;
+import org.smf4j.TimeAwareAccumulator;
+
+/**
+ * {@code AbstractBulkSnapshot} implements {@link BulkSnapshot} on top of a
+ * registrar's glob matching, which subclasses supply through
+ * {@link #rematch()}.
+ * <p>
+ * The glob pattern is only matched against the registry when
+ * {@code rematch} says its topology has changed since the last refresh.
+ * Otherwise, a refresh walks the arrays of matched members it built last
+ * time and writes their values into the same value arrays, without
+ * allocating.  When every matched calculator of a node is a
+ * {@link PrimitiveCalculator}, those calculators read their inputs straight
+ * out of a reused array through a {@link SnapshotView}.  Otherwise the
+ * node's calculators take their inputs as a {@code Map} of boxed values.
+ * An input that is also one of the snapshot's columns is taken from the
+ * value just read for that column, so it is only read once, and calculated
+ * columns always agree with the columns they were calculated from.
+ * Either way, calculators return objects, so refreshing a snapshot that
+ * contains calculators is not entirely free of garbage.
+ * </p>
+ * <p>
+ * Each value is compared with the one already in its column as it is read,
+ * which is how changed columns are found without keeping a second copy of
+ * the values.  When every matched calculator of a node is a
+ * {@link DependentCalculator}, and so a pure function of its inputs, the
+ * node's calculators are skipped entirely if none of its accumulators has
+ * changed value, which also saves their garbage.  Any other calculator is
+ * evaluated on every refresh, since it may read more than the values of its
+ * node's accumulators.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class AbstractBulkSnapshot implements BulkSnapshot {
+    private static final String[] NO_PATHS = new String[0];
+    private static final Accumulator[] NO_ACCUMULATORS = new Accumulator[0];
+    private static final int[] NO_INDEXES = new int[0];
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private long schemaVersion;
+    private String[] accumulatorPaths = NO_PATHS;
+    private Accumulator[] accumulators = NO_ACCUMULATORS;
+    private long[] values = new long[0];
+    private String[] calculatorPaths = NO_PATHS;
+    private CalculatedNode[] calculatedNodes = new CalculatedNode[0];
+    private double[] calculatedValues = new double[0];
+    private int[] changed = NO_INDEXES;
+    private int changedCount;
+    private int[] changedCalculators = NO_INDEXES;
+    private int changedCalculatorCount;
+
+    /**
+     * Whether every column counts as changed on the next refresh, because
+     * the schema has changed.
+     */
+    private boolean fresh = true;
+
+    private boolean haveNanos;
+    private long nanos;
+
+    /**
+     * Matches this snapshot's glob pattern against the registry again, if
+     * its topology has changed since the last time this was called.
+     * @return The nodes that match, each of which is a {@link GlobMatch}, or
+     *         {@code null} if the topology has not changed.
+     */
+    protected abstract Iterable<? extends RegistryNode> rematch();
+
+    @Override
+    public void refresh() {
+        Iterable<? extends RegistryNode> matches = rematch();
+        if(matches != null) {
+            rebuild(matches);
+        }
+
+        // Time-aware accumulators are all evaluated as of the same instant,
+        // so that their windows line up with one another.
+        haveNanos = false;
+        Accumulator[] accs = accumulators;
+        long[] vals = values;
+        int[] changedIndexes = changed;
+        int n = 0;
+        for(int i=0; i<accs.length; i++) {
+            long val = read(accs[i]);
+            if(fresh || val != vals[i]) {
+                vals[i] = val;
+                changedIndexes[n++] = i;
+            }
+        }
+        changedCount = n;
+
+        changedCalculatorCount = 0;
+        CalculatedNode[] nodes = calculatedNodes;
+        for(int i=0; i<nodes.length; i++) {
+            nodes[i].calculate();
+        }
+        fresh = false;
+    }
+
+    private long read(Accumulator acc) {
+        if(acc instanceof TimeAwareAccumulator) {
+            TimeAwareAccumulator timeAware = (TimeAwareAccumulator)acc;
+            if(!haveNanos) {
+                nanos = timeAware.nanos();
+                haveNanos = true;
+            }
+            return timeAware.get(nanos);
+        }
+        return acc.get();
+    }
+
+    private void rebuild(Iterable<? extends RegistryNode> matches) {
+        // Sort everything by path, so that an unchanged set of members
+        // always comes out in the same order.
+        TreeMap<String, Accumulator> accs = new TreeMap<String, Accumulator>();
+        TreeMap<String, GlobMatch> calcNodes = new TreeMap<String, GlobMatch>();
+        for(RegistryNode match : matches) {
+            GlobMatch globMatch = (GlobMatch)match;
+            for(Map.Entry<String, Accumulator> entry :
+                    globMatch.getAccumulators().entrySet()) {
+                accs.put(match.getName() + ":" + entry.getKey(),
+                        entry.getValue());
+            }
+            if(!globMatch.getCalculators().isEmpty()) {
+                calcNodes.put(match.getName(), globMatch);
+            }
+        }
+
+        // Calculators are grouped by node, as each node's calculators share
+        // one set of inputs.  An input that is also one of our columns is
+        // taken from the column, rather than read a second time.
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        int c = 0;
+        for(String path : accs.keySet()) {
+            columns.put(path, c++);
+        }
+        List<String> calcPaths = new ArrayList<String>();
+        CalculatedNode[] nodes = new CalculatedNode[calcNodes.size()];
+        int n = 0;
+        for(GlobMatch globMatch : calcNodes.values()) {
+            TreeMap<String, Calculator> calcs =
+                    new TreeMap<String, Calculator>(
+                    globMatch.getCalculators());
+            nodes[n++] = new CalculatedNode(globMatch.getNode(),
+                    calcs.keySet().toArray(NO_PATHS), calcPaths.size(),
+                    accs, columns);
+            for(String name : calcs.keySet()) {
+                calcPaths.add(globMatch.getName() + ":" + name);
+            }
+        }
+
+        String[] newAccumulatorPaths = accs.keySet().toArray(NO_PATHS);
+        String[] newCalculatorPaths = calcPaths.toArray(NO_PATHS);
+        if(!Arrays.equals(newAccumulatorPaths, accumulatorPaths)
+                || !Arrays.equals(newCalculatorPaths, calculatorPaths)) {
+            accumulatorPaths = newAccumulatorPaths;
+            values = new long[newAccumulatorPaths.length];
+            calculatorPaths = newCalculatorPaths;
+            calculatedValues = new double[newCalculatorPaths.length];
+            changed = new int[newAccumulatorPaths.length];
+            changedCalculators = new int[newCalculatorPaths.length];
+            fresh = true;
+            schemaVersion++;
+        }
+        accumulators = accs.values().toArray(NO_ACCUMULATORS);
+        calculatedNodes = nodes;
+    }
+
+    @Override
+    public long getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    @Override
+    public String[] getAccumulatorPaths() {
+        return accumulatorPaths;
+    }
+
+    @Override
+    public long[] getValues() {
+        return values;
+    }
+
+    @Override
+    public String[] getCalculatorPaths() {
+        return calculatorPaths;
+    }
+
+    @Override
+    public double[] getCalculatedValues() {
+        return calculatedValues;
+    }
+
+    @Override
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    @Override
+    public int[] getChangedIndexes() {
+        return changed;
+    }
+
+    @Override
+    public int getChangedCalculatorCount() {
+        return changedCalculatorCount;
+    }
+
+    @Override
+    public int[] getChangedCalculatorIndexes() {
+        return changedCalculators;
+    }
+
+    /**
+     * The matched calculators of a single node, along with every accumulator
+     * of that node, which are the calculators' inputs.
+     */
+    private final class CalculatedNode {
+        private final String[] calculatorNames;
+        private final int firstIndex;
+        private final String[] inputNames;
+        private final Accumulator[] inputAccumulators;
+        private final long[] inputValues;
+
+        /**
+         * The index of the column holding each input, or {@code -1} for an
+         * input that isn't one of our columns, and so is read directly.
+         */
+        private final int[] inputColumns;
+        private final Map<String, Accumulator> accumulatorMap;
+
+        /**
+         * The matched calculators and their views, if they are all
+         * {@link PrimitiveCalculator}s, otherwise {@code null}.
+         */
+        private final PrimitiveCalculator[] primitives;
+        private final SnapshotView[] views;
+
+        /**
+         * Used instead of {@link #primitives} when some matched calculator
+         * needs a {@code Map} of inputs.  The graph also evaluates any
+         * calculators that the matched ones depend upon, even if they were
+         * not matched themselves.
+         */
+        private final CalculatorGraph graph;
+        private final Map<String, Long> inputs;
+
+        /**
+         * Whether every calculator evaluated for this node is a
+         * {@link DependentCalculator}, so that unchanged inputs mean
+         * unchanged results.
+         */
+        private final boolean pure;
+
+        /**
+         * Whether the calculators have been evaluated since this node was
+         * built.
+         */
+        private boolean evaluated;
+
+        CalculatedNode(RegistryNode node, String[] calculatorNames,
+                int firstIndex, Map<String, Accumulator> columnAccumulators,
+                Map<String, Integer> columns) {
+            this.calculatorNames = calculatorNames;
+            this.firstIndex = firstIndex;
+            this.accumulatorMap = node.getAccumulators();
+            this.inputNames = accumulatorMap.keySet().toArray(NO_PATHS);
+            this.inputAccumulators = new Accumulator[inputNames.length];
+            this.inputColumns = new int[inputNames.length];
+            for(int i=0; i<inputNames.length; i++) {
+                Accumulator acc = accumulatorMap.get(inputNames[i]);
+                String path = node.getName() + ":" + inputNames[i];
+                inputAccumulators[i] = acc;
+                inputColumns[i] = acc != null
+                        && columnAccumulators.get(path) == acc
+                        ? columns.get(path) : -1;
+            }
+            this.inputValues = new long[inputNames.length];
+
+            // Input slots are resolved here, once per topology change.
+            Map<String, Calculator> calcs = node.getCalculators();
+            PrimitiveCalculator[] prims =
+                    new PrimitiveCalculator[calculatorNames.length];
+            SnapshotView[] primViews = new SnapshotView[calculatorNames.length];
+            for(int i=0; i<calculatorNames.length; i++) {
+                Calculator calc = calcs.get(calculatorNames[i]);
+                if(!CalculatorGraph.isPrimitive(calc)) {
+                    prims = null;
+                    primViews = null;
+                    break;
+                }
+                prims[i] = (PrimitiveCalculator)calc;
+                primViews[i] = new ArraySnapshotView(
+                        prims[i].getAccumulatorInputs(), inputNames,
+                        inputValues, inputAccumulators);
+            }
+            this.primitives = prims;
+            this.views = primViews;
+            if(prims == null) {
+                this.graph = new CalculatorGraph(calcs,
+                        Arrays.asList(calculatorNames));
+                this.inputs = new HashMap<String, Long>();
+                this.pure = graph.isPure();
+            } else {
+                this.graph = null;
+                this.inputs = null;
+                this.pure = isPure(prims);
+            }
+        }
+
+        void calculate() {
+            boolean inputsChanged = false;
+            long[] vals = values;
+            for(int i=0; i<inputNames.length; i++) {
+                Accumulator acc = inputAccumulators[i];
+                int column = inputColumns[i];
+                long val;
+                if(column >= 0) {
+                    val = vals[column];
+                } else {
+                    val = acc != null ? read(acc) : 0L;
+                }
+                if(val != inputValues[i]) {
+                    inputValues[i] = val;
+                    inputsChanged = true;
+                }
+            }
+            if(pure && evaluated && !inputsChanged && !fresh) {
+                // Same inputs, same results
+                return;
+            }
+            evaluated = true;
+
+            if(primitives != null) {
+                for(int i=0; i<primitives.length; i++) {
+                    Object o = null;
+                    try {
+                        o = primitives[i].calculate(views[i]);
+                    } catch(Throwable t) {
+                        log.error(String.format("Error executing calculator "
+                                + "named '%s' of type '%s'.",
+                                calculatorPaths[firstIndex + i],
+                                primitives[i].getClass().getCanonicalName()),
+                                t);
+                    }
+                    setCalculatedValue(i, o);
+                }
+                return;
+            }
+
+            for(int i=0; i<inputNames.length; i++) {
+                if(inputAccumulators[i] != null) {
+                    inputs.put(inputNames[i], inputValues[i]);
+                }
+            }
+            Map<String, Object> results =
+                    graph.evaluate(inputs, accumulatorMap);
+            for(int i=0; i<calculatorNames.length; i++) {
+                setCalculatedValue(i, results.get(calculatorNames[i]));
+            }
+        }
+
+        private boolean isPure(Calculator[] calcs) {
+            for(Calculator calc : calcs) {
+                if(!(calc instanceof DependentCalculator)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void setCalculatedValue(int i, Object o) {
+            double val = o instanceof Number
+                    ? ((Number)o).doubleValue() : Double.NaN;
+            int index = firstIndex + i;
+            if(fresh || Double.doubleToLongBits(val)
+                    != Double.doubleToLongBits(calculatedValues[index])) {
+                calculatedValues[index] = val;
+                changedCalculators[changedCalculatorCount++] = index;
+            }
+        }
+    }
+}
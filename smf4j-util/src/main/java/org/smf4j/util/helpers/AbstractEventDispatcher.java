@@ -0,0 +1,261 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
+
+/**
+ * {@code AbstractEventDispatcher} delivers a registrar's
+ * {@link RegistryEvent}s to its {@link RegistryListener}s in batches, on a
+ * single daemon thread.  Subclasses work out what goes in each batch, in
+ * {@link #collect()}, and call {@link #schedule()} when there is something
+ * to deliver.
+ * <p>
+ * Each listener is added along with the path of a node, and only hears about
+ * that node and its descendants; a listener added with an empty path hears
+ * about everything.  Adding the same listener for the same path twice has no
+ * effect.  A listener that throws is logged, and doesn't keep the rest of
+ * the listeners from hearing about the batch.
+ * </p>
+ * <p>
+ * The delivery thread is started along with the first listener, and stopped
+ * by {@link #close()}, which also delivers whatever is still pending.  It is
+ * closed by a shutdown hook if it is still running when the JVM exits.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class AbstractEventDispatcher {
+    private static final String THREAD_NAME = "smf4j-registry-events";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final List<Subscription> subscriptions =
+            new CopyOnWriteArrayList<Subscription>();
+    private final long batchDelayMillis;
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean scheduled;
+    private ScheduledExecutorService executor;
+    private Thread shutdownHook;
+
+    /**
+     * Creates a new {@code AbstractEventDispatcher}.
+     * @param batchDelayMillis How long to wait after {@link #schedule()} is
+     *                         first called before delivering a batch, so
+     *                         that a burst of changes is delivered together.
+     */
+    protected AbstractEventDispatcher(long batchDelayMillis) {
+        this.batchDelayMillis = batchDelayMillis;
+    }
+
+    /**
+     * Adds {@code listener} for the node at {@code nodePath} and its
+     * descendants, and starts the delivery thread if it isn't running.
+     * @param nodePath The path of the node to listen to, or {@code ""} for
+     *                 every node.
+     * @param listener The listener to add.
+     */
+    public final synchronized void addListener(String nodePath,
+            RegistryListener listener) {
+        if(listener == null) {
+            throw new NullPointerException("listener");
+        }
+
+        Subscription subscription = new Subscription(nodePath, listener);
+        if(!subscriptions.contains(subscription)) {
+            subscriptions.add(subscription);
+        }
+
+        if(executor == null) {
+            executor = DaemonScheduler.newScheduler(THREAD_NAME);
+            shutdownHook = new Thread(THREAD_NAME + "-shutdown") {
+                @Override
+                public void run() {
+                    close();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            started();
+        }
+    }
+
+    /**
+     * Removes {@code listener} from the node at {@code nodePath}.
+     * @param nodePath The path {@code listener} was added with.
+     * @param listener The listener to remove.
+     */
+    public final void removeListener(String nodePath,
+            RegistryListener listener) {
+        subscriptions.remove(new Subscription(nodePath, listener));
+    }
+
+    /**
+     * Gets whether there are any listeners, without taking any locks.
+     * @return {@code true} if there is at least one listener.
+     */
+    protected final boolean hasListeners() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Called, while holding this dispatcher's monitor, when the delivery
+     * thread has just been started.  Does nothing by default.
+     */
+    protected void started() {
+    }
+
+    /**
+     * Makes sure that a batch will be delivered shortly.
+     */
+    protected final synchronized void schedule() {
+        if(!scheduled && executor != null) {
+            scheduled = true;
+            executor.schedule(drainTask, batchDelayMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Collects the next batch of events.  Only ever called by one thread at
+     * a time.
+     * @return The events to deliver, or {@code null} if there are none.
+     */
+    protected abstract List<RegistryEvent> collect();
+
+    /**
+     * Delivers every pending event right away, on the calling thread.
+     */
+    public final void drain() {
+        deliveryLock.lock();
+        try {
+            synchronized(this) {
+                scheduled = false;
+            }
+
+            List<RegistryEvent> batch = collect();
+            if(batch == null || batch.isEmpty()) {
+                return;
+            }
+            for(Subscription subscription : subscriptions) {
+                subscription.deliver(batch);
+            }
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the delivery thread, delivers every pending event on the calling
+     * thread, and then drops every listener.  Adding another listener starts
+     * a new delivery thread.
+     */
+    public void close() {
+        ScheduledExecutorService toStop;
+        Thread hook;
+        synchronized(this) {
+            toStop = executor;
+            hook = shutdownHook;
+            executor = null;
+            shutdownHook = null;
+        }
+
+        if(toStop != null) {
+            toStop.shutdownNow();
+        }
+        if(hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch(IllegalStateException e) {
+                // Already shutting down
+            }
+        }
+        drain();
+        subscriptions.clear();
+    }
+
+    /**
+     * A listener, along with the path of the node it was added to.
+     */
+    private final class Subscription {
+        private final String nodePath;
+        private final String prefix;
+        private final RegistryListener listener;
+
+        Subscription(String nodePath, RegistryListener listener) {
+            this.nodePath = nodePath;
+            this.prefix = nodePath + ".";
+            this.listener = listener;
+        }
+
+        void deliver(List<RegistryEvent> batch) {
+            List<RegistryEvent> events = batch;
+            if(nodePath.length() > 0) {
+                events = new ArrayList<RegistryEvent>();
+                for(RegistryEvent event : batch) {
+                    String name = event.getNode().getName();
+                    if(name.equals(nodePath) || name.startsWith(prefix)) {
+                        events.add(event);
+                    }
+                }
+                if(events.isEmpty()) {
+                    return;
+                }
+            }
+
+            try {
+                listener.registryChanged(
+                        Collections.unmodifiableList(events));
+            } catch(Throwable t) {
+                log.error(String.format("Error delivering registry events to "
+                        + "listener of type '%s'.",
+                        listener.getClass().getCanonicalName()), t);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Subscription)) {
+                return false;
+            }
+            Subscription other = (Subscription)obj;
+            return listener.equals(other.listener)
+                    && nodePath.equals(other.nodePath);
+        }
+
+        @Override
+        public int hashCode() {
+            return listener.hashCode() * 31 + nodePath.hashCode();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.RegistrationBatch;
+
+/**
+ * {@code AbstractRegistrationBatch} collects the registrations of a
+ * {@link RegistrationBatch}, grouped by node path, and hands them all to
+ * {@link #apply(java.util.Map) apply} when the batch is committed.
+ * <p>
+ * Within a batch, the first member registered under a name wins, as it would
+ * if the members were registered one at a time.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class AbstractRegistrationBatch implements RegistrationBatch {
+    private final Map<String, NodeRegistrations> nodes =
+            new LinkedHashMap<String, NodeRegistrations>();
+    private boolean committed;
+
+    @Override
+    public RegistrationBatch node(String nodePath) {
+        getNodeRegistrations(nodePath);
+        return this;
+    }
+
+    @Override
+    public RegistrationBatch register(String nodePath, String name,
+            Accumulator acc) {
+        if(name == null || acc == null) {
+            throw new NullPointerException();
+        }
+
+        Map<String, Accumulator> accs =
+                getNodeRegistrations(nodePath).accumulators;
+        if(!accs.containsKey(name)) {
+            accs.put(name, acc);
+        }
+        return this;
+    }
+
+    @Override
+    public RegistrationBatch register(String nodePath, String name,
+            Calculator calc) {
+        if(name == null || calc == null) {
+            throw new NullPointerException();
+        }
+
+        Map<String, Calculator> calcs =
+                getNodeRegistrations(nodePath).calculators;
+        if(!calcs.containsKey(name)) {
+            calcs.put(name, calc);
+        }
+        return this;
+    }
+
+    @Override
+    public void commit() {
+        checkOpen();
+        committed = true;
+        apply(Collections.unmodifiableMap(nodes));
+    }
+
+    /**
+     * Applies every registration in the batch.
+     * @param nodes The registrations for each node, keyed on the node's path
+     *        as given, in the order the nodes were first added to the batch.
+     */
+    protected abstract void apply(Map<String, NodeRegistrations> nodes);
+
+    private NodeRegistrations getNodeRegistrations(String nodePath) {
+        checkOpen();
+        NodeRegistrations result = nodes.get(nodePath);
+        if(result == null) {
+            result = new NodeRegistrations();
+            nodes.put(nodePath, result);
+        }
+        return result;
+    }
+
+    private void checkOpen() {
+        if(committed) {
+            throw new IllegalStateException(
+                    "Batch has already been committed.");
+        }
+    }
+
+    /**
+     * The members to be registered with a single node.
+     */
+    public static final class NodeRegistrations {
+        private final Map<String, Accumulator> accumulators =
+                new LinkedHashMap<String, Accumulator>();
+        private final Map<String, Calculator> calculators =
+                new LinkedHashMap<String, Calculator>();
+
+        /**
+         * Gets the accumulators to register, keyed on their names.
+         * @return The accumulators to register, keyed on their names.
+         */
+        public Map<String, Accumulator> getAccumulators() {
+            return accumulators;
+        }
+
+        /**
+         * Gets the calculators to register, keyed on their names.
+         * @return The calculators to register, keyed on their names.
+         */
+        public Map<String, Calculator> getCalculators() {
+            return calculators;
+        }
+
+        /**
+         * Gets whether there is nothing to register.
+         * @return {@code true} if there is nothing to register.
+         */
+        public boolean isEmpty() {
+            return accumulators.isEmpty() && calculators.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.OnStateAware;
+import org.smf4j.OnStateSource;
+import org.smf4j.RegistrationAware;
+import org.smf4j.RegistryNode;
+import org.smf4j.TimeAwareAccumulator;
+import org.smf4j.util.helpers.AbstractRegistrationBatch.NodeRegistrations;
+
+/**
+ * {@code AbstractRegistryNode} holds the parts of a registrar's
+ * {@link RegistryNode} that don't depend on how the registrar stores its
+ * tree: binding accumulators to the node's on/off state, telling
+ * {@link RegistrationAware} members that they have been registered or
+ * unregistered, and taking a snapshot of a node's members.
+ * <p>
+ * Accumulators that can't follow the node's state lazily, through
+ * {@link OnStateAware}, must have it pushed to them whenever it changes.
+ * Subclasses keep track of those in {@link #addEager(Accumulator)} and
+ * {@link #removeEager(Accumulator)}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public abstract class AbstractRegistryNode
+        implements RegistryNode, OnStateSource {
+
+    /**
+     * Remembers {@code acc} as needing this node's on/off state pushed to
+     * it whenever that state changes.
+     * @param acc The accumulator that can't follow our state lazily.
+     */
+    protected abstract void addEager(Accumulator acc);
+
+    /**
+     * Forgets {@code acc}, if it was remembered by
+     * {@link #addEager(Accumulator)}.
+     * @param acc The accumulator no longer registered with this node.
+     */
+    protected abstract void removeEager(Accumulator acc);
+
+    /**
+     * Binds {@code acc} to our on/off state, setting its state now if it
+     * can't follow it lazily.
+     * @param acc The newly registered accumulator.
+     */
+    protected final void bindState(Accumulator acc) {
+        if(!bindLazily(acc)) {
+            acc.setOn(isOn());
+        }
+    }
+
+    /**
+     * Binds {@code acc} to our on/off state, if it can follow it lazily.
+     * Otherwise, remembers it as needing our state pushed to it.
+     * @param acc The newly registered accumulator.
+     * @return {@code true} if {@code acc} follows our state lazily, or
+     *         {@code false} if the caller must still set its state.
+     */
+    protected final boolean bindLazily(Accumulator acc) {
+        if(acc instanceof OnStateAware && ((OnStateAware)acc).bind(this)) {
+            return true;
+        }
+
+        addEager(acc);
+        return false;
+    }
+
+    /**
+     * Unbinds {@code acc} from our on/off state, once it is no longer
+     * registered with this node under any name.
+     * @param acc The unregistered accumulator.
+     */
+    protected final void unbindState(Accumulator acc) {
+        if(acc instanceof OnStateAware) {
+            ((OnStateAware)acc).unbind(this);
+        }
+        removeEager(acc);
+    }
+
+    /**
+     * Finishes registering members that a batch has added to this node,
+     * just as registering them one at a time would have, except that our
+     * on/off state is only worked out once for all of them.  Each member
+     * is then passed to {@link #accumulatorAdded(String, Accumulator)} or
+     * {@link #calculatorAdded(String, Calculator)}.
+     * @param added The members the batch added.
+     */
+    protected void registeredAll(NodeRegistrations added) {
+        List<Accumulator> eager = null;
+        for(Accumulator acc : added.getAccumulators().values()) {
+            if(!bindLazily(acc)) {
+                if(eager == null) {
+                    eager = new ArrayList<Accumulator>();
+                }
+                eager.add(acc);
+            }
+        }
+        if(eager != null) {
+            boolean on = isOn();
+            for(Accumulator acc : eager) {
+                acc.setOn(on);
+            }
+        }
+
+        for(Map.Entry<String, Accumulator> entry :
+                added.getAccumulators().entrySet()) {
+            accumulatorAdded(entry.getKey(), entry.getValue());
+        }
+        for(Map.Entry<String, Calculator> entry :
+                added.getCalculators().entrySet()) {
+            calculatorAdded(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Called by {@link #registeredAll(NodeRegistrations)} for each
+     * accumulator the batch added, after its state has been bound.
+     * @param name The name {@code acc} was registered under.
+     * @param acc The accumulator.
+     */
+    protected void accumulatorAdded(String name, Accumulator acc) {
+        notifyRegistered(name, acc);
+    }
+
+    /**
+     * Called by {@link #registeredAll(NodeRegistrations)} for each
+     * calculator the batch added.
+     * @param name The name {@code calc} was registered under.
+     * @param calc The calculator.
+     */
+    protected void calculatorAdded(String name, Calculator calc) {
+        notifyRegistered(name, calc);
+    }
+
+    /**
+     * Tells {@code member} that it has been registered with this node, if
+     * it is {@link RegistrationAware}.
+     * @param name The name {@code member} was registered under.
+     * @param member The accumulator or calculator.
+     */
+    protected final void notifyRegistered(String name, Object member) {
+        if(member instanceof RegistrationAware) {
+            ((RegistrationAware)member).registered(this, name);
+        }
+    }
+
+    /**
+     * Tells {@code member} that it has been unregistered from this node, if
+     * it is {@link RegistrationAware}.
+     * @param name The name {@code member} was registered under.
+     * @param member The accumulator or calculator.
+     */
+    protected final void notifyUnregistered(String name, Object member) {
+        if(member instanceof RegistrationAware) {
+            ((RegistrationAware)member).unregistered(this, name);
+        }
+    }
+
+    /**
+     * Takes a snapshot of {@code accumulators}, and of the calculators in
+     * {@code graph} run against them.
+     * @param accumulators The node's accumulators, by name.
+     * @param graph The node's calculators.
+     * @return The value of every member, by name.
+     */
+    protected static Map<String, Object> snapshot(
+            Map<String, Accumulator> accumulators, CalculatorGraph graph) {
+
+        // Snapshot the values for all of the accumulators.  Time-aware
+        // accumulators are all evaluated as of the same instant, so that
+        // their windows line up with one another.
+        Map<String, Long> vals = new HashMap<String, Long>();
+        boolean haveNanos = false;
+        long nanos = 0L;
+        for(Map.Entry<String, Accumulator> entry : accumulators.entrySet()) {
+            Accumulator acc = entry.getValue();
+            long val;
+            if(acc instanceof TimeAwareAccumulator) {
+                TimeAwareAccumulator timeAware = (TimeAwareAccumulator)acc;
+                if(!haveNanos) {
+                    nanos = timeAware.nanos();
+                    haveNanos = true;
+                }
+                val = timeAware.get(nanos);
+            } else {
+                val = acc.get();
+            }
+            vals.put(entry.getKey(), val);
+        }
+
+        // Run calculations with accumulator values as input, in dependency
+        // order.
+        Map<String, Object> results = graph.evaluate(vals, accumulators);
+
+        // Stuff all recorded accumulator values into the results as well.
+        results.putAll(vals);
+
+        return results;
+    }
+}
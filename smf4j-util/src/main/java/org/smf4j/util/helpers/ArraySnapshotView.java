@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import org.smf4j.Accumulator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.SnapshotView;
+
+/**
+ * {@code ArraySnapshotView} is a {@link SnapshotView} over arrays of
+ * accumulator values that the caller refreshes in place.
+ * <p>
+ * The input names of a {@link PrimitiveCalculator} are resolved to indexes
+ * into those arrays once, when the view is created.  Afterwards, the caller
+ * writes new values into its {@code values} array and re-evaluates the
+ * calculator against the same view, without allocating.
+ * </p>
+ * <p>
+ * {@code ArraySnapshotView} is not thread-safe; it reads whatever the caller
+ * last wrote into its arrays.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class ArraySnapshotView implements SnapshotView {
+
+    private final int[] slots;
+    private final long[] values;
+    private final Accumulator[] accumulators;
+
+    /**
+     * Creates a new {@code ArraySnapshotView}.
+     * @param inputs The names of the inputs, in slot order.
+     * @param names The names of the accumulators held in {@code values} and
+     *              {@code accumulators}, by index.
+     * @param values The accumulator values, by index.  The caller refreshes
+     *               this array in place.
+     * @param accumulators The accumulators, by index.
+     */
+    public ArraySnapshotView(String[] inputs, String[] names, long[] values,
+            Accumulator[] accumulators) {
+        this.slots = new int[inputs.length];
+        this.values = values;
+        this.accumulators = accumulators;
+        for(int i=0; i<inputs.length; i++) {
+            slots[i] = -1;
+            for(int j=0; j<names.length; j++) {
+                if(names[j].equals(inputs[i])) {
+                    slots[i] = j;
+                    break;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public boolean contains(int slot) {
+        return slots[slot] >= 0;
+    }
+
+    public long get(int slot) {
+        int index = slots[slot];
+        return index < 0 ? 0L : values[index];
+    }
+
+    public Accumulator getAccumulator(int slot) {
+        int index = slots[slot];
+        return index < 0 ? null : accumulators[index];
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.DependentCalculator;
+import org.smf4j.PrimitiveCalculator;
+
+/**
+ * {@code CalculatorGraph} evaluates a node's {@link Calculator}s in dependency
+ * order.
+ * <p>
+ * The calculators are sorted once, when the graph is built, so that every
+ * {@link DependentCalculator} runs after the calculators it names as inputs.
+ * Plain {@code Calculator}s have no declared inputs, and are always
+ * re-evaluated.  {@link PrimitiveCalculator}s without calculator inputs are
+ * handed a {@link MapSnapshotView} of their declared inputs.  A
+ * {@code DependentCalculator} is only re-evaluated when one of its declared
+ * inputs differs from the inputs it saw the last time it was evaluated by
+ * this graph; otherwise its previous result is reused.
+ * </p>
+ * <p>
+ * A dependency on a calculator that is not part of the graph is ignored.  A
+ * dependency cycle is logged when the graph is built and broken arbitrarily,
+ * so the calculator that closes the cycle simply does not see the result of
+ * the calculator it depends on.
+ * </p>
+ * <p>
+ * {@code CalculatorGraph} is immutable apart from its memoized results, and
+ * is safe to evaluate from multiple threads at once.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class CalculatorGraph {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(CalculatorGraph.class);
+
+    private static final String[] NO_INPUTS = new String[0];
+    private static final Integer VISITING = 1;
+    private static final Integer VISITED = 2;
+
+    private final String[] names;
+    private final Calculator[] calculators;
+    private final String[][] accumulatorInputs;
+    private final String[][] calculatorInputs;
+    private final boolean[] primitive;
+    private final AtomicReferenceArray<Memo> memos;
+
+    /**
+     * Creates a graph that evaluates all of {@code calculators}.
+     * @param calculators The calculators to evaluate, keyed on their names.
+     */
+    public CalculatorGraph(Map<String, Calculator> calculators) {
+        this(calculators, null);
+    }
+
+    /**
+     * Creates a graph that evaluates the calculators named in
+     * {@code targets}, along with any calculators they depend upon.
+     * @param calculators The calculators available, keyed on their names.
+     * @param targets The names of the calculators that must be evaluated,
+     *                or {@code null} to evaluate all of them.
+     */
+    public CalculatorGraph(Map<String, Calculator> calculators,
+            Collection<String> targets) {
+        Map<String, Calculator> available =
+                new TreeMap<String, Calculator>(calculators);
+        if(targets == null) {
+            targets = available.keySet();
+        }
+
+        Map<String, Integer> state = new HashMap<String, Integer>();
+        List<String> order = new ArrayList<String>();
+        for(String target : targets) {
+            visit(target, available, state, order);
+        }
+
+        int count = order.size();
+        this.names = order.toArray(new String[count]);
+        this.calculators = new Calculator[count];
+        this.accumulatorInputs = new String[count][];
+        this.calculatorInputs = new String[count][];
+        this.primitive = new boolean[count];
+        for(int i=0; i<count; i++) {
+            Calculator calc = available.get(names[i]);
+            this.calculators[i] = calc;
+            if(calc instanceof DependentCalculator) {
+                accumulatorInputs[i] = inputs(
+                        ((DependentCalculator)calc).getAccumulatorInputs());
+                calculatorInputs[i] = inputs(
+                        ((DependentCalculator)calc).getCalculatorInputs());
+            } else if(calc instanceof PrimitiveCalculator) {
+                accumulatorInputs[i] = inputs(
+                        ((PrimitiveCalculator)calc).getAccumulatorInputs());
+                calculatorInputs[i] = NO_INPUTS;
+            }
+            primitive[i] = isPrimitive(calc);
+        }
+        this.memos = new AtomicReferenceArray<Memo>(count);
+    }
+
+    private static void visit(String name, Map<String, Calculator> available,
+            Map<String, Integer> state, List<String> order) {
+        Calculator calc = available.get(name);
+        if(calc == null || VISITED.equals(state.get(name))) {
+            return;
+        }
+
+        state.put(name, VISITING);
+        if(calc instanceof DependentCalculator) {
+            for(String input : inputs(
+                    ((DependentCalculator)calc).getCalculatorInputs())) {
+                if(VISITING.equals(state.get(input))) {
+                    log.error(String.format("Calculator '%s' depends on "
+                            + "calculator '%s', which forms a cycle.  It will "
+                            + "be evaluated without that input.", name,
+                            input));
+                    continue;
+                }
+                visit(input, available, state, order);
+            }
+        }
+        state.put(name, VISITED);
+        order.add(name);
+    }
+
+    /**
+     * Gets whether {@code calc} can be evaluated entirely from a
+     * {@link org.smf4j.SnapshotView}: it is a {@link PrimitiveCalculator},
+     * and does not depend on the results of other calculators.
+     * @param calc The calculator to inspect.
+     * @return {@code true} if {@code calc} can be evaluated from a
+     *         {@code SnapshotView}, {@code false} otherwise.
+     */
+    public static boolean isPrimitive(Calculator calc) {
+        if(!(calc instanceof PrimitiveCalculator)) {
+            return false;
+        }
+        if(calc instanceof DependentCalculator) {
+            String[] calcs = ((DependentCalculator)calc).getCalculatorInputs();
+            return calcs == null || calcs.length == 0;
+        }
+        return true;
+    }
+
+    private static String[] inputs(String[] inputs) {
+        return inputs == null ? NO_INPUTS : inputs.clone();
+    }
+
+    /**
+     * Gets the names of the calculators in this graph, in the order they are
+     * evaluated.
+     * @return The names of the calculators in this graph, in the order they
+     *         are evaluated.
+     */
+    public List<String> getOrder() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * Gets whether every calculator in this graph is a
+     * {@link DependentCalculator}, in which case the results of
+     * {@link #evaluate(Map, Map) evaluate} depend only on the values of the
+     * node's accumulators.
+     * @return {@code true} if every calculator in this graph is a
+     *         {@code DependentCalculator}.
+     */
+    public boolean isPure() {
+        for(Calculator calc : calculators) {
+            if(!(calc instanceof DependentCalculator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the calculators in this graph.
+     * @param values The values of the node's accumulators, keyed on their
+     *               names.
+     * @param accumulators The node's accumulators, keyed on their names.
+     * @return The result of each calculator in this graph, keyed on its name.
+     *         Calculators that threw have a {@code null} result.
+     */
+    public Map<String, Object> evaluate(Map<String, Long> values,
+            Map<String, Accumulator> accumulators) {
+        Map<String, Object> results = new HashMap<String, Object>();
+        Map<String, Object> calculated = Collections.unmodifiableMap(results);
+        for(int i=0; i<names.length; i++) {
+            Object o = null;
+            try {
+                if(calculators[i] instanceof DependentCalculator) {
+                    o = evaluate(i, values, accumulators, calculated);
+                } else {
+                    o = invoke(i, values, accumulators, calculated);
+                }
+            } catch(Throwable t) {
+                log.error(String.format("Error executing calculator named '%s'"
+                        + " of type '%s'.", names[i],
+                        calculators[i].getClass().getCanonicalName()), t);
+            }
+            results.put(names[i], o);
+        }
+        return results;
+    }
+
+    private Object evaluate(int i, Map<String, Long> values,
+            Map<String, Accumulator> accumulators,
+            Map<String, Object> calculated) {
+        String[] accs = accumulatorInputs[i];
+        String[] calcs = calculatorInputs[i];
+        Object[] inputs = new Object[accs.length + calcs.length];
+        for(int j=0; j<accs.length; j++) {
+            inputs[j] = values.get(accs[j]);
+        }
+        for(int j=0; j<calcs.length; j++) {
+            inputs[accs.length + j] = calculated.get(calcs[j]);
+        }
+
+        Memo memo = memos.get(i);
+        if(memo != null && Arrays.equals(memo.inputs, inputs)) {
+            return memo.result;
+        }
+
+        Object result = invoke(i, values, accumulators, calculated);
+        memos.set(i, new Memo(inputs, result));
+        return result;
+    }
+
+    private Object invoke(int i, Map<String, Long> values,
+            Map<String, Accumulator> accumulators,
+            Map<String, Object> calculated) {
+        Calculator calc = calculators[i];
+        if(primitive[i]) {
+            return ((PrimitiveCalculator)calc).calculate(new MapSnapshotView(
+                    accumulatorInputs[i], values, accumulators));
+        } else if(calc instanceof DependentCalculator) {
+            return ((DependentCalculator)calc).calculate(values, accumulators,
+                    calculated);
+        }
+        return calc.calculate(values, accumulators);
+    }
+
+    private static final class Memo {
+        private final Object[] inputs;
+        private final Object result;
+
+        Memo(Object[] inputs, Object result) {
+            this.inputs = inputs;
+            this.result = result;
+        }
+    }
+}
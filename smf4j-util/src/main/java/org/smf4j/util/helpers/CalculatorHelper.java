@@ -16,9 +16,7 @@
 package org.smf4j.util.helpers;
 
 import org.smf4j.Units;
-import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
-import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -28,6 +26,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smf4j.Calculator;
@@ -41,6 +41,13 @@ import org.smf4j.RegistryNode;
  * exporters can use as a core 'comprehension' facility for the results of
  * {@link Calculator}s configured in a {@link RegistryNode}.
  * </p>
+ * <p>
+ * The shape of each calculator class's results is worked out once and
+ * cached, as are the split forms of the property paths passed to
+ * {@code resolveValue}, so that repeatedly exporting the same calculators
+ * does not repeatedly introspect them.  The cached schemas don't keep
+ * calculator classes from being unloaded along with their class loaders.
+ * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
  */
@@ -73,6 +80,24 @@ public final class CalculatorHelper {
         integralTypes.add(String.class);
     }
 
+    /**
+     * The most property paths we keep split in {@link #nameParts}, before we
+     * start over.
+     */
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    /**
+     * The result schema of each calculator class we have inspected.
+     */
+    private static final ClassCache<ResultSchema> schemas =
+            new ClassCache<ResultSchema>();
+
+    /**
+     * Property paths, already split on '.'.
+     */
+    private static final ConcurrentMap<String, String[]> nameParts =
+            new ConcurrentHashMap<String, String[]>();
+
     /**
      * {@code CalculatorHelper} is a static singleton.
      */
@@ -100,7 +125,8 @@ public final class CalculatorHelper {
      * <p>
      * This method uses reflection to inspect the type returned by
      * {@code calculator}'s implementation of
-     * {@link Calculator#calculate(java.util.Map, java.util.Map) Calculator.calculate}.
+     * {@link Calculator#calculate(java.util.Map, java.util.Map) Calculator.calculate},
+     * but only the first time it sees a given calculator class.
      * </p>
      * <p>
      * If {@code calculate}'s return type is one of the
@@ -126,9 +152,44 @@ public final class CalculatorHelper {
             return Collections.emptyList();
         }
 
+        ResultSchema schema = getSchema(calculator.getClass());
         List<CalculatorProperty> attrs = new ArrayList<CalculatorProperty>();
-        Class<?> calculatorClass = calculator.getClass();
+        if(schema.integral) {
+            // It's an integral type.
+            attrs.add(new CalculatorProperty(rootName, calculator.getUnits(),
+                    schema.type));
+        } else {
+            for(CalculatorProperty leaf : schema.leaves) {
+                attrs.add(new CalculatorProperty(
+                        rootName + "." + leaf.getName(), leaf.getUnits(),
+                        leaf.getType()));
+            }
+        }
+        return attrs;
+    }
 
+    /**
+     * Gets the cached {@link ResultSchema} for {@code calculatorClass},
+     * building it if this is the first time we have seen the class.
+     * @param calculatorClass The {@link Calculator}-implementing class.
+     * @return The {@link ResultSchema} for {@code calculatorClass}.
+     */
+    private static ResultSchema getSchema(Class<?> calculatorClass) {
+        ResultSchema schema = schemas.get(calculatorClass);
+        if(schema == null) {
+            schema = schemas.putIfAbsent(calculatorClass,
+                    createSchema(calculatorClass));
+        }
+        return schema;
+    }
+
+    /**
+     * Inspects the return type of {@code calculatorClass}'s {@code calculate}
+     * method.
+     * @param calculatorClass The {@link Calculator}-implementing class.
+     * @return A new {@link ResultSchema} for {@code calculatorClass}.
+     */
+    private static ResultSchema createSchema(Class<?> calculatorClass) {
         // Get the return type of the calculate() method
         Method m;
         try {
@@ -138,20 +199,21 @@ public final class CalculatorHelper {
                     "Failed to determine return value of the 'calculate' method"
                     + " for the Calculator-implementing class '%s'.",
                     calculatorClass.getCanonicalName()), t);
-            return attrs;
+            return new ResultSchema(null, false,
+                    Collections.<CalculatorProperty>emptyList());
         }
 
         Class<?> calculationClass = m.getReturnType();
         if(integralTypes.contains(calculationClass)) {
-            // It's an integral type.
-            attrs.add(new CalculatorProperty(rootName, calculator.getUnits(),
-                    calculationClass));
-        } else {
-            collectLeafProperties(rootName, calculationClass, attrs);
+            return new ResultSchema(calculationClass, true,
+                    Collections.<CalculatorProperty>emptyList());
         }
 
-        Collections.sort(attrs, SORTER);
-        return attrs;
+        List<CalculatorProperty> leaves = new ArrayList<CalculatorProperty>();
+        collectLeafProperties(calculationClass, leaves);
+        Collections.sort(leaves, SORTER);
+        return new ResultSchema(calculationClass, false,
+                Collections.unmodifiableList(leaves));
     }
 
     /**
@@ -257,14 +319,8 @@ public final class CalculatorHelper {
                 String part = nameParts[i];
 
                 // Find property getting for this portion of the path
-                BeanInfo bi = Introspector.getBeanInfo(cur.getClass());
-                Method m = null;
-                for(PropertyDescriptor pd : bi.getPropertyDescriptors()) {
-                    if(!pd.getName().equals(part)) {
-                        continue;
-                    }
-                    m = pd.getReadMethod();
-                }
+                Method m = PropertyAccessors.getReadMethod(cur.getClass(),
+                        part);
 
                 if(m == null) {
                     log.warn(String.format(
@@ -306,29 +362,35 @@ public final class CalculatorHelper {
      *         {@code name}, split by '.'.
      */
     private static String[] getNameParts(String name) {
-        return name.split("\\.");
+        String[] parts = nameParts.get(name);
+        if(parts == null) {
+            parts = name.split("\\.");
+            if(nameParts.size() >= MAX_CACHED_NAMES) {
+                nameParts.clear();
+            }
+            nameParts.put(name, parts);
+        }
+        return parts;
     }
 
     /**
      * Finds all integral-typed getters on {@code calcResultClass}, and builds
-     * a list of {@link CalculatorProperty}s using {@code rootName} as their
-     * root name, adding them to {@code attrs}.
-     * @param rootName The root name from which all properties are accessed.
+     * a list of {@link CalculatorProperty}s named after them, adding them to
+     * {@code attrs}.
      * @param calcResultClass The class of the calculation result.
      * @param attrs The {@code List} of {@link CalculatorProperty}s found.
      */
-    private static void collectLeafProperties(String rootName, Class<?>
-            calcResultClass, List<CalculatorProperty> attrs) {
+    private static void collectLeafProperties(Class<?> calcResultClass,
+            List<CalculatorProperty> attrs) {
         try {
-            BeanInfo bi = Introspector.getBeanInfo(calcResultClass);
-            for(PropertyDescriptor pd : bi.getPropertyDescriptors()) {
-                if(pd.getReadMethod() == null ||
-                        !integralTypes.contains(pd.getPropertyType())) {
+            for(PropertyDescriptor pd :
+                    PropertyAccessors.getProperties(calcResultClass).values()) {
+                if(!integralTypes.contains(pd.getPropertyType())) {
                     continue;
                 }
 
                 Class<?> propertyType = pd.getPropertyType();
-                attrs.add(new CalculatorProperty(rootName + "." + pd.getName(),
+                attrs.add(new CalculatorProperty(pd.getName(),
                         getUnitsString(pd.getReadMethod()), propertyType));
             }
         } catch(IntrospectionException e) {
@@ -361,4 +423,34 @@ public final class CalculatorHelper {
 
         return units;
     }
+
+    /**
+     * The shape of the results returned by a {@link Calculator} class.
+     */
+    private static final class ResultSchema {
+
+        /**
+         * The declared return type of {@code calculate}, or {@code null} if
+         * it could not be determined.
+         */
+        private final Class<?> type;
+
+        /**
+         * Whether {@link #type} is one of the {@code integralTypes}.
+         */
+        private final boolean integral;
+
+        /**
+         * The integral-typed properties of {@link #type}, named relative to
+         * the calculator, sorted by name.
+         */
+        private final List<CalculatorProperty> leaves;
+
+        ResultSchema(Class<?> type, boolean integral,
+                List<CalculatorProperty> leaves) {
+            this.type = type;
+            this.integral = integral;
+            this.leaves = leaves;
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code ClassCache} holds a value worked out for each of a set of classes,
+ * without keeping those classes, or their class loaders, from being
+ * unloaded.
+ * <p>
+ * Classes are held weakly, and the values they map to softly, since a value
+ * will usually refer back to its class through the {@code Method}s or
+ * {@code Class}es it holds.  A value that has been cleared just has to be
+ * worked out again.
+ * </p>
+ * <p>
+ * Lookups take no locks, so readers on many threads don't contend with one
+ * another.  Entries for classes that have been collected are dropped the
+ * next time a value is cached.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+final class ClassCache<V> {
+
+    private final ConcurrentMap<ClassKey, Reference<V>> values =
+            new ConcurrentHashMap<ClassKey, Reference<V>>();
+    private final ReferenceQueue<Class<?>> collected =
+            new ReferenceQueue<Class<?>>();
+
+    /**
+     * Gets the value cached for {@code type}.
+     * @param type The class whose value is to be found.
+     * @return The value cached for {@code type}, or {@code null} if there
+     *         isn't one.
+     */
+    V get(Class<?> type) {
+        Reference<V> ref = values.get(new ClassKey(type, null));
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Caches {@code value} for {@code type}, unless there already is a value
+     * for {@code type}.
+     * @param type The class that {@code value} was worked out for.
+     * @param value The value to cache.
+     * @return The value now cached for {@code type}.
+     */
+    V putIfAbsent(Class<?> type, V value) {
+        expunge();
+        ClassKey key = new ClassKey(type, collected);
+        Reference<V> ref = new SoftReference<V>(value);
+        for(;;) {
+            Reference<V> existing = values.putIfAbsent(key, ref);
+            if(existing == null) {
+                return value;
+            }
+            V existingValue = existing.get();
+            if(existingValue != null) {
+                return existingValue;
+            }
+
+            // The existing value has been cleared, so take its place
+            if(values.replace(key, existing, ref)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of classes with an entry, including any that have
+     * been collected but not yet dropped.
+     */
+    int size() {
+        return values.size();
+    }
+
+    private void expunge() {
+        Reference<? extends Class<?>> ref;
+        while((ref = collected.poll()) != null) {
+            values.remove(ref);
+        }
+    }
+
+    /**
+     * A weakly held class, which is only ever equal to a key for the very
+     * same class.  A key whose class has been collected is only equal to
+     * itself.
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> {
+        private final int hash;
+
+        ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+            super(type, queue);
+            this.hash = System.identityHashCode(type);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(obj == this) {
+                return true;
+            }
+            if(!(obj instanceof ClassKey)) {
+                return false;
+            }
+            Class<?> type = get();
+            return type != null && type == ((ClassKey)obj).get();
+        }
+    }
+}
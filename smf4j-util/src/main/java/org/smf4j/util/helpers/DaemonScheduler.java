@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@code DaemonScheduler} creates the single-threaded schedulers that smf4j
+ * runs its background work on.  Their threads are daemons, so they never
+ * keep the JVM from exiting.
+ * <p>
+ * Short housekeeping tasks, such as sweeps for idle state, share the one
+ * scheduler returned by {@link #shared()}, rather than each starting a
+ * thread of their own.  Work that may block, or that needs to be shut down
+ * on its own, gets a scheduler of its own from
+ * {@link #newScheduler(String)}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class DaemonScheduler {
+    private static final String SHARED_THREAD_NAME = "smf4j-housekeeping";
+
+    /**
+     * Guarded by {@code DaemonScheduler.class}.
+     */
+    private static ScheduledExecutorService shared;
+
+    /**
+     * {@code DaemonScheduler} is a static singleton.
+     */
+    private DaemonScheduler() {
+    }
+
+    /**
+     * Creates a new scheduler, with a single daemon thread.
+     * @param threadName The name of the scheduler's thread.
+     * @return The new scheduler, which the caller is responsible for
+     *         shutting down.
+     */
+    public static ScheduledExecutorService newScheduler(
+            final String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Gets the scheduler shared by smf4j's housekeeping tasks, starting its
+     * thread the first time it is asked for.  Tasks on it should be short,
+     * and should be cancelled through their futures rather than by shutting
+     * the scheduler down, which is never done.
+     * @return The shared scheduler.
+     */
+    public static synchronized ScheduledExecutorService shared() {
+        if(shared == null) {
+            shared = newScheduler(SHARED_THREAD_NAME);
+        }
+        return shared;
+    }
+}
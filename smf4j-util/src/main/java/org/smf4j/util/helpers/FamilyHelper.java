@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import org.smf4j.AccumulatorFamily;
+
+/**
+ * {@code FamilyHelper} gives exporters a common way to name the entries of
+ * an {@link AccumulatorFamily} when flattening them into columns or
+ * attributes of their own.
+ * <p>
+ * An entry is named after its family's member name, followed by its labels
+ * in braces - for example, {@code requests{code=200,region=eu}}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class FamilyHelper {
+
+    /**
+     * {@code FamilyHelper} is a static singleton.
+     */
+    private FamilyHelper() {
+    }
+
+    /**
+     * Gets the name of the entry at {@code index} in {@code family}.
+     * @param name The name {@code family} is registered under.
+     * @param family The family holding the entry.
+     * @param index The index of the entry.
+     * @return The labeled name of the entry.
+     */
+    public static String getEntryName(String name, AccumulatorFamily family,
+            int index) {
+        return getEntryName(name, family.getLabelNames(),
+                family.getLabelValues(index));
+    }
+
+    /**
+     * Gets the name of the entry labeled {@code labelValues}.
+     * @param name The name the family is registered under.
+     * @param labelNames The family's label names.
+     * @param labelValues The entry's label values.
+     * @return The labeled name of the entry.
+     */
+    public static String getEntryName(String name, String[] labelNames,
+            String[] labelValues) {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append('{');
+        for(int i=0; i<labelNames.length; i++) {
+            if(i > 0) {
+                sb.append(',');
+            }
+            sb.append(labelNames[i]).append('=').append(labelValues[i]);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Finds the index of the entry in {@code family} whose name is
+     * {@code entryName}.
+     * @param name The name {@code family} is registered under.
+     * @param family The family to search.
+     * @param entryName The labeled name of the entry to find.
+     * @return The index of the entry, or {@code -1} if there isn't one.
+     */
+    public static int findEntry(String name, AccumulatorFamily family,
+            String entryName) {
+        if(!entryName.startsWith(name + "{")) {
+            return -1;
+        }
+
+        int size = family.size();
+        for(int i=0; i<size; i++) {
+            if(entryName.equals(getEntryName(name, family, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
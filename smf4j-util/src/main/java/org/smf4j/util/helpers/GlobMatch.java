@@ -20,9 +20,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.smf4j.Accumulator;
 import org.smf4j.Calculator;
 import org.smf4j.Registrar;
+import org.smf4j.RegistryListener;
 import org.smf4j.RegistryNode;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
@@ -209,6 +211,21 @@ public class GlobMatch implements RegistryNode {
         return NopAccumulator.INSTANCE;
     }
 
+    /**
+     * Always returns {@code null}, as {@code GlobMatch} does not allow
+     * registration.
+     * @param name na
+     * @param accumulator na
+     * @param idleTimeout na
+     * @param unit na
+     * @return Always returns {@code null}, as {@code GlobMatch} does not allow
+     *         registration.
+     */
+    public Accumulator register(String name, Accumulator accumulator,
+            long idleTimeout, TimeUnit unit) {
+        return NopAccumulator.INSTANCE;
+    }
+
     /**
      * Always returns {@code null}, as {@code GlobMatch} does not allow
      * registration.
@@ -233,6 +250,20 @@ public class GlobMatch implements RegistryNode {
         return false;
     }
 
+    /**
+     * Always returns {@code false}, as {@code GlobMatch} does not allow
+     * replacement.
+     * @param name na
+     * @param accumulator na
+     * @param replacement na
+     * @return Always returns {@code false}, as {@code GlobMatch} does not
+     *         allow replacement.
+     */
+    public boolean replace(String name, Accumulator accumulator,
+            Accumulator replacement) {
+        return false;
+    }
+
     /**
      * Always returns {@code false}, as {@code GlobMatch} does not allow
      * unregistration.
@@ -385,4 +416,26 @@ public class GlobMatch implements RegistryNode {
             node.clearOn();
         }
     }
+
+    /**
+     * Adds {@code listener} to the matched {@link RegistryNode}, which tells
+     * it about changes to all of the node's members, not just the matched
+     * ones.
+     * @param listener The listener to add.
+     */
+    public void addListener(RegistryListener listener) {
+        if(node != null) {
+            node.addListener(listener);
+        }
+    }
+
+    /**
+     * Removes {@code listener} from the matched {@link RegistryNode}.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(RegistryListener listener) {
+        if(node != null) {
+            node.removeListener(listener);
+        }
+    }
 }
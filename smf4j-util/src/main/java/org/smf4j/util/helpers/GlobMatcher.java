@@ -35,7 +35,21 @@ import org.smf4j.RegistryNode;
  * {@link RegistryNode}s matched against this glob pattern.
  * <p>
  * {@link Registrar} implementations should use this class to implement their
- * {@link Registrar#match(java.lang.String) match} method.
+ * {@link Registrar#match(java.lang.String) match} method, preferably through
+ * {@link #matchTree(RegistryNode)}.  Besides a regular expression for each
+ * node pattern, the matcher keeps each pattern's leading segments (those
+ * before its first {@code **}) compiled on their own, so that a walk of the
+ * tree can skip every subtree whose path already rules out a match.  A
+ * pattern with no {@code **}, or with a single {@code **} at its end (such
+ * as the {@code **} of {@code **:requests}), is settled by its leading
+ * segments and the depth of the node alone, so the walk never runs its
+ * regular expression below the root.  Such a walk still visits every node
+ * beneath the leading segments, as each of them matches by name, whether or
+ * not it has matching members.
+ * </p>
+ * <p>
+ * {@code GlobMatcher} instances are immutable, and can be shared between
+ * threads.
  * </p>
  *
  * @author Russell Morris (wrussellmorris@gmail.com)
@@ -55,17 +69,30 @@ public final class GlobMatcher {
             "(" + SINGLE_NAME_CHAR + ")*";
     private static final String ARBITRARY_DEPTH_PATTERN =
             "((" + SINGLE_NAME_CHAR + ")*(\\.(" + SINGLE_NAME_CHAR + ")*)*)";
+    private static final Pattern LITERAL_MEMBER =
+            Pattern.compile("[a-zA-Z0-9_]+(\\.[a-zA-Z0-9_]+)*");
 
     /**
      * The list of all node patterns in the glob pattern.
      */
     private final List<Pattern> nodePatterns;
 
+    /**
+     * The segments of each node pattern, used to prune subtrees.
+     */
+    private final List<Segments> nodeSegments;
+
     /**
      * The list of all of the member patterns in the glob pattern.
      */
     private final List<Pattern> memberPatterns;
 
+    /**
+     * The member patterns, if every one of them is a plain member name, or
+     * {@code null} if any of them contain wildcards.
+     */
+    private final List<String> literalMembers;
+
     /**
      * Creates a new instance of {@code GlobMatcher} that matches
      * {@link RegistryNode}s against the given {@code globPattern}.
@@ -80,12 +107,85 @@ public final class GlobMatcher {
         // Split pattern into (hopefully) [node patterns]:[member patterns]
         List<List<String>> splits = splitPatterns(globPattern);
         nodePatterns = new ArrayList<Pattern>();
+        nodeSegments = new ArrayList<Segments>();
         for(String pattern : splits.get(0)) {
             nodePatterns.add(createPattern(pattern));
+            nodeSegments.add(new Segments(pattern));
         }
         memberPatterns = new ArrayList<Pattern>();
+        List<String> literals = new ArrayList<String>();
         for(String pattern : splits.get(1)) {
             memberPatterns.add(createPattern(pattern));
+            if(LITERAL_MEMBER.matcher(pattern).matches()) {
+                literals.add(pattern);
+            }
+        }
+        literalMembers = literals.size() == memberPatterns.size()
+                ? literals : null;
+    }
+
+    /**
+     * Matches {@code root} and every {@link RegistryNode} below it against
+     * this {@code GlobMatcher}'s glob pattern, skipping subtrees that cannot
+     * contain a match.
+     * @param root The {@link RegistryNode} to start matching from.
+     * @return A {@link GlobMatch} for each {@link RegistryNode} whose name
+     *         matched the node portion of the glob pattern, in depth-first
+     *         order.
+     */
+    public List<GlobMatch> matchTree(RegistryNode root) {
+        if(root == null) {
+            throw new NullPointerException();
+        }
+
+        List<GlobMatch> matches = new ArrayList<GlobMatch>();
+        String name = root.getName();
+        int depth = name.length() == 0 ? 0 : 1;
+        for(int i=0; i<name.length(); i++) {
+            if(name.charAt(i) == '.') {
+                depth++;
+            }
+        }
+
+        boolean[] alive = new boolean[nodeSegments.size()];
+        boolean anyAlive = false;
+        for(int i=0; i<alive.length; i++) {
+            alive[i] = nodeSegments.get(i).canMatchBelow(name, depth);
+            anyAlive |= alive[i];
+        }
+        if(anyAlive) {
+            matchTree(root, depth, alive, matches);
+        }
+        return matches;
+    }
+
+    private void matchTree(RegistryNode node, int depth, boolean[] alive,
+            List<GlobMatch> matches) {
+        String name = node.getName();
+        for(int i=0; i<alive.length; i++) {
+            if(alive[i] && nodeSegments.get(i).matches(depth, name,
+                    nodePatterns.get(i))) {
+                matches.add(matchMembers(node));
+                break;
+            }
+        }
+
+        int childDepth = depth + 1;
+        for(Map.Entry<String, RegistryNode> entry :
+                node.getChildNodes().entrySet()) {
+            boolean[] childAlive = null;
+            for(int i=0; i<alive.length; i++) {
+                if(alive[i] && nodeSegments.get(i).allows(childDepth,
+                        entry.getKey())) {
+                    if(childAlive == null) {
+                        childAlive = new boolean[alive.length];
+                    }
+                    childAlive[i] = true;
+                }
+            }
+            if(childAlive != null) {
+                matchTree(entry.getValue(), childDepth, childAlive, matches);
+            }
         }
     }
 
@@ -115,6 +215,18 @@ public final class GlobMatcher {
             return new GlobMatch(false, node, Collections.<String>emptySet());
         }
 
+        return matchMembers(node);
+    }
+
+    /**
+     * Matches the members of a {@code node} whose name is already known to
+     * match.
+     */
+    private GlobMatch matchMembers(RegistryNode node) {
+        if(literalMembers != null) {
+            return new GlobMatch(true, node, matchLiteralMembers(node));
+        }
+
         // Gather all accumulator and calculator attribute names
         Set<String> exsitingMemberNames = new HashSet<String>();
         Set<String> matchedMemberNames = new HashSet<String>();
@@ -143,6 +255,35 @@ public final class GlobMatcher {
         return new GlobMatch(true, node, matchedMemberNames);
     }
 
+    /**
+     * Matches plain member names by looking them up, rather than by reflecting
+     * over every {@link Calculator} of the node.
+     */
+    private Set<String> matchLiteralMembers(RegistryNode node) {
+        Set<String> matchedMemberNames = new HashSet<String>();
+        for(String member : literalMembers) {
+            if(node.getAccumulators().containsKey(member)) {
+                matchedMemberNames.add(member);
+                continue;
+            }
+
+            int dot = member.indexOf('.');
+            String calcName = dot < 0 ? member : member.substring(0, dot);
+            Calculator calc = node.getCalculators().get(calcName);
+            if(calc == null) {
+                continue;
+            }
+            for(CalculatorProperty calcAttr :
+                    CalculatorHelper.getCalculatorAttributes(calcName, calc)) {
+                if(calcAttr.getName().equals(member)) {
+                    matchedMemberNames.add(member);
+                    break;
+                }
+            }
+        }
+        return matchedMemberNames;
+    }
+
     /**
      * Splits the given {@code globPattern} and returns a two-element
      * {@code List} of {@code List<String>}, where the first list is the
@@ -242,4 +383,98 @@ public final class GlobMatcher {
 
         return Pattern.compile(regexString.toString());
     }
+
+    /**
+     * Creates a {@link Pattern} that matches a single segment of a node name
+     * against a single (non-{@code **}) segment of a filter pattern.
+     * @param part The segment of the filter pattern.
+     * @return A {@link Pattern} that matches a single segment of a node name.
+     */
+    static Pattern createSegmentPattern(String part) {
+        part = part.replace("*", ANY_NAME_CHARS_PATTERN);
+        part = part.replace("?", SINGLE_NAME_CHAR);
+        return Pattern.compile(part);
+    }
+
+    /**
+     * The segments of a single node pattern that come before its first
+     * {@code **}.  As no segment other than {@code **} can match a dot, a
+     * node can only match (or have descendants that match) if the segments
+     * of its name match these segments one for one.  A pattern without a
+     * {@code **} also bounds the depth of the nodes it can match.
+     */
+    static final class Segments {
+        private final Pattern[] prefix;
+        private final boolean bounded;
+
+        /**
+         * Whether the pattern is its leading segments followed by a single,
+         * final {@code **}, which matches every node below them.
+         */
+        private final boolean openEnded;
+
+        Segments(String filterPattern) {
+            String[] parts = filterPattern.split("\\.");
+            List<Pattern> leading = new ArrayList<Pattern>();
+            boolean sawAllGlob = false;
+            for(String part : parts) {
+                part = part.trim();
+                if(part.equals(ALL_GLOB)) {
+                    sawAllGlob = true;
+                    break;
+                }
+                leading.add(createSegmentPattern(part));
+            }
+            this.prefix = leading.toArray(new Pattern[leading.size()]);
+            this.bounded = !sawAllGlob;
+            this.openEnded = sawAllGlob && prefix.length == parts.length - 1;
+        }
+
+        /**
+         * Whether the node named {@code name} at {@code depth} matches
+         * {@code pattern}, the whole of this node pattern, given that every
+         * segment of its name has been {@link #allows(int, String) allowed}.
+         * The root is always left to {@code pattern}.
+         */
+        boolean matches(int depth, String name, Pattern pattern) {
+            if(depth > 0) {
+                if(bounded) {
+                    return depth == prefix.length;
+                }
+                if(openEnded) {
+                    return depth > prefix.length;
+                }
+            }
+            return pattern.matcher(name).matches();
+        }
+
+        /**
+         * Whether a node at {@code depth}, whose last name segment is
+         * {@code segment}, can match or have matching descendants, given
+         * that its parent could.
+         */
+        boolean allows(int depth, String segment) {
+            if(depth > prefix.length) {
+                return !bounded;
+            }
+            return prefix[depth - 1].matcher(segment).matches();
+        }
+
+        /**
+         * Whether the node named {@code name} at {@code depth} can match or
+         * have matching descendants.
+         */
+        boolean canMatchBelow(String name, int depth) {
+            if(depth == 0) {
+                return true;
+            }
+            String[] segments = name.split("\\.");
+            for(int i=0; i<depth; i++) {
+                if(!allows(i + 1, segments[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code GlobMatcherCache} keeps the {@link GlobMatcher}s compiled for a
+ * registrar, keyed on their patterns, so that a pattern that is matched
+ * over and over is only compiled once.
+ * <p>
+ * The cache holds at most {@value #MAX_CACHED_MATCHERS} patterns.  Someone
+ * building patterns on the fly would otherwise grow it without bound, so
+ * once it is full it is cleared and starts over.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class GlobMatcherCache {
+    public static final int MAX_CACHED_MATCHERS = 256;
+
+    private final ConcurrentMap<String, GlobMatcher> matchers =
+            new ConcurrentHashMap<String, GlobMatcher>();
+
+    /**
+     * Gets the compiled matcher for {@code globPattern}.
+     * @param globPattern The glob pattern.
+     * @return The compiled matcher.
+     */
+    public GlobMatcher get(String globPattern) {
+        GlobMatcher matcher = matchers.get(globPattern);
+        if(matcher == null) {
+            matcher = new GlobMatcher(globPattern);
+            if(matchers.size() >= MAX_CACHED_MATCHERS) {
+                // Someone is building patterns on the fly - start over
+                // rather than grow without bound.
+                matchers.clear();
+            }
+            matchers.put(globPattern, matcher);
+        }
+        return matcher;
+    }
+}
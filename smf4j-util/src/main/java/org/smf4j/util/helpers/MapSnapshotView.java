@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.Map;
+import org.smf4j.Accumulator;
+import org.smf4j.PrimitiveCalculator;
+import org.smf4j.SnapshotView;
+
+/**
+ * {@code MapSnapshotView} adapts the {@code Map}s passed to
+ * {@link org.smf4j.Calculator#calculate(java.util.Map, java.util.Map)} into a
+ * {@link SnapshotView}, so that a {@link PrimitiveCalculator} can implement
+ * the {@code Map} form of {@code calculate} in terms of its primitive one.
+ * <p>
+ * Each slot is looked up by name on every access, so this view saves nothing
+ * over using the {@code Map}s directly; it exists only for compatibility.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class MapSnapshotView implements SnapshotView {
+
+    private final String[] inputs;
+    private final Map<String, Long> values;
+    private final Map<String, Accumulator> accumulators;
+
+    /**
+     * Creates a new {@code MapSnapshotView}.
+     * @param inputs The names of the inputs, in slot order.
+     * @param values The snapshotted accumulator values, keyed on name.
+     * @param accumulators The accumulators, keyed on name.
+     */
+    public MapSnapshotView(String[] inputs, Map<String, Long> values,
+            Map<String, Accumulator> accumulators) {
+        this.inputs = inputs;
+        this.values = values;
+        this.accumulators = accumulators;
+    }
+
+    public int size() {
+        return inputs.length;
+    }
+
+    public boolean contains(int slot) {
+        return values.get(inputs[slot]) != null;
+    }
+
+    public long get(int slot) {
+        Long val = values.get(inputs[slot]);
+        return val == null ? 0L : val;
+    }
+
+    public Accumulator getAccumulator(int slot) {
+        return accumulators.get(inputs[slot]);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code PropertyAccessors} caches the readable bean properties of the
+ * classes that calculations return, so that exporters reading calculation
+ * results only pay for introspection once per class.
+ * <p>
+ * The cache doesn't keep the classes it has been asked about from being
+ * unloaded along with their class loaders.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class PropertyAccessors {
+
+    /**
+     * The readable properties of each class we have introspected, keyed on
+     * property name.
+     */
+    private static final ClassCache<Map<String, PropertyDescriptor>>
+            properties = new ClassCache<Map<String, PropertyDescriptor>>();
+
+    /**
+     * {@code PropertyAccessors} is a static singleton.
+     */
+    private PropertyAccessors() {
+    }
+
+    /**
+     * Gets the readable properties of {@code type}, keyed on property name.
+     * @param type The class to introspect.
+     * @return An unmodifiable {@code Map} of the properties of {@code type}
+     *         that have read methods, keyed on property name.
+     * @throws IntrospectionException If {@code type} could not be
+     *                                introspected.
+     */
+    public static Map<String, PropertyDescriptor> getProperties(Class<?> type)
+    throws IntrospectionException {
+        Map<String, PropertyDescriptor> result = properties.get(type);
+        if(result == null) {
+            BeanInfo bi = Introspector.getBeanInfo(type);
+            Map<String, PropertyDescriptor> readable =
+                    new LinkedHashMap<String, PropertyDescriptor>();
+            for(PropertyDescriptor pd : bi.getPropertyDescriptors()) {
+                if(pd.getReadMethod() != null) {
+                    readable.put(pd.getName(), pd);
+                }
+            }
+            result = properties.putIfAbsent(type,
+                    Collections.unmodifiableMap(readable));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the read method of the property {@code name} of {@code type}.
+     * @param type The class whose property is to be read.
+     * @param name The name of the property.
+     * @return The read method of the property, or {@code null} if
+     *         {@code type} has no readable property named {@code name}.
+     * @throws IntrospectionException If {@code type} could not be
+     *                                introspected.
+     */
+    public static Method getReadMethod(Class<?> type, String name)
+    throws IntrospectionException {
+        PropertyDescriptor pd = getProperties(type).get(name);
+        return pd == null ? null : pd.getReadMethod();
+    }
+}
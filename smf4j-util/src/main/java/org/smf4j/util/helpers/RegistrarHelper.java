@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smf4j.Accumulator;
+import org.smf4j.RecordedEvent;
+import org.smf4j.RecordingAccumulator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryNode;
+
+/**
+ * {@code RegistrarHelper} holds the parts of a {@link Registrar} that don't
+ * depend on how the registrar stores its tree: the rules for node and member
+ * paths, and gathering recorded events.
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class RegistrarHelper {
+    private static final Logger log =
+            LoggerFactory.getLogger(RegistrarHelper.class);
+    private static final Pattern validPartChars =
+            Pattern.compile("[\\w]+");
+
+    /**
+     * {@code RegistrarHelper} is a static singleton.
+     */
+    private RegistrarHelper() {
+    }
+
+    /**
+     * Splits {@code fullNodeName} into the names of the nodes along its
+     * path, trimming whitespace from each.  Every part must be non-empty,
+     * and consist only of the characters 'a'-'z', 'A'-'Z', '0'-'9', and
+     * '_'.  A name that breaks the rules is logged.
+     * @param fullNodeName The dot-separated name of a node.
+     * @return The parts of {@code fullNodeName}, or {@code null} if it
+     *         breaks the rules.
+     */
+    public static String[] splitFullNodeName(String fullNodeName) {
+        if(fullNodeName == null) {
+            log.warn("Error in node name: Node name is null.");
+            return null;
+        }
+
+        // Trim whitespace off of full node name
+        fullNodeName = fullNodeName.trim();
+
+        // Split by dots
+        String[] parts = fullNodeName.split("\\.", -1);
+
+        // Ensure that for non-root full node names, no part of the name
+        // is empty
+        for(int i=0; i<parts.length; i++) {
+            // Trim whitespace off of part
+            parts[i] = parts[i].trim();
+
+            if(parts[i].length() == 0) {
+                // A part cannot be all whitespace (only the root node can
+                // be empty).
+                log.warn("Error in node name '{}': No part of a "
+                        + "node name can be empty (or all whitespace).",
+                        fullNodeName);
+                return null;
+            } else if(!validPartChars.matcher(parts[i]).matches()) {
+                log.warn("Error in node name '{}': A part of a node name can "
+                        + "only consist of the characters 'a'-'z', 'A'-'Z', "
+                        + "'0'-'9', and '_' .",
+                        fullNodeName);
+                return null;
+            }
+        }
+
+        return parts;
+    }
+
+    /**
+     * Splits {@code memberPath} into the name of its node and the name of
+     * its member.
+     * @param memberPath A path of the form {@code node.path:memberName}.
+     * @return The node's name and the member's name, or {@code null} if
+     *         {@code memberPath} isn't of that form.
+     */
+    public static String[] splitMemberPath(String memberPath) {
+        if(memberPath == null) {
+            return null;
+        }
+
+        String[] results = memberPath.split(":");
+        if(results.length != 2) {
+            return null;
+        }
+
+        return results;
+    }
+
+    /**
+     * Gets the events recorded by every {@link RecordingAccumulator} of
+     * {@code nodes} that is currently recording.
+     * @param nodes The nodes to gather from.
+     * @return The recorded events, keyed by the path of their accumulator.
+     * @see Registrar#getRecordedEvents(String)
+     */
+    public static Map<String, List<RecordedEvent>> getRecordedEvents(
+            Iterable<? extends RegistryNode> nodes) {
+        Map<String, List<RecordedEvent>> results =
+                new HashMap<String, List<RecordedEvent>>();
+        for(RegistryNode node : nodes) {
+            for(Map.Entry<String, Accumulator> entry :
+                    node.getAccumulators().entrySet()) {
+                if(!(entry.getValue() instanceof RecordingAccumulator)) {
+                    continue;
+                }
+
+                RecordingAccumulator acc =
+                        (RecordingAccumulator)entry.getValue();
+                if(acc.isRecording()) {
+                    results.put(node.getName() + ":" + entry.getKey(),
+                            acc.getRecordedEvents());
+                }
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryEvent;
+import org.smf4j.RegistryListener;
+import org.smf4j.RegistryNode;
+
+/**
+ * A {@code StandingMatch} is the result of matching a
+ * <a href="{@docRoot}/org/smf4j/Registrar.html#GlobPattern">glob pattern</a>
+ * against a {@link Registrar}, kept current as the registry changes.
+ * <p>
+ * The registry is walked once, when the {@code StandingMatch} is created.
+ * After that, the {@code StandingMatch} listens to the {@code Registrar}, and
+ * only re-matches the nodes that changed, so that reading the matches over
+ * and over is nearly free.  As registry events are delivered asynchronously,
+ * the matches may briefly trail behind the registry.
+ * </p>
+ * <p>
+ * A {@code StandingMatch} should be {@link #close() closed} once it is no
+ * longer needed, so that it stops listening to the {@code Registrar}.
+ * </p>
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public final class StandingMatch implements Iterable<GlobMatch>,
+        RegistryListener {
+
+    private final Registrar registrar;
+    private final GlobMatcher matcher;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private final TreeMap<String, GlobMatch> matches =
+            new TreeMap<String, GlobMatch>();
+    private volatile List<GlobMatch> view;
+    private volatile long version;
+
+    /**
+     * Creates a new {@code StandingMatch}, and walks {@code registrar} to find
+     * the initial matches.
+     * @param registrar The {@link Registrar} to match against.
+     * @param globPattern The
+     *        <a href="{@docRoot}/org/smf4j/Registrar.html#GlobPattern">glob
+     *        pattern</a> to match.
+     */
+    public StandingMatch(Registrar registrar, String globPattern) {
+        this.registrar = registrar;
+        this.matcher = new GlobMatcher(globPattern);
+
+        // Listen first, so that no change that races with the walk is lost
+        registrar.addListener(this);
+        synchronized(this) {
+            for(GlobMatch match : matcher.matchTree(registrar.getRootNode())) {
+                matches.put(match.getName(), match);
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Gets the current matches, ordered by node path.
+     * @return An unmodifiable {@code List} of the {@link GlobMatch}es of every
+     *         matching {@link RegistryNode}.
+     */
+    public List<GlobMatch> getMatches() {
+        return view;
+    }
+
+    /**
+     * Gets a number that changes every time the set of matches changes.
+     * @return A number that changes every time the set of matches changes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Iterator<GlobMatch> iterator() {
+        return view.iterator();
+    }
+
+    /**
+     * Stops listening to the {@link Registrar}.  The matches are no longer
+     * kept current.
+     */
+    public void close() {
+        registrar.removeListener(this);
+    }
+
+    public void registryChanged(List<RegistryEvent> events) {
+        synchronized(this) {
+            boolean changed = false;
+            for(RegistryEvent event : events) {
+                RegistryNode node = event.getNode();
+                switch(event.getType()) {
+                    case STATE_CHANGED:
+                        break;
+                    case NODE_REMOVED:
+                        changed |= removeSubtree(node.getName());
+                        break;
+                    default:
+                        changed |= rematch(node);
+                        break;
+                }
+            }
+            if(changed) {
+                publish();
+            }
+        }
+    }
+
+    private boolean rematch(RegistryNode node) {
+        GlobMatch match = matcher.match(node);
+        if(match.isNodeMatched()) {
+            matches.put(node.getName(), match);
+            return true;
+        }
+        return matches.remove(node.getName()) != null;
+    }
+
+    private boolean removeSubtree(String name) {
+        boolean changed = matches.remove(name) != null;
+        String prefix = name + ".";
+        Iterator<Map.Entry<String, GlobMatch>> it =
+                matches.tailMap(prefix).entrySet().iterator();
+        while(it.hasNext() && it.next().getKey().startsWith(prefix)) {
+            it.remove();
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void publish() {
+        view = Collections.unmodifiableList(
+                new ArrayList<GlobMatch>(matches.values()));
+        version++;
+    }
+}
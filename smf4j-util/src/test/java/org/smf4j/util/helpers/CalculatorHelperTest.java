@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.smf4j.Accumulator;
+import org.smf4j.Calculator;
+import org.smf4j.Units;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class CalculatorHelperTest {
+
+    @Test
+    public void integralAttributes() {
+        List<CalculatorProperty> attrs =
+                CalculatorHelper.getCalculatorAttributes("calc",
+                new LongCalc("ms"));
+        assertEquals(1, attrs.size());
+        assertEquals("calc", attrs.get(0).getName());
+        assertEquals("ms", attrs.get(0).getUnits());
+        assertEquals(Long.class, attrs.get(0).getType());
+
+        // Units come from each instance, even though the schema is cached
+        attrs = CalculatorHelper.getCalculatorAttributes("other",
+                new LongCalc("s"));
+        assertEquals("other", attrs.get(0).getName());
+        assertEquals("s", attrs.get(0).getUnits());
+    }
+
+    @Test
+    public void beanAttributes() {
+        for(int i=0; i<2; i++) {
+            List<CalculatorProperty> attrs =
+                    CalculatorHelper.getCalculatorAttributes("stats",
+                    new StatsCalc());
+            assertEquals(2, attrs.size());
+            assertEquals("stats.max", attrs.get(0).getName());
+            assertEquals(long.class, attrs.get(0).getType());
+            assertEquals("stats.mean", attrs.get(1).getName());
+            assertEquals("ops", attrs.get(1).getUnits());
+        }
+    }
+
+    @Test
+    public void resolveValue() {
+        Map<String, Object> snapshot = new HashMap<String, Object>();
+        snapshot.put("stats", new Stats(7L, 2.5d));
+        snapshot.put("count", 3L);
+
+        for(int i=0; i<2; i++) {
+            assertEquals(3L, CalculatorHelper.resolveValue(snapshot, "count"));
+            assertEquals(7L,
+                    CalculatorHelper.resolveValue(snapshot, "stats.max"));
+            assertEquals(2.5d,
+                    CalculatorHelper.resolveValue(snapshot, "stats.mean"));
+            assertNull(CalculatorHelper.resolveValue(snapshot, "stats.nope"));
+            assertEquals(7L, CalculatorHelper.resolveValue(
+                    snapshot.get("stats"), "max"));
+        }
+    }
+
+    public static final class Stats {
+        private final long max;
+        private final double mean;
+
+        public Stats(long max, double mean) {
+            this.max = max;
+            this.mean = mean;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Units("ops")
+        public double getMean() {
+            return mean;
+        }
+
+        public Object getIgnored() {
+            return null;
+        }
+    }
+
+    public static final class StatsCalc implements Calculator {
+        public Stats calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            return new Stats(0L, 0.0d);
+        }
+
+        public String getUnits() {
+            return null;
+        }
+    }
+
+    public static final class LongCalc implements Calculator {
+        private final String units;
+
+        public LongCalc(String units) {
+            this.units = units;
+        }
+
+        public Long calculate(Map<String, Long> values,
+                Map<String, Accumulator> accumulators) {
+            return 0L;
+        }
+
+        public String getUnits() {
+            return units;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class ClassCacheTest {
+
+    @Test
+    public void doesNotPinClassLoaders()
+    throws Exception {
+        ClassCache<String> cache = new ClassCache<String>();
+        URL classes = ClassCacheTest.class.getProtectionDomain()
+                .getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] {classes}, null);
+        Class<?> type = loader.loadClass(Plain.class.getName());
+        assertNotSame(Plain.class, type);
+
+        assertNull(cache.get(type));
+        assertEquals("first", cache.putIfAbsent(type, "first"));
+        assertEquals("first", cache.putIfAbsent(type, "second"));
+        assertEquals("first", cache.get(type));
+
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        type = null;
+        for(int i=0; i<50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20L);
+        }
+        assertNull(ref.get());
+
+        // The collected class's entry is dropped once something else is
+        // cached
+        assertEquals("plain", cache.putIfAbsent(Plain.class, "plain"));
+        assertEquals(1, cache.size());
+        assertEquals("plain", cache.get(Plain.class));
+    }
+
+    public static final class Plain {
+    }
+}
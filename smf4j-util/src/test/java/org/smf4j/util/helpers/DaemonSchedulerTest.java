@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 Russell Morris (wrussellmorris@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smf4j.util.helpers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Russell Morris (wrussellmorris@gmail.com)
+ */
+public class DaemonSchedulerTest {
+
+    private static final Callable<Thread> CURRENT_THREAD =
+            new Callable<Thread>() {
+        public Thread call() {
+            return Thread.currentThread();
+        }
+    };
+
+    @Test
+    public void newSchedulerRunsOnNamedDaemon()
+    throws Exception {
+        ScheduledExecutorService scheduler =
+                DaemonScheduler.newScheduler("test-scheduler");
+        try {
+            Thread t = scheduler.submit(CURRENT_THREAD).get();
+            assertEquals("test-scheduler", t.getName());
+            assertTrue(t.isDaemon());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedIsShared()
+    throws Exception {
+        ScheduledExecutorService shared = DaemonScheduler.shared();
+        assertSame(shared, DaemonScheduler.shared());
+
+        Thread first = shared.submit(CURRENT_THREAD).get();
+        Thread second = DaemonScheduler.shared().submit(CURRENT_THREAD).get();
+        assertSame(first, second);
+        assertTrue(first.isDaemon());
+    }
+}
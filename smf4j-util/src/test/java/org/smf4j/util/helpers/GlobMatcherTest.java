@@ -18,13 +18,20 @@ package org.smf4j.util.helpers;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
 import org.smf4j.Accumulator;
 import org.smf4j.Calculator;
+import org.smf4j.Registrar;
+import org.smf4j.RegistryEvent;
 import org.smf4j.RegistryNode;
 import org.smf4j.nop.NopAccumulator;
 import org.smf4j.nop.NopCalculator;
@@ -181,6 +188,197 @@ public class GlobMatcherTest {
         assertEquals(1, match.getChildNodes().size());
     }
 
+    @Test
+    public void matchTreeAgreesWithMatch() {
+        RegistryNode root = treeNode("", null);
+        String[] names = {"foo", "bar", "xbaz"};
+        for(String a : names) {
+            RegistryNode na = treeNode(a, root);
+            for(String b : names) {
+                RegistryNode nb = treeNode(a + "." + b, na);
+                for(String c : names) {
+                    treeNode(a + "." + b + "." + c, nb).getAccumulators().put(
+                            "requests", createMock(Accumulator.class));
+                }
+            }
+        }
+
+        // Pruned and unpruned, with and without '**' segments
+        String[] patterns = {"*", "**", "**:requests", "foo.**", "foo*.**",
+            "foo.**:requests", "**.**", "foo.**.bar", "**.bar", "*.bar",
+            "*.*.*", "foo.x*.bar", "x???", "bar,foo.bar.**", "nope.**"};
+        for(String pattern : patterns) {
+            GlobMatcher matcher = new GlobMatcher(pattern);
+            List<String> expected = new ArrayList<String>();
+            matchEverything(matcher, root, expected);
+            List<String> actual = new ArrayList<String>();
+            for(GlobMatch match : matcher.matchTree(root)) {
+                actual.add(match.getName() + match.getMemberNames());
+            }
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(pattern, expected, actual);
+        }
+    }
+
+    @Test
+    public void matchTreePrunes() {
+        RegistryNode root = treeNode("", null);
+        RegistryNode web = treeNode("web", root);
+        treeNode("web.a", web).getAccumulators().put("requests",
+                createMock(Accumulator.class));
+        treeNode("web.b", web);
+
+        // Touching this node at all fails the test
+        RegistryNode api = createMock(RegistryNode.class);
+        replay(api);
+        root.getChildNodes().put("api", api);
+
+        assertEquals(Arrays.asList("web.a", "web.b"),
+                names(new GlobMatcher("web.*:requests").matchTree(root)));
+        assertEquals(Arrays.asList("web.a", "web.b"),
+                names(new GlobMatcher("web.**:requests").matchTree(root)));
+        assertEquals(Arrays.asList("web"),
+                names(new GlobMatcher("w?b").matchTree(root)));
+        assertEquals(Arrays.asList("web.a"),
+                names(new GlobMatcher("web.a.**,w*.a").matchTree(root)));
+    }
+
+    @Test
+    public void globstarsMatchEveryNode() {
+        RegistryNode root = treeNode("", null);
+        RegistryNode web = treeNode("web", root);
+        RegistryNode a = treeNode("web.a", web);
+        a.getAccumulators().put("requests", createMock(Accumulator.class));
+        treeNode("api", root);
+
+        // Nothing can be pruned, and every node matches by name, whether or
+        // not it has the member
+        List<GlobMatch> matches = new GlobMatcher("**:requests")
+                .matchTree(root);
+        assertEquals(Arrays.asList("", "api", "web", "web.a"),
+                sorted(names(matches)));
+        for(GlobMatch match : matches) {
+            assertEquals(match.getNode() == a, match.isMembersMatched());
+        }
+
+        // A '**' that isn't last is still left to the whole pattern
+        assertEquals(Arrays.asList("web.a"),
+                names(new GlobMatcher("**.a").matchTree(root)));
+        assertEquals(Arrays.asList("web.a"),
+                names(new GlobMatcher("**.**.a").matchTree(root)));
+        assertEquals(Arrays.asList("web.a"),
+                names(new GlobMatcher("*.**").matchTree(root)));
+
+        // A lone '*' matches the root's empty name too
+        assertEquals(Arrays.asList("", "api", "web"),
+                sorted(names(new GlobMatcher("*").matchTree(root))));
+
+        // Matching can start below the root
+        assertEquals(Arrays.asList("web.a"),
+                names(new GlobMatcher("web.**").matchTree(web)));
+        assertTrue(new GlobMatcher("api.**").matchTree(web).isEmpty());
+    }
+
+    @Test
+    public void standingMatchFollowsChanges() {
+        RegistryNode root = treeNode("", null);
+        RegistryNode web = treeNode("web", root);
+        RegistryNode a = treeNode("web.a", web);
+        a.getAccumulators().put("requests", createMock(Accumulator.class));
+        RegistryNode api = treeNode("api", root);
+
+        Registrar registrar = createNiceMock(Registrar.class);
+        expect(registrar.getRootNode()).andStubReturn(root);
+        replay(registrar);
+
+        StandingMatch standing = new StandingMatch(registrar,
+                "web.*:requests");
+        assertEquals(Arrays.asList("web.a"), names(standing.getMatches()));
+        long version = standing.getVersion();
+
+        // Changes that can't affect the matches don't invalidate them
+        RegistryNode v1 = treeNode("api.v1", api);
+        standing.registryChanged(Arrays.asList(
+                event(RegistryEvent.Type.NODE_ADDED, v1),
+                event(RegistryEvent.Type.STATE_CHANGED, web)));
+        assertEquals(version, standing.getVersion());
+
+        // A new matching node does
+        RegistryNode b = treeNode("web.b", web);
+        standing.registryChanged(Arrays.asList(
+                event(RegistryEvent.Type.NODE_ADDED, b)));
+        assertTrue(standing.getVersion() != version);
+        assertEquals(Arrays.asList("web.a", "web.b"),
+                names(standing.getMatches()));
+        version = standing.getVersion();
+
+        // As does a change to a matched node's members
+        b.getAccumulators().put("requests", createMock(Accumulator.class));
+        standing.registryChanged(Arrays.asList(
+                event(RegistryEvent.Type.ACCUMULATOR_ADDED, b)));
+        assertTrue(standing.getVersion() != version);
+        assertTrue(standing.getMatches().get(1).isMembersMatched());
+        version = standing.getVersion();
+
+        // Removing a node drops everything beneath it
+        standing.registryChanged(Arrays.asList(
+                event(RegistryEvent.Type.NODE_REMOVED, web)));
+        assertTrue(standing.getVersion() != version);
+        assertTrue(standing.getMatches().isEmpty());
+        standing.close();
+    }
+
+    private static RegistryEvent event(RegistryEvent.Type type,
+            RegistryNode node) {
+        return new RegistryEvent(type, node, null, null);
+    }
+
+    private static List<String> names(List<GlobMatch> matches) {
+        List<String> names = new ArrayList<String>();
+        for(GlobMatch match : matches) {
+            names.add(match.getName());
+        }
+        return names;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private void matchEverything(GlobMatcher matcher, RegistryNode node,
+            List<String> results) {
+        GlobMatch match = matcher.match(node);
+        if(match.isNodeMatched()) {
+            results.add(match.getName() + match.getMemberNames());
+        }
+        for(RegistryNode child : node.getChildNodes().values()) {
+            matchEverything(matcher, child, results);
+        }
+    }
+
+    /**
+     * Creates a node whose members and children can be changed through the
+     * maps it returns, and adds it to {@code parent}.
+     */
+    private RegistryNode treeNode(String name, RegistryNode parent) {
+        RegistryNode node = createNiceMock(RegistryNode.class);
+        expect(node.getName()).andStubReturn(name);
+        expect(node.getAccumulators()).andStubReturn(
+                new HashMap<String, Accumulator>());
+        expect(node.getCalculators()).andStubReturn(
+                new HashMap<String, Calculator>());
+        expect(node.getChildNodes()).andStubReturn(
+                new LinkedHashMap<String, RegistryNode>());
+        replay(node);
+        if(parent != null) {
+            parent.getChildNodes().put(name.substring(
+                    name.lastIndexOf('.') + 1), node);
+        }
+        return node;
+    }
+
     private GlobMatchHelper globMatch(RegistryNode node, String pattern) {
         GlobMatcher matcher = new GlobMatcher(pattern);
         return new GlobMatchHelper(matcher.match(node));